@@ -41,6 +41,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -277,6 +280,30 @@ public class CoreContainer {
 
   private ExecutorService coreContainerAsyncTaskExecutor = ExecutorUtil.newMDCAwareCachedThreadPool("Core Container Async Task");
 
+  // the most threads one facet request may count on, which is also the size of the facetExecutor
+  private final int facetMaxThreads =
+      Math.max(1, Integer.getInteger("solr.facet.maxThreads", Runtime.getRuntime().availableProcessors()));
+
+  // runs the parts of facet requests that are split over several threads
+  private final ExecutorService facetExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(
+      facetMaxThreads, new SolrNamedThreadFactory("facetExecutor"));
+
+  // the most threads one update request may parse its docs on, which is also the size of the updateParseExecutor
+  private final int updateParseMaxThreads =
+      Math.max(1, Integer.getInteger("solr.update.maxParseThreads", Runtime.getRuntime().availableProcessors()));
+
+  // parses the docs of update requests that are split over several threads
+  private final ExecutorService updateParseExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(
+      updateParseMaxThreads, new SolrNamedThreadFactory("updateParseExecutor"));
+
+  // the most threads one export may sort its segments on, which is also the size of the exportExecutor
+  private final int exportMaxThreads =
+      Math.max(1, Integer.getInteger("solr.export.maxThreads", Runtime.getRuntime().availableProcessors()));
+
+  // sorts the segments of exports that are split over several threads
+  private final ExecutorService exportExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(
+      exportMaxThreads, new SolrNamedThreadFactory("exportExecutor"));
+
   /**
    * Non empty if the Collection API is executed in a distributed way and not on Overseer, once the CoreContainer has been initialized
    * properly, i.e. method {@link #load()} called. Until then it is null, and it is not expected to be read.
@@ -375,11 +402,14 @@ public class CoreContainer {
     this.coresLocator = locator;
     this.containerProperties = new Properties(config.getSolrProperties());
     this.asyncSolrCoreLoad = asyncSolrCoreLoad;
-    this.replayUpdatesExecutor = new OrderedExecutor(
-        cfg.getReplayUpdatesThreads(),
-        ExecutorUtil.newMDCAwareCachedThreadPool(
-            cfg.getReplayUpdatesThreads(),
-            new SolrNamedThreadFactory("replayUpdatesExecutor")));
+    // a pool of one thread per lane, so that every lane runs rather than queueing behind the first one, whose
+    // threads go away once replay is over
+    ThreadPoolExecutor replayPool = new ExecutorUtil.MDCAwareThreadPoolExecutor(
+        cfg.getReplayUpdatesThreads(), cfg.getReplayUpdatesThreads(),
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        new SolrNamedThreadFactory("replayUpdatesExecutor"));
+    replayPool.allowCoreThreadTimeOut(true);
+    this.replayUpdatesExecutor = new OrderedExecutor(cfg.getReplayUpdatesThreads(), replayPool);
 
     this.allowPaths = new java.util.HashSet<>();
     addToAllowPath(cfg.getSolrHome());
@@ -651,6 +681,54 @@ public class CoreContainer {
     return replayUpdatesExecutor;
   }
 
+  /**
+   * Returns the executor for facet requests that count on several threads.  It has {@link #getFacetMaxThreads()}
+   * threads, so callers must not wait on tasks from within a task.
+   */
+  public ExecutorService getFacetExecutor() {
+    return facetExecutor;
+  }
+
+  /**
+   * The most threads, the request thread included, that one facet request may count on.  Set with the
+   * <code>solr.facet.maxThreads</code> system property, defaults to the number of processors.
+   */
+  public int getFacetMaxThreads() {
+    return facetMaxThreads;
+  }
+
+  /**
+   * Returns the executor for update requests that parse their docs on several threads.  It has
+   * {@link #getUpdateParseMaxThreads()} threads, so callers must not wait on tasks from within a task.
+   */
+  public ExecutorService getUpdateParseExecutor() {
+    return updateParseExecutor;
+  }
+
+  /**
+   * The most threads that one update request may parse its docs on.  Set with the
+   * <code>solr.update.maxParseThreads</code> system property, defaults to the number of processors.
+   */
+  public int getUpdateParseMaxThreads() {
+    return updateParseMaxThreads;
+  }
+
+  /**
+   * Returns the executor for exports that sort the docs of their segments on several threads.  It has
+   * {@link #getExportMaxThreads()} threads, so callers must not wait on tasks from within a task.
+   */
+  public ExecutorService getExportExecutor() {
+    return exportExecutor;
+  }
+
+  /**
+   * The most threads that one export may sort its segments on.  Set with the
+   * <code>solr.export.maxThreads</code> system property, defaults to the number of processors.
+   */
+  public int getExportMaxThreads() {
+    return exportMaxThreads;
+  }
+
   public PackageLoader getPackageLoader() {
     return packageLoader;
   }
@@ -1142,6 +1220,18 @@ public class CoreContainer {
         replayUpdatesExecutor.shutdownAndAwaitTermination();
       });
 
+      customThreadPool.submit(() -> {
+        ExecutorUtil.shutdownAndAwaitTermination(facetExecutor);
+      });
+
+      customThreadPool.submit(() -> {
+        ExecutorUtil.shutdownAndAwaitTermination(updateParseExecutor);
+      });
+
+      customThreadPool.submit(() -> {
+        ExecutorUtil.shutdownAndAwaitTermination(exportExecutor);
+      });
+
       if (metricsHistoryHandler != null) {
         metricsHistoryHandler.close();
         IOUtils.closeQuietly(metricsHistoryHandler.getSolrClient());
@@ -227,6 +227,11 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
     queryResultWindowSize = Math.max(1, getInt("query/queryResultWindowSize", 1));
     queryResultMaxDocsCached = getInt("query/queryResultMaxDocsCached", Integer.MAX_VALUE);
     enableLazyFieldLoading = getBool("query/enableLazyFieldLoading", false);
+    searchExecutorThreads = Math.max(0, getInt("query/searchExecutorThreads", 0));
+    segmentFilterCacheMaxRamMB = Math.max(0, getInt("query/segmentFilterCacheMaxRamMB", 0));
+    facetCountCacheMaxRamMB = Math.max(0, getInt("query/facetCountCacheMaxRamMB", 0));
+    uninvertedFieldThreads = Math.max(1, getInt("query/uninvertedFieldThreads",
+        Math.min(DEFAULT_UNINVERTED_FIELD_THREADS, Runtime.getRuntime().availableProcessors())));
     
     filterCacheConfig = CacheConfig.getConfig(this, "query/filterCache");
     queryResultCacheConfig = CacheConfig.getConfig(this, "query/queryResultCache");
@@ -523,6 +528,16 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
   public final int queryResultWindowSize;
   public final int queryResultMaxDocsCached;
   public final boolean enableLazyFieldLoading;
+  // number of threads used to search index slices concurrently; 0 disables intra-query concurrency
+  public final int searchExecutorThreads;
+  // size of the core's per-segment filter cache; 0 disables it
+  public final int segmentFilterCacheMaxRamMB;
+  // size of the core's per-segment facet count cache; 0 disables it
+  public final int facetCountCacheMaxRamMB;
+  // number of threads that rebuild an UnInvertedField, the request thread included
+  public final int uninvertedFieldThreads;
+  // the most threads that build an UnInvertedField by default, since a build is rare but blocks the requests on the field
+  public static final int DEFAULT_UNINVERTED_FIELD_THREADS = 4;
 
   // IndexConfig settings
   public final SolrIndexConfig indexConfig;
@@ -875,6 +890,10 @@ public class SolrConfig extends XmlConfigFile implements MapSerializable {
     m.put("queryResultWindowSize", queryResultWindowSize);
     m.put("queryResultMaxDocsCached", queryResultMaxDocsCached);
     m.put("enableLazyFieldLoading", enableLazyFieldLoading);
+    m.put("searchExecutorThreads", searchExecutorThreads);
+    m.put("segmentFilterCacheMaxRamMB", segmentFilterCacheMaxRamMB);
+    m.put("facetCountCacheMaxRamMB", facetCountCacheMaxRamMB);
+    m.put("uninvertedFieldThreads", uninvertedFieldThreads);
     m.put("maxBooleanClauses", booleanQueryMaxClauseCount);
 
     for (SolrPluginInfo plugin : plugins) {
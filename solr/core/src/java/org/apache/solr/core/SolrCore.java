@@ -54,6 +54,9 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -141,9 +144,11 @@ import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.ManagedIndexSchema;
 import org.apache.solr.schema.SimilarityFactory;
 import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.SegmentFilterCache;
 import org.apache.solr.search.SolrFieldCacheBean;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.ValueSourceParser;
+import org.apache.solr.search.facet.SegmentFacetCountCache;
 import org.apache.solr.search.stats.LocalStatsCache;
 import org.apache.solr.search.stats.StatsCache;
 import org.apache.solr.update.DefaultSolrCoreState;
@@ -998,6 +1003,15 @@ public final class SolrCore implements SolrInfoBean, Closeable {
 
       this.maxWarmingSearchers = solrConfig.maxWarmingSearchers;
       this.slowQueryThresholdMillis = solrConfig.slowQueryThresholdMillis;
+      this.searchExecutor = solrConfig.searchExecutorThreads > 0
+          ? ExecutorUtil.newMDCAwareFixedThreadPool(solrConfig.searchExecutorThreads, new SolrNamedThreadFactory("searchExecutor"))
+          : null;
+      this.segmentFilterCache = solrConfig.segmentFilterCacheMaxRamMB > 0
+          ? new SegmentFilterCache(solrConfig.segmentFilterCacheMaxRamMB * 1024L * 1024L)
+          : null;
+      this.facetCountCache = solrConfig.facetCountCacheMaxRamMB > 0
+          ? new SegmentFacetCountCache(solrConfig.facetCountCacheMaxRamMB * 1024L * 1024L)
+          : null;
 
       initListeners();
 
@@ -1629,6 +1643,23 @@ public final class SolrCore implements SolrInfoBean, Closeable {
     }
     assert ObjectReleaseTracker.release(searcherExecutor);
 
+    try {
+      // stop any caches that are still warming in the background, so that they let go of their searchers
+      ExecutorService executor;
+      synchronized (autowarmExecutorLock) {
+        autowarmExecutorClosed = true;
+        executor = autowarmExecutor;
+      }
+      if (executor != null) {
+        ExecutorUtil.shutdownNowAndAwaitTermination(executor);
+      }
+    } catch (Throwable e) {
+      SolrException.log(log, e);
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+    }
+
     try {
       // Since we waited for the searcherExecutor to shut down,
       // there should be no more searchers warming in the background
@@ -1645,6 +1676,26 @@ public final class SolrCore implements SolrInfoBean, Closeable {
       }
     }
 
+    if (segmentFilterCache != null) {
+      segmentFilterCache.clear();
+    }
+
+    if (facetCountCache != null) {
+      facetCountCache.clear();
+    }
+
+    if (searchExecutor != null) {
+      // searchers have been closed above, so no query can be using the slice executor anymore
+      try {
+        ExecutorUtil.shutdownAndAwaitTermination(searchExecutor);
+      } catch (Throwable e) {
+        SolrException.log(log, e);
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+      }
+    }
+
     if (coreStateClosed) {
       try {
         cleanupOldIndexDirectories(false);
@@ -1872,6 +1923,14 @@ public final class SolrCore implements SolrInfoBean, Closeable {
   private ReentrantLock openSearcherLock = new ReentrantLock(true);     // used to serialize opens/reopens for absolute ordering
   private final int maxWarmingSearchers;  // max number of on-deck searchers allowed
   private final int slowQueryThresholdMillis;  // threshold above which a query is considered slow
+  private final ExecutorService searchExecutor;  // searches index slices concurrently, null if disabled
+  // regenerates cache entries on several threads, shared by all caches and searchers of this core;
+  // created by the first cache that needs it, so cores that warm on the searcher thread never have one
+  private ExecutorService autowarmExecutor;
+  private boolean autowarmExecutorClosed;
+  private final Object autowarmExecutorLock = new Object();
+  private final SegmentFilterCache segmentFilterCache;  // filter DocSets by segment across searchers, null if disabled
+  private final SegmentFacetCountCache facetCountCache;  // facet counts by segment across searchers, null if disabled
 
   private RefCounted<SolrIndexSearcher> realtimeSearcher;
   private Callable<DirectoryReader> newReaderCreator;
@@ -2007,6 +2066,25 @@ public final class SolrCore implements SolrInfoBean, Closeable {
     return openNew ? getRealtimeSearcher() : null;
   }
 
+  /**
+   * Return the {@link RefCounted}&lt;{@link SolrIndexSearcher}&gt; of a searcher of this core with the reference
+   * count incremented, or null if the searcher is not open anymore.  It <b>must</b> be decremented when no longer
+   * needed.
+   */
+  public RefCounted<SolrIndexSearcher> getSearcherRef(SolrIndexSearcher searcher) {
+    synchronized (searcherLock) {
+      for (List<RefCounted<SolrIndexSearcher>> searcherList : Arrays.asList(_searchers, _realtimeSearchers)) {
+        for (RefCounted<SolrIndexSearcher> holder : searcherList) {
+          if (holder.get() == searcher) {
+            holder.incref();
+            return holder;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
   /**
    * Gets the latest real-time searcher w/o forcing open a new searcher if one already exists.
    * The reference count will be incremented.
@@ -3272,6 +3350,62 @@ public final class SolrCore implements SolrInfoBean, Closeable {
     coreAsyncTaskExecutor.submit(r);
   }
 
+  /**
+   * The executor that {@link SolrIndexSearcher}s of this core hand to Lucene so that a single query can be
+   * collected concurrently over several index slices.  Configured with <code>query/searchExecutorThreads</code>
+   * in solrconfig.xml.
+   *
+   * @return the executor, or null if intra-query concurrency is disabled (the default)
+   */
+  public ExecutorService getSearchExecutor() {
+    return searchExecutor;
+  }
+
+  /**
+   * The executor that caches of this core regenerate their entries on when they are configured to autowarm with
+   * several threads, in the background or with a time allowed.  It is shared by all caches and bounded by the
+   * number of processors.  It is only created when a cache first asks for it, and its threads go away once they
+   * have been idle for a minute.
+   *
+   * @throws RejectedExecutionException if the core is closed
+   */
+  public ExecutorService getAutowarmExecutor() {
+    synchronized (autowarmExecutorLock) {
+      if (autowarmExecutorClosed) {
+        throw new RejectedExecutionException("core " + getName() + " is closed");
+      }
+      if (autowarmExecutor == null) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ExecutorUtil.MDCAwareThreadPoolExecutor(threads, threads,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new SolrNamedThreadFactory("autowarmExecutor"));
+        executor.allowCoreThreadTimeOut(true);
+        autowarmExecutor = executor;
+      }
+      return autowarmExecutor;
+    }
+  }
+
+  /**
+   * The cache of filter DocSets by index segment that the filterCaches of this core's searchers fall back on, so
+   * that searchers opened after a commit only evaluate filters over new or changed segments.  Configured with
+   * <code>query/segmentFilterCacheMaxRamMB</code> in solrconfig.xml.
+   *
+   * @return the cache, or null if it is disabled (the default)
+   */
+  public SegmentFilterCache getSegmentFilterCache() {
+    return segmentFilterCache;
+  }
+
+  /**
+   * The cache of terms facet counts by index segment, reused by requests for the same facet domain and by the
+   * searchers opened after a commit.  Configured with <code>query/facetCountCacheMaxRamMB</code> in solrconfig.xml.
+   *
+   * @return the cache, or null if it is disabled (the default)
+   */
+  public SegmentFacetCountCache getFacetCountCache() {
+    return facetCountCache;
+  }
+
   /**Provides the core instance if the core instance is still alive.
    * This helps to not hold on to a live {@link SolrCore} instance
    * even after it's unloaded
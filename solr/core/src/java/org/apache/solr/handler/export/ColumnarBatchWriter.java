@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.IteratorWriter;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.util.FastOutputStream;
+import org.apache.solr.common.util.JavaBinCodec;
+
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.COLUMNS;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.DATA;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.DICT;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.NAME;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.PRESENT;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.ROWS;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.TYPE;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.TYPE_BOOLEAN;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.TYPE_DATE;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.TYPE_DOUBLE;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.TYPE_LONG;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.TYPE_OBJECT;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.TYPE_STRING;
+import static org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser.VALUES;
+
+/**
+ * Collects the fields written by the {@link FieldWriter}s for a batch of docs into columns, and writes them in the
+ * format read by {@link org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser}: the field names are written
+ * once per batch, and the string values once per batch and field.
+ */
+class ColumnarBatchWriter implements MapWriter.EntryWriter, MapWriter {
+  private final Map<String, Column> columns = new LinkedHashMap<>();
+  private int rows;
+
+  /** Starts the next doc of the batch */
+  void nextRow() {
+    rows++;
+  }
+
+  int size() {
+    return rows;
+  }
+
+  void reset() {
+    columns.clear();
+    rows = 0;
+  }
+
+  @Override
+  public MapWriter.EntryWriter put(CharSequence k, Object v) throws IOException {
+    String name = k.toString();
+    Column column = columns.get(name);
+    if (column == null) {
+      columns.put(name, column = new Column(name, typeOf(v)));
+    }
+    column.add(rows - 1, v);
+    return this;
+  }
+
+  private static String typeOf(Object v) {
+    if (v instanceof CharSequence) return TYPE_STRING;
+    if (v instanceof Integer || v instanceof Long) return TYPE_LONG;
+    if (v instanceof Float || v instanceof Double) return TYPE_DOUBLE;
+    if (v instanceof Date) return TYPE_DATE;
+    if (v instanceof Boolean) return TYPE_BOOLEAN;
+    return TYPE_OBJECT;
+  }
+
+  @Override
+  public void writeMap(EntryWriter ew) throws IOException {
+    ew.put(ROWS, rows);
+    List<Map<String, Object>> out = new ArrayList<>(columns.size());
+    for (Column column : columns.values()) {
+      out.add(column.toMap(rows));
+    }
+    ew.put(COLUMNS, out);
+  }
+
+  private static class Column {
+    final String name;
+    final String type;
+    // the rows with a value
+    byte[] present = new byte[8];
+    int count;
+    // TYPE_STRING: the ordinals of the distinct values
+    Map<String, Integer> dictOrds;
+    List<String> dict;
+    // TYPE_OBJECT: the value of each row
+    List<Object> values;
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final FastOutputStream data = new FastOutputStream(bytes);
+
+    Column(String name, String type) {
+      this.name = name;
+      this.type = type;
+      if (TYPE_STRING.equals(type)) {
+        dictOrds = new HashMap<>();
+        dict = new ArrayList<>();
+      } else if (TYPE_OBJECT.equals(type)) {
+        values = new ArrayList<>();
+      }
+    }
+
+    void add(int row, Object v) throws IOException {
+      if ((row >>> 3) >= present.length) {
+        present = Arrays.copyOf(present, Math.max(present.length * 2, (row >>> 3) + 1));
+      }
+      present[row >>> 3] |= 1 << (row & 7);
+      count++;
+
+      switch (type) {
+        case TYPE_STRING:
+          String s = v.toString();
+          Integer ord = dictOrds.get(s);
+          if (ord == null) {
+            dictOrds.put(s, ord = dict.size());
+            dict.add(s);
+          }
+          JavaBinCodec.writeVInt(ord, data);
+          break;
+        case TYPE_LONG:
+          JavaBinCodec.writeVLong(zigzag(((Number) v).longValue()), data);
+          break;
+        case TYPE_DOUBLE:
+          data.writeDouble(((Number) v).doubleValue());
+          break;
+        case TYPE_DATE:
+          JavaBinCodec.writeVLong(zigzag(((Date) v).getTime()), data);
+          break;
+        case TYPE_BOOLEAN:
+          JavaBinCodec.writeVLong((Boolean) v ? 1 : 0, data);
+          break;
+        default:
+          while (values.size() < row) {
+            values.add(null);
+          }
+          values.add(v instanceof IteratorWriter ? ((IteratorWriter) v).toList(new ArrayList<>()) : v);
+      }
+    }
+
+    Map<String, Object> toMap(int rows) throws IOException {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put(NAME, name);
+      map.put(TYPE, type);
+      if (TYPE_OBJECT.equals(type)) {
+        while (values.size() < rows) {
+          values.add(null);
+        }
+        map.put(VALUES, values);
+        return map;
+      }
+      if (count < rows) {
+        map.put(PRESENT, Arrays.copyOf(present, (rows + 7) >>> 3));
+      }
+      if (dict != null) {
+        map.put(DICT, dict);
+      }
+      data.flush();
+      map.put(DATA, bytes.toByteArray());
+      return map;
+    }
+  }
+
+  private static long zigzag(long l) {
+    return (l << 1) ^ (l >> 63);
+  }
+}
@@ -61,6 +61,8 @@ class ExportBuffers {
   Buffer outputBuffer;
   Runnable filler;
   ExecutorService service;
+  // fills the sorted runs of the segments on the container's export executor, or null to fill them on the filler thread
+  ExportWriter.RunFiller runFiller;
   Throwable error;
   LongAdder outputCounter = new LongAdder();
   volatile boolean shutDown = false;
@@ -88,7 +90,17 @@ class ExportBuffers {
     outputBuffer = bufferTwo;
     SortDoc writerSortDoc = exportWriter.getSortDoc(searcher, sort.getSort());
 
-    MergeIterator mergeIterator = exportWriter.getMergeIterator(leaves, sets, writerSortDoc);
+    int segmentThreads = Math.min(exportWriter.threads, leaves.size());
+    if (segmentThreads > 1) {
+      runFiller = new ExportWriter.RunFiller(searcher.getCore().getCoreContainer().getExportExecutor(), segmentThreads);
+    }
+    final MergeIterator mergeIterator;
+    try {
+      mergeIterator = exportWriter.getMergeIterator(leaves, sets, writerSortDoc, runFiller);
+    } catch (IOException | RuntimeException e) {
+      shutdownNow();
+      throw e;
+    }
 
     bufferOne.initialize(writerSortDoc);
     bufferTwo.initialize(writerSortDoc);
@@ -191,6 +203,10 @@ class ExportBuffers {
       service.shutdownNow();
       service = null;
     }
+    if (runFiller != null) {
+      runFiller.cancel();
+      runFiller = null;
+    }
     shutDown = true;
   }
 
@@ -25,7 +25,12 @@ import java.io.PrintWriter;
 import java.lang.invoke.MethodHandles;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
@@ -37,6 +42,7 @@ import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.client.solrj.impl.BinaryResponseParser;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
@@ -96,6 +102,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
 
   public static final String BATCH_SIZE_PARAM = "batchSize";
   public static final String QUEUE_SIZE_PARAM = "queueSize";
+  public static final String THREADS_PARAM = "threads";
 
   public static final int DEFAULT_BATCH_SIZE = 30000;
   public static final int DEFAULT_QUEUE_SIZE = 150000;
@@ -111,6 +118,10 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   final int batchSize;
   //The max combined size of the segment level priority queues.
   private int priorityQueueSize;
+  //The max number of threads filling the segment level priority queues, 1 to fill them on the writer thread.
+  final int threads;
+  //Whether the docs are written in columnar batches, only with javabin and without a streaming expression.
+  private boolean columnar;
   StreamExpression streamExpression;
   StreamContext streamContext;
   FieldWriter[] fieldWriters;
@@ -132,6 +143,9 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     this.metricsPath = metricsPath;
     this.priorityQueueSize = req.getParams().getInt(QUEUE_SIZE_PARAM, DEFAULT_QUEUE_SIZE);
     this.batchSize = DEFAULT_BATCH_SIZE;
+    int maxThreads = req.getCore() == null ? 1 : req.getCore().getCoreContainer().getExportMaxThreads();
+    this.threads = Math.max(1, Math.min(req.getParams().getInt(THREADS_PARAM, 1), maxThreads));
+    this.columnar = req.getParams().getBool(ColumnarTupleStreamParser.COLUMNAR_PARAM, false);
   }
 
   @Override
@@ -189,6 +203,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     } else {
       respWriter = new OutputStreamWriter(os, StandardCharsets.UTF_8);
       writer = JSONResponseWriter.getPushWriter(respWriter, req, res);
+      columnar = false;
     }
     Exception exception = res.getException();
     if (exception != null) {
@@ -293,6 +308,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       streamContext.put("core", req.getCore().getName());
       streamContext.put("solr-core", req.getCore());
       streamContext.put(CommonParams.SORT, params.get(CommonParams.SORT));
+      columnar = false;
     }
 
     try {
@@ -369,6 +385,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         tupleStream.open();
       } catch (Exception e) {
         buffers.getWriter().add((MapWriter) ew -> Tuple.EXCEPTION(e, true).writeMap(ew));
+        buffers.shutdownNow();
         return;
       }
       buffers.run(() -> {
@@ -400,6 +417,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       });
       tupleStream.close();
     } else {
+      final ColumnarBatchWriter batch = columnar ? new ColumnarBatchWriter() : null;
       buffers.run(() -> {
         // get the initial buffer
         log.debug("--- writer init exchanging from empty");
@@ -412,12 +430,24 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
             break;
           }
           try {
-            for (int i = 0; i <= buffer.outDocsIndex; ++i) {
-              // we're using the raw writer here because there's no potential
-              // reduction in the number of output items, unlike when using
-              // streaming expressions
-              final SortDoc currentDoc = buffer.outDocs[i];
-              writer.add((MapWriter) ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
+            if (batch != null) {
+              // the whole buffer goes out as a single batch of columns
+              batch.reset();
+              for (int i = 0; i <= buffer.outDocsIndex; ++i) {
+                batch.nextRow();
+                writeDoc(buffer.outDocs[i], leaves, batch, fieldWriters);
+              }
+              if (batch.size() > 0) {
+                writer.add((MapWriter) batch);
+              }
+            } else {
+              for (int i = 0; i <= buffer.outDocsIndex; ++i) {
+                // we're using the raw writer here because there's no potential
+                // reduction in the number of output items, unlike when using
+                // streaming expressions
+                final SortDoc currentDoc = buffer.outDocs[i];
+                writer.add((MapWriter) ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
+              }
             }
           } finally {
           }
@@ -616,25 +646,57 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   }
 
 
+  /**
+   * Merges the sorted runs of the segments with a tree of losers: each inner node holds the segment whose doc lost the
+   * match played there, and the root the overall winner, so replacing the winner only replays the matches on its path.
+   */
   static class MergeIterator {
-    private TreeSet<SortDoc> set = new TreeSet<>();
-    private SegmentIterator[] segmentIterators;
+    private final SegmentIterator[] segmentIterators;
+    // the next doc of each segment, null once it's exhausted
+    private final SortDoc[] heads;
+    // tree[0] is the winner, tree[1..k-1] the losers of the inner nodes, the segments are the leaves k..2k-1
+    private final int[] tree;
     private SortDoc outDoc;
 
     public MergeIterator(SegmentIterator[] segmentIterators, SortDoc proto) throws IOException {
       outDoc = proto.copy();
       this.segmentIterators = segmentIterators;
-      for (int i = 0; i < segmentIterators.length; i++) {
+      final int k = segmentIterators.length;
+      heads = new SortDoc[k];
+      for (int i = 0; i < k; i++) {
         try {
-          SortDoc sortDoc = segmentIterators[i].next();
-          if (sortDoc != null) {
-            set.add(sortDoc);
-          }
+          heads[i] = segmentIterators[i].next();
         } catch (IOException e) {
           log.error("Error in MergeIterator: ", e);
           throw e;
         }
       }
+
+      tree = new int[Math.max(k, 1)];
+      if (k > 0) {
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; i++) {
+          winners[k + i] = i;
+        }
+        for (int node = k - 1; node > 0; node--) {
+          int left = winners[2 * node], right = winners[2 * node + 1];
+          if (beats(left, right)) {
+            winners[node] = left;
+            tree[node] = right;
+          } else {
+            winners[node] = right;
+            tree[node] = left;
+          }
+        }
+        tree[0] = k == 1 ? 0 : winners[1];
+      }
+    }
+
+    /** Returns true if the next doc of segment a goes out before the one of segment b */
+    private boolean beats(int a, int b) {
+      if (heads[a] == null) return false;
+      if (heads[b] == null) return true;
+      return heads[a].compareTo(heads[b]) > 0;
     }
 
     /*
@@ -643,7 +705,11 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     */
 
     public SortDoc next() throws IOException {
-      SortDoc sortDoc = set.pollLast();
+      if (heads.length == 0) {
+        return null;
+      }
+      int winner = tree[0];
+      SortDoc sortDoc = heads[winner];
       //We've exhausted all documents
       if (sortDoc == null) {
         return null;
@@ -651,16 +717,26 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         outDoc.setValues(sortDoc);
       }
 
-      SortDoc nextDoc = segmentIterators[sortDoc.ord].next();
-      if (nextDoc != null) {
-        //The entire expense of the operation is here
-        set.add(nextDoc);
+      heads[winner] = segmentIterators[winner].next();
+      // replay the matches from the leaf of the winner up to the root
+      for (int node = (winner + heads.length) >>> 1; node > 0; node >>>= 1) {
+        if (beats(tree[node], winner)) {
+          int loser = winner;
+          winner = tree[node];
+          tree[node] = loser;
+        }
       }
+      tree[0] = winner;
       return outDoc;
     }
   }
 
-  public MergeIterator getMergeIterator(List<LeafReaderContext> leaves, FixedBitSet[] bits, SortDoc sortDoc) throws IOException {
+  /**
+   * Returns the merge of the docs of the segments.  With a run filler, each segment fills its next sorted run on it
+   * while the current one is merged, and the queue size of each segment is split between the two runs.
+   */
+  public MergeIterator getMergeIterator(List<LeafReaderContext> leaves, FixedBitSet[] bits, SortDoc sortDoc,
+                                        RunFiller filler) throws IOException {
     try {
       long totalDocs = 0;
       for (int i = 0; i < leaves.size(); i++) {
@@ -680,6 +756,9 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       for (int i = 0; i < leaves.size(); i++) {
         long maxDoc = leaves.get(i).reader().maxDoc();
         int sortQueueSize = Math.min((int) (((double) maxDoc / (double) totalDocs) * this.priorityQueueSize), batchSize);
+        if (filler != null) {
+          sortQueueSize /= 2;
+        }
 
         //Protect against too small a queue size as well
         if(sortQueueSize < 10) {
@@ -691,7 +770,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         }
 
         sizes[i] = sortQueueSize;
-        combineQueueSize += sortQueueSize;
+        combineQueueSize += filler == null ? sortQueueSize : 2 * sortQueueSize;
 
       }
 
@@ -701,8 +780,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
 
       SegmentIterator[] segmentIterators = new SegmentIterator[leaves.size()];
       for (int i = 0; i < segmentIterators.length; i++) {
-        SortQueue sortQueue = new SortQueue(sizes[i], sortDoc.copy());
-        segmentIterators[i] = new SegmentIterator(bits[i], leaves.get(i), sortQueue, sortDoc.copy());
+        segmentIterators[i] = new SegmentIterator(bits[i], leaves.get(i), sizes[i], sortDoc.copy(), filler);
       }
 
       return new MergeIterator(segmentIterators, sortDoc);
@@ -710,43 +788,110 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     }
   }
 
+  /**
+   * Fills the next sorted runs of the segments of one export on the container's export executor, with at most a given
+   * number of runs being filled at a time.  A run that doesn't get a thread, or hasn't started on one when the merge
+   * needs it, is filled by the merge, so an export never waits for another one to free a thread.
+   */
+  static class RunFiller {
+    private final Executor executor;
+    private final Semaphore permits;
+    private volatile boolean cancelled;
+
+    RunFiller(Executor executor, int threads) {
+      this.executor = executor;
+      this.permits = new Semaphore(threads);
+    }
+
+    /**
+     * Starts filling a run, or returns null if the export has all its threads busy or is cancelled.  The caller may
+     * {@link FutureTask#run()} the task itself if it needs the run before the executor has started it.
+     */
+    FutureTask<Void> start(Callable<Void> fill) {
+      if (cancelled || !permits.tryAcquire()) {
+        return null;
+      }
+      FutureTask<Void> task = new FutureTask<>(() -> {
+        try {
+          return cancelled ? null : fill.call();
+        } finally {
+          permits.release();
+        }
+      });
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // the container is shutting down
+        permits.release();
+        return null;
+      }
+      return task;
+    }
+
+    boolean isCancelled() {
+      return cancelled;
+    }
+
+    /** Starts no more runs, and skips those still waiting for a thread */
+    void cancel() {
+      cancelled = true;
+    }
+  }
+
   private static class SegmentIterator {
 
     private final FixedBitSet bits;
-    private final SortQueue queue;
     private final SortDoc sortDoc;
     private final LeafReaderContext context;
-    private final SortDoc[] outDocs;
+    private final RunFiller filler;
+
+    // the run being merged
+    private Run run;
+    // the run being filled by the filler, if any
+    private Run spare;
+    // null if the spare run didn't get a thread and has to be filled when it is needed
+    private FutureTask<Void> spareFilled;
 
     private SortDoc nextDoc;
-    private int index;
 
 
-    public SegmentIterator(FixedBitSet bits, LeafReaderContext context, SortQueue sortQueue, SortDoc sortDoc) throws IOException {
+    public SegmentIterator(FixedBitSet bits, LeafReaderContext context, int queueSize, SortDoc sortDoc,
+                           RunFiller filler) throws IOException {
       this.bits = bits;
-      this.queue = sortQueue;
       this.sortDoc = sortDoc;
       this.nextDoc = sortDoc.copy();
       this.context = context;
-      this.outDocs = new SortDoc[sortQueue.maxSize];
-      topDocs();
+      this.filler = filler;
+      this.run = new Run(queueSize, sortDoc);
+      if (filler == null) {
+        topDocs(run);
+      } else {
+        this.spare = new Run(queueSize, sortDoc);
+        fillSpare();
+      }
     }
 
     public SortDoc next() throws IOException {
-      SortDoc _sortDoc = null;
-      if (index > -1) {
-        _sortDoc = outDocs[index--];
-      } else {
-        topDocs();
-        if (index > -1) {
-          _sortDoc = outDocs[index--];
+      if (run.index < 0 && !run.last) {
+        if (filler == null) {
+          topDocs(run);
+        } else {
+          awaitSpare();
+          Run filled = spare;
+          spare = run;
+          run = filled;
+          if (!run.last) {
+            fillSpare();
+          }
         }
       }
 
-      if (_sortDoc != null) {
-        //Clear the bit so it's not loaded again.
-        bits.clear(_sortDoc.docId);
+      SortDoc _sortDoc = null;
+      if (run.index > -1) {
+        _sortDoc = run.outDocs[run.index--];
+      }
 
+      if (_sortDoc != null) {
         //Load the global ordinal (only matters for strings)
         _sortDoc.setGlobalValues(nextDoc);
 
@@ -759,8 +904,40 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       return nextDoc;
     }
 
-    private void topDocs() throws IOException {
+    private void fillSpare() {
+      spareFilled = filler.start(() -> {
+        topDocs(spare);
+        return null;
+      });
+    }
+
+    private void awaitSpare() throws IOException {
+      if (spareFilled == null) {
+        topDocs(spare);
+        return;
+      }
       try {
+        // fills the run here if it is still waiting for a thread of the executor
+        spareFilled.run();
+        spareFilled.get();
+        if (filler.isCancelled()) {
+          throw new IOException("the export was stopped");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        spareFilled.cancel(true);
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+
+    private void topDocs(Run run) throws IOException {
+      try {
+        SortQueue queue = run.queue;
         queue.reset();
         SortDoc top = queue.top();
         this.sortDoc.setNextReader(context);
@@ -775,14 +952,19 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         }
 
         //Pop the queue and load up the array.
-        index = -1;
+        int index = -1;
 
         SortDoc _sortDoc;
         while ((_sortDoc = queue.pop()) != null) {
           if (_sortDoc.docId > -1) {
-            outDocs[++index] = _sortDoc;
+            run.outDocs[++index] = _sortDoc;
+            //Clear the bit so it's not loaded again.
+            bits.clear(_sortDoc.docId);
           }
         }
+        run.index = index;
+        // a run that isn't full took every remaining doc
+        run.last = index + 1 < queue.maxSize;
       } catch (Exception e) {
         log.error("Segment Iterator Error:", e);
         throw new IOException(e);
@@ -792,6 +974,19 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     }
   }
 
+  /** The sorted docs of a segment that are merged until the next run is needed */
+  private static class Run {
+    private final SortQueue queue;
+    private final SortDoc[] outDocs;
+    private int index = -1;
+    private boolean last;
+
+    Run(int queueSize, SortDoc sortDoc) {
+      this.queue = new SortQueue(queueSize, sortDoc.copy());
+      this.outDocs = new SortDoc[queueSize];
+    }
+  }
+
   public static class IgnoreException extends IOException {
     public void printStackTrace(PrintWriter pw) {
       pw.print("Early Client Disconnect");
@@ -51,7 +51,15 @@ import org.apache.solr.update.processor.UpdateRequestProcessor;
  * @see org.apache.solr.common.util.JavaBinCodec
  */
 public class JavabinLoader extends ContentStreamLoader {
+  /**
+   * Init param to read the string values of the docs as {@link org.apache.solr.common.util.ByteArrayUtf8CharSequence}s
+   * over the UTF-8 bytes of the request, instead of decoding them to Strings. Field types like StrField index the
+   * bytes as they are. Off by default, since update processors that cast field values to String would fail.
+   */
+  public static final String READ_STRING_AS_CHAR_SEQ = "readStringAsCharSeq";
+
   final ContentStreamLoader contentStreamLoader;
+  private boolean readStringAsCharSeq = false;
 
   public JavabinLoader() {
     this.contentStreamLoader = this;
@@ -62,6 +70,14 @@ public class JavabinLoader extends ContentStreamLoader {
     this.contentStreamLoader = contentStreamLoader;
   }
 
+  @Override
+  public JavabinLoader init(SolrParams args) {
+    if (args != null) {
+      readStringAsCharSeq = args.getBool(READ_STRING_AS_CHAR_SEQ, false);
+    }
+    return this;
+  }
+
   @Override
   public void load(SolrQueryRequest req, SolrQueryResponse rsp, ContentStream stream, UpdateRequestProcessor processor) throws Exception {
     InputStream is = null;
@@ -119,6 +135,7 @@ public class JavabinLoader extends ContentStreamLoader {
       if (in.peek() == -1) return;
       try {
         update = new JavaBinUpdateRequestCodec()
+            .setReadStringAsCharSeq(readStringAsCharSeq)
             .unmarshal(in, handler);
       } catch (EOFException e) {
         break; // this is expected
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.loader;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+
+import org.apache.solr.common.SolrException;
+import org.noggit.CharArr;
+
+/**
+ * Splits a top level JSON array of docs into chunks of whole docs without parsing them, so that the chunks can be
+ * parsed by several threads. Strings in double or single quotes and comments are skipped like
+ * {@link org.noggit.JSONParser} does with its default flags; anything else that is wrong with a doc is left for the
+ * parser of its chunk to find.
+ */
+class JsonArraySplitter {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Reader in;
+  private final char[] buf = new char[BUFFER_SIZE];
+  private int pos;
+  private int end;
+  // the position of buf[0] in the stream
+  private long bufPosition;
+  private boolean done;
+
+  JsonArraySplitter(Reader in) {
+    this.in = in;
+  }
+
+  /**
+   * Skips leading whitespace, then consumes the start of the array.
+   * @return false if the stream doesn't start with an array, in which case nothing else is consumed
+   */
+  boolean startArray() throws IOException {
+    int ch;
+    while (isWhitespace(ch = peek())) {
+      pos++;
+    }
+    if (ch != '[') {
+      return false;
+    }
+    pos++;
+    return true;
+  }
+
+  /**
+   * Appends the next docs of the array to {@code out} as a JSON array, until it has at least {@code maxChars} chars
+   * or the array ends.
+   * @return the number of docs appended, 0 once the array has ended
+   */
+  int nextChunk(CharArr out, int maxChars) throws IOException {
+    out.write('[');
+    int docs = 0;
+    while (!done && out.size() < maxChars) {
+      int ch = skipToValue();
+      if (ch == ']') {
+        pos++;
+        done = true;
+        break;
+      }
+      if (ch != '{') {
+        throw error("Expected: OBJECT_START but got " + (ch == -1 ? "EOF" : "'" + (char) ch + "'"));
+      }
+      if (docs > 0) {
+        out.write(',');
+      }
+      copyObject(out);
+      docs++;
+    }
+    out.write(']');
+    return docs;
+  }
+
+  /** The rest of the stream after the array */
+  Reader remainder() throws IOException {
+    if (pos >= end) {
+      return in;
+    }
+    PushbackReader reader = new PushbackReader(in, end - pos);
+    reader.unread(buf, pos, end - pos);
+    pos = end;
+    return reader;
+  }
+
+  // skips whitespace, commas and comments between the docs of the array
+  private int skipToValue() throws IOException {
+    for (; ; ) {
+      int ch = peek();
+      if (ch == ',' || isWhitespace(ch)) {
+        pos++;
+      } else if (ch == '#') {
+        skipLine();
+      } else if (ch == '/') {
+        pos++;
+        ch = peek();
+        if (ch == '/') {
+          skipLine();
+        } else if (ch == '*') {
+          pos++;
+          int prev = 0;
+          while ((ch = peek()) != '/' || prev != '*') {
+            if (ch == -1) throw error("Unexpected EOF in comment");
+            prev = ch;
+            pos++;
+          }
+          pos++;
+        } else {
+          throw error("Unexpected '/'");
+        }
+      } else {
+        return ch;
+      }
+    }
+  }
+
+  // like JSONParser, which also skips unusual unicode whitespace like no-break space
+  private static boolean isWhitespace(int ch) {
+    return ch != -1 && (Character.isWhitespace(ch) || Character.isSpaceChar(ch));
+  }
+
+  private void skipLine() throws IOException {
+    int ch;
+    while ((ch = peek()) != -1 && ch != '\n') {
+      pos++;
+    }
+  }
+
+  // copies the object that starts at pos, including any nested objects and arrays
+  private void copyObject(CharArr out) throws IOException {
+    int start = pos;
+    int depth = 0;
+    char quote = 0; // the quote of the string we're in
+    boolean escaped = false;
+    char comment = 0; // '\n' in a line comment, '*' in a block comment
+    char prev = 0;
+    for (; ; ) {
+      if (pos >= end) {
+        out.write(buf, start, end - start);
+        if (!fill()) {
+          throw error("Unexpected EOF in document");
+        }
+        start = 0;
+      }
+      char ch = buf[pos++];
+      if (quote != 0) {
+        if (escaped) {
+          escaped = false;
+        } else if (ch == '\\') {
+          escaped = true;
+        } else if (ch == quote) {
+          quote = 0;
+        }
+      } else if (comment != 0) {
+        if (comment == '\n' ? ch == '\n' : ch == '/' && prev == '*') {
+          comment = 0;
+          ch = 0;
+        }
+      } else if (ch == '"' || ch == '\'') {
+        quote = ch;
+      } else if (ch == '#' || (ch == '/' && prev == '/')) {
+        comment = '\n';
+      } else if (ch == '*' && prev == '/') {
+        comment = '*';
+        ch = 0;
+      } else if (ch == '{' || ch == '[') {
+        depth++;
+      } else if (ch == '}' || ch == ']') {
+        if (--depth == 0) {
+          out.write(buf, start, pos - start);
+          return;
+        }
+      }
+      prev = ch;
+    }
+  }
+
+  private int peek() throws IOException {
+    if (pos >= end && !fill()) {
+      return -1;
+    }
+    return buf[pos];
+  }
+
+  private boolean fill() throws IOException {
+    bufPosition += end;
+    pos = end = 0;
+    int n = in.read(buf);
+    if (n <= 0) {
+      return false;
+    }
+    end = n;
+    return true;
+  }
+
+  private SolrException error(String msg) {
+    return new SolrException(SolrException.ErrorCode.BAD_REQUEST, msg + " at [" + (bufPosition + pos) + "]");
+  }
+}
@@ -20,8 +20,10 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -29,6 +31,11 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.IOUtils;
@@ -51,6 +58,7 @@ import org.apache.solr.update.DeleteUpdateCommand;
 import org.apache.solr.update.RollbackUpdateCommand;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.util.RecordingJSONParser;
+import org.noggit.CharArr;
 import org.noggit.JSONParser;
 import org.noggit.JSONParser.ParseException;
 import org.noggit.ObjectBuilder;
@@ -72,6 +80,13 @@ public class JsonLoader extends ContentStreamLoader {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private static final AtomicBoolean WARNED_ABOUT_INDEX_TIME_BOOSTS = new AtomicBoolean();
   public static final String CHILD_DOC_KEY = "_childDocuments_";
+  /**
+   * Request param for the number of threads that parse the docs of a top level array of docs.  The docs are still
+   * passed to the update processor chain, and so indexed, one at a time by the request thread.
+   */
+  public static final String PARSE_THREADS = "parseThreads";
+  // the size of the chunks of docs handed to the parsing threads
+  private static final int CHUNK_CHARS = 64 * 1024;
 
   @Override
   public String getDefaultWT() {
@@ -93,6 +108,7 @@ public class JsonLoader extends ContentStreamLoader {
     protected JSONParser parser;
     protected final int commitWithin;
     protected final boolean overwrite;
+    protected final int parseThreads;
 
     SingleThreadedJsonLoader(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor processor) {
       this.processor = processor;
@@ -101,6 +117,13 @@ public class JsonLoader extends ContentStreamLoader {
 
       commitWithin = req.getParams().getInt(UpdateParams.COMMIT_WITHIN, -1);
       overwrite = req.getParams().getBool(UpdateParams.OVERWRITE, true);
+      int threads = 1;
+      if (req.getCore() != null) {
+        // capped by the server, since the threads are shared by all requests
+        threads = Math.min(req.getParams().getInt(PARSE_THREADS, 1),
+            req.getCore().getCoreContainer().getUpdateParseMaxThreads());
+      }
+      parseThreads = Math.max(1, threads);
     }
 
     @Override
@@ -136,6 +159,13 @@ public class JsonLoader extends ContentStreamLoader {
         handleSplitMode(split, f, reader);
         return;
       }
+      if (parseThreads > 1) {
+        JsonArraySplitter splitter = new JsonArraySplitter(reader);
+        if (splitter.startArray()) {
+          handleParallelAdds(splitter);
+        }
+        reader = splitter.remainder();
+      }
       parser = new JSONParser(reader);
       int ev = parser.nextEvent();
       while (ev != JSONParser.EOF) {
@@ -514,6 +544,85 @@ public class JsonLoader extends ContentStreamLoader {
     }
 
 
+    /**
+     * Adds the docs of a top level array like {@link #handleAdds()}, but parses them on up to {@link #parseThreads}
+     * threads of the container's update parse executor.  The array is split into chunks of docs, which are parsed
+     * while the docs of the chunks before them are added, in the order of the array.  A chunk that no thread has
+     * started parsing by the time its docs are needed is parsed by the request thread.
+     * <p>
+     * Only the parsing is parallel: {@link UpdateRequestProcessor#processAdd} is always called by the request thread,
+     * since the processors of a chain are not thread safe.  This speeds up requests where parsing, not indexing, is
+     * the bottleneck, e.g. large docs with few indexed fields; clients that want more indexing threads should send
+     * concurrent requests.
+     */
+    void handleParallelAdds(JsonArraySplitter splitter) throws IOException {
+      ExecutorService executor = req.getCore().getCoreContainer().getUpdateParseExecutor();
+      Deque<FutureTask<List<SolrInputDocument>>> chunks = new ArrayDeque<>();
+      try {
+        boolean more = true;
+        while (more) {
+          CharArr chunk = new CharArr(CHUNK_CHARS + 1024);
+          more = splitter.nextChunk(chunk, CHUNK_CHARS) > 0;
+          if (more) {
+            FutureTask<List<SolrInputDocument>> task = new FutureTask<>(() -> parseChunk(chunk));
+            chunks.add(task);
+            try {
+              executor.execute(task);
+            } catch (RejectedExecutionException e) {
+              // shutting down, the request thread parses it
+            }
+          }
+          // keep a chunk per thread parsing or parsed ahead of the docs being added, so that a request never has
+          // more than parseThreads chunks on the shared executor
+          while (!chunks.isEmpty() && (!more || chunks.size() >= parseThreads)) {
+            for (SolrInputDocument doc : getDocs(chunks.poll())) {
+              AddUpdateCommand cmd = new AddUpdateCommand(req);
+              cmd.commitWithin = commitWithin;
+              cmd.overwrite = overwrite;
+              cmd.solrDoc = doc;
+              processor.processAdd(cmd);
+            }
+          }
+        }
+      } finally {
+        // the chunks after a failed one are not needed anymore
+        for (Future<List<SolrInputDocument>> chunk : chunks) {
+          chunk.cancel(true);
+        }
+      }
+    }
+
+    private List<SolrInputDocument> parseChunk(CharArr chunk) throws IOException {
+      SingleThreadedJsonLoader loader = new SingleThreadedJsonLoader(req, rsp, processor);
+      loader.parser = new JSONParser(chunk.getArray(), chunk.getStart(), chunk.getEnd());
+      loader.assertNextEvent(JSONParser.ARRAY_START);
+      List<SolrInputDocument> docs = new ArrayList<>();
+      for (int ev = loader.parser.nextEvent(); ev != JSONParser.ARRAY_END; ev = loader.parser.nextEvent()) {
+        loader.assertEvent(ev, JSONParser.OBJECT_START);
+        docs.add(loader.parseDoc(ev));
+      }
+      return docs;
+    }
+
+    private List<SolrInputDocument> getDocs(FutureTask<List<SolrInputDocument>> chunk) throws IOException {
+      // does nothing if a thread of the executor has started parsing it already
+      chunk.run();
+      try {
+        return chunk.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while parsing documents", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error parsing documents", e.getCause());
+      }
+    }
+
     int assertNextEvent(int expected) throws IOException {
       int got = parser.nextEvent();
       assertEvent(got, expected);
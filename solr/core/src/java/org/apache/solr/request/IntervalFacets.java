@@ -26,7 +26,6 @@ import java.util.List;
 import java.util.Locale;
 
 import org.apache.lucene.index.DocValues;
-import org.apache.lucene.index.FilterNumericDocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedDocValues;
@@ -42,7 +41,6 @@ import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.IntervalFacets.FacetInterval;
 import org.apache.solr.schema.FieldType;
-import org.apache.solr.schema.NumberType;
 import org.apache.solr.schema.PointField;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.DocIterator;
@@ -188,59 +186,25 @@ public class IntervalFacets implements Iterable<FacetInterval> {
 
   private void getCountNumeric() throws IOException {
     final FieldType ft = schemaField.getType();
-    final String fieldName = schemaField.getName();
-    final NumberType numericType = ft.getNumberType();
-    if (numericType == null) {
+    if (ft.getNumberType() == null) {
       throw new IllegalStateException();
     }
-    final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
-
-    final Iterator<LeafReaderContext> ctxIt = leaves.iterator();
-    LeafReaderContext ctx = null;
-    NumericDocValues longs = null;
-    for (DocIterator docsIt = docs.iterator(); docsIt.hasNext(); ) {
-      final int doc = docsIt.nextDoc();
-      if (ctx == null || doc >= ctx.docBase + ctx.reader().maxDoc()) {
-        do {
-          ctx = ctxIt.next();
-        } while (ctx == null || doc >= ctx.docBase + ctx.reader().maxDoc());
-        assert doc >= ctx.docBase;
-        switch (numericType) {
-          case LONG:
-          case DATE:
-          case INTEGER:
-            longs = DocValues.getNumeric(ctx.reader(), fieldName);
-            break;
-          case FLOAT:
-            // TODO: this bit flipping should probably be moved to tie-break in the PQ comparator
-            longs = new FilterNumericDocValues(DocValues.getNumeric(ctx.reader(), fieldName)) {
-              @Override
-              public long longValue() throws IOException {
-                return NumericUtils.sortableFloatBits((int)super.longValue());
-              }
-            };
-            break;
-          case DOUBLE:
-            // TODO: this bit flipping should probably be moved to tie-break in the PQ comparator
-            longs = new FilterNumericDocValues(DocValues.getNumeric(ctx.reader(), fieldName)) {
-              @Override
-              public long longValue() throws IOException {
-               return NumericUtils.sortableDoubleBits(super.longValue());
-              }
-            };
-            break;
-          default:
-            throw new AssertionError();
-        }
-      }
-      int valuesDocID = longs.docID();
-      if (valuesDocID < doc - ctx.docBase) {
-        valuesDocID = longs.advance(doc - ctx.docBase);
-      }
-      if (valuesDocID == doc - ctx.docBase) {
-        accumIntervalWithValue(longs.longValue());
+    final long[] starts = new long[intervals.length];
+    final long[] ends = new long[intervals.length];
+    for (int i = 0; i < intervals.length; i++) {
+      FacetInterval interval = intervals[i];
+      if (interval.includeNoDocs) {
+        starts[i] = Long.MAX_VALUE;
+        ends[i] = Long.MIN_VALUE;
+      } else {
+        starts[i] = interval.startLimit;
+        ends[i] = interval.endLimit;
       }
     }
+    long[] counts = new NumericIntervalCounter(schemaField, starts, ends).count(searcher, docs);
+    for (int i = 0; i < intervals.length; i++) {
+      intervals[i].count += (int) counts[i];
+    }
   }
   
   private void getCountMultiValuedNumeric() throws IOException {
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.request;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.TrieField;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Counts the documents of a {@link DocSet} in each of a list of numeric intervals, reading the values of a
+ * single-valued numeric docValues field a block of documents at a time.
+ * <p>
+ * The interval limits are inclusive, and expressed as the sortable <code>long</code> representation of the values
+ * (see {@link #toSortableLong}).  They are split into elementary segments between consecutive limits, so each value is
+ * mapped to a single segment, arithmetically when the segments have the same width (like the buckets of a range facet
+ * with a fixed gap) and with a binary search otherwise.  Only the segment counts are incremented per document, and they
+ * are added to the counts of the intervals covering each segment at the end, so intervals may overlap.
+ *
+ * @lucene.internal
+ */
+public final class NumericIntervalCounter {
+  static final int BLOCK_SIZE = 1024;
+
+  /** Receives each document of the {@link DocSet} once for every interval it matches */
+  public interface IntervalCollector {
+    void setNextReader(LeafReaderContext ctx) throws IOException;
+
+    void collect(int segDoc, int interval) throws IOException;
+  }
+
+  private final SchemaField sf;
+  private final NumberType numberType;
+  private final int numIntervals;
+  /** the sorted distinct limits, segment <code>i</code> holds the values from <code>points[i]</code> to the next one */
+  private final long[] points;
+  /** the width of the segments between the second and the second to last limits, or 0 if they aren't all equal */
+  private final long width;
+  /** the intervals covering segment <code>i</code> are from <code>segIntervals[segStarts[i]]</code> to <code>segIntervals[segStarts[i+1]]</code> */
+  private final int[] segStarts;
+  private final int[] segIntervals;
+
+  /**
+   * @param sf a field for which {@link #supports} returns true
+   * @param starts the smallest sortable value of each interval
+   * @param ends the largest sortable value of each interval, an interval with an end lower than its start is empty
+   */
+  public NumericIntervalCounter(SchemaField sf, long[] starts, long[] ends) {
+    assert starts.length == ends.length;
+    this.sf = sf;
+    this.numberType = sf.getType().getNumberType();
+    this.numIntervals = starts.length;
+
+    long[] limits = new long[starts.length * 2];
+    int numLimits = 0;
+    for (int i = 0; i < starts.length; i++) {
+      if (starts[i] > ends[i]) continue;
+      limits[numLimits++] = starts[i];
+      if (ends[i] != Long.MAX_VALUE) {
+        limits[numLimits++] = ends[i] + 1;
+      }
+    }
+    Arrays.sort(limits, 0, numLimits);
+    int numPoints = 0;
+    for (int i = 0; i < numLimits; i++) {
+      if (numPoints == 0 || limits[i] != limits[numPoints - 1]) {
+        limits[numPoints++] = limits[i];
+      }
+    }
+    points = Arrays.copyOf(limits, numPoints);
+    width = uniformWidth(points);
+
+    // map each segment to the intervals covering it
+    int[] coverage = new int[numPoints + 1];
+    for (int i = 0; i < starts.length; i++) {
+      if (starts[i] > ends[i]) continue;
+      coverage[Arrays.binarySearch(points, starts[i])]++;
+      if (ends[i] != Long.MAX_VALUE) {
+        coverage[Arrays.binarySearch(points, ends[i] + 1)]--;
+      }
+    }
+    segStarts = new int[numPoints + 1];
+    int covered = 0;
+    for (int i = 0; i < numPoints; i++) {
+      covered += coverage[i];
+      segStarts[i + 1] = segStarts[i] + covered;
+    }
+    segIntervals = new int[segStarts[numPoints]];
+    int[] upto = Arrays.copyOf(segStarts, numPoints);
+    for (int i = 0; i < starts.length; i++) {
+      if (starts[i] > ends[i]) continue;
+      int first = Arrays.binarySearch(points, starts[i]);
+      int last = ends[i] == Long.MAX_VALUE ? numPoints : Arrays.binarySearch(points, ends[i] + 1);
+      for (int seg = first; seg < last; seg++) {
+        segIntervals[upto[seg]++] = i;
+      }
+    }
+  }
+
+  /**
+   * Returns the width of the segments between the second and the second to last limits if they are all the same,
+   * which leaves room for open ended first and last intervals and a truncated last interval, or 0 otherwise
+   */
+  private static long uniformWidth(long[] points) {
+    final int last = points.length - 1;
+    if (last < 2) return 0;
+    long width;
+    try {
+      width = Math.subtractExact(points[2], points[1]);
+      Math.subtractExact(points[last], points[1]);
+    } catch (ArithmeticException e) {
+      return 0;
+    }
+    for (int i = 3; i < last; i++) {
+      if (points[i] - points[i - 1] != width) return 0;
+    }
+    return width;
+  }
+
+  /** Returns true if the values of the field can be counted by this class */
+  public static boolean supports(SchemaField sf) {
+    FieldType ft = sf.getType();
+    return ft.getNumberType() != null && (ft instanceof TrieField || ft.isPointField())
+        && sf.hasDocValues() && !sf.multiValued();
+  }
+
+  /**
+   * Returns the sortable <code>long</code> representation of a value of a field of the given type, as used by the
+   * interval limits
+   *
+   * @see NumericUtils#floatToSortableInt
+   * @see NumericUtils#doubleToSortableLong
+   */
+  public static long toSortableLong(NumberType numberType, Object value) {
+    switch (numberType) {
+      case INTEGER:
+      case LONG:
+        return ((Number) value).longValue();
+      case DATE:
+        return ((Date) value).getTime();
+      case FLOAT:
+        return NumericUtils.floatToSortableInt(((Number) value).floatValue());
+      case DOUBLE:
+        return NumericUtils.doubleToSortableLong(((Number) value).doubleValue());
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  /** Returns the number of documents of the set in each interval */
+  public long[] count(SolrIndexSearcher searcher, DocSet docs) throws IOException {
+    final long[] segCounts = new long[points.length + 1];
+    forEachBlock(searcher, docs, (ctx, segDocs, values, length) -> countSegments(values, length, segCounts));
+    return intervalCounts(segCounts);
+  }
+
+  /** Passes each document of the set to the collector, once for every interval that it matches */
+  public void collect(SolrIndexSearcher searcher, DocSet docs, IntervalCollector collector) throws IOException {
+    final int[] segs = new int[BLOCK_SIZE];
+    forEachBlock(searcher, docs, new BlockConsumer() {
+      LeafReaderContext lastCtx;
+
+      @Override
+      public void accept(LeafReaderContext ctx, int[] segDocs, long[] values, int length) throws IOException {
+        if (ctx != lastCtx) {
+          collector.setNextReader(ctx);
+          lastCtx = ctx;
+        }
+        for (int i = 0; i < length; i++) {
+          segs[i] = segment(values[i]);
+        }
+        for (int i = 0; i < length; i++) {
+          int seg = segs[i];
+          if (seg < 0) continue;
+          for (int j = segStarts[seg], end = segStarts[seg + 1]; j < end; j++) {
+            collector.collect(segDocs[i], segIntervals[j]);
+          }
+        }
+      }
+    });
+  }
+
+  private interface BlockConsumer {
+    void accept(LeafReaderContext ctx, int[] segDocs, long[] values, int length) throws IOException;
+  }
+
+  /** Reads the values of the documents of the set, a block of documents of the same segment at a time */
+  private void forEachBlock(SolrIndexSearcher searcher, DocSet docs, BlockConsumer consumer) throws IOException {
+    if (points.length == 0 || docs.size() == 0) return;
+
+    final int[] segDocs = new int[BLOCK_SIZE];
+    final long[] values = new long[BLOCK_SIZE];
+    int length = 0;
+
+    final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+    final Iterator<LeafReaderContext> ctxIt = leaves.iterator();
+    LeafReaderContext ctx = null;
+    NumericDocValues longs = null;
+    int segBase = 0;
+    int adjustedMax = 0;
+    for (DocIterator docsIt = docs.iterator(); docsIt.hasNext(); ) {
+      final int doc = docsIt.nextDoc();
+      if (doc >= adjustedMax) {
+        if (length > 0) {
+          toSortable(values, length);
+          consumer.accept(ctx, segDocs, values, length);
+          length = 0;
+        }
+        do {
+          ctx = ctxIt.next();
+          segBase = ctx.docBase;
+          adjustedMax = segBase + ctx.reader().maxDoc();
+        } while (doc >= adjustedMax);
+        longs = DocValues.getNumeric(ctx.reader(), sf.getName());
+      }
+      final int segDoc = doc - segBase;
+      if (longs.advanceExact(segDoc)) {
+        segDocs[length] = segDoc;
+        values[length] = longs.longValue();
+        if (++length == BLOCK_SIZE) {
+          toSortable(values, length);
+          consumer.accept(ctx, segDocs, values, length);
+          length = 0;
+        }
+      }
+    }
+    if (length > 0) {
+      toSortable(values, length);
+      consumer.accept(ctx, segDocs, values, length);
+    }
+  }
+
+  /** Converts the raw docValues of the field to their sortable representation */
+  private void toSortable(long[] values, int length) {
+    switch (numberType) {
+      case FLOAT:
+        for (int i = 0; i < length; i++) {
+          values[i] = NumericUtils.sortableFloatBits((int) values[i]);
+        }
+        break;
+      case DOUBLE:
+        for (int i = 0; i < length; i++) {
+          values[i] = NumericUtils.sortableDoubleBits(values[i]);
+        }
+        break;
+      default:
+        // already sortable
+    }
+  }
+
+  /** Adds the values to the counts of their segments, offset by one so values outside all segments go to 0 */
+  void countSegments(long[] values, int length, long[] segCounts) {
+    for (int i = 0; i < length; i++) {
+      segCounts[segment(values[i]) + 1]++;
+    }
+  }
+
+  long[] intervalCounts(long[] segCounts) {
+    long[] counts = new long[numIntervals];
+    for (int seg = 0; seg < points.length; seg++) {
+      long count = segCounts[seg + 1];
+      if (count == 0) continue;
+      for (int j = segStarts[seg], end = segStarts[seg + 1]; j < end; j++) {
+        counts[segIntervals[j]] += count;
+      }
+    }
+    return counts;
+  }
+
+  /** Returns the segment holding the value, or -1 if it is lower than all interval starts */
+  int segment(long value) {
+    final long[] points = this.points;
+    final int last = points.length - 1;
+    if (value < points[0]) return -1;
+    if (value >= points[last]) return last;
+    if (value < points[1]) return 0;
+
+    if (width > 0) {
+      // value - points[1] can't overflow, since points[last] - points[1] doesn't
+      int seg = (int) Math.min(1 + (value - points[1]) / width, last - 1);
+      if (points[seg] <= value && value < points[seg + 1]) {
+        return seg;
+      }
+    }
+
+    int idx = Arrays.binarySearch(points, value);
+    return idx >= 0 ? idx : -idx - 2;
+  }
+}
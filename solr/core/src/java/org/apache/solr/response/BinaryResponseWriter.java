@@ -35,6 +35,7 @@ import org.apache.lucene.search.TotalHits;
 import org.apache.solr.client.solrj.impl.BinaryResponseParser;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.FastOutputStream;
 import org.apache.solr.common.util.JavaBinCodec;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.Utf8CharSequence;
@@ -53,12 +54,22 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
 //  public static boolean useUtf8CharSeq = true;
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  // the output buffer of the last response written by the thread, reused by its next response
+  private static final ThreadLocal<byte[]> outputBuffer = new ThreadLocal<>();
+  private static final int OUTPUT_BUFFER_SIZE = 8192;
+
   @Override
   public void write(OutputStream out, SolrQueryRequest req, SolrQueryResponse response) throws IOException {
     Resolver resolver = new Resolver(req, response.getReturnFields());
     if (req.getParams().getBool(CommonParams.OMIT_HEADER, false)) response.removeResponseHeader();
+    // take the buffer, so that a response written while writing this one can't use it too
+    byte[] buf = outputBuffer.get();
+    outputBuffer.remove();
+    if (buf == null) buf = new byte[OUTPUT_BUFFER_SIZE];
     try (JavaBinCodec jbc = new JavaBinCodec(resolver)) {
-      jbc.setWritableDocFields(resolver).marshal(response.getValues(), out);
+      jbc.setWritableDocFields(resolver).marshal(response.getValues(), new FastOutputStream(out, buf, 0));
+    } finally {
+      outputBuffer.set(buf);
     }
   }
 
@@ -215,7 +226,11 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
     }
   }
 
-  static class MaskCharSeqSolrDocument extends SolrDocument {
+  /**
+   * A SolrDocument that may hold {@link Utf8CharSequence} values, which are written as they are by javabin, but
+   * returned as Strings by the getters, e.g. to doc transformers
+   */
+  public static class MaskCharSeqSolrDocument extends SolrDocument {
     /**
      * Get the value or collection of values for a given field.
      */
@@ -983,6 +983,19 @@ public abstract class FieldType extends FieldProperties {
     }
   }
 
+  /**
+   * Returns a Query instance that matches a single term of a field as it is, without analysis, for values that
+   * were read from the index, like facet buckets.
+   * @param parser The {@link org.apache.solr.search.QParser} calling the method
+   * @param field The {@link org.apache.solr.schema.SchemaField} of the field to search
+   * @param externalVal The String representation of the term to search
+   * @return The {@link org.apache.lucene.search.Query} instance.  This implementation returns
+   * {@link #getFieldQuery}, which doesn't analyze the value either
+   */
+  public Query getFieldTermQuery(QParser parser, SchemaField field, String externalVal) {
+    return getFieldQuery(parser, field, externalVal);
+  }
+
   /** @lucene.experimental  */
   public Query getSetQuery(QParser parser, SchemaField field, Collection<String> externalVals) {
     if (!field.indexed()) {
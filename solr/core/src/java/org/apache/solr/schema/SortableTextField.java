@@ -163,6 +163,18 @@ public class SortableTextField extends TextField {
     return getStringSort(field, reverse);
   }
   
+  /**
+   * {@inheritDoc}
+   * With docValues, values are read from the docValues rather than the analyzed terms, so they are matched there
+   */
+  @Override
+  public Query getFieldTermQuery(QParser parser, SchemaField field, String externalVal) {
+    if (field.hasDocValues()) {
+      return SortedSetDocValuesField.newSlowExactQuery(field.getName(), new BytesRef(externalVal));
+    }
+    return super.getFieldTermQuery(parser, field, externalVal);
+  }
+
   @Override
   public ValueSource getValueSource(SchemaField field, QParser parser) {
     if (! field.hasDocValues()) {
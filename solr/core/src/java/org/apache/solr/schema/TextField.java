@@ -24,6 +24,7 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.function.ValueSource;
 import org.apache.lucene.queries.function.valuesource.SortedSetFieldSource;
 import org.apache.lucene.search.*;
@@ -147,6 +148,12 @@ public class TextField extends FieldType {
     return parseFieldQuery(parser, getQueryAnalyzer(), field.getName(), externalVal);
   }
 
+  @Override
+  public Query getFieldTermQuery(QParser parser, SchemaField field, String externalVal) {
+    // the value is a term that was already analyzed when it was indexed
+    return new TermQuery(new Term(field.getName(), externalVal));
+  }
+
   @Override
   public Object toObject(SchemaField sf, BytesRef term) {
     return term.utf8ToString();
@@ -202,6 +202,8 @@ public class BitDocSet extends DocSet {
     FixedBitSet newbits = bits.clone();
     if (other instanceof BitDocSet) {
       newbits.andNot(((BitDocSet) other).bits);
+    } else if (other instanceof RoaringDocSet) {
+      ((RoaringDocSet) other).removeAllFrom(newbits);
     } else {
       DocIterator iter = other.iterator();
       while (iter.hasNext()) {
@@ -221,6 +223,10 @@ public class BitDocSet extends DocSet {
       BitDocSet otherDocSet = (BitDocSet) other;
       newbits = FixedBitSet.ensureCapacity(newbits, otherDocSet.bits.length());
       newbits.or(otherDocSet.bits);
+    } else if (other instanceof RoaringDocSet) {
+      RoaringDocSet otherDocSet = (RoaringDocSet) other;
+      newbits = FixedBitSet.ensureCapacity(newbits, otherDocSet.length());
+      otherDocSet.addAllTo(newbits);
     } else {
       DocIterator iter = other.iterator();
       while (iter.hasNext()) {
@@ -24,11 +24,15 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
@@ -40,6 +44,10 @@ import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.metrics.MetricsMap;
 import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.util.RefCounted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -86,6 +94,10 @@ public class CaffeineCache<K, V> extends SolrCacheBase implements SolrCache<K, V
   private int initialSize;
   private int maxIdleTimeSec;
   private boolean cleanupThread;
+  private int autowarmThreads;
+  private long autowarmTimeAllowed;
+  private boolean autowarmInBackground;
+  private volatile Autowarmer autowarmer;
 
   private Set<String> metricNames = ConcurrentHashMap.newKeySet();
   private MetricsMap cacheMap;
@@ -122,6 +134,12 @@ public class CaffeineCache<K, V> extends SolrCacheBase implements SolrCache<K, V
     } else {
       executor = Runnable::run;
     }
+    str = (String) args.get(AUTOWARM_THREADS_PARAM);
+    autowarmThreads = str == null ? 1 : Math.max(1, Integer.parseInt(str));
+    str = (String) args.get(AUTOWARM_TIME_ALLOWED_PARAM);
+    autowarmTimeAllowed = str == null ? -1 : Long.parseLong(str);
+    str = (String) args.get(AUTOWARM_IN_BACKGROUND_PARAM);
+    autowarmInBackground = str != null && Boolean.parseBoolean(str);
 
     description = generateDescription(maxSize, initialSize);
 
@@ -232,6 +250,10 @@ public class CaffeineCache<K, V> extends SolrCacheBase implements SolrCache<K, V
 
   @Override
   public void close() throws IOException {
+    Autowarmer warmer = autowarmer;
+    if (warmer != null) {
+      warmer.stop();
+    }
     SolrCache.super.close();
     cache.invalidateAll();
     cache.cleanUp();
@@ -301,23 +323,36 @@ public class CaffeineCache<K, V> extends SolrCacheBase implements SolrCache<K, V
     Map<K, V> hottest = Collections.emptyMap();
     CaffeineCache<K,V> other = (CaffeineCache<K,V>)old;
 
-    // warm entries
+    // warm entries, the most frequently and recently used first
     if (isAutowarmingOn()) {
       Eviction<K, V> policy = other.cache.policy().eviction().get();
       int size = autowarm.getWarmCount(other.cache.asMap().size());
       hottest = policy.hottest(size);
     }
 
-    for (Entry<K, V> entry : hottest.entrySet()) {
-      try {
-        boolean continueRegen = regenerator.regenerateItem(
-            searcher, this, old, entry.getKey(), entry.getValue());
-        if (!continueRegen) {
+    if (autowarmThreads == 1 && autowarmTimeAllowed < 0 && !autowarmInBackground) {
+      for (Entry<K, V> entry : hottest.entrySet()) {
+        if (!regenerate(searcher, old, entry)) {
           break;
         }
       }
-      catch (Exception e) {
-        SolrException.log(log, "Error during auto-warming of key:" + entry.getKey(), e);
+    } else if (!hottest.isEmpty()) {
+      Autowarmer warmer = new Autowarmer(searcher, old, hottest);
+      autowarmer = warmer;
+      warmer.start();
+      // the time allowed is counted from when the searcher started warming, not from when this cache did
+      long deadline = Long.MAX_VALUE;
+      if (autowarmTimeAllowed >= 0) {
+        long searcherStartTime = searcher == null || searcher.getWarmingStartTime() == 0
+            ? warmingStartTime : searcher.getWarmingStartTime();
+        deadline = searcherStartTime + TimeUnit.MILLISECONDS.toNanos(autowarmTimeAllowed);
+      } else if (autowarmInBackground) {
+        deadline = warmingStartTime;
+      }
+      // in the background, warming goes on after the searcher is registered
+      if (!warmer.await(deadline) && !autowarmInBackground) {
+        log.info("autowarming of {} stopped after {}ms", name(), autowarmTimeAllowed);
+        warmer.stop();
       }
     }
 
@@ -327,6 +362,126 @@ public class CaffeineCache<K, V> extends SolrCacheBase implements SolrCache<K, V
     warmupTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
   }
 
+  /** Regenerates one entry of an old cache, returns false if no more entries should be regenerated */
+  private boolean regenerate(SolrIndexSearcher searcher, SolrCache<K,V> old, Entry<K, V> entry) {
+    try {
+      return regenerator.regenerateItem(searcher, this, old, entry.getKey(), entry.getValue());
+    } catch (Exception e) {
+      SolrException.log(log, "Error during auto-warming of key:" + entry.getKey(), e);
+      return true;
+    }
+  }
+
+  /**
+   * Regenerates the entries of an old cache with {@link #autowarmThreads} tasks on the core's autowarm executor.
+   * Tasks take the hottest entry that is left, so that entries that don't fit in the time allowed are the least
+   * used ones.  Since tasks may outlive {@link #warm}, each one holds its own references to the new and the old
+   * searcher and its own request, and releases them when it is done.
+   */
+  private class Autowarmer {
+    private final SolrIndexSearcher searcher;
+    private final SolrIndexSearcher oldSearcher;
+    private final SolrCache<K,V> old;
+    private final Queue<Entry<K,V>> entries;
+    private final int threads;
+    private final CountDownLatch done;
+    private volatile boolean stopped;
+
+    Autowarmer(SolrIndexSearcher searcher, SolrCache<K,V> old, Map<K,V> hottest) {
+      this.searcher = searcher;
+      SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+      this.oldSearcher = requestInfo == null ? null
+          : (SolrIndexSearcher) requestInfo.getReq().getContext().get(SolrIndexSearcher.WARMING_FROM_SEARCHER);
+      this.old = old;
+      this.entries = new ConcurrentLinkedQueue<>(hottest.entrySet());
+      this.threads = Math.min(autowarmThreads, hottest.size());
+      this.done = new CountDownLatch(threads);
+    }
+
+    void start() {
+      for (int i = 0; i < threads; i++) {
+        // the references are taken here, because the searchers may be released as soon as warm() returns
+        RefCounted<SolrIndexSearcher> searcherRef = getSearcherRef(searcher);
+        RefCounted<SolrIndexSearcher> oldSearcherRef = getSearcherRef(oldSearcher);
+        try {
+          // caches that aren't warmed for a core, like in tests, use the common pool
+          Executor pool = searcher != null && searcher.getCore() != null
+              ? searcher.getCore().getAutowarmExecutor() : ForkJoinPool.commonPool();
+          pool.execute(() -> run(searcherRef, oldSearcherRef));
+        } catch (RejectedExecutionException e) {
+          // the core is closing
+          stopped = true;
+          release(searcherRef, oldSearcherRef);
+          done.countDown();
+        }
+      }
+    }
+
+    private RefCounted<SolrIndexSearcher> getSearcherRef(SolrIndexSearcher s) {
+      return s == null || s.getCore() == null ? null : s.getCore().getSearcherRef(s);
+    }
+
+    private void run(RefCounted<SolrIndexSearcher> searcherRef, RefCounted<SolrIndexSearcher> oldSearcherRef) {
+      SolrQueryRequest req = null;
+      try {
+        if (searcher != null && searcher.getCore() != null) {
+          req = searcher.newWarmingRequest(oldSearcher);
+          SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, new SolrQueryResponse()));
+        }
+        Entry<K,V> entry;
+        while (!stopped && !Thread.currentThread().isInterrupted() && (entry = entries.poll()) != null) {
+          if (!regenerate(searcher, old, entry)) {
+            stopped = true;
+          }
+        }
+      } finally {
+        try {
+          if (req != null) {
+            try {
+              req.close();
+            } finally {
+              SolrRequestInfo.clearRequestInfo();
+            }
+          }
+        } finally {
+          release(searcherRef, oldSearcherRef);
+          done.countDown();
+        }
+      }
+    }
+
+    private void release(RefCounted<SolrIndexSearcher> searcherRef, RefCounted<SolrIndexSearcher> oldSearcherRef) {
+      if (searcherRef != null) {
+        searcherRef.decref();
+      }
+      if (oldSearcherRef != null) {
+        oldSearcherRef.decref();
+      }
+    }
+
+    /**
+     * Waits for all entries to be regenerated, returns false if they weren't by the deadline, a
+     * {@link System#nanoTime()}, or {@link Long#MAX_VALUE} to wait without one
+     */
+    boolean await(long deadline) {
+      try {
+        if (deadline == Long.MAX_VALUE) {
+          done.await();
+          return true;
+        }
+        return done.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    /** Regenerates no more entries; those being regenerated still finish */
+    void stop() {
+      stopped = true;
+    }
+  }
+
   /** Returns the description of this cache. */
   private String generateDescription(int limit, int initialSize) {
     return String.format(Locale.ROOT, "TinyLfu Cache(maxSize=%d, initialSize=%d%s)",
@@ -335,6 +490,21 @@ public class CaffeineCache<K, V> extends SolrCacheBase implements SolrCache<K, V
 
   //////////////////////// SolrInfoBean methods //////////////////////
 
+  @Override
+  protected String getAutowarmDescription() {
+    StringBuilder sb = new StringBuilder(super.getAutowarmDescription());
+    if (autowarmThreads > 1) {
+      sb.append(", ").append(AUTOWARM_THREADS_PARAM).append('=').append(autowarmThreads);
+    }
+    if (autowarmTimeAllowed >= 0) {
+      sb.append(", ").append(AUTOWARM_TIME_ALLOWED_PARAM).append('=').append(autowarmTimeAllowed);
+    }
+    if (autowarmInBackground) {
+      sb.append(", ").append(AUTOWARM_IN_BACKGROUND_PARAM).append("=true");
+    }
+    return sb.toString();
+  }
+
   @Override
   public String getName() {
     return CaffeineCache.class.getName();
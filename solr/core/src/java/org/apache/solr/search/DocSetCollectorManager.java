@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A {@link CollectorManager} that creates one {@link DocSetCollector} per index slice and merges their
+ * results into a single {@link DocSet}, so that a DocSet can be gathered by a searcher with an executor.
+ *
+ * @lucene.internal
+ */
+public class DocSetCollectorManager implements CollectorManager<DocSetCollector, DocSet> {
+  private final int maxDoc;
+
+  public DocSetCollectorManager(int maxDoc) {
+    this.maxDoc = maxDoc;
+  }
+
+  @Override
+  public DocSetCollector newCollector() {
+    return new DocSetCollector(maxDoc);
+  }
+
+  @Override
+  public DocSet reduce(Collection<DocSetCollector> collectors) {
+    return merge(collectors, maxDoc);
+  }
+
+  /**
+   * Merges the docs gathered by collectors that each saw a disjoint set of segments.
+   * The collectors need not have been visited in docid order.
+   */
+  public static DocSet merge(Collection<DocSetCollector> collectors, int maxDoc) {
+    if (collectors.size() == 1) {
+      return collectors.iterator().next().getDocSet();
+    }
+
+    int size = 0;
+    for (DocSetCollector collector : collectors) {
+      size += collector.size();
+    }
+
+    if (size <= DocSetUtil.smallSetSize(maxDoc)) {
+      // every collector must still have its docs in the scratch array
+      int[] docs = new int[size];
+      int pos = 0;
+      for (DocSetCollector collector : collectors) {
+        int[] part = collector.scratch.toArray();
+        System.arraycopy(part, 0, docs, pos, part.length);
+        pos += part.length;
+      }
+      // slices may be ordered by size rather than by docBase
+      Arrays.sort(docs);
+      return new SortedIntDocSet(docs);
+    }
+
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (DocSetCollector collector : collectors) {
+      if (collector.bits != null) {
+        bits.or(collector.bits);
+      }
+      collector.scratch.copyTo(bits);
+    }
+    return new BitDocSet(bits, size);
+  }
+}
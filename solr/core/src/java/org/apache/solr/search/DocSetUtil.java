@@ -46,6 +46,31 @@ public class DocSetUtil {
     return (maxDoc>>6)+5;  // The +5 is for better test coverage for small sets
   }
 
+  /**
+   * Returns a DocSet to keep a set with more docs than a small set in a cache.  That's a {@link RoaringDocSet}
+   * when its containers take at most half the memory of the bitset, as they do for clustered sets or sets that
+   * leave many 64K blocks of the index empty, and otherwise a {@link BitDocSet} over the bits.
+   * <p>
+   * The collectors still build BitDocSets, since a set that is used once is cheapest to probe as bits; this is for
+   * sets that are kept, like the entries of the filterCache, whose {@link DocSet#getBits()} caches the position of
+   * the last lookup so that filtering a search with them stays cheap.
+   *
+   * @param bits the docs of the set, which is not copied if a BitDocSet is returned
+   * @param size the number of docs in the set, or -1 if not known
+   */
+  public static DocSet toBigSet(FixedBitSet bits, int size) {
+    long[] words = bits.getBits();
+    if (RoaringDocSet.encodesWithin(words, bits.length(), (long) words.length << 2)) {
+      return RoaringDocSet.build(words, bits.length(), false);
+    }
+    return size < 0 ? new BitDocSet(bits) : new BitDocSet(bits, size);
+  }
+
+  /** Returns {@link #toBigSet} for a BitDocSet, and any other set as it is */
+  public static DocSet toStoredSet(DocSet set) {
+    return set instanceof BitDocSet ? toBigSet(set.getBits(), set.size()) : set;
+  }
+
   /**
    * Iterates DocSets to test for equality - slow and for testing purposes only.
    * @lucene.internal
@@ -138,6 +163,12 @@ public class DocSetUtil {
   public static DocSet createDocSetGeneric(SolrIndexSearcher searcher, Query query) throws IOException {
 
     int maxDoc = searcher.getIndexReader().maxDoc();
+
+    if (searcher.isConcurrentSearchEnabled() && !SolrQueryTimeoutImpl.getInstance().isTimeoutEnabled()) {
+      // slices are collected on the searcher's executor, where the request's timeout would not be visible
+      return getDocSet(searcher.searchConcurrently(query, new DocSetCollectorManager(maxDoc)), searcher);
+    }
+
     DocSetCollector collector = new DocSetCollector(maxDoc);
 
     // This may throw an ExitableDirectoryReader.ExitingReaderException
@@ -505,10 +505,17 @@ abstract class PointSetQuery extends Query implements DocSetProducer, Accountabl
     if (searcher instanceof SolrIndexSearcher) {
       return ((SolrIndexSearcher) searcher).getLiveDocSet().getBits();
     } else { // could happen in Delete-by-query situation
-      //smallSetSize==0 thus will always produce a BitDocSet (FixedBitSet)
-      DocSetCollector docSetCollector = new DocSetCollector(0, searcher.getIndexReader().maxDoc());
+      //smallSetSize==0 thus will never produce a SortedIntDocSet
+      int maxDoc = searcher.getIndexReader().maxDoc();
+      DocSetCollector docSetCollector = new DocSetCollector(0, maxDoc);
       searcher.search(new MatchAllDocsQuery(), docSetCollector);
-      return ((BitDocSet) docSetCollector.getDocSet()).getBits();
+      DocSet docSet = docSetCollector.getDocSet();
+      if (docSet instanceof BitDocSet) {
+        return ((BitDocSet) docSet).getBits();
+      }
+      FixedBitSet bits = new FixedBitSet(maxDoc);
+      docSet.addAllTo(bits);
+      return bits;
     }
   }
 
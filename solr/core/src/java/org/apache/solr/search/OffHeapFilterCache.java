@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.function.Function;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * A {@link CaffeineCache} for the filterCache that keeps its DocSets off the Java heap.  Every DocSet put in
+ * the cache is encoded as a {@link RoaringDocSet} backed by a direct buffer, so entries are compressed and
+ * their bulk is invisible to the garbage collector.  Lookups return the encoded set itself; it is read in place
+ * without being copied back to the heap.
+ * <p>
+ * The encoded size of each set is part of its {@link RoaringDocSet#ramBytesUsed()}, so configuring
+ * <code>maxRamMB</code> bounds the off-heap memory of the cache:
+ * <pre class="prettyprint">
+ * &lt;filterCache class="solr.OffHeapFilterCache" maxRamMB="1024" autowarmCount="128"/&gt;
+ * </pre>
+ * The off-heap memory of an evicted entry is released when the garbage collector reclaims its buffer, since
+ * requests may still be using the set after it has left the cache.
+ */
+public class OffHeapFilterCache extends CaffeineCache<Query,DocSet> {
+
+  @Override
+  public DocSet put(Query key, DocSet val) {
+    return super.put(key, toOffHeap(val));
+  }
+
+  @Override
+  public DocSet computeIfAbsent(Query key, Function<? super Query, ? extends DocSet> mappingFunction) {
+    return super.computeIfAbsent(key, k -> {
+      DocSet set = mappingFunction.apply(k);
+      return set == null ? null : toOffHeap(set);
+    });
+  }
+
+  private static DocSet toOffHeap(DocSet set) {
+    return RoaringDocSet.build(set, true);
+  }
+
+  @Override
+  public String getName() {
+    return OffHeapFilterCache.class.getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return "Off-heap " + super.getDescription();
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.SortedSetSortField;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.request.SolrRequestInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link CacheRegenerator} for the queryResultCache that patches the results of the old searcher instead of running
+ * each query over the whole index again.  Segments that are shared by both searchers keep the hits they had; the
+ * query only runs over the segments that are new or have new deletions, along with the kept hits, and the results are
+ * merged in sort order.  For an index that is mostly appended to, autowarming then costs time proportional to the
+ * new documents.
+ * <pre class="prettyprint">
+ * &lt;queryResultCache class="solr.CaffeineCache" size="512" autowarmCount="128"
+ *                   regenerator="solr.PatchingQueryResultRegenerator"/&gt;
+ * </pre>
+ * Only results sorted by fields whose values are fixed per document can be patched; results sorted by score or by
+ * functions, results with scores, and queries with post filters or ranking are run again as usual.  So are queries
+ * that aren't cacheable per segment, since their matches in an unchanged segment may still change.
+ *
+ * @lucene.experimental
+ */
+public class PatchingQueryResultRegenerator implements CacheRegenerator {
+
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final LongAdder patched = new LongAdder();
+  private final LongAdder regenerated = new LongAdder();
+
+  @Override
+  public boolean regenerateItem(SolrIndexSearcher newSearcher,
+                                @SuppressWarnings({"rawtypes"})SolrCache newCache,
+                                @SuppressWarnings({"rawtypes"})SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+    QueryResultKey key = (QueryResultKey) oldKey;
+    DocList oldList = (DocList) oldVal;
+
+    DocList newList = null;
+    SolrIndexSearcher oldSearcher = getWarmingFromSearcher();
+    if (oldSearcher != null && canPatch(key, oldList)) {
+      DirectoryReader oldReader = oldSearcher.getIndexReader();
+      // the old searcher may have been closed if warming went on in the background
+      if (oldReader.tryIncRef()) {
+        try {
+          newList = patch(oldSearcher, newSearcher, key, oldList);
+        } catch (AlreadyClosedException e) {
+          newList = null;
+        } finally {
+          oldReader.decRef();
+        }
+      }
+    }
+
+    if (newList != null) {
+      @SuppressWarnings({"unchecked"})
+      SolrCache<QueryResultKey,DocList> cache = newCache;
+      cache.put(key, newList);
+      patched.increment();
+    } else {
+      newSearcher.regenerateDocList(key, oldList, newSearcher.getCore().getSolrConfig().queryResultWindowSize);
+      regenerated.increment();
+    }
+    return true;
+  }
+
+  private static SolrIndexSearcher getWarmingFromSearcher() {
+    SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    if (requestInfo == null) {
+      return null;
+    }
+    return (SolrIndexSearcher) requestInfo.getReq().getContext().get(SolrIndexSearcher.WARMING_FROM_SEARCHER);
+  }
+
+  private static boolean canPatch(QueryResultKey key, DocList oldList) {
+    if (key.sort == null || key.sort.needsScores() || oldList.hasScores() || oldList.offset() != 0
+        || oldList.hitCountRelation() != TotalHits.Relation.EQUAL_TO
+        || (key.nc_flags & (SolrIndexSearcher.TERMINATE_EARLY | SolrIndexSearcher.SEGMENT_TERMINATE_EARLY)) != 0
+        || key.query instanceof RankQuery || key.query instanceof PostFilter) {
+      return false;
+    }
+    for (SortField sf : key.sfields) {
+      if (!isStatic(sf)) {
+        return false;
+      }
+    }
+    if (key.filters != null) {
+      for (Query filter : key.filters) {
+        if (filter instanceof PostFilter) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Whether the sort values of a document only depend on the document */
+  private static boolean isStatic(SortField sf) {
+    switch (sf.getType()) {
+      case STRING:
+      case STRING_VAL:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case DOC:
+        return true;
+      case CUSTOM:
+        return sf instanceof SortedSetSortField || sf instanceof SortedNumericSortField;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns the results of the new searcher built from the results of the old one, or null if they can't be patched.
+   */
+  private static DocList patch(SolrIndexSearcher oldSearcher, SolrIndexSearcher newSearcher,
+                               QueryResultKey key, DocList oldList) throws IOException {
+    // segments that are unchanged share their reader between the searchers
+    Map<IndexReader.CacheKey,LeafReaderContext> oldLeaves = new HashMap<>();
+    for (LeafReaderContext leaf : oldSearcher.getTopReaderContext().leaves()) {
+      IndexReader.CacheHelper cacheHelper = leaf.reader().getReaderCacheHelper();
+      if (cacheHelper == null) {
+        return null;
+      }
+      oldLeaves.put(cacheHelper.getKey(), leaf);
+    }
+
+    Query query = combine(key);
+    Weight weight = newSearcher.createWeight(newSearcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+
+    // old leaf ord -> the new leaf with the same reader
+    List<LeafReaderContext> oldLeafList = oldSearcher.getTopReaderContext().leaves();
+    LeafReaderContext[] sameLeaves = new LeafReaderContext[oldLeafList.size()];
+    FixedBitSet bits = new FixedBitSet(newSearcher.maxDoc());
+    int cardinality = 0;
+    for (LeafReaderContext leaf : newSearcher.getTopReaderContext().leaves()) {
+      IndexReader.CacheHelper cacheHelper = leaf.reader().getReaderCacheHelper();
+      LeafReaderContext oldLeaf = cacheHelper == null ? null : oldLeaves.get(cacheHelper.getKey());
+      if (oldLeaf != null) {
+        if (!weight.isCacheable(leaf)) {
+          return null;
+        }
+        sameLeaves[oldLeaf.ord] = leaf;
+      } else {
+        // new or changed segments are searched in full
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        for (int doc = 0, maxDoc = leaf.reader().maxDoc(); doc < maxDoc; doc++) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            bits.set(leaf.docBase + doc);
+            cardinality++;
+          }
+        }
+      }
+    }
+
+    List<LeafReaderContext> changedOldLeaves = new ArrayList<>();
+    for (LeafReaderContext oldLeaf : oldLeafList) {
+      if (sameLeaves[oldLeaf.ord] == null) {
+        changedOldLeaves.add(oldLeaf);
+      }
+    }
+
+    // the old hits in unchanged segments, numbered for the new searcher
+    int[] kept = new int[oldList.size()];
+    int numKept = 0;
+    for (DocIterator iter = oldList.iterator(); iter.hasNext(); ) {
+      int doc = iter.nextDoc();
+      LeafReaderContext oldLeaf = oldLeafList.get(ReaderUtil.subIndex(doc, oldLeafList));
+      LeafReaderContext leaf = sameLeaves[oldLeaf.ord];
+      if (leaf != null) {
+        kept[numKept++] = leaf.docBase + doc - oldLeaf.docBase;
+      }
+    }
+    kept = Arrays.copyOf(kept, numKept);
+    Arrays.sort(kept);
+    for (int doc : kept) {
+      bits.set(doc);
+    }
+    cardinality += numKept;
+
+    boolean complete = oldList.size() >= oldList.matches();
+    if (numKept == 0 && !complete) {
+      // nothing is known about how the unchanged segments rank
+      return null;
+    }
+
+    // a command takes either a filter list or a filter, so the filters of the key are intersected into the patch
+    DocSet filter = new BitDocSet(bits, cardinality);
+    if (key.filters != null && !key.filters.isEmpty()) {
+      filter = newSearcher.getDocSet(key.filters).intersection(filter);
+    }
+
+    QueryCommand qc = new QueryCommand();
+    qc.setQuery(key.query)
+        .setFilter(filter)
+        .setSort(key.sort)
+        .setLen(oldList.size())
+        .setFlags(key.nc_flags & ~SolrIndexSearcher.GET_DOCSET
+            | SolrIndexSearcher.NO_CHECK_QCACHE | SolrIndexSearcher.NO_SET_QCACHE | SolrIndexSearcher.NO_CHECK_FILTERCACHE);
+    QueryResult qr = new QueryResult();
+    newSearcher.search(qr, qc);
+    DocList merged = qr.getDocList();
+    if (qr.isPartialResults() || merged.hitCountRelation() != TotalHits.Relation.EQUAL_TO) {
+      return null;
+    }
+
+    int[] docs = new int[merged.size()];
+    int len = 0;
+    int validLen = 0;
+    int numKeptFound = 0;
+    for (DocIterator iter = merged.iterator(); iter.hasNext(); ) {
+      int doc = iter.nextDoc();
+      docs[len++] = doc;
+      if (Arrays.binarySearch(kept, doc) >= 0) {
+        numKeptFound++;
+        validLen = len;
+      }
+    }
+    // Hits of unchanged segments that weren't in the old results rank after all of the old results, so the merged
+    // results are exact up to the last kept hit, or entirely if they rank above some kept hit.
+    if (complete || numKeptFound < numKept) {
+      validLen = len;
+    }
+
+    long matches = oldList.matches() - countMatches(oldSearcher, query, changedOldLeaves)
+        - numKept + merged.matches();
+    if (log.isDebugEnabled()) {
+      log.debug("patched {} with {} of {} hits kept", key.query, numKept, oldList.size());
+    }
+    return new DocSlice(0, validLen, Arrays.copyOf(docs, validLen), null, matches, merged.maxScore(), TotalHits.Relation.EQUAL_TO);
+  }
+
+  /** The query and the filters of a cache key as one query */
+  private static Query combine(QueryResultKey key) {
+    BooleanQuery.Builder builder = new BooleanQuery.Builder();
+    builder.add(QueryUtils.makeQueryable(key.query), BooleanClause.Occur.MUST);
+    if (key.filters != null) {
+      for (Query filter : key.filters) {
+        builder.add(QueryUtils.makeQueryable(filter), BooleanClause.Occur.FILTER);
+      }
+    }
+    return builder.build();
+  }
+
+  private static long countMatches(SolrIndexSearcher searcher, Query query, List<LeafReaderContext> leaves)
+      throws IOException {
+    if (leaves.isEmpty()) {
+      return 0;
+    }
+    Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+    long count = 0;
+    for (LeafReaderContext leaf : leaves) {
+      Scorer scorer = weight.scorer(leaf);
+      if (scorer == null) {
+        continue;
+      }
+      Bits liveDocs = leaf.reader().getLiveDocs();
+      DocIdSetIterator iter = scorer.iterator();
+      for (int doc = iter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iter.nextDoc()) {
+        if (liveDocs == null || liveDocs.get(doc)) count++;
+      }
+    }
+    return count;
+  }
+
+  /** The number of cache entries that were patched */
+  public long getPatched() {
+    return patched.sum();
+  }
+
+  /** The number of cache entries whose query was run again */
+  public long getRegenerated() {
+    return regenerated.sum();
+  }
+}
@@ -0,0 +1,1305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A compressed {@link DocSet} in the style of a Roaring bitmap.  The docid space is split into blocks of 65536
+ * docs and every non-empty block is stored in the smallest of three containers: a sorted array of the low 16 bits
+ * of each doc, a bitmap of 1024 words, or a list of runs.
+ * <p>
+ * All containers live in a single {@link ByteBuffer}, which may be a direct buffer so that large sets can be kept
+ * off the Java heap.  Iteration, {@link #exists}, {@link #getBits()}, {@link #getTopFilter()} and intersection
+ * counts read the containers in place; set operations that create a new set return one of the other DocSet
+ * implementations.
+ * <p>
+ * {@link #ramBytesUsed()} includes the capacity of the buffer, whether or not it is on the heap, so that caches
+ * bounded by RAM also bound the memory held off-heap.
+ *
+ * @lucene.experimental
+ */
+public class RoaringDocSet extends DocSet {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(RoaringDocSet.class);
+
+  static final int BLOCK_SHIFT = 16;
+  static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+  static final int BLOCK_MASK = BLOCK_SIZE - 1;
+  static final int BITMAP_WORDS = BLOCK_SIZE >>> 6;
+  static final int BITMAP_BYTES = BITMAP_WORDS << 3;
+  /** Beyond this cardinality an array container is larger than a bitmap */
+  static final int MAX_ARRAY_SIZE = BITMAP_BYTES >>> 1;
+
+  static final int ARRAY = 0;
+  static final int BITMAP = 1;
+  static final int RUN = 2;
+
+  // header: numContainers, size, length, unused
+  private static final int HEADER_BYTES = 16;
+  // directory entry: key, type, cardinality, count (array elements, bitmap words or runs), offset
+  private static final int ENTRY_BYTES = 20;
+
+  private final ByteBuffer buffer;
+  private final int numContainers;
+  private final int size;
+  private final int length;
+  // block key -> container index, or -1 for empty blocks
+  private final int[] containerForKey;
+
+  /**
+   * Wraps a buffer produced by {@link Builder}. The buffer is only read with absolute gets, so it may be
+   * shared by many threads.
+   */
+  RoaringDocSet(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.numContainers = buffer.getInt(0);
+    this.size = buffer.getInt(4);
+    this.length = buffer.getInt(8);
+    int numKeys = numContainers == 0 ? 0 : key(numContainers - 1) + 1;
+    this.containerForKey = new int[numKeys];
+    Arrays.fill(containerForKey, -1);
+    for (int c = 0; c < numContainers; c++) {
+      containerForKey[key(c)] = c;
+    }
+  }
+
+  /**
+   * Encodes a DocSet.
+   *
+   * @param docs the set to encode
+   * @param direct if true the containers are stored in a direct (off-heap) buffer
+   */
+  public static RoaringDocSet build(DocSet docs, boolean direct) {
+    if (docs instanceof RoaringDocSet) {
+      RoaringDocSet other = (RoaringDocSet) docs;
+      if (other.isDirect() == direct) {
+        return other;
+      }
+      ByteBuffer copy = allocate(other.buffer.capacity(), direct);
+      copy.put(other.buffer.duplicate());
+      return new RoaringDocSet(copy);
+    }
+    if (docs instanceof BitDocSet) {
+      FixedBitSet bits = ((BitDocSet) docs).getBits();
+      return build(bits.getBits(), bits.length(), direct);
+    }
+
+    Builder builder = new Builder();
+    char[] lows = new char[BLOCK_SIZE];
+    int n = 0;
+    int key = -1;
+    int last = -1;
+    for (DocIterator iter = docs.iterator(); iter.hasNext(); ) {
+      int doc = iter.nextDoc();
+      int docKey = doc >>> BLOCK_SHIFT;
+      if (docKey != key) {
+        builder.addSorted(key, lows, n);
+        key = docKey;
+        n = 0;
+      }
+      lows[n++] = (char) (doc & BLOCK_MASK);
+      last = doc;
+    }
+    builder.addSorted(key, lows, n);
+    return builder.build(last + 1, direct);
+  }
+
+  /**
+   * Encodes the set bits of a bitset.
+   *
+   * @param words the words of the bitset, as returned by {@link FixedBitSet#getBits()}
+   * @param length the number of bits in the bitset
+   * @param direct if true the containers are stored in a direct (off-heap) buffer
+   */
+  public static RoaringDocSet build(long[] words, int length, boolean direct) {
+    Builder builder = new Builder();
+    int numWords = FixedBitSet.bits2words(length);
+    for (int key = 0, from = 0; from < numWords; key++, from += BITMAP_WORDS) {
+      builder.addBitmap(key, words, from, Math.min(numWords, from + BITMAP_WORDS));
+    }
+    return builder.build(length, direct);
+  }
+
+  private static ByteBuffer allocate(int capacity, boolean direct) {
+    ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    return buffer.order(ByteOrder.nativeOrder());
+  }
+
+  /** Returns true if the containers of this set are stored off the Java heap. */
+  public boolean isDirect() {
+    return buffer.isDirect();
+  }
+
+  /** The length of the bitset this set was encoded from, all docs are below it. */
+  int length() {
+    return length;
+  }
+
+  /** The number of bytes used to store the containers. */
+  public int getEncodedBytes() {
+    return buffer.capacity();
+  }
+
+  //
+  // container access
+  //
+
+  private int entry(int c) {
+    return HEADER_BYTES + c * ENTRY_BYTES;
+  }
+
+  int numContainers() {
+    return numContainers;
+  }
+
+  int key(int c) {
+    return buffer.getInt(entry(c));
+  }
+
+  int type(int c) {
+    return buffer.getInt(entry(c) + 4);
+  }
+
+  int cardinality(int c) {
+    return buffer.getInt(entry(c) + 8);
+  }
+
+  int count(int c) {
+    return buffer.getInt(entry(c) + 12);
+  }
+
+  int offset(int c) {
+    return buffer.getInt(entry(c) + 16);
+  }
+
+  /** Returns the container holding the given block, or -1 */
+  int container(int key) {
+    return key < containerForKey.length ? containerForKey[key] : -1;
+  }
+
+  private int arrayGet(int offset, int i) {
+    return buffer.getChar(offset + (i << 1));
+  }
+
+  private long word(int offset, int i) {
+    return buffer.getLong(offset + (i << 3));
+  }
+
+  private int runStart(int offset, int i) {
+    return buffer.getChar(offset + (i << 2));
+  }
+
+  private int runLast(int offset, int i) {
+    int pos = offset + (i << 2);
+    return buffer.getChar(pos) + buffer.getChar(pos + 2);
+  }
+
+  /** Index of the first element in [from, to) of an array container that is &gt;= low */
+  private int arrayLowerBound(int offset, int from, int to, int low) {
+    int hi = to - 1;
+    while (from <= hi) {
+      int mid = (from + hi) >>> 1;
+      if (arrayGet(offset, mid) < low) {
+        from = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return from;
+  }
+
+  /** Index of the first run in [from, to) of a run container whose last doc is &gt;= low */
+  private int runLowerBound(int offset, int from, int to, int low) {
+    int hi = to - 1;
+    while (from <= hi) {
+      int mid = (from + hi) >>> 1;
+      if (runLast(offset, mid) < low) {
+        from = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return from;
+  }
+
+  private boolean containsLow(int c, int low) {
+    int offset = offset(c);
+    int count = count(c);
+    switch (type(c)) {
+      case ARRAY: {
+        int i = arrayLowerBound(offset, 0, count, low);
+        return i < count && arrayGet(offset, i) == low;
+      }
+      case BITMAP:
+        return (word(offset, low >>> 6) & (1L << low)) != 0;
+      default: {
+        int i = runLowerBound(offset, 0, count, low);
+        return i < count && runStart(offset, i) <= low;
+      }
+    }
+  }
+
+  /**
+   * Bits over the docs [base, base + length) of the set, with a lookup cache of one container: the container of the
+   * last probe, and for array and run containers the index of the last element or run that was searched for.  A probe
+   * at or after the previous one in the same container searches from that index by galloping, so a forward scan
+   * over a container costs about one step per probe instead of a full binary search.
+   */
+  private final class Lookup implements Bits {
+    private final int base;
+    private final int length;
+    private int key = -1;
+    private int c = -1;
+    private int type, count, offset;
+    private int lastLow = -1;
+    private int pos;
+
+    Lookup(int base, int length) {
+      this.base = base;
+      this.length = length;
+    }
+
+    @Override
+    public boolean get(int index) {
+      int doc = index + base;
+      int docKey = doc >>> BLOCK_SHIFT;
+      if (docKey != key) {
+        key = docKey;
+        c = container(docKey);
+        if (c >= 0) {
+          type = type(c);
+          count = count(c);
+          offset = offset(c);
+        }
+        lastLow = -1;
+        pos = 0;
+      }
+      if (c < 0) return false;
+
+      int low = doc & BLOCK_MASK;
+      if (type == BITMAP) {
+        return (word(offset, low >>> 6) & (1L << low)) != 0;
+      }
+      int from = low >= lastLow ? pos : 0;
+      lastLow = low;
+      if (type == ARRAY) {
+        int i = pos = gallop(from, low, false);
+        return i < count && arrayGet(offset, i) == low;
+      } else {
+        int i = pos = gallop(from, low, true);
+        return i < count && runStart(offset, i) <= low;
+      }
+    }
+
+    /** Index of the first element (or run, by its last doc) at or after from that is &gt;= low */
+    private int gallop(int from, int low, boolean runs) {
+      int step = 1;
+      int hi = from;
+      while (hi < count && (runs ? runLast(offset, hi) : arrayGet(offset, hi)) < low) {
+        from = hi + 1;
+        hi += step;
+        step <<= 1;
+      }
+      int to = Math.min(hi + 1, count);
+      return runs ? runLowerBound(offset, from, to, low) : arrayLowerBound(offset, from, to, low);
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+  }
+
+  //
+  // DocSet
+  //
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean exists(int doc) {
+    int c = doc < 0 ? -1 : container(doc >>> BLOCK_SHIFT);
+    return c >= 0 && containsLow(c, doc & BLOCK_MASK);
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private final Cursor cursor = new Cursor();
+      private int next = cursor.next();
+
+      @Override
+      public boolean hasNext() {
+        return next != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      @Override
+      public int nextDoc() {
+        int doc = next;
+        next = cursor.next();
+        return doc;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  /**
+   * Returns a random access view of the set.  Unlike {@link #exists}, the returned Bits remembers the container
+   * and the position of its last lookup, so that the mostly ascending probes of a search only search the part of
+   * an array or run container after the previous doc.  It must not be shared between threads.
+   */
+  @Override
+  public Bits getBits() {
+    return new Lookup(0, length);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      return intersectionSize(this, (RoaringDocSet) other);
+    } else if (other instanceof BitDocSet) {
+      return intersectionSize(((BitDocSet) other).getBits());
+    }
+    int count = 0;
+    for (DocIterator iter = other.iterator(); iter.hasNext(); ) {
+      if (exists(iter.nextDoc())) count++;
+    }
+    return count;
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      for (int doc : ((SortedIntDocSet) other).getDocs()) {
+        if (exists(doc)) return true;
+      }
+      return false;
+    }
+    return intersectionSize(other) > 0;
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      int[] otherDocs = ((SortedIntDocSet) other).getDocs();
+      int[] docs = new int[otherDocs.length];
+      int n = 0;
+      for (int doc : otherDocs) {
+        if (exists(doc)) docs[n++] = doc;
+      }
+      return new SortedIntDocSet(docs, n);
+    }
+    if (Math.min(size, other.size()) <= DocSetUtil.smallSetSize(length)) {
+      // the intersection is small, probe the bigger set with the docs of the smaller one
+      DocSet smaller = size <= other.size() ? this : other;
+      DocSet bigger = smaller == this ? other : this;
+      int[] docs = new int[smaller.size()];
+      int n = 0;
+      for (DocIterator iter = smaller.iterator(); iter.hasNext(); ) {
+        int doc = iter.nextDoc();
+        if (bigger.exists(doc)) docs[n++] = doc;
+      }
+      return new SortedIntDocSet(docs, n);
+    }
+    return combine(other, AND);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    if (size <= DocSetUtil.smallSetSize(length)) {
+      int[] docs = new int[size];
+      int n = 0;
+      for (DocIterator iter = iterator(); iter.hasNext(); ) {
+        int doc = iter.nextDoc();
+        if (!other.exists(doc)) docs[n++] = doc;
+      }
+      return new SortedIntDocSet(docs, n);
+    }
+    if (other.size() == 0) {
+      return this;
+    }
+    return combine(other, AND_NOT);
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    if (other instanceof BitDocSet) {
+      // the union is at least as dense as the bitset
+      FixedBitSet otherBits = ((BitDocSet) other).getBits();
+      FixedBitSet bits = FixedBitSet.ensureCapacity(otherBits.clone(), length);
+      addAllTo(bits);
+      return new BitDocSet(bits);
+    }
+    return combine(other, OR);
+  }
+
+  @Override
+  public void addAllTo(FixedBitSet target) {
+    long[] targetWords = target.getBits();
+    for (int c = 0; c < numContainers; c++) {
+      int base = key(c) << BLOCK_SHIFT;
+      int offset = offset(c);
+      int count = count(c);
+      switch (type(c)) {
+        case ARRAY:
+          for (int i = 0; i < count; i++) {
+            target.set(base + arrayGet(offset, i));
+          }
+          break;
+        case BITMAP: {
+          int wordBase = base >>> 6;
+          int end = Math.min(BITMAP_WORDS, targetWords.length - wordBase);
+          for (int i = 0; i < end; i++) {
+            targetWords[wordBase + i] |= word(offset, i);
+          }
+          break;
+        }
+        default:
+          for (int i = 0; i < count; i++) {
+            target.set(base + runStart(offset, i), base + runLast(offset, i) + 1);
+          }
+      }
+    }
+  }
+
+  /** Clears all the docs of this set from the target. */
+  void removeAllFrom(FixedBitSet target) {
+    long[] targetWords = target.getBits();
+    for (int c = 0; c < numContainers; c++) {
+      int base = key(c) << BLOCK_SHIFT;
+      int offset = offset(c);
+      int count = count(c);
+      switch (type(c)) {
+        case ARRAY:
+          for (int i = 0; i < count; i++) {
+            int doc = base + arrayGet(offset, i);
+            if (doc < target.length()) target.clear(doc);
+          }
+          break;
+        case BITMAP: {
+          int wordBase = base >>> 6;
+          int end = Math.min(BITMAP_WORDS, targetWords.length - wordBase);
+          for (int i = 0; i < end; i++) {
+            targetWords[wordBase + i] &= ~word(offset, i);
+          }
+          break;
+        }
+        default:
+          for (int i = 0; i < count; i++) {
+            int from = base + runStart(offset, i);
+            int to = Math.min(target.length(), base + runLast(offset, i) + 1);
+            if (from < to) target.clear(from, to);
+          }
+      }
+    }
+  }
+
+  @Override
+  public RoaringDocSet clone() {
+    // immutable, the buffer can be shared
+    return new RoaringDocSet(buffer);
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSet() {
+    return getFixedBitSetClone();
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSetClone() {
+    FixedBitSet bits = new FixedBitSet(length);
+    addAllTo(bits);
+    return bits;
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(final LeafReaderContext context, final Bits acceptDocs) {
+        LeafReader reader = context.reader();
+        // all Solr DocSets that are used as filters only include live docs
+        final Bits acceptDocs2 = acceptDocs == null ? null : (reader.getLiveDocs() == acceptDocs ? null : acceptDocs);
+
+        final int base = context.docBase;
+        final int max = base + reader.maxDoc();   // one past the max doc in this segment.
+
+        return BitsFilteredDocIdSet.wrap(new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+              final Cursor cursor = new Cursor();
+              int adjustedDoc = -1;
+
+              @Override
+              public int docID() {
+                return adjustedDoc;
+              }
+
+              @Override
+              public int nextDoc() {
+                return adjustedDoc == -1 ? advance(0) : toSegment(cursor.next());
+              }
+
+              @Override
+              public int advance(int target) {
+                if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+                return toSegment(cursor.advance(target + base));
+              }
+
+              private int toSegment(int doc) {
+                return adjustedDoc = doc >= max ? NO_MORE_DOCS : doc - base;
+              }
+
+              @Override
+              public long cost() {
+                // pro-rate the size of the set for this segment
+                return length == 0 ? 0 : (long) size * (max - base) / length;
+              }
+            };
+          }
+
+          @Override
+          public long ramBytesUsed() {
+            return RoaringDocSet.this.ramBytesUsed();
+          }
+
+          @Override
+          public Bits bits() {
+            return new Lookup(base, max - base);
+          }
+
+        }, acceptDocs2);
+      }
+
+      @Override
+      public String toString(String field) {
+        return "RoaringDocSetTopFilter";
+      }
+
+      final ByteBuffer buf = buffer;
+
+      @Override
+      public boolean equals(Object other) {
+        return sameClassAs(other) && buf == getClass().cast(other).buf;
+      }
+
+      @Override
+      public int hashCode() {
+        return classHash() * 31 + System.identityHashCode(buf);
+      }
+    };
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(containerForKey) + buffer.capacity();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public String toString() {
+    return "RoaringDocSet{" +
+        "size=" + size +
+        ",containers=" + numContainers +
+        ",direct=" + isDirect() +
+        ",ramUsed=" + RamUsageEstimator.humanReadableUnits(ramBytesUsed()) +
+        '}';
+  }
+
+  //
+  // intersection counts
+  //
+
+  private int intersectionSize(FixedBitSet bits) {
+    long[] words = bits.getBits();
+    int count = 0;
+    for (int c = 0; c < numContainers; c++) {
+      int base = key(c) << BLOCK_SHIFT;
+      int offset = offset(c);
+      int n = count(c);
+      switch (type(c)) {
+        case ARRAY:
+          for (int i = 0; i < n; i++) {
+            int doc = base + arrayGet(offset, i);
+            if ((doc >>> 6) < words.length && (words[doc >>> 6] & (1L << doc)) != 0) count++;
+          }
+          break;
+        case BITMAP: {
+          int wordBase = base >>> 6;
+          int end = Math.min(BITMAP_WORDS, words.length - wordBase);
+          for (int i = 0; i < end; i++) {
+            count += Long.bitCount(word(offset, i) & words[wordBase + i]);
+          }
+          break;
+        }
+        default:
+          for (int i = 0; i < n; i++) {
+            count += rangeCount(words, base + runStart(offset, i), base + runLast(offset, i));
+          }
+      }
+    }
+    return count;
+  }
+
+  /** The number of set bits in [from, to] of the words of a bitset */
+  private static int rangeCount(long[] words, int from, int to) {
+    int fromWord = from >>> 6;
+    int toWord = Math.min(to >>> 6, words.length - 1);
+    if (fromWord > toWord) return 0;
+    long fromMask = -1L << from;
+    long toMask = (to >>> 6) > toWord ? -1L : -1L >>> (63 - (to & 63));
+    if (fromWord == toWord) {
+      return Long.bitCount(words[fromWord] & fromMask & toMask);
+    }
+    int count = Long.bitCount(words[fromWord] & fromMask);
+    for (int i = fromWord + 1; i < toWord; i++) {
+      count += Long.bitCount(words[i]);
+    }
+    return count + Long.bitCount(words[toWord] & toMask);
+  }
+
+  /** The number of set bits in [from, to] of a bitmap container */
+  private int bitmapRangeCount(int offset, int from, int to) {
+    int fromWord = from >>> 6;
+    int toWord = to >>> 6;
+    long fromMask = -1L << from;
+    long toMask = -1L >>> (63 - (to & 63));
+    if (fromWord == toWord) {
+      return Long.bitCount(word(offset, fromWord) & fromMask & toMask);
+    }
+    int count = Long.bitCount(word(offset, fromWord) & fromMask);
+    for (int i = fromWord + 1; i < toWord; i++) {
+      count += Long.bitCount(word(offset, i));
+    }
+    return count + Long.bitCount(word(offset, toWord) & toMask);
+  }
+
+  private static int intersectionSize(RoaringDocSet a, RoaringDocSet b) {
+    if (a.numContainers > b.numContainers) {
+      RoaringDocSet tmp = a; a = b; b = tmp;
+    }
+    int count = 0;
+    for (int ca = 0; ca < a.numContainers; ca++) {
+      int cb = b.container(a.key(ca));
+      if (cb >= 0) {
+        count += intersectionSize(a, ca, b, cb);
+      }
+    }
+    return count;
+  }
+
+  private static int intersectionSize(RoaringDocSet a, int ca, RoaringDocSet b, int cb) {
+    int typeA = a.type(ca);
+    int typeB = b.type(cb);
+    if (typeA > typeB) {
+      // order by type so that there are only half as many cases: ARRAY < BITMAP < RUN
+      RoaringDocSet tmp = a; a = b; b = tmp;
+      int c = ca; ca = cb; cb = c;
+      int t = typeA; typeA = typeB; typeB = t;
+    }
+    final int offA = a.offset(ca), nA = a.count(ca);
+    final int offB = b.offset(cb), nB = b.count(cb);
+    int count = 0;
+
+    if (typeA == ARRAY && typeB == ARRAY) {
+      int i = 0, j = 0;
+      while (i < nA && j < nB) {
+        int da = a.arrayGet(offA, i), db = b.arrayGet(offB, j);
+        if (da < db) {
+          i++;
+        } else if (da > db) {
+          j++;
+        } else {
+          count++; i++; j++;
+        }
+      }
+    } else if (typeA == ARRAY && typeB == BITMAP) {
+      for (int i = 0; i < nA; i++) {
+        int low = a.arrayGet(offA, i);
+        if ((b.word(offB, low >>> 6) & (1L << low)) != 0) count++;
+      }
+    } else if (typeA == ARRAY) { // RUN
+      int j = 0;
+      for (int i = 0; i < nA && j < nB; i++) {
+        int low = a.arrayGet(offA, i);
+        while (j < nB && b.runLast(offB, j) < low) j++;
+        if (j < nB && b.runStart(offB, j) <= low) count++;
+      }
+    } else if (typeA == BITMAP && typeB == BITMAP) {
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        count += Long.bitCount(a.word(offA, i) & b.word(offB, i));
+      }
+    } else if (typeA == BITMAP) { // RUN
+      for (int j = 0; j < nB; j++) {
+        count += a.bitmapRangeCount(offA, b.runStart(offB, j), b.runLast(offB, j));
+      }
+    } else { // RUN and RUN
+      int i = 0, j = 0;
+      while (i < nA && j < nB) {
+        int lastA = a.runLast(offA, i), lastB = b.runLast(offB, j);
+        int overlap = Math.min(lastA, lastB) - Math.max(a.runStart(offA, i), b.runStart(offB, j)) + 1;
+        if (overlap > 0) count += overlap;
+        if (lastA < lastB) {
+          i++;
+        } else {
+          j++;
+        }
+      }
+    }
+    return count;
+  }
+
+  //
+  // set operations
+  //
+
+  private static final int AND = 0;
+  private static final int OR = 1;
+  private static final int AND_NOT = 2;
+
+  /**
+   * Applies a set operation block by block and encodes the result. Blocks that have docs on only one side are
+   * skipped or copied as they are, the others are combined as bitmaps and re-encoded in their smallest form.
+   */
+  private RoaringDocSet combine(DocSet other, int op) {
+    RoaringDocSet roaring = other instanceof RoaringDocSet ? (RoaringDocSet) other : null;
+    int[] keys = op == OR ? mergeKeys(blockKeys(this), blockKeys(other)) : blockKeys(this);
+    long[] words = new long[BITMAP_WORDS];
+    long[] otherWords = new long[BITMAP_WORDS];
+    Builder builder = new Builder();
+
+    for (int key : keys) {
+      int c = container(key);
+      if (op == AND && roaring != null) {
+        int cb = roaring.container(key);
+        if (cb >= 0 && type(c) == ARRAY && roaring.type(cb) == ARRAY) {
+          builder.addArrayIntersection(key, this, c, roaring, cb);
+          continue;
+        }
+      }
+
+      boolean otherHasDocs = loadBlock(other, key, otherWords);
+      if (c < 0) {
+        // OR with a block that only the other set has
+        builder.addBitmap(key, otherWords, 0, BITMAP_WORDS);
+        continue;
+      }
+      if (!otherHasDocs) {
+        if (op != AND) builder.copy(this, c);
+        continue;
+      }
+
+      loadBitmap(c, words);
+      switch (op) {
+        case AND:
+          for (int i = 0; i < BITMAP_WORDS; i++) words[i] &= otherWords[i];
+          break;
+        case OR:
+          for (int i = 0; i < BITMAP_WORDS; i++) words[i] |= otherWords[i];
+          break;
+        default:
+          for (int i = 0; i < BITMAP_WORDS; i++) words[i] &= ~otherWords[i];
+      }
+      builder.addBitmap(key, words, 0, BITMAP_WORDS);
+    }
+
+    int newLength = op == OR ? Math.max(length, lengthOf(other)) : length;
+    return builder.build(newLength, false);
+  }
+
+  /** The sorted keys of the blocks of a RoaringDocSet or SortedIntDocSet that have docs */
+  private static int[] blockKeys(DocSet set) {
+    if (set instanceof RoaringDocSet) {
+      RoaringDocSet roaring = (RoaringDocSet) set;
+      int[] keys = new int[roaring.numContainers];
+      for (int c = 0; c < keys.length; c++) {
+        keys[c] = roaring.key(c);
+      }
+      return keys;
+    }
+    int[] keys = new int[8];
+    int n = 0;
+    for (DocIterator iter = set.iterator(); iter.hasNext(); ) {
+      int key = iter.nextDoc() >>> BLOCK_SHIFT;
+      if (n == 0 || keys[n - 1] != key) {
+        if (n == keys.length) keys = Arrays.copyOf(keys, n << 1);
+        keys[n++] = key;
+      }
+    }
+    return Arrays.copyOf(keys, n);
+  }
+
+  private static int[] mergeKeys(int[] a, int[] b) {
+    int[] keys = new int[a.length + b.length];
+    int i = 0, j = 0, n = 0;
+    while (i < a.length || j < b.length) {
+      if (j == b.length || (i < a.length && a[i] < b[j])) {
+        keys[n++] = a[i++];
+      } else if (i == a.length || b[j] < a[i]) {
+        keys[n++] = b[j++];
+      } else {
+        keys[n++] = a[i++];
+        j++;
+      }
+    }
+    return Arrays.copyOf(keys, n);
+  }
+
+  private static int lengthOf(DocSet set) {
+    if (set instanceof RoaringDocSet) {
+      return ((RoaringDocSet) set).length();
+    } else if (set instanceof BitDocSet) {
+      return ((BitDocSet) set).getBits().length();
+    }
+    int[] docs = ((SortedIntDocSet) set).getDocs();
+    return docs.length == 0 ? 0 : docs[docs.length - 1] + 1;
+  }
+
+  /** Decodes a container into a bitmap of {@link #BITMAP_WORDS} words */
+  private void loadBitmap(int c, long[] words) {
+    Arrays.fill(words, 0L);
+    int offset = offset(c);
+    int count = count(c);
+    switch (type(c)) {
+      case ARRAY:
+        for (int i = 0; i < count; i++) {
+          int low = arrayGet(offset, i);
+          words[low >>> 6] |= 1L << low;
+        }
+        break;
+      case BITMAP:
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+          words[i] = word(offset, i);
+        }
+        break;
+      default:
+        for (int i = 0; i < count; i++) {
+          setRange(words, runStart(offset, i), runLast(offset, i) + 1);
+        }
+    }
+  }
+
+  /**
+   * Copies the docs that a set has in a block into a bitmap of {@link #BITMAP_WORDS} words.
+   * Returns false if the set has no docs in the block.
+   */
+  private static boolean loadBlock(DocSet set, int key, long[] words) {
+    if (set instanceof RoaringDocSet) {
+      RoaringDocSet roaring = (RoaringDocSet) set;
+      int c = roaring.container(key);
+      if (c < 0) return false;
+      roaring.loadBitmap(c, words);
+      return true;
+    }
+
+    Arrays.fill(words, 0L);
+    if (set instanceof BitDocSet) {
+      long[] bits = ((BitDocSet) set).getBits().getBits();
+      int from = key * BITMAP_WORDS;
+      int to = Math.min(bits.length, from + BITMAP_WORDS);
+      long any = 0;
+      for (int i = from; i < to; i++) {
+        any |= words[i - from] = bits[i];
+      }
+      return any != 0;
+    }
+
+    int[] docs = ((SortedIntDocSet) set).getDocs();
+    int base = key << BLOCK_SHIFT;
+    int i = Arrays.binarySearch(docs, base);
+    if (i < 0) i = -i - 1;
+    boolean any = false;
+    for (; i < docs.length && (docs[i] >>> BLOCK_SHIFT) == key; i++) {
+      int low = docs[i] & BLOCK_MASK;
+      words[low >>> 6] |= 1L << low;
+      any = true;
+    }
+    return any;
+  }
+
+  /** Sets the bits [from, to) of a bitmap */
+  private static void setRange(long[] words, int from, int to) {
+    int startWord = from >>> 6;
+    int endWord = (to - 1) >>> 6;
+    long startMask = -1L << from;
+    long endMask = -1L >>> -to;
+    if (startWord == endWord) {
+      words[startWord] |= startMask & endMask;
+      return;
+    }
+    words[startWord] |= startMask;
+    Arrays.fill(words, startWord + 1, endWord, -1L);
+    words[endWord] |= endMask;
+  }
+
+  //
+  // iteration
+  //
+
+  /** Reads the docs of the set in order, {@link #advance} may be used to skip ahead. */
+  private final class Cursor {
+    private int c = -1;
+    private int type, count, offset, base;
+    private int i;               // array: next element, bitmap: current word, run: current run
+    private int runPos, runLast; // run: next doc and last doc of the current run
+    private long word;           // bitmap: bits of the current word that have not been returned yet
+
+    private void load(int container) {
+      c = container;
+      if (c >= numContainers) return;
+      type = type(c);
+      count = count(c);
+      offset = offset(c);
+      base = key(c) << BLOCK_SHIFT;
+      i = 0;
+      if (type == RUN) {
+        runPos = runStart(offset, 0);
+        runLast = RoaringDocSet.this.runLast(offset, 0);
+      } else if (type == BITMAP) {
+        word = word(offset, 0);
+      }
+    }
+
+    /** Returns the next doc in the set, or NO_MORE_DOCS */
+    int next() {
+      if (c < 0) load(0);
+      while (c < numContainers) {
+        switch (type) {
+          case ARRAY:
+            if (i < count) return base + arrayGet(offset, i++);
+            break;
+          case BITMAP:
+            while (word == 0 && ++i < BITMAP_WORDS) {
+              word = word(offset, i);
+            }
+            if (word != 0) {
+              int bit = Long.numberOfTrailingZeros(word);
+              word &= word - 1;
+              return base + (i << 6) + bit;
+            }
+            break;
+          default:
+            if (runPos <= runLast) return base + runPos++;
+            if (++i < count) {
+              runPos = runStart(offset, i);
+              runLast = RoaringDocSet.this.runLast(offset, i);
+              continue;
+            }
+        }
+        load(c + 1);
+      }
+      return DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    /** Returns the first doc in the set that is &gt;= target and after the last doc returned, or NO_MORE_DOCS */
+    int advance(int target) {
+      int key = target >>> BLOCK_SHIFT;
+      if (c < 0 || c >= numContainers || key(c) != key) {
+        if (c >= numContainers) return DocIdSetIterator.NO_MORE_DOCS;
+        // find the first container at or after the target block
+        int next = Math.max(c, 0);
+        while (next < numContainers && key(next) < key) next++;
+        load(next);
+        if (c >= numContainers || key(c) != key) return next();
+      }
+
+      int low = target & BLOCK_MASK;
+      switch (type) {
+        case ARRAY:
+          i = arrayLowerBound(offset, i, count, low);
+          break;
+        case BITMAP: {
+          int wordIndex = low >>> 6;
+          if (wordIndex >= i) {
+            i = wordIndex;
+            word = word(offset, i) & (-1L << low);
+          }
+          break;
+        }
+        default:
+          if (runLast < low) {
+            i = runLowerBound(offset, i + 1, count, low);
+            if (i < count) {
+              runPos = runStart(offset, i);
+              runLast = RoaringDocSet.this.runLast(offset, i);
+            } else {
+              // exhausted, let next() move on to the following container
+              runPos = 1;
+              runLast = 0;
+              i = count;
+            }
+          }
+          runPos = Math.max(runPos, low);
+      }
+      return next();
+    }
+  }
+
+  //
+  // encoding
+  //
+
+  /**
+   * Returns true if the set bits of a bitset would be encoded in no more than maxBytes, without encoding them.
+   * The estimate stops as soon as the limit is exceeded.
+   */
+  static boolean encodesWithin(long[] words, int length, long maxBytes) {
+    int numWords = FixedBitSet.bits2words(length);
+    long bytes = HEADER_BYTES;
+    for (int from = 0; from < numWords && bytes <= maxBytes; from += BITMAP_WORDS) {
+      long counts = countBlock(words, from, Math.min(numWords, from + BITMAP_WORDS));
+      int cardinality = (int) (counts >>> 32);
+      int runs = (int) counts;
+      if (cardinality == 0) continue;
+      bytes += ENTRY_BYTES;
+      switch (chooseType(cardinality, runs)) {
+        case ARRAY: bytes += cardinality << 1; break;
+        case BITMAP: bytes += BITMAP_BYTES + 8; break; // with worst case alignment
+        default: bytes += runs << 2;
+      }
+    }
+    return bytes <= maxBytes;
+  }
+
+  /** Returns the cardinality of the words [from, to) in the upper 32 bits and the number of runs in the lower 32 */
+  private static long countBlock(long[] words, int from, int to) {
+    int cardinality = 0;
+    int runs = 0;
+    long carry = 0;
+    for (int i = from; i < to; i++) {
+      long w = words[i];
+      cardinality += Long.bitCount(w);
+      // a run starts at every set bit whose predecessor is clear
+      runs += Long.bitCount(w & ~((w << 1) | carry));
+      carry = w >>> 63;
+    }
+    return ((long) cardinality << 32) | runs;
+  }
+
+  /** Chooses the smallest container for a block */
+  static int chooseType(int cardinality, int runs) {
+    int denseBytes = cardinality <= MAX_ARRAY_SIZE ? cardinality << 1 : BITMAP_BYTES;
+    if ((runs << 2) < denseBytes) return RUN;
+    return cardinality <= MAX_ARRAY_SIZE ? ARRAY : BITMAP;
+  }
+
+  /** Collects the containers of a set, block by block in increasing order, and lays them out in a buffer. */
+  static final class Builder {
+    private int numContainers;
+    private int size;
+    private int[] keys = new int[8];
+    private int[] types = new int[8];
+    private int[] cardinalities = new int[8];
+    private Object[] data = new Object[8];
+
+    /** Adds a block given the sorted, distinct low 16 bits of its docs */
+    void addSorted(int key, char[] lows, int n) {
+      if (n == 0) return;
+      int runs = 1;
+      for (int i = 1; i < n; i++) {
+        if (lows[i] != lows[i - 1] + 1) runs++;
+      }
+      switch (chooseType(n, runs)) {
+        case ARRAY:
+          add(key, ARRAY, n, Arrays.copyOf(lows, n));
+          break;
+        case BITMAP: {
+          long[] words = new long[BITMAP_WORDS];
+          for (int i = 0; i < n; i++) {
+            words[lows[i] >>> 6] |= 1L << lows[i];
+          }
+          add(key, BITMAP, n, words);
+          break;
+        }
+        default:
+          add(key, RUN, n, toRuns(lows, n, runs));
+      }
+    }
+
+    /** Adds a block given the words [from, to) of a bitset, where to - from &lt;= 1024 */
+    void addBitmap(int key, long[] words, int from, int to) {
+      long counts = countBlock(words, from, to);
+      int cardinality = (int) (counts >>> 32);
+      int runs = (int) counts;
+      if (cardinality == 0) return;
+
+      int type = chooseType(cardinality, runs);
+      if (type == BITMAP) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        System.arraycopy(words, from, bitmap, 0, to - from);
+        add(key, BITMAP, cardinality, bitmap);
+        return;
+      }
+      char[] lows = new char[cardinality];
+      int n = 0;
+      for (int i = from; i < to; i++) {
+        long w = words[i];
+        while (w != 0) {
+          lows[n++] = (char) (((i - from) << 6) + Long.numberOfTrailingZeros(w));
+          w &= w - 1;
+        }
+      }
+      add(key, type, cardinality, type == ARRAY ? lows : toRuns(lows, n, runs));
+    }
+
+    /** Adds the intersection of two array containers */
+    void addArrayIntersection(int key, RoaringDocSet a, int ca, RoaringDocSet b, int cb) {
+      int offA = a.offset(ca), nA = a.count(ca);
+      int offB = b.offset(cb), nB = b.count(cb);
+      char[] lows = new char[Math.min(nA, nB)];
+      int n = 0;
+      int i = 0, j = 0;
+      while (i < nA && j < nB) {
+        int da = a.arrayGet(offA, i), db = b.arrayGet(offB, j);
+        if (da < db) {
+          i++;
+        } else if (da > db) {
+          j++;
+        } else {
+          lows[n++] = (char) da;
+          i++;
+          j++;
+        }
+      }
+      addSorted(key, lows, n);
+    }
+
+    /** Adds a container of another set as it is */
+    void copy(RoaringDocSet set, int c) {
+      int offset = set.offset(c);
+      int count = set.count(c);
+      int type = set.type(c);
+      if (type == BITMAP) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+          words[i] = set.word(offset, i);
+        }
+        add(set.key(c), BITMAP, set.cardinality(c), words);
+        return;
+      }
+      char[] chars = new char[type == ARRAY ? count : count << 1];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = set.buffer.getChar(offset + (i << 1));
+      }
+      add(set.key(c), type, set.cardinality(c), chars);
+    }
+
+    private static char[] toRuns(char[] lows, int n, int runs) {
+      char[] pairs = new char[runs << 1];
+      int r = 0;
+      int start = lows[0];
+      for (int i = 1; i <= n; i++) {
+        if (i == n || lows[i] != lows[i - 1] + 1) {
+          pairs[r++] = (char) start;
+          pairs[r++] = (char) (lows[i - 1] - start);
+          if (i < n) start = lows[i];
+        }
+      }
+      assert r == pairs.length;
+      return pairs;
+    }
+
+    private void add(int key, int type, int cardinality, Object containerData) {
+      if (numContainers == keys.length) {
+        int newSize = numContainers << 1;
+        keys = Arrays.copyOf(keys, newSize);
+        types = Arrays.copyOf(types, newSize);
+        cardinalities = Arrays.copyOf(cardinalities, newSize);
+        data = Arrays.copyOf(data, newSize);
+      }
+      keys[numContainers] = key;
+      types[numContainers] = type;
+      cardinalities[numContainers] = cardinality;
+      data[numContainers] = containerData;
+      numContainers++;
+      size += cardinality;
+    }
+
+    RoaringDocSet build(int length, boolean direct) {
+      // bitmaps are 8 byte aligned
+      int pos = (HEADER_BYTES + numContainers * ENTRY_BYTES + 7) & ~7;
+      int[] offsets = new int[numContainers];
+      for (int c = 0; c < numContainers; c++) {
+        if (types[c] == BITMAP) {
+          pos = (pos + 7) & ~7;
+          offsets[c] = pos;
+          pos += BITMAP_BYTES;
+        } else {
+          offsets[c] = pos;
+          pos += ((char[]) data[c]).length << 1;
+        }
+      }
+
+      ByteBuffer buffer = allocate(pos, direct);
+      buffer.putInt(0, numContainers);
+      buffer.putInt(4, size);
+      buffer.putInt(8, length);
+      for (int c = 0; c < numContainers; c++) {
+        int entry = HEADER_BYTES + c * ENTRY_BYTES;
+        buffer.putInt(entry, keys[c]);
+        buffer.putInt(entry + 4, types[c]);
+        buffer.putInt(entry + 8, cardinalities[c]);
+        buffer.putInt(entry + 16, offsets[c]);
+        if (types[c] == BITMAP) {
+          long[] words = (long[]) data[c];
+          buffer.putInt(entry + 12, BITMAP_WORDS);
+          for (int i = 0; i < BITMAP_WORDS; i++) {
+            buffer.putLong(offsets[c] + (i << 3), words[i]);
+          }
+        } else {
+          char[] chars = (char[]) data[c];
+          // array elements, or number of (start, length - 1) pairs
+          buffer.putInt(entry + 12, types[c] == ARRAY ? chars.length : chars.length >>> 1);
+          for (int i = 0; i < chars.length; i++) {
+            buffer.putChar(offsets[c] + (i << 1), chars[i]);
+          }
+        }
+      }
+      return new RoaringDocSet(buffer);
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Caches the DocSets of filter queries one index segment at a time, so that a searcher opened after a commit only
+ * evaluates a filter over the segments that are new or have changed.  Each segment's part is keyed by the query and
+ * the segment's core cache key, so it outlives the searchers it was computed for and is shared by every searcher of
+ * the core that sees the segment.  New deletions in a segment are applied to its cached part instead of evaluating
+ * the filter again.  The parts of a segment are dropped when the segment is closed.
+ * <p>
+ * A searcher consults this cache when its filterCache misses, which includes autowarming, so that warming a new
+ * searcher costs time proportional to the changed segments rather than to the whole index.
+ *
+ * @see org.apache.solr.core.SolrCore#getSegmentFilterCache()
+ * @lucene.experimental
+ */
+public class SegmentFilterCache implements Accountable {
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SegmentFilterCache.class);
+
+  private final long maxRamBytes;
+  private final Cache<Key,Part> cache;
+  // segment cores that have a listener to drop their parts on close
+  private final Set<IndexReader.CacheKey> segments = ConcurrentHashMap.newKeySet();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public SegmentFilterCache(long maxRamBytes) {
+    this.maxRamBytes = maxRamBytes;
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(maxRamBytes)
+        .weigher((Key key, Part part) -> (int) Math.min(Integer.MAX_VALUE, part.ramBytesUsed()))
+        .executor(Runnable::run)
+        .build();
+  }
+
+  /**
+   * Returns the set of live documents of a searcher that match a query, computing only the parts of the
+   * segments that aren't cached yet.
+   */
+  public DocSet getDocSet(SolrIndexSearcher searcher, Query query) throws IOException {
+    List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    DocSet[] parts = new DocSet[leaves.size()];
+    Weight weight = null;
+    int size = 0;
+
+    for (LeafReaderContext leaf : leaves) {
+      LeafReader reader = leaf.reader();
+      IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+      Key key = cacheHelper == null ? null : new Key(query, cacheHelper.getKey());
+
+      DocSet docs = key == null ? null : getCachedPart(key, reader);
+      if (docs == null) {
+        if (weight == null) {
+          weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+        }
+        docs = computePart(weight, leaf);
+        misses.increment();
+        if (key != null && weight.isCacheable(leaf)) {
+          putPart(key, cacheHelper, new Part(DocSetUtil.toStoredSet(docs), reader.numDeletedDocs()));
+        }
+      } else {
+        hits.increment();
+      }
+      parts[leaf.ord] = docs;
+      size += docs.size();
+    }
+
+    return DocSetUtil.getDocSet(merge(leaves, parts, size, searcher.maxDoc()), searcher);
+  }
+
+  /** Returns the cached docs of a segment with its current deletions applied, or null if they need computing */
+  private DocSet getCachedPart(Key key, LeafReader reader) {
+    Part part = cache.getIfPresent(key);
+    if (part == null) {
+      return null;
+    }
+    int numDeletedDocs = reader.numDeletedDocs();
+    if (part.numDeletedDocs == numDeletedDocs) {
+      return part.docs;
+    } else if (part.numDeletedDocs > numDeletedDocs) {
+      // deletions of a segment core only ever grow; the part must be from a different view of the segment
+      return null;
+    }
+
+    Bits liveDocs = reader.getLiveDocs();
+    DocSetBuilder builder = new DocSetBuilder(reader.maxDoc(), part.docs.size());
+    for (DocIterator iter = part.docs.iterator(); iter.hasNext(); ) {
+      int doc = iter.nextDoc();
+      if (liveDocs.get(doc)) builder.add(doc);
+    }
+    DocSet docs = builder.buildUniqueInOrder(null);
+    cache.put(key, new Part(DocSetUtil.toStoredSet(docs), numDeletedDocs));
+    return docs;
+  }
+
+  private void putPart(Key key, IndexReader.CacheHelper cacheHelper, Part part) {
+    if (segments.add(key.segment)) {
+      cacheHelper.addClosedListener(this::onSegmentClosed);
+    }
+    cache.put(key, part);
+  }
+
+  private void onSegmentClosed(IndexReader.CacheKey segment) {
+    segments.remove(segment);
+    cache.asMap().keySet().removeIf(key -> key.segment == segment);
+  }
+
+  /** Collects the live docs of a segment that match, numbered from 0 within the segment */
+  private static DocSet computePart(Weight weight, LeafReaderContext leaf) throws IOException {
+    Scorer scorer = weight.scorer(leaf);
+    if (scorer == null) {
+      return DocSet.empty();
+    }
+    LeafReader reader = leaf.reader();
+    Bits liveDocs = reader.getLiveDocs();
+    DocIdSetIterator iter = scorer.iterator();
+    DocSetBuilder builder = new DocSetBuilder(reader.maxDoc(), Math.min(iter.cost(), reader.maxDoc()));
+    for (int doc = iter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iter.nextDoc()) {
+      if (liveDocs == null || liveDocs.get(doc)) builder.add(doc);
+    }
+    return builder.buildUniqueInOrder(null);
+  }
+
+  /** Joins the parts of the segments into a DocSet over the whole index */
+  private static DocSet merge(List<LeafReaderContext> leaves, DocSet[] parts, int size, int maxDoc) {
+    if (size <= DocSetUtil.smallSetSize(maxDoc)) {
+      int[] docs = new int[size];
+      int pos = 0;
+      for (LeafReaderContext leaf : leaves) {
+        for (DocIterator iter = parts[leaf.ord].iterator(); iter.hasNext(); ) {
+          docs[pos++] = leaf.docBase + iter.nextDoc();
+        }
+      }
+      return new SortedIntDocSet(docs);
+    }
+
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (LeafReaderContext leaf : leaves) {
+      for (DocIterator iter = parts[leaf.ord].iterator(); iter.hasNext(); ) {
+        bits.set(leaf.docBase + iter.nextDoc());
+      }
+    }
+    return new BitDocSet(bits, size);
+  }
+
+  /** The number of segment parts that were found in the cache */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /** The number of segment parts that had to be computed */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /** The number of cached segment parts */
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  public long getMaxRamBytes() {
+    return maxRamBytes;
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long ram = BASE_RAM_BYTES_USED;
+    for (Part part : cache.asMap().values()) {
+      ram += part.ramBytesUsed();
+    }
+    return ram;
+  }
+
+  @Override
+  public String toString() {
+    return "SegmentFilterCache{size=" + size() + ",hits=" + getHits() + ",misses=" + getMisses() +
+        ",ramUsed=" + RamUsageEstimator.humanReadableUnits(ramBytesUsed()) + '}';
+  }
+
+  private static final class Key {
+    final Query query;
+    final IndexReader.CacheKey segment;
+
+    Key(Query query, IndexReader.CacheKey segment) {
+      this.query = query;
+      this.segment = segment;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) return false;
+      Key key = (Key) other;
+      return segment == key.segment && query.equals(key.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * query.hashCode() + System.identityHashCode(segment);
+    }
+  }
+
+  /** The docs of a segment and the number of deleted docs of the segment when they were collected */
+  private static final class Part implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Part.class)
+        + RamUsageEstimator.shallowSizeOfInstance(Key.class) + RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED;
+
+    final DocSet docs;
+    final int numDeletedDocs;
+
+    Part(DocSet docs, int numDeletedDocs) {
+      this.docs = docs;
+      this.numDeletedDocs = numDeletedDocs;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + docs.ramBytesUsed();
+    }
+  }
+}
@@ -40,6 +40,9 @@ public interface SolrCache<K,V> extends SolrInfoBean {
   String MAX_IDLE_TIME_PARAM = "maxIdleTime";
   String INITIAL_SIZE_PARAM = "initialSize";
   String CLEANUP_THREAD_PARAM = "cleanupThread";
+  String AUTOWARM_THREADS_PARAM = "autowarmThreads";
+  String AUTOWARM_TIME_ALLOWED_PARAM = "autowarmTimeAllowed";
+  String AUTOWARM_IN_BACKGROUND_PARAM = "autowarmInBackground";
   String SHOW_ITEMS_PARAM = "showItems";
 
   /**
@@ -35,6 +35,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+import com.carrotsearch.hppc.IntArrayList;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
@@ -60,11 +61,14 @@ import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentBase;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.ByteArrayUtf8CharSequence;
 import org.apache.solr.core.SolrConfig;
+import org.apache.solr.response.BinaryResponseWriter;
 import org.apache.solr.response.DocsStreamer;
 import org.apache.solr.response.ResultContext;
 import org.apache.solr.schema.AbstractEnumField;
@@ -521,8 +525,13 @@ public class SolrDocumentFetcher {
     final int subIndex = ReaderUtil.subIndex(docid, leafContexts);
     final int localId = docid - leafContexts.get(subIndex).docBase;
     final LeafReader leafReader = leafContexts.get(subIndex).reader();
+    // a doc that masks CharSequence values can take the UTF-8 bytes of string docValues as they are, so javabin can
+    // write them without decoding to a String and encoding it again
+    final Predicate<String> readAsBytes = doc instanceof BinaryResponseWriter.MaskCharSeqSolrDocument ?
+        ResultContext.READASBYTES.get() : null;
     for (String fieldName : fields) {
-      Object fieldValue = decodeDVField(localId, leafReader, fieldName);
+      Object fieldValue = decodeDVField(localId, leafReader, fieldName,
+          readAsBytes != null && readAsBytes.test(fieldName));
       if (fieldValue != null) {
         doc.setField(fieldName, fieldValue);
       }
@@ -531,9 +540,10 @@ public class SolrDocumentFetcher {
 
   /**
    * Decode value from DV field for a document
+   * @param asUtf8 if string values should be returned as {@link ByteArrayUtf8CharSequence}
    * @return null if DV field is not exist or can not decodable
    */
-  private Object decodeDVField(int localId, LeafReader leafReader, String fieldName) throws IOException {
+  private Object decodeDVField(int localId, LeafReader leafReader, String fieldName, boolean asUtf8) throws IOException {
     final SchemaField schemaField = searcher.getSchema().getFieldOrNull(fieldName);
     FieldInfo fi = searcher.getFieldInfos().fieldInfo(fieldName);
     if (schemaField == null || !schemaField.hasDocValues() || fi == null) {
@@ -565,6 +575,9 @@ public class SolrDocumentFetcher {
           // Special handling for Boolean fields since they're stored as 'T' and 'F'.
           if (schemaField.getType() instanceof BoolField) {
             return schemaField.getType().toObject(schemaField, bRef);
+          } else if (asUtf8) {
+            // the docValues are only used for this lookup, so nothing can reuse the BytesRef: no need to copy it
+            return new ByteArrayUtf8CharSequence(bRef.bytes, bRef.offset, bRef.length);
           } else {
             return bRef.utf8ToString();
           }
@@ -596,6 +609,9 @@ public class SolrDocumentFetcher {
       case SORTED_SET:
         final SortedSetDocValues values = leafReader.getSortedSetDocValues(fieldName);
         if (values != null && values.getValueCount() > 0 && values.advance(localId) == localId) {
+          if (asUtf8) {
+            return toUtf8CharSequences(values);
+          }
           final List<Object> outValues = new LinkedList<>();
           for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
             BytesRef value = values.lookupOrd(ord);
@@ -610,6 +626,28 @@ public class SolrDocumentFetcher {
     }
   }
 
+  /**
+   * Returns the values of the current doc as {@link ByteArrayUtf8CharSequence}s.  lookupOrd reuses the BytesRef it
+   * returns, so the values are copied, but into a single array shared by all of them.
+   */
+  private static List<Object> toUtf8CharSequences(SortedSetDocValues values) throws IOException {
+    final BytesRefBuilder bytes = new BytesRefBuilder();
+    final IntArrayList ends = new IntArrayList();
+    for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+      bytes.append(values.lookupOrd(ord));
+      ends.add(bytes.length());
+    }
+    assert ends.size() > 0;
+    final List<Object> outValues = new ArrayList<>(ends.size());
+    final byte[] buf = bytes.bytes();
+    int start = 0;
+    for (int i = 0; i < ends.size(); i++) {
+      outValues.add(new ByteArrayUtf8CharSequence(buf, start, ends.get(i) - start));
+      start = ends.get(i);
+    }
+    return outValues;
+  }
+
   private Object decodeNumberFromDV(SchemaField schemaField, long value, boolean sortableNumeric) {
     // note: This special-case is unfortunate; if we have to add any more than perhaps the fieldType should
     //  have this method so that specific field types can customize it.
@@ -811,7 +849,9 @@ public class SolrDocumentFetcher {
           }
         } else {
           // no need to get stored fields of the document, see SOLR-5968
-          sdoc = new SolrDocument();
+          sdoc = ResultContext.READASBYTES.get() == null ?
+              new SolrDocument() :
+              new BinaryResponseWriter.MaskCharSeqSolrDocument();
           solrReturnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.ALL_FROM_DV);
         }
 
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -114,6 +115,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   private final long openNanoTime = System.nanoTime();
   private Date registerTime;
   private long warmupTime = 0;
+  private volatile long warmingStartTime;
   private final DirectoryReader reader;
   private final boolean closeReader;
 
@@ -123,6 +125,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
   private final boolean cachingEnabled;
   private final SolrCache<Query,DocSet> filterCache;
+  private final SegmentFilterCache segmentFilterCache;
   private final SolrCache<QueryResultKey,DocList> queryResultCache;
   private final SolrCache<String,UnInvertedField> fieldValueCache;
 
@@ -240,6 +243,144 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return collector;
   }
 
+  /**
+   * Returns true if this searcher was given an executor and has more than one index slice to search with it.
+   */
+  public boolean isConcurrentSearchEnabled() {
+    return getExecutor() != null && getSlices().length > 1;
+  }
+
+  /**
+   * Returns true if the query described by the command may be collected concurrently across index slices.
+   * Anything that relies on a single collector seeing every segment on the request thread (post filters,
+   * early termination, time limits, cancellation or custom rank collectors) must go through
+   * {@link #buildAndRunCollectorChain} instead.
+   */
+  private boolean canSearchConcurrently(QueryCommand cmd, ProcessedFilter pf) {
+    return isConcurrentSearchEnabled()
+        && pf.postFilter == null
+        && !cmd.getSegmentTerminateEarly()
+        && !cmd.getTerminateEarly()
+        && cmd.getTimeAllowed() <= 0
+        && !SolrQueryTimeoutImpl.getInstance().isTimeoutEnabled()
+        && !cmd.isQueryCancellable()
+        && !(cmd.getQuery() instanceof RankQuery);
+  }
+
+  /**
+   * Runs the search on this searcher's executor, unwrapping the exception thrown by a failed slice.
+   */
+  <C extends Collector, T> T searchConcurrently(Query query, CollectorManager<C, T> manager) throws IOException {
+    try {
+      return search(query, manager);
+    } catch (RuntimeException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ExecutionException) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException && cause != e) {
+        throw (RuntimeException) cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Creates the top docs, max score and (optionally) DocSet collectors for each index slice of a concurrent
+   * search and merges their results once all slices have been collected.
+   */
+  private class TopDocsCollectorManager implements CollectorManager<Collector, Void> {
+    private final int len;
+    private final QueryCommand cmd;
+    private final boolean needMaxScore;
+    private final boolean needDocSet;
+    private final List<TopDocsCollector<?>> topCollectors = new ArrayList<>();
+    private final List<MaxScoreCollector> maxScoreCollectors = new ArrayList<>();
+    private final List<DocSetCollector> setCollectors = new ArrayList<>();
+    private ScoreMode scoreMode;
+
+    TopDocsCollectorManager(int len, QueryCommand cmd, boolean needMaxScore, boolean needDocSet) {
+      this.len = len;
+      this.cmd = cmd;
+      this.needMaxScore = needMaxScore;
+      this.needDocSet = needDocSet;
+    }
+
+    @Override
+    public synchronized Collector newCollector() throws IOException {
+      final TopDocsCollector<?> topCollector = buildTopDocsCollector(len, cmd);
+      topCollectors.add(topCollector);
+      List<Collector> collectors = new ArrayList<>(3);
+      collectors.add(topCollector);
+      if (needDocSet) {
+        DocSetCollector setCollector = new DocSetCollector(maxDoc());
+        setCollectors.add(setCollector);
+        collectors.add(setCollector);
+      }
+      if (needMaxScore) {
+        MaxScoreCollector maxScoreCollector = new MaxScoreCollector();
+        maxScoreCollectors.add(maxScoreCollector);
+        collectors.add(maxScoreCollector);
+      }
+      Collector collector = MultiCollector.wrap(collectors);
+      scoreMode = collector.scoreMode();
+      return collector;
+    }
+
+    @Override
+    public Void reduce(Collection<Collector> collectors) {
+      return null;
+    }
+
+    ScoreMode scoreMode() {
+      return scoreMode;
+    }
+
+    int getTotalHits() {
+      int totalHits = 0;
+      for (TopDocsCollector<?> topCollector : topCollectors) {
+        totalHits += topCollector.getTotalHits();
+      }
+      return totalHits;
+    }
+
+    TopDocs topDocs() throws IOException {
+      if (topCollectors.size() == 1) {
+        return topCollectors.get(0).topDocs(0, len);
+      }
+      if (cmd.getSort() == null) {
+        TopDocs[] shardHits = new TopDocs[topCollectors.size()];
+        for (int i = 0; i < shardHits.length; i++) {
+          shardHits[i] = topCollectors.get(i).topDocs();
+        }
+        return TopDocs.merge(len, shardHits);
+      } else {
+        TopFieldDocs[] shardHits = new TopFieldDocs[topCollectors.size()];
+        for (int i = 0; i < shardHits.length; i++) {
+          shardHits[i] = (TopFieldDocs) topCollectors.get(i).topDocs();
+        }
+        return TopDocs.merge(weightSort(cmd.getSort()), len, shardHits);
+      }
+    }
+
+    float getMaxScore() {
+      float maxScore = Float.NaN;
+      for (MaxScoreCollector maxScoreCollector : maxScoreCollectors) {
+        float score = maxScoreCollector.getMaxScore();
+        if (Float.isNaN(maxScore) || score > maxScore) {
+          maxScore = score;
+        }
+      }
+      return maxScore;
+    }
+
+    DocSet getDocSet() {
+      return DocSetCollectorManager.merge(setCollectors, maxDoc());
+    }
+  }
+
   public SolrIndexSearcher(SolrCore core, String path, IndexSchema schema, SolrIndexConfig config, String name,
       boolean enableCache, DirectoryFactory directoryFactory) throws IOException {
     // We don't need to reserve the directory because we get it from the factory
@@ -253,7 +394,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   public SolrIndexSearcher(SolrCore core, String path, IndexSchema schema, String name, DirectoryReader r,
       boolean closeReader, boolean enableCache, boolean reserveDirectory, DirectoryFactory directoryFactory)
           throws IOException {
-    super(wrapReader(core, r));
+    super(wrapReader(core, r), core.getSearchExecutor());
 
     this.path = path;
     this.directoryFactory = directoryFactory;
@@ -325,6 +466,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       this.cacheMap = NO_GENERIC_CACHES;
       this.cacheList = NO_CACHES;
     }
+    // only filters that will be put in the filterCache go through the per-segment cache
+    this.segmentFilterCache = filterCache == null ? null : core.getSegmentFilterCache();
 
     // We already have our own filter cache
     setQueryCache(null);
@@ -577,37 +720,42 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         @SuppressWarnings({"rawtypes"})
         public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache,
             Object oldKey, Object oldVal) throws IOException {
-          QueryResultKey key = (QueryResultKey) oldKey;
-          int nDocs = 1;
-          // request 1 doc and let caching round up to the next window size...
-          // unless the window size is <=1, in which case we will pick
-          // the minimum of the number of documents requested last time and
-          // a reasonable number such as 40.
-          // TODO: make more configurable later...
-
-          if (queryResultWindowSize <= 1) {
-            DocList oldList = (DocList) oldVal;
-            int oldnDocs = oldList.offset() + oldList.size();
-            // 40 has factors of 2,4,5,10,20
-            nDocs = Math.min(oldnDocs, 40);
-          }
-
-          int flags = NO_CHECK_QCACHE | key.nc_flags;
-          QueryCommand qc = new QueryCommand();
-          qc.setQuery(key.query)
-              .setFilterList(key.filters)
-              .setSort(key.sort)
-              .setLen(nDocs)
-              .setSupersetMaxDoc(nDocs)
-              .setFlags(flags);
-          QueryResult qr = new QueryResult();
-          newSearcher.getDocListC(qr, qc);
+          newSearcher.regenerateDocList((QueryResultKey) oldKey, (DocList) oldVal, queryResultWindowSize);
           return true;
         }
       });
     }
   }
 
+  /**
+   * Runs the query of a queryResultCache entry of an older searcher again, caching the results of this searcher
+   */
+  void regenerateDocList(QueryResultKey key, DocList oldList, int queryResultWindowSize) throws IOException {
+    int nDocs = 1;
+    // request 1 doc and let caching round up to the next window size...
+    // unless the window size is <=1, in which case we will pick
+    // the minimum of the number of documents requested last time and
+    // a reasonable number such as 40.
+    // TODO: make more configurable later...
+
+    if (queryResultWindowSize <= 1) {
+      int oldnDocs = oldList.offset() + oldList.size();
+      // 40 has factors of 2,4,5,10,20
+      nDocs = Math.min(oldnDocs, 40);
+    }
+
+    int flags = NO_CHECK_QCACHE | key.nc_flags;
+    QueryCommand qc = new QueryCommand();
+    qc.setQuery(key.query)
+        .setFilterList(key.filters)
+        .setSort(key.sort)
+        .setLen(nDocs)
+        .setSupersetMaxDoc(nDocs)
+        .setFlags(flags);
+    QueryResult qr = new QueryResult();
+    getDocListC(qr, qc);
+  }
+
   public QueryResult search(QueryResult qr, QueryCommand cmd) throws IOException {
     getDocListC(qr, cmd);
     return qr;
@@ -772,7 +920,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     // or OS disk cache.
     if (optionalAnswer != null) {
       if (filterCache != null) {
-        filterCache.put(query, optionalAnswer);
+        filterCache.put(query, toCachedSet(optionalAnswer));
       }
       return;
     }
@@ -785,6 +933,14 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     getDocSet(query);
   }
 
+  /**
+   * Returns the form of a set to keep in the filterCache: see {@link DocSetUtil#toStoredSet}.  The live docs, which
+   * every set matching all docs is mapped to, stay a BitDocSet so that they are still shared.
+   */
+  private DocSet toCachedSet(DocSet set) {
+    return set == liveDocs ? set : DocSetUtil.toStoredSet(set);
+  }
+
   private BitDocSet makeBitDocSet(DocSet answer) {
     // TODO: this should be implemented in DocSet, most likely with a getBits method that takes a maxDoc argument
     // or make DocSet instances remember maxDoc
@@ -792,10 +948,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       return (BitDocSet) answer;
     }
     FixedBitSet bs = new FixedBitSet(maxDoc());
-    DocIterator iter = answer.iterator();
-    while (iter.hasNext()) {
-      bs.set(iter.nextDoc());
-    }
+    answer.addAllTo(bs);
 
     return new BitDocSet(bs, answer.size());
   }
@@ -841,13 +994,13 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       }
     }
 
-    DocSet absAnswer = getDocSetNC(absQ, null);
-    DocSet answer = positive ? absAnswer : getLiveDocSet().andNot(absAnswer);
-
+    DocSet absAnswer = getDocSetNCForCache(absQ);
     if (filterCache != null) {
       // cache negative queries as positive
+      absAnswer = toCachedSet(absAnswer);
       filterCache.put(absQ, absAnswer);
     }
+    DocSet answer = positive ? absAnswer : getLiveDocSet().andNot(absAnswer);
 
     return answer;
   }
@@ -859,8 +1012,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       answer = filterCache.get(q);
       if (answer != null) return answer;
     }
-    answer = getDocSetNC(q, null);
-    if (filterCache != null) filterCache.put(q, answer);
+    answer = getDocSetNCForCache(q);
+    if (filterCache != null) filterCache.put(q, answer = toCachedSet(answer));
     return answer;
   }
 
@@ -1175,7 +1328,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
 
     if (useCache) {
-      filterCache.put(key, result);
+      filterCache.put(key, result = toCachedSet(result));
     }
 
     return result;
@@ -1186,6 +1339,17 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return DocSetUtil.createDocSet(this, query, filter);
   }
 
+  /**
+   * Computes the DocSet of a positive query that missed the filterCache, reusing the parts of unchanged segments
+   * from the core's {@link SegmentFilterCache} if there is one.
+   */
+  private DocSet getDocSetNCForCache(Query query) throws IOException {
+    if (segmentFilterCache != null) {
+      return segmentFilterCache.getDocSet(this, query);
+    }
+    return getDocSetNC(query, null);
+  }
+
   /**
    * Returns the set of document ids matching both the query and the filter. This method is cache-aware and attempts to
    * retrieve the answer from the cache if possible. If the answer was not cached, it may have been inserted into the
@@ -1217,7 +1381,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     if (filterCache != null) {
       first = filterCache.get(absQ);
       if (first == null) {
-        first = getDocSetNC(absQ, null);
+        first = toCachedSet(getDocSetNCForCache(absQ));
         filterCache.put(absQ, first);
       }
       return positive ? first.intersection(filter) : filter.andNot(first);
@@ -1423,7 +1587,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         // the base query and all filters.
         DocSet qDocSet = getDocListAndSetNC(qr, cmd);
         // cache the docSet matching the query w/o filtering
-        if (qDocSet != null && filterCache != null && !qr.isPartialResults()) filterCache.put(cmd.getQuery(), qDocSet);
+        if (qDocSet != null && filterCache != null && !qr.isPartialResults()) filterCache.put(cmd.getQuery(), toCachedSet(qDocSet));
       } else {
         getDocListNC(qr, cmd);
       }
@@ -1600,6 +1764,32 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       // no docs on this page, so cursor doesn't change
       qr.setNextCursorMark(cmd.getCursorMark());
       hitsRelation = Relation.EQUAL_TO;
+    } else if (canSearchConcurrently(cmd, pf)) {
+      final TopDocsCollectorManager manager = new TopDocsCollectorManager(len, cmd, needScores, false);
+      searchConcurrently(query, manager);
+
+      totalHits = manager.getTotalHits();
+      TopDocs topDocs = manager.topDocs();
+      ScoreMode scoreModeUsed = manager.scoreMode();
+      if (scoreModeUsed == ScoreMode.COMPLETE || scoreModeUsed == ScoreMode.COMPLETE_NO_SCORES) {
+        hitsRelation = TotalHits.Relation.EQUAL_TO;
+      } else {
+        hitsRelation = topDocs.totalHits.relation;
+      }
+      if (cmd.getSort() != null && needScores) {
+        TopFieldCollector.populateScores(topDocs.scoreDocs, this, query);
+      }
+      populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
+
+      maxScore = totalHits > 0 ? (needScores ? manager.getMaxScore() : Float.NaN) : 0.0f;
+      nDocsReturned = topDocs.scoreDocs.length;
+      ids = new int[nDocsReturned];
+      scores = needScores ? new float[nDocsReturned] : null;
+      for (int i = 0; i < nDocsReturned; i++) {
+        ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+        ids[i] = scoreDoc.doc;
+        if (scores != null) scores[i] = scoreDoc.score;
+      }
     } else {
       final TopDocsCollector<?> topCollector = buildTopDocsCollector(len, cmd);
       MaxScoreCollector maxScoreCollector = null;
@@ -1704,6 +1894,30 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       maxScore = totalHits > 0 ? topscore[0] : 0.0f;
       // no docs on this page, so cursor doesn't change
       qr.setNextCursorMark(cmd.getCursorMark());
+    } else if (canSearchConcurrently(cmd, pf)) {
+      final TopDocsCollectorManager manager = new TopDocsCollectorManager(len, cmd, needScores, true);
+      searchConcurrently(query, manager);
+
+      set = DocSetUtil.getDocSet(manager.getDocSet(), this);
+
+      totalHits = manager.getTotalHits();
+      assert totalHits == set.size();
+
+      TopDocs topDocs = manager.topDocs();
+      if (cmd.getSort() != null && needScores) {
+        TopFieldCollector.populateScores(topDocs.scoreDocs, this, query);
+      }
+      populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
+      maxScore = totalHits > 0 ? (needScores ? manager.getMaxScore() : Float.NaN) : 0.0f;
+      nDocsReturned = topDocs.scoreDocs.length;
+
+      ids = new int[nDocsReturned];
+      scores = needScores ? new float[nDocsReturned] : null;
+      for (int i = 0; i < nDocsReturned; i++) {
+        ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+        ids[i] = scoreDoc.doc;
+        if (scores != null) scores[i] = scoreDoc.score;
+      }
     } else {
       @SuppressWarnings({"rawtypes"})
       final TopDocsCollector topCollector = buildTopDocsCollector(len, cmd);
@@ -2024,7 +2238,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
 
     // bit of a hack to tell if a set is sorted - do it better in the future.
-    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet;
+    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet || set instanceof RoaringDocSet;
 
     @SuppressWarnings({"rawtypes"})
     TopDocsCollector topCollector = buildTopDocsCollector(nDocs, cmd);
@@ -2146,31 +2360,26 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return a.intersects(getDocSet(deState));
   }
 
+  /**
+   * The request context key of the searcher that a new searcher is warmed from, for regenerators that build on the
+   * results of the old searcher.  It may be closed by the time it is used.
+   */
+  static final String WARMING_FROM_SEARCHER = "warmingFromSearcher";
+
   /**
    * Warm this searcher based on an old one (primarily for auto-cache warming).
    */
   @SuppressWarnings({"unchecked"})
   public void warm(SolrIndexSearcher old) {
     // Make sure this is first! filters can help queryResults execute!
-    long warmingStartTime = System.nanoTime();
+    warmingStartTime = System.nanoTime();
     // warm the caches in order...
-    ModifiableSolrParams params = new ModifiableSolrParams();
-    params.add("warming", "true");
     for (int i = 0; i < cacheList.length; i++) {
       if (log.isDebugEnabled()) {
         log.debug("autowarming [{}] from [{}]\n\t{}", this, old, old.cacheList[i]);
       }
 
-      final SolrQueryRequest req = new LocalSolrQueryRequest(core, params) {
-        @Override
-        public SolrIndexSearcher getSearcher() {
-          return SolrIndexSearcher.this;
-        }
-
-        @Override
-        public void close() {}
-      };
-
+      final SolrQueryRequest req = newWarmingRequest(old);
       final SolrQueryResponse rsp = new SolrQueryResponse();
       SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
       try {
@@ -2190,6 +2399,31 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     warmupTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
   }
 
+  /**
+   * A request for regenerating cache entries of this searcher from an old one.  It doesn't hold a reference to
+   * either searcher.
+   */
+  SolrQueryRequest newWarmingRequest(SolrIndexSearcher old) {
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("warming", "true");
+    SolrQueryRequest req = new LocalSolrQueryRequest(core, params) {
+      @Override
+      public SolrIndexSearcher getSearcher() {
+        return SolrIndexSearcher.this;
+      }
+
+      @Override
+      public void close() {}
+    };
+    req.getContext().put(WARMING_FROM_SEARCHER, old);
+    return req;
+  }
+
+  /** The {@link System#nanoTime()} at which {@link #warm} started, so that caches share one warming deadline */
+  long getWarmingStartTime() {
+    return warmingStartTime;
+  }
+
   /**
    * return the named generic cache
    */
@@ -59,6 +59,7 @@ import org.apache.solr.search.facet.AvgAgg;
 import org.apache.solr.search.facet.CountAgg;
 import org.apache.solr.search.facet.CountValsAgg;
 import org.apache.solr.search.facet.HLLAgg;
+import org.apache.solr.search.facet.KLLAgg;
 import org.apache.solr.search.facet.MinMaxAgg;
 import org.apache.solr.search.facet.MissingAgg;
 import org.apache.solr.search.facet.PercentileAgg;
@@ -85,6 +86,7 @@ import org.apache.solr.search.function.distance.StringDistanceFunction;
 import org.apache.solr.search.function.distance.VectorDistanceFunction;
 import org.apache.solr.search.join.ChildFieldValueSourceParser;
 import org.apache.solr.util.DateMathParser;
+import org.apache.solr.util.KLLSketch;
 import org.apache.solr.util.PayloadUtils;
 import org.apache.solr.util.plugin.NamedListInitializedPlugin;
 import org.locationtech.spatial4j.distance.DistanceUtils;
@@ -1078,6 +1080,31 @@ public abstract class ValueSourceParser implements NamedListInitializedPlugin {
         return new PercentileAgg(vs, percentiles);
       }
     });
+
+    addParser("agg_" + KLLAgg.NAME, new ValueSourceParser() {
+      @Override
+      public ValueSource parse(FunctionQParser fp) throws SyntaxError {
+        List<Double> percentiles = new ArrayList<>();
+        ValueSource vs = fp.parseValueSource(FunctionQParser.FLAG_DEFAULT | FunctionQParser.FLAG_USE_FIELDNAME_SOURCE);
+        while (fp.hasMoreArguments()) {
+          double val = fp.parseDouble();
+          if (val<0 || val>100) {
+            throw new SyntaxError("requested percentile must be between 0 and 100.  got " + val);
+          }
+          percentiles.add(val);
+        }
+
+        if (percentiles.isEmpty()) {
+          throw new SyntaxError("expected kll(valsource,percent1[,percent2]*)  EXAMPLE:kll(myfield,50)");
+        }
+
+        int k = fp.getLocalParams() == null ? KLLSketch.DEFAULT_K : fp.getLocalParams().getInt("k", KLLSketch.DEFAULT_K);
+        if (k < KLLSketch.MIN_K || k > KLLSketch.MAX_K) {
+          throw new SyntaxError("k must be between " + KLLSketch.MIN_K + " and " + KLLSketch.MAX_K + ".  got " + k);
+        }
+        return new KLLAgg(vs, percentiles, k);
+      }
+    });
     
     addParser("agg_" + RelatednessAgg.NAME, new ValueSourceParser() {
       @Override
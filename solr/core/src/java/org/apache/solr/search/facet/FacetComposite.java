@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SyntaxError;
+
+/**
+ * JSON Facet API request for the combinations of the values of several fields, in the order of the values of the
+ * first field, then of the second, and so on.  Each request returns a page of at most <code>limit</code> combinations
+ * that have documents, and the <code>after</code> key to pass to the next request to get the next page.
+ * <p>
+ * Shards only keep the first <code>limit</code> combinations after the <code>after</code> key, so the memory needed
+ * doesn't depend on the number of combinations.  Every combination of the merged page is also in the page of each shard
+ * that has it, so the merged counts are exact without refinement.
+ */
+public class FacetComposite extends FacetRequest {
+  static final String AFTER_JSON_KEY = "after";
+  static final int DEFAULT_LIMIT = 10;
+
+  /** the fields to combine, the first one varying the slowest */
+  List<String> sources;
+  SchemaField[] sourceFields;
+  /** the values of the combination that the page starts after, by source, or null for the first page */
+  Map<String, Object> after;
+  long limit = DEFAULT_LIMIT;
+
+  @Override
+  @SuppressWarnings({"rawtypes"})
+  public FacetProcessor createFacetProcessor(FacetContext fcontext) {
+    return new FacetCompositeProcessor(fcontext, this);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger(Object prototype) {
+    return new FacetCompositeMerger(this);
+  }
+
+  @Override
+  public Map<String, Object> getFacetDescription() {
+    Map<String, Object> descr = new HashMap<>();
+    descr.put("sources", sources);
+    descr.put("limit", limit);
+    if (after != null) {
+      descr.put(AFTER_JSON_KEY, after);
+    }
+    return descr;
+  }
+
+  /** Returns the indexed form of the values of a combination, from the <code>val</code> of a bucket */
+  @SuppressWarnings({"rawtypes"})
+  BytesRef[] toIndexedKey(Object val) {
+    BytesRef[] key = new BytesRef[sourceFields.length];
+    for (int i = 0; i < sourceFields.length; i++) {
+      Object v = val instanceof NamedList ? ((NamedList) val).get(sources.get(i)) : ((Map) val).get(sources.get(i));
+      BytesRefBuilder indexed = new BytesRefBuilder();
+      sourceFields[i].getType().readableToIndexed(v.toString(), indexed);
+      key[i] = indexed.get();
+    }
+    return key;
+  }
+
+  /** orders combinations by their indexed values, like the ordinals they are collected by */
+  static final Comparator<BytesRef[]> KEY_ORDER = (k1, k2) -> {
+    for (int i = 0; i < k1.length; i++) {
+      int c = k1[i].compareTo(k2[i]);
+      if (c != 0) return c;
+    }
+    return 0;
+  };
+
+  static class Parser extends FacetParser<FacetComposite> {
+    @SuppressWarnings({"rawtypes"})
+    Parser(FacetParser parent, String key) {
+      super(parent, key);
+      facet = new FacetComposite();
+    }
+
+    public FacetComposite parse(Object arg) throws SyntaxError {
+      parseCommonParams(arg);
+
+      if (!(arg instanceof Map)) {
+        throw err("Missing composite facet arguments");
+      }
+
+      @SuppressWarnings({"unchecked"})
+      Map<String, Object> m = (Map<String, Object>) arg;
+
+      facet.sources = getStringList(m, "sources");
+      if (facet.sources == null || facet.sources.isEmpty()) {
+        throw err("Missing required parameter: 'sources'");
+      }
+      facet.sourceFields = new SchemaField[facet.sources.size()];
+      for (int i = 0; i < facet.sourceFields.length; i++) {
+        SchemaField sf = getSchema().getField(facet.sources.get(i));
+        if (sf.getType().getNumberType() != null || sf.getType().isPointField()
+            || !(sf.hasDocValues() || (sf.indexed() && sf.isUninvertible()))) {
+          throw err("composite facet sources must be string fields with docValues or uninvertible, but got " + sf.getName());
+        }
+        facet.sourceFields[i] = sf;
+      }
+
+      facet.limit = getLong(m, "limit", facet.limit);
+      if (facet.limit <= 0 || facet.limit > Integer.MAX_VALUE) {
+        throw err("composite facet limit must be positive, but got " + facet.limit);
+      }
+
+      Object after = m.get(AFTER_JSON_KEY);
+      if (after != null) {
+        if (!(after instanceof Map)) {
+          throw err("Expected a map of the values of the sources for '" + AFTER_JSON_KEY + "', received " + after);
+        }
+        @SuppressWarnings({"unchecked"})
+        Map<String, Object> afterMap = (Map<String, Object>) after;
+        for (String source : facet.sources) {
+          if (afterMap.get(source) == null) {
+            throw err("Missing value of source '" + source + "' in '" + AFTER_JSON_KEY + "'");
+          }
+        }
+        facet.after = afterMap;
+      }
+
+      Object facetObj = m.get("facet");
+      parseSubs(facetObj);
+
+      return facet;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/**
+ * Merges the pages of a {@link FacetComposite}.  Only the first <code>limit</code> combinations are kept, since a
+ * combination that isn't in them can't get back in when more shards are merged.
+ */
+public class FacetCompositeMerger extends FacetModule.FacetBucketMerger<FacetComposite> {
+  /** the merged buckets, with the values of their combination */
+  private final TreeMap<BytesRef[], Map.Entry<Object, FacetBucket>> buckets = new TreeMap<>(FacetComposite.KEY_ORDER);
+
+  public FacetCompositeMerger(FacetComposite freq) {
+    super(freq);
+  }
+
+  @Override
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void merge(Object facetResult, Context mcontext) {
+    List<SimpleOrderedMap> bucketList = (List<SimpleOrderedMap>) ((SimpleOrderedMap) facetResult).get("buckets");
+    if (bucketList == null) return;
+    for (SimpleOrderedMap bucketRes : bucketList) {
+      Object val = bucketRes.get("val");
+      BytesRef[] key = freq.toIndexedKey(val);
+      Map.Entry<Object, FacetBucket> bucket = buckets.get(key);
+      if (bucket == null) {
+        if (buckets.size() == freq.limit && FacetComposite.KEY_ORDER.compare(key, buckets.lastKey()) > 0) {
+          continue;
+        }
+        bucket = Map.entry(val, newBucket(null, mcontext));
+        buckets.put(key, bucket);
+        if (buckets.size() > freq.limit) {
+          buckets.pollLastEntry();
+        }
+      }
+      bucket.getValue().mergeBucket(bucketRes, mcontext);
+    }
+  }
+
+  @Override
+  public void finish(Context mcontext) {
+    // nothing to do
+  }
+
+  @Override
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public Object getMergedResult() {
+    SimpleOrderedMap result = new SimpleOrderedMap(2);
+    List<SimpleOrderedMap> resultBuckets = new ArrayList<>(buckets.size());
+    Object lastVal = null;
+    for (Map.Entry<Object, FacetBucket> bucket : buckets.values()) {
+      SimpleOrderedMap out = new SimpleOrderedMap();
+      out.add("val", bucket.getKey());
+      out.addAll(bucket.getValue().getMergedBucket());
+      resultBuckets.add(out);
+      lastVal = bucket.getKey();
+    }
+    result.add("buckets", resultBuckets);
+    if (buckets.size() == freq.limit) {
+      result.add(FacetComposite.AFTER_JSON_KEY, lastVal);
+    }
+    return result;
+  }
+}
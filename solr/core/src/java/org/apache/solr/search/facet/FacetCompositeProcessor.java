@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.LongValues;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocIterator;
+
+/**
+ * Computes a page of a {@link FacetComposite}.  The combinations of the global ordinals of the values of the sources
+ * are collected in a sorted map that never holds more than <code>limit</code> of them: once it is full, a combination
+ * is only added if it is lower than the last one, which is then dropped.  The stats of the page are collected in a
+ * second pass over the domain, when there are any.
+ */
+class FacetCompositeProcessor extends FacetProcessor<FacetComposite> {
+  /** orders combinations of global ordinals, which is the order of their values */
+  private static final Comparator<long[]> KEY_ORDER = (k1, k2) -> Arrays.compare(k1, k2);
+
+  final int numSources;
+  final boolean[] multiValued;
+  /** the top level values of each source, and the mapping of the ordinals of each segment to their ordinals */
+  final SortedSetDocValues[] topValues;
+  final OrdinalMap[] ordinalMaps;
+  /**
+   * Twice the ordinal of each value of the after key, or twice the ordinal of the next value minus one if the value
+   * isn't in the index, so that combinations can be compared to the after key by twice their ordinals.
+   */
+  long[] afterKey;
+
+  FacetCompositeProcessor(FacetContext fcontext, FacetComposite freq) {
+    super(fcontext, freq);
+    numSources = freq.sourceFields.length;
+    multiValued = new boolean[numSources];
+    topValues = new SortedSetDocValues[numSources];
+    ordinalMaps = new OrdinalMap[numSources];
+  }
+
+  @Override
+  public void process() throws IOException {
+    super.process();
+    response = getPage();
+  }
+
+  private SimpleOrderedMap<Object> getPage() throws IOException {
+    final SimpleOrderedMap<Object> res = new SimpleOrderedMap<>();
+    final List<SimpleOrderedMap<Object>> buckets = new ArrayList<>();
+    res.add("buckets", buckets);
+
+    initValues();
+    final TreeMap<long[], long[]> page = countPage();
+    final int numBuckets = page.size();
+    final long[][] keys = page.keySet().toArray(new long[numBuckets][]);
+
+    createAccs(fcontext.base.size(), numBuckets);
+    int slot = 0;
+    for (long[] count : page.values()) {
+      countAcc.incrementCount(slot++, count[0]);
+    }
+    if (accs.length > 0 && numBuckets > 0) {
+      collectStats(keys);
+    }
+
+    final boolean hasSubFacets = !freq.getSubFacets().isEmpty();
+    for (slot = 0; slot < numBuckets; slot++) {
+      SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<>();
+      buckets.add(bucket);
+      bucket.add("val", getVal(keys[slot]));
+      addStats(bucket, slot);
+      if (hasSubFacets) {
+        Query filter = getBucketQuery(keys[slot]);
+        processSubs(bucket, filter, fcontext.searcher.getDocSet(filter, fcontext.base), false, null);
+      }
+    }
+    if (numBuckets == freq.limit) {
+      res.add(FacetComposite.AFTER_JSON_KEY, getVal(keys[numBuckets - 1]));
+    }
+    return res;
+  }
+
+  private void initValues() throws IOException {
+    for (int i = 0; i < numSources; i++) {
+      SchemaField sf = freq.sourceFields[i];
+      multiValued[i] = sf.multiValued() || sf.getType().multiValuedFieldCache();
+      if (multiValued[i]) {
+        topValues[i] = FieldUtil.getSortedSetDocValues(fcontext.qcontext, sf, null);
+        if (topValues[i] instanceof MultiDocValues.MultiSortedSetDocValues) {
+          ordinalMaps[i] = ((MultiDocValues.MultiSortedSetDocValues) topValues[i]).mapping;
+        }
+      } else {
+        SortedDocValues single = FieldUtil.getSortedDocValues(fcontext.qcontext, sf, null);
+        topValues[i] = DocValues.singleton(single);
+        if (single instanceof MultiDocValues.MultiSortedDocValues) {
+          ordinalMaps[i] = ((MultiDocValues.MultiSortedDocValues) single).mapping;
+        }
+      }
+    }
+
+    if (freq.after != null) {
+      afterKey = new long[numSources];
+      BytesRefBuilder indexed = new BytesRefBuilder();
+      for (int i = 0; i < numSources; i++) {
+        FieldType ft = freq.sourceFields[i].getType();
+        ft.readableToIndexed(freq.after.get(freq.sources.get(i)).toString(), indexed);
+        long ord = topValues[i].lookupTerm(indexed.get());
+        afterKey[i] = ord >= 0 ? 2 * ord : 2 * (-ord - 1) - 1;
+      }
+    }
+  }
+
+  /** Returns the first <code>limit</code> combinations after the after key, with their counts */
+  private TreeMap<long[], long[]> countPage() throws IOException {
+    final TreeMap<long[], long[]> page = new TreeMap<>(KEY_ORDER);
+    final int limit = (int) freq.limit;
+    forEachCombination((segDoc, key) -> {
+      if (!isAfter(key)) return;
+      if (page.size() == limit && KEY_ORDER.compare(key, page.lastKey()) > 0) return;
+      long[] count = page.get(key);
+      if (count == null) {
+        count = new long[1];
+        page.put(key.clone(), count);
+        if (page.size() > limit) {
+          page.pollLastEntry();
+        }
+      }
+      count[0]++;
+    });
+    return page;
+  }
+
+  /** Collects the docs of each combination of the page to its slot */
+  private void collectStats(long[][] keys) throws IOException {
+    final TreeMap<long[], Integer> slots = new TreeMap<>(KEY_ORDER);
+    for (int slot = 0; slot < keys.length; slot++) {
+      slots.put(keys[slot], slot);
+    }
+    final long[] last = keys[keys.length - 1];
+    final IntFunction<SlotAcc.SlotContext> slotContext = slotNum -> {
+      try {
+        return new SlotAcc.SlotContext(getBucketQuery(keys[slotNum]));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+    forEachCombination(new CombinationCollector() {
+      @Override
+      public void setNextReader(LeafReaderContext ctx) throws IOException {
+        FacetCompositeProcessor.this.setNextReader(ctx);
+      }
+
+      @Override
+      public void collect(int segDoc, long[] key) throws IOException {
+        if (!isAfter(key) || KEY_ORDER.compare(key, last) > 0) return;
+        Integer slot = slots.get(key);
+        if (slot != null) {
+          FacetCompositeProcessor.this.collect(segDoc, slot, slotContext);
+        }
+      }
+    });
+  }
+
+  private boolean isAfter(long[] key) {
+    if (afterKey == null) return true;
+    for (int i = 0; i < numSources; i++) {
+      int c = Long.compare(2 * key[i], afterKey[i]);
+      if (c != 0) return c > 0;
+    }
+    return false;
+  }
+
+  private interface CombinationCollector {
+    default void setNextReader(LeafReaderContext ctx) throws IOException {
+    }
+
+    /** the key of global ordinals is reused for the next combination */
+    void collect(int segDoc, long[] key) throws IOException;
+  }
+
+  /** Passes each combination of the values of each doc of the domain to the collector */
+  private void forEachCombination(CombinationCollector collector) throws IOException {
+    final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+    final Iterator<LeafReaderContext> ctxIt = leaves.iterator();
+    final SortedSetDocValues[] values = new SortedSetDocValues[numSources];
+    final LongValues[] toGlobal = new LongValues[numSources];
+    final long[][] ords = new long[numSources][];
+    final int[] numOrds = new int[numSources];
+    final int[] upto = new int[numSources];
+    final long[] key = new long[numSources];
+    for (int i = 0; i < numSources; i++) {
+      ords[i] = new long[4];
+    }
+
+    LeafReaderContext ctx = null;
+    boolean hasValues = false;
+    int adjustedMax = 0;
+    for (DocIterator docsIt = fcontext.base.iterator(); docsIt.hasNext(); ) {
+      final int doc = docsIt.nextDoc();
+      if (doc >= adjustedMax) {
+        do {
+          ctx = ctxIt.next();
+          adjustedMax = ctx.docBase + ctx.reader().maxDoc();
+        } while (doc >= adjustedMax);
+        hasValues = setLeaf(ctx, values, toGlobal);
+        if (hasValues) {
+          collector.setNextReader(ctx);
+        }
+      }
+      if (!hasValues) continue;
+
+      // read the global ordinals of the values of each source, docs without a value in every source are skipped
+      final int segDoc = doc - ctx.docBase;
+      boolean complete = true;
+      for (int i = 0; i < numSources; i++) {
+        numOrds[i] = 0;
+        if (!values[i].advanceExact(segDoc)) {
+          complete = false;
+          break;
+        }
+        for (long ord = values[i].nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values[i].nextOrd()) {
+          ords[i] = ArrayUtil.grow(ords[i], numOrds[i] + 1);
+          ords[i][numOrds[i]++] = toGlobal[i] == null ? ord : toGlobal[i].get(ord);
+        }
+      }
+      if (!complete) continue;
+
+      // enumerate the cross product of the values, the last source varying the fastest
+      for (int i = 0; i < numSources; i++) {
+        upto[i] = 0;
+        key[i] = ords[i][0];
+      }
+      while (true) {
+        collector.collect(segDoc, key);
+        int i = numSources - 1;
+        while (i >= 0 && ++upto[i] == numOrds[i]) {
+          upto[i] = 0;
+          key[i] = ords[i][0];
+          i--;
+        }
+        if (i < 0) break;
+        key[i] = ords[i][upto[i]];
+      }
+    }
+  }
+
+  /** Sets the values of each source in the segment, and returns false if a source has none */
+  private boolean setLeaf(LeafReaderContext ctx, SortedSetDocValues[] values, LongValues[] toGlobal) throws IOException {
+    final LeafReader reader = ctx.reader();
+    for (int i = 0; i < numSources; i++) {
+      String field = freq.sourceFields[i].getName();
+      if (multiValued[i]) {
+        values[i] = reader.getSortedSetDocValues(field);
+      } else {
+        SortedDocValues single = reader.getSortedDocValues(field);
+        values[i] = single == null ? null : DocValues.singleton(single);
+      }
+      if (values[i] == null || values[i].getValueCount() < 1) {
+        return false;
+      }
+      toGlobal[i] = ordinalMaps[i] == null ? null : ordinalMaps[i].getGlobalOrds(ctx.ord);
+    }
+    return true;
+  }
+
+  /** Returns the values of a combination, by source */
+  private SimpleOrderedMap<Object> getVal(long[] key) throws IOException {
+    SimpleOrderedMap<Object> val = new SimpleOrderedMap<>(numSources);
+    for (int i = 0; i < numSources; i++) {
+      SchemaField sf = freq.sourceFields[i];
+      val.add(sf.getName(), sf.getType().toObject(sf, topValues[i].lookupOrd(key[i])));
+    }
+    return val;
+  }
+
+  /** Returns a query for the docs having each value of a combination */
+  private Query getBucketQuery(long[] key) throws IOException {
+    BooleanQuery.Builder builder = new BooleanQuery.Builder();
+    for (int i = 0; i < numSources; i++) {
+      SchemaField sf = freq.sourceFields[i];
+      String readable = sf.getType().indexedToReadable(topValues[i].lookupOrd(key[i]).utf8ToString());
+      builder.add(sf.getType().getFieldTermQuery(null, sf, readable), BooleanClause.Occur.FILTER);
+    }
+    return builder.build();
+  }
+}
@@ -41,6 +41,7 @@ public class FacetContext {
   boolean cache = true;
   int flags;
   FacetDebugInfo debugInfo;
+  MultiFieldSweep multiFieldSweep; // counts shared with sibling field facets, or null
 
   public void setDebugInfo(FacetDebugInfo debugInfo) {
     this.debugInfo = debugInfo;
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.request.NumericIntervalCounter;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SyntaxError;
+import org.apache.solr.util.DateMathParser;
+
+/**
+ * JSON Facet API request for a histogram of a date field, with one bucket per calendar interval (like
+ * <code>+1HOUR</code> or <code>+3MONTHS</code>) in a time zone.  Only the buckets that have documents are returned.
+ * <p>
+ * When no interval is given, the shards pick the finest interval of {@link #AUTO_INTERVALS} that covers the range of
+ * values in less than the requested number of buckets.  Each of these intervals is made of whole buckets of the finer
+ * ones, so the buckets of shards that picked different intervals are merged by rounding them to the coarsest one.
+ */
+public class FacetDateHistogram extends FacetRequestSorted {
+  static final String INTERVAL_JSON_KEY = "interval";
+  static final String REFINE_INTERVAL_JSON_KEY = "_interval";
+
+  /** the limit on the number of buckets a shard may compute */
+  static final int MAX_BUCKETS = 65536;
+
+  static final int DEFAULT_TARGET_BUCKETS = 10;
+
+  /** The intervals to pick from when none is given, from the finest to the coarsest, each made of whole buckets of the previous one */
+  static final List<Interval> AUTO_INTERVALS = Arrays.asList(
+      new Interval(1, ChronoUnit.SECONDS), new Interval(5, ChronoUnit.SECONDS),
+      new Interval(10, ChronoUnit.SECONDS), new Interval(30, ChronoUnit.SECONDS),
+      new Interval(1, ChronoUnit.MINUTES), new Interval(5, ChronoUnit.MINUTES),
+      new Interval(10, ChronoUnit.MINUTES), new Interval(30, ChronoUnit.MINUTES),
+      new Interval(1, ChronoUnit.HOURS), new Interval(3, ChronoUnit.HOURS), new Interval(12, ChronoUnit.HOURS),
+      new Interval(1, ChronoUnit.DAYS), new Interval(1, ChronoUnit.MONTHS), new Interval(3, ChronoUnit.MONTHS),
+      new Interval(1, ChronoUnit.YEARS), new Interval(5, ChronoUnit.YEARS), new Interval(10, ChronoUnit.YEARS),
+      new Interval(100, ChronoUnit.YEARS));
+
+  String field;
+  /** null for an automatic interval */
+  Interval interval;
+  int targetBuckets = DEFAULT_TARGET_BUCKETS;
+  /** optional bounds of the values to count, as milliseconds since the epoch, start inclusive and end exclusive */
+  Long start;
+  Long end;
+  ZoneId zone;
+
+  {
+    // defaults
+    mincount = 1;
+    limit = -1;
+  }
+
+  @Override
+  @SuppressWarnings({"rawtypes"})
+  public FacetProcessor createFacetProcessor(FacetContext fcontext) {
+    return new FacetDateHistogramProcessor(fcontext, this);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger(Object prototype) {
+    return new FacetDateHistogramMerger(this);
+  }
+
+  @Override
+  public Map<String, Object> getFacetDescription() {
+    Map<String, Object> descr = new HashMap<>();
+    descr.put("field", field);
+    descr.put("interval", interval == null ? "auto" : interval.toString());
+    descr.put("tz", zone.getId());
+    return descr;
+  }
+
+  /** Returns the interval to use for values from <code>min</code> to <code>max</code> */
+  Interval getInterval(long min, long max) {
+    if (interval != null) {
+      return interval;
+    }
+    for (Interval candidate : AUTO_INTERVALS) {
+      if (candidate.countBuckets(min, max, zone) <= targetBuckets) {
+        return candidate;
+      }
+    }
+    return AUTO_INTERVALS.get(AUTO_INTERVALS.size() - 1);
+  }
+
+  /**
+   * A calendar interval: a number of {@link ChronoUnit#MILLIS} to {@link ChronoUnit#YEARS}.  Buckets start on
+   * multiples of the interval in the local time of the zone, counted from the epoch for intervals of up to days, and
+   * from the start of the year (or of year 0) for months (or years), so a day starts at midnight in any zone, and
+   * <code>+3MONTHS</code> buckets start with each quarter.
+   */
+  static final class Interval {
+    final int count;
+    final ChronoUnit unit;
+
+    Interval(int count, ChronoUnit unit) {
+      this.count = count;
+      this.unit = unit;
+    }
+
+    /** Parses intervals like <code>+1DAY</code>, <code>15MINUTES</code> or <code>MONTH</code> */
+    static Interval parse(String str) {
+      String s = str.trim().toUpperCase(Locale.ROOT);
+      if (s.startsWith("+")) {
+        s = s.substring(1);
+      }
+      int i = 0;
+      while (i < s.length() && Character.isDigit(s.charAt(i))) {
+        i++;
+      }
+      ChronoUnit unit = DateMathParser.CALENDAR_UNITS.get(s.substring(i).trim());
+      int count;
+      try {
+        count = i == 0 ? 1 : Integer.parseInt(s.substring(0, i));
+      } catch (NumberFormatException e) {
+        count = 0;
+      }
+      if (unit == null || count <= 0) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            "Invalid date_histogram interval '" + str + "', expected a positive number of one of " + DateMathParser.CALENDAR_UNITS.keySet());
+      }
+      return new Interval(count, unit);
+    }
+
+    /** the nominal length, only used to compare intervals and to estimate numbers of buckets */
+    long nominalMillis() {
+      return count * unit.getDuration().toMillis();
+    }
+
+    /** Returns the start of the bucket holding the time */
+    long round(long millis, ZoneId zone) {
+      LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+      switch (unit) {
+        case YEARS:
+          return toMillis(LocalDate.of(Math.floorDiv(local.getYear(), count) * count, 1, 1), zone);
+        case MONTHS:
+          int months = Math.floorDiv(local.getYear() * 12 + local.getMonthValue() - 1, count) * count;
+          return toMillis(LocalDate.of(Math.floorDiv(months, 12), Math.floorMod(months, 12) + 1, 1), zone);
+        default:
+          long localMillis = local.toInstant(ZoneOffset.UTC).toEpochMilli();
+          long length = nominalMillis();
+          return toMillis(LocalDateTime.ofInstant(Instant.ofEpochMilli(Math.floorDiv(localMillis, length) * length), ZoneOffset.UTC), zone);
+      }
+    }
+
+    /** Returns the start of the bucket after the one starting at the given time */
+    long next(long bucketStart, ZoneId zone) {
+      LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(bucketStart), zone);
+      switch (unit) {
+        case YEARS:
+        case MONTHS:
+          return toMillis(local.toLocalDate().plus(count, unit), zone);
+        default:
+          return toMillis(local.plus(count, unit), zone);
+      }
+    }
+
+    /** Estimates the number of buckets from <code>min</code> to <code>max</code> */
+    long countBuckets(long min, long max, ZoneId zone) {
+      return (round(max, zone) - round(min, zone)) / nominalMillis() + 1;
+    }
+
+    private static long toMillis(LocalDate date, ZoneId zone) {
+      return date.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static long toMillis(LocalDateTime local, ZoneId zone) {
+      return local.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Interval)) return false;
+      Interval other = (Interval) o;
+      return count == other.count && unit == other.unit;
+    }
+
+    @Override
+    public int hashCode() {
+      return count * 31 + unit.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return "+" + count + unit.name();
+    }
+  }
+
+  static class Parser extends FacetParser<FacetDateHistogram> {
+    @SuppressWarnings({"rawtypes"})
+    Parser(FacetParser parent, String key) {
+      super(parent, key);
+      facet = new FacetDateHistogram();
+    }
+
+    public FacetDateHistogram parse(Object arg) throws SyntaxError {
+      parseCommonParams(arg);
+
+      if (!(arg instanceof Map)) {
+        throw err("Missing date_histogram facet arguments");
+      }
+
+      @SuppressWarnings({"unchecked"})
+      Map<String, Object> m = (Map<String, Object>) arg;
+
+      facet.field = getField(m);
+      SchemaField sf = getSchema().getField(facet.field);
+      if (sf.getType().getNumberType() != NumberType.DATE || !NumericIntervalCounter.supports(sf)) {
+        throw err("date_histogram facet needs a single-valued date field with docValues, but got " + facet.field);
+      }
+
+      String interval = getString(m, "interval", "auto");
+      facet.interval = "auto".equals(interval) ? null : Interval.parse(interval);
+      long targetBuckets = getLong(m, "buckets", DEFAULT_TARGET_BUCKETS);
+      if (targetBuckets <= 0 || targetBuckets > MAX_BUCKETS) {
+        throw err("date_histogram buckets must be between 1 and " + MAX_BUCKETS + ", but got " + targetBuckets);
+      }
+      facet.targetBuckets = (int) targetBuckets;
+      // buckets are always returned in order of their values, and all of them
+      for (String unsupported : new String[] {"sort", "limit", "offset"}) {
+        if (m.containsKey(unsupported)) {
+          throw err("date_histogram does not support " + unsupported + ", buckets are returned in order of their values");
+        }
+      }
+      facet.mincount = getLong(m, "mincount", facet.mincount);
+
+      String tz = getString(m, "tz", null);
+      if (tz != null) {
+        facet.zone = TimeZone.getTimeZone(tz).toZoneId();
+      } else {
+        SolrRequestInfo reqInfo = SolrRequestInfo.getRequestInfo();
+        TimeZone clientTz = reqInfo == null ? null : reqInfo.getClientTimeZone();
+        facet.zone = (clientTz == null ? DateMathParser.DEFAULT_MATH_TZ : clientTz).toZoneId();
+      }
+
+      Object start = getVal(m, "start", false);
+      Object end = getVal(m, "end", false);
+      DateMathParser dmp = new DateMathParser(TimeZone.getTimeZone(facet.zone));
+      facet.start = start == null ? null : parseDate(dmp, start);
+      facet.end = end == null ? null : parseDate(dmp, end);
+
+      Object facetObj = m.get("facet");
+      parseSubs(facetObj);
+
+      return facet;
+    }
+
+    private long parseDate(DateMathParser dmp, Object val) {
+      if (val instanceof Date) {
+        return ((Date) val).getTime();
+      }
+      try {
+        return dmp.parseMath(val.toString()).getTime();
+      } catch (java.text.ParseException e) {
+        throw err("Can't parse date_histogram bound '" + val + "': " + e.getMessage());
+      }
+    }
+  }
+}
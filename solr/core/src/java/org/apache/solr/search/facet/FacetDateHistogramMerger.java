@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/**
+ * Merges the buckets of a {@link FacetDateHistogram}.  Shards may have picked different automatic intervals for their
+ * own range of values, so their buckets are rounded to the coarsest interval of all shards (or to a coarser one, if the
+ * merged range needs more buckets than requested), and the shard results are merged again whenever it changes.
+ */
+public class FacetDateHistogramMerger extends FacetRequestSortedMerger<FacetDateHistogram> {
+  /** the interval of the merged buckets, null until a shard returned one */
+  FacetDateHistogram.Interval interval;
+  /** the shard results merged so far, with their shard numbers */
+  @SuppressWarnings({"rawtypes"})
+  private final List<SimpleOrderedMap> mergedResults = new ArrayList<>();
+  private final List<Integer> shardNums = new ArrayList<>();
+
+  public FacetDateHistogramMerger(FacetDateHistogram freq) {
+    super(freq);
+  }
+
+  @Override
+  public void merge(Object facetResult, Context mcontext) {
+    @SuppressWarnings({"rawtypes"})
+    SimpleOrderedMap res = (SimpleOrderedMap) facetResult;
+    mergedResults.add(res);
+    shardNums.add(mcontext.shardNum);
+
+    Object shardInterval = res.get(FacetDateHistogram.INTERVAL_JSON_KEY);
+    FacetDateHistogram.Interval coarsest = interval;
+    if (shardInterval != null) {
+      FacetDateHistogram.Interval parsed = FacetDateHistogram.Interval.parse(shardInterval.toString());
+      if (coarsest == null || parsed.nominalMillis() > coarsest.nominalMillis()) {
+        coarsest = parsed;
+      }
+    }
+
+    if (coarsest != interval) {
+      setInterval(coarsest, mcontext);
+    } else {
+      mergeResult(res, mcontext);
+    }
+    if (freq.interval == null) {
+      checkAutoInterval(mcontext);
+    }
+  }
+
+  /** Steps up the automatic intervals until the merged buckets span at most the requested number of buckets */
+  private void checkAutoInterval(Context mcontext) {
+    if (interval == null || buckets.size() <= 1) return;
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (Object val : buckets.keySet()) {
+      long millis = ((Date) val).getTime();
+      min = Math.min(min, millis);
+      max = Math.max(max, millis);
+    }
+    int idx = FacetDateHistogram.AUTO_INTERVALS.indexOf(interval);
+    FacetDateHistogram.Interval coarser = interval;
+    while (idx >= 0 && idx + 1 < FacetDateHistogram.AUTO_INTERVALS.size()
+        && coarser.countBuckets(min, max, freq.zone) > freq.targetBuckets) {
+      coarser = FacetDateHistogram.AUTO_INTERVALS.get(++idx);
+    }
+    if (coarser != interval) {
+      setInterval(coarser, mcontext);
+    }
+  }
+
+  /** Merges all of the shard results again, with buckets rounded to the new interval */
+  @SuppressWarnings({"rawtypes"})
+  private void setInterval(FacetDateHistogram.Interval newInterval, Context mcontext) {
+    interval = newInterval;
+    buckets = new LinkedHashMap<>();
+    sortedBuckets = null;
+    shardHasMoreBuckets = null;
+    final int shardNum = mcontext.shardNum;
+    try {
+      for (int i = 0; i < mergedResults.size(); i++) {
+        mcontext.shardNum = shardNums.get(i);
+        mergeResult(mergedResults.get(i), mcontext);
+      }
+    } finally {
+      mcontext.shardNum = shardNum;
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private void mergeResult(SimpleOrderedMap res, Context mcontext) {
+    super.merge(res, mcontext);
+    List<SimpleOrderedMap> bucketList = (List<SimpleOrderedMap>) res.get("buckets");
+    if (bucketList == null || bucketList.isEmpty()) return;
+    List<SimpleOrderedMap> rounded = new ArrayList<>(bucketList.size());
+    for (SimpleOrderedMap bucket : bucketList) {
+      long bucketStart = ((Date) bucket.get("val")).getTime();
+      long roundedStart = interval.round(bucketStart, freq.zone);
+      if (roundedStart != bucketStart) {
+        bucket = bucket.clone();
+        bucket.setVal(bucket.indexOf("val", 0), new Date(roundedStart));
+      }
+      rounded.add(bucket);
+    }
+    mergeBucketList(rounded, mcontext);
+  }
+
+  @Override
+  public void sortBuckets(final FacetRequest.FacetSort sort) {
+    sortedBuckets = new ArrayList<>(buckets.values());
+    sortedBuckets.sort((b1, b2) -> b1.bucketValue.compareTo(b2.bucketValue));
+  }
+
+  @Override
+  public void finish(Context mcontext) {
+    // nothing to do
+  }
+
+  @Override
+  Map<String, Object> getRefinementSpecial(Context mcontext, Map<String, Object> refinement, Collection<String> tagsWithPartial) {
+    if (refinement != null && interval != null) {
+      // the shard may have picked a finer interval than the one of the merged buckets
+      refinement.put(FacetDateHistogram.REFINE_INTERVAL_JSON_KEY, interval.toString());
+    }
+    return refinement;
+  }
+
+  @Override
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public Object getMergedResult() {
+    SimpleOrderedMap result = new SimpleOrderedMap(2);
+    // always sort again, since refinement may have added buckets
+    sortBuckets(freq.sort);
+    List<SimpleOrderedMap> resultBuckets = new ArrayList<>(sortedBuckets.size());
+    for (FacetBucket bucket : sortedBuckets) {
+      if (bucket.getCount() < freq.mincount) {
+        continue;
+      }
+      resultBuckets.add(bucket.getMergedBucket());
+    }
+    if (interval != null) {
+      result.add(FacetDateHistogram.INTERVAL_JSON_KEY, interval.toString());
+    }
+    result.add("buckets", resultBuckets);
+    return result;
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.request.NumericIntervalCounter;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.ExtendedQuery;
+import org.apache.solr.search.WrappedQuery;
+import org.apache.solr.util.DateMathParser;
+
+/**
+ * Computes a {@link FacetDateHistogram}: the bucket starts from the lowest to the highest value are computed by
+ * calendar rounding, and a single pass over the docValues of the field maps every value to its bucket.
+ */
+class FacetDateHistogramProcessor extends FacetProcessor<FacetDateHistogram> {
+  final SchemaField sf;
+  final long effectiveMincount;
+
+  /** the interval, and the start of each bucket followed by the end of the last one */
+  FacetDateHistogram.Interval interval;
+  long[] bucketStarts;
+
+  FacetDateHistogramProcessor(FacetContext fcontext, FacetDateHistogram freq) {
+    super(fcontext, freq);
+    sf = fcontext.searcher.getSchema().getField(freq.field);
+    // shards return all of their non-empty buckets, since a bucket can reach the mincount when merged
+    effectiveMincount = fcontext.isShard() ? 1 : Math.max(1, freq.mincount);
+  }
+
+  @Override
+  public void process() throws IOException {
+    super.process();
+
+    if (fcontext.facetInfo != null) { // refinement?
+      response = refineFacets();
+    } else {
+      response = getHistogram();
+    }
+  }
+
+  @SuppressWarnings({"rawtypes"})
+  private SimpleOrderedMap getHistogram() throws IOException {
+    final SimpleOrderedMap<Object> res = new SimpleOrderedMap<>();
+    final List<SimpleOrderedMap> buckets = new ArrayList<>();
+
+    long min = freq.start == null ? Long.MAX_VALUE : freq.start;
+    long max = freq.end == null ? Long.MIN_VALUE : freq.end - 1;
+    if (freq.start == null || freq.end == null) {
+      long[] minMax = getMinMax();
+      if (freq.start == null) min = minMax[0];
+      if (freq.end == null) max = minMax[1];
+    }
+    if (min > max) {
+      // no values
+      if (freq.interval != null) {
+        res.add(FacetDateHistogram.INTERVAL_JSON_KEY, freq.interval.toString());
+      }
+      res.add("buckets", buckets);
+      return res;
+    }
+
+    interval = freq.getInterval(min, max);
+    createBucketStarts(min, max);
+    final int numBuckets = bucketStarts.length - 1;
+    final boolean hasSubFacets = !freq.getSubFacets().isEmpty();
+
+    // every bucket is an interval of the counter, clipped to the values we count
+    final long[] starts = new long[numBuckets];
+    final long[] ends = new long[numBuckets];
+    for (int slot = 0; slot < numBuckets; slot++) {
+      starts[slot] = Math.max(bucketStarts[slot], min);
+      ends[slot] = Math.min(bucketStarts[slot + 1] - 1, max);
+    }
+
+    createAccs(fcontext.base.size(), numBuckets);
+    final NumericIntervalCounter counter = new NumericIntervalCounter(sf, starts, ends);
+    if (accs.length == 0) {
+      long[] counts = counter.count(fcontext.searcher, fcontext.base);
+      for (int slot = 0; slot < numBuckets; slot++) {
+        countAcc.incrementCount(slot, counts[slot]);
+      }
+    } else {
+      final IntFunction<SlotAcc.SlotContext> slotContext =
+          slotNum -> new SlotAcc.SlotContext(getRangeQuery(starts[slotNum], ends[slotNum]));
+      counter.collect(fcontext.searcher, fcontext.base, new NumericIntervalCounter.IntervalCollector() {
+        @Override
+        public void setNextReader(LeafReaderContext ctx) throws IOException {
+          FacetDateHistogramProcessor.this.setNextReader(ctx);
+        }
+
+        @Override
+        public void collect(int segDoc, int slot) throws IOException {
+          countAcc.incrementCount(slot, 1);
+          FacetDateHistogramProcessor.this.collect(segDoc, slot, slotContext);
+        }
+      });
+    }
+
+    res.add(FacetDateHistogram.INTERVAL_JSON_KEY, interval.toString());
+    res.add("buckets", buckets);
+    for (int slot = 0; slot < numBuckets; slot++) {
+      if (countAcc.getCount(slot) < effectiveMincount) continue;
+      SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<>();
+      buckets.add(bucket);
+      bucket.add("val", new Date(bucketStarts[slot]));
+      addStats(bucket, slot);
+      if (hasSubFacets) {
+        // only the non-empty buckets need a domain for their sub-facets
+        Query rangeQ = getRangeQuery(starts[slot], ends[slot]);
+        processSubs(bucket, rangeQ, fcontext.searcher.getDocSet(rangeQ, fcontext.base), false, null);
+      }
+    }
+    return res;
+  }
+
+  /** Returns the lowest and the highest values of the field in the base */
+  private long[] getMinMax() throws IOException {
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+    final Iterator<LeafReaderContext> ctxIt = leaves.iterator();
+    LeafReaderContext ctx = null;
+    NumericDocValues values = null;
+    int adjustedMax = 0;
+    for (DocIterator docsIt = fcontext.base.iterator(); docsIt.hasNext(); ) {
+      final int doc = docsIt.nextDoc();
+      if (doc >= adjustedMax) {
+        do {
+          ctx = ctxIt.next();
+          adjustedMax = ctx.docBase + ctx.reader().maxDoc();
+        } while (doc >= adjustedMax);
+        values = DocValues.getNumeric(ctx.reader(), sf.getName());
+      }
+      if (values.advanceExact(doc - ctx.docBase)) {
+        long value = values.longValue();
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+    }
+    return new long[] {min, max};
+  }
+
+  private void createBucketStarts(long min, long max) {
+    final List<Long> starts = new ArrayList<>();
+    long bucketStart = interval.round(min, freq.zone);
+    starts.add(bucketStart);
+    while (bucketStart <= max) {
+      if (starts.size() > FacetDateHistogram.MAX_BUCKETS) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            "date_histogram facet on " + freq.field + " with interval " + interval + " would need more than "
+                + FacetDateHistogram.MAX_BUCKETS + " buckets from " + Instant.ofEpochMilli(min) + " to " + Instant.ofEpochMilli(max));
+      }
+      bucketStart = interval.next(bucketStart, freq.zone);
+      starts.add(bucketStart);
+    }
+    bucketStarts = new long[starts.size()];
+    for (int i = 0; i < bucketStarts.length; i++) {
+      bucketStarts[i] = starts.get(i);
+    }
+  }
+
+  /** Returns a query for the values from <code>low</code> to <code>high</code>, both inclusive */
+  private Query getRangeQuery(long low, long high) {
+    final Query rangeQuery = sf.getType().getRangeQuery(null, sf,
+        Instant.ofEpochMilli(low).toString(), Instant.ofEpochMilli(high).toString(), true, true);
+    if (fcontext.cache) {
+      return rangeQuery;
+    } else if (rangeQuery instanceof ExtendedQuery) {
+      ((ExtendedQuery) rangeQuery).setCache(false);
+      return rangeQuery;
+    } else {
+      final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
+      wrappedQuery.setCache(false);
+      return wrappedQuery;
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private SimpleOrderedMap<Object> refineFacets() throws IOException {
+    // like range faceting, every shard returns all of its buckets, so only the "_s" skip buckets are refined
+    List<List> skip = FacetFieldProcessor.asList(fcontext.facetInfo.get("_s"));
+    assert 0 == FacetFieldProcessor.asList(fcontext.facetInfo.get("_l")).size();
+    assert 0 == FacetFieldProcessor.asList(fcontext.facetInfo.get("_p")).size();
+
+    // the merger may have rounded our buckets to a coarser interval
+    Object intervalStr = fcontext.facetInfo.get(FacetDateHistogram.REFINE_INTERVAL_JSON_KEY);
+    interval = intervalStr != null ? FacetDateHistogram.Interval.parse(intervalStr.toString()) : freq.interval;
+    if (interval == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Missing interval to refine date_histogram facet");
+    }
+
+    SimpleOrderedMap<Object> res = new SimpleOrderedMap<>();
+    List<SimpleOrderedMap> bucketList = new ArrayList<>(skip.size());
+    res.add(FacetDateHistogram.INTERVAL_JSON_KEY, interval.toString());
+    res.add("buckets", bucketList);
+
+    createAccs(-1, 1);
+
+    for (List bucketAndFacetInfo : skip) {
+      assert bucketAndFacetInfo.size() == 2;
+      Object bucketVal = bucketAndFacetInfo.get(0);
+      Map<String,Object> facetInfo = (Map<String, Object>) bucketAndFacetInfo.get(1);
+
+      // the bucket values are the ISO formatted bucket starts
+      final long bucketStart = bucketVal instanceof Date ? ((Date) bucketVal).getTime()
+          : DateMathParser.parseMath(null, bucketVal.toString()).getTime();
+      long low = bucketStart;
+      long high = interval.next(bucketStart, freq.zone) - 1;
+      if (freq.start != null) low = Math.max(low, freq.start);
+      if (freq.end != null) high = Math.min(high, freq.end - 1);
+
+      SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<>();
+      fillBucket(bucket, getRangeQuery(low, high), null, true, facetInfo);
+      bucket.add("val", new Date(bucketStart));
+      bucketList.add(bucket);
+    }
+
+    return res;
+  }
+}
@@ -37,6 +37,9 @@ public class FacetField extends FacetRequestSorted {
   // experimental - force perSeg collection when using dv method, currently for testing purposes only.
   Boolean perSeg;
 
+  // experimental - the number of threads counting segments when using dv method and only counts are collected
+  int threads = 1;
+
   {
     // defaults for FacetRequestSorted
     mincount = 1;
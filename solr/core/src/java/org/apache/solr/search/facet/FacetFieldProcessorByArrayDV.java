@@ -17,8 +17,16 @@
 package org.apache.solr.search.facet;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
@@ -26,23 +34,34 @@ import org.apache.lucene.index.MultiDocValues;
 import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongValues;
 import org.apache.lucene.util.UnicodeUtil;
+import org.apache.lucene.util.packed.PackedInts;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.Filter;
 import org.apache.solr.search.facet.SlotAcc.CountSlotAcc;
+import org.apache.solr.search.facet.SlotAcc.MergeableSlotAcc;
 import org.apache.solr.search.facet.SlotAcc.SweepCountAccStruct;
 import org.apache.solr.search.facet.SlotAcc.SweepingCountSlotAcc;
 import org.apache.solr.search.facet.SweepCountAware.SegCountGlobal;
 import org.apache.solr.search.facet.SweepCountAware.SegCountPerSeg;
 import org.apache.solr.uninverting.FieldCacheImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Grabs values from {@link DocValues}.
  */
 class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** The facet debug key that is set when the <code>threads</code> of a facet can't be used */
+  static final String THREADS_IGNORED_DEBUG_KEY = "threads_ignored";
+
   static boolean unwrap_singleValued_multiDv = true;  // only set to false for test coverage
 
   boolean multiValuedField;
@@ -125,8 +144,41 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
 
     if (freq.perSeg != null) accumSeg = canDoPerSeg && freq.perSeg;  // internal - override perSeg heuristic
 
-    final int maxSize = others.size() + 1; // others + base
     final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+
+    // Counting is the only per-document work when nothing else is collected, so segments can be counted on
+    // several threads into separate arrays that are added up afterwards, and their counts can be cached.
+    int numThreads = 1;
+    if (fcontext.req != null && freq.threads > 1) {
+      int maxThreads = fcontext.req.getCore().getCoreContainer().getFacetMaxThreads();
+      numThreads = Math.max(1, Math.min(Math.min(freq.threads, maxThreads), leaves.size()));
+    }
+    SegmentFacetCountCache countCache = fcontext.searcher.getCore().getFacetCountCache();
+    if (countOnly && others.isEmpty() && (numThreads > 1 || countCache != null)) {
+      collectCountsByLeaf(leaves, base, accumSeg, numThreads, countCache);
+      return;
+    }
+    if (numThreads > 1) {
+      // stats are collected on several threads too if each thread can collect them into a copy that is merged
+      if (others.isEmpty() && allBucketsAcc == null && isMergeable(collectAcc)) {
+        collectByLeaf(leaves, base, numThreads);
+        return;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("facet on {} is collected on one thread, threads={} only applies to counts and to sum, min and max of single-valued fields and functions",
+            sf.getName(), freq.threads);
+      }
+      FacetDebugInfo fdebug = fcontext.getDebugInfo();
+      if (fdebug != null) fdebug.putInfoItem(THREADS_IGNORED_DEBUG_KEY, freq.threads);
+    }
+
+    // Sibling facets sweeping over the same domains can share one traversal of them.
+    if (countOnly && fullRange && !others.isEmpty() && fcontext.multiFieldSweep != null
+        && fcontext.multiFieldSweep.addCounts(this, base, others)) {
+      return;
+    }
+
+    final int maxSize = others.size() + 1; // others + base
     final DocIdSetIterator[] subIterators = new DocIdSetIterator[maxSize];
     final CountSlotAcc[] activeCountAccs = new CountSlotAcc[maxSize];
 
@@ -204,6 +256,364 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     return si.lookupOrd(ord);
   }
 
+  /**
+   * Counts the leaves on up to <code>numThreads</code> threads, the request thread included.  Each thread takes the
+   * next leaf that nobody counts yet, biggest leaves first, and counts into its own array of slots.  The arrays are
+   * then added to the count acc of the base domain.
+   */
+  private void collectCountsByLeaf(List<LeafReaderContext> leaves, SweepCountAccStruct base, boolean accumSeg,
+                                   int numThreads, SegmentFacetCountCache countCache) throws IOException {
+    final Integer[] order = new Integer[leaves.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Integer.compare(leaves.get(b).reader().maxDoc(), leaves.get(a).reader().maxDoc()));
+    final AtomicInteger next = new AtomicInteger();
+
+    final Callable<int[]> countLeaves = () -> {
+      final int[] counts = new int[nTerms];
+      // large enough for the ords of any segment
+      final int[] segCounts = accumSeg || countCache != null ? new int[(int) si.getValueCount()] : null;
+      final Filter filter = base.docSet.getTopFilter();  // not shared, filters may keep state between leaves
+      int i;
+      while ((i = next.getAndIncrement()) < order.length) {
+        countLeaf(leaves.get(order[i]), order[i], filter, counts, segCounts, accumSeg, countCache);
+      }
+      return counts;
+    };
+
+    List<Future<int[]>> futures = new ArrayList<>(numThreads - 1);
+    if (numThreads > 1) {
+      ExecutorService executor = fcontext.req.getCore().getCoreContainer().getFacetExecutor();
+      try {
+        for (int t = 1; t < numThreads; t++) {
+          futures.add(executor.submit(countLeaves));
+        }
+      } catch (RejectedExecutionException e) {
+        // shutting down, the threads that got started and the request thread count all leaves anyway
+      }
+    }
+
+    int[] counts;
+    try {
+      counts = countLeaves.call();
+      for (Future<int[]> future : futures) {
+        if (future.cancel(false)) {
+          // still queued behind other requests, and there are no leaves left for it
+          continue;
+        }
+        int[] threadCounts = future.get();
+        for (int slot = 0; slot < counts.length; slot++) {
+          counts[slot] += threadCounts[slot];
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error counting facet " + sf.getName(), cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted counting facet " + sf.getName(), e);
+    } catch (Exception e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error counting facet " + sf.getName(), e);
+    } finally {
+      for (Future<int[]> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    for (int slot = 0; slot < counts.length; slot++) {
+      if (counts[slot] > 0) {
+        base.countAcc.incrementCount(slot, counts[slot]);
+      }
+    }
+  }
+
+  /** Returns true if the collect acc, and all the accs it is made of, can be collected by copies and merged */
+  private static boolean isMergeable(SlotAcc acc) {
+    if (acc instanceof MultiAcc) {
+      for (SlotAcc subAcc : ((MultiAcc) acc).subAccs) {
+        if (!(subAcc instanceof MergeableSlotAcc)) return false;
+      }
+      return true;
+    }
+    return acc instanceof MergeableSlotAcc;
+  }
+
+  /** Returns an empty copy of a mergeable collect acc for another thread to collect into */
+  private SlotAcc copyForThread(SlotAcc acc) {
+    if (acc instanceof MultiAcc) {
+      SlotAcc[] subAccs = ((MultiAcc) acc).subAccs;
+      SlotAcc[] copies = new SlotAcc[subAccs.length];
+      for (int i = 0; i < subAccs.length; i++) {
+        copies[i] = ((MergeableSlotAcc) subAccs[i]).copy();
+      }
+      return new MultiAcc(fcontext, copies);
+    }
+    return ((MergeableSlotAcc) acc).copy();
+  }
+
+  /** Merges the values of an acc from {@link #copyForThread} into the acc it was copied from */
+  private static void merge(SlotAcc acc, SlotAcc copy) {
+    if (acc instanceof MultiAcc) {
+      SlotAcc[] subAccs = ((MultiAcc) acc).subAccs;
+      for (int i = 0; i < subAccs.length; i++) {
+        ((MergeableSlotAcc) subAccs[i]).merge(((MultiAcc) copy).subAccs[i]);
+      }
+    } else {
+      ((MergeableSlotAcc) acc).merge(copy);
+    }
+  }
+
+  /** The counts and the copy of the collect acc of one thread of {@link #collectByLeaf} */
+  private static class LeafCollector {
+    final int[] counts;
+    final SlotAcc acc;
+
+    LeafCollector(int numSlots, SlotAcc acc) {
+      this.counts = new int[numSlots];
+      this.acc = acc;
+    }
+  }
+
+  /**
+   * Collects the leaves on up to <code>numThreads</code> threads like {@link #collectCountsByLeaf}, along with the
+   * stats of the collect acc.  The request thread collects into the collect acc, the other threads into copies of it,
+   * which are then merged into it.
+   */
+  private void collectByLeaf(List<LeafReaderContext> leaves, SweepCountAccStruct base, int numThreads)
+      throws IOException {
+    final Integer[] order = new Integer[leaves.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Integer.compare(leaves.get(b).reader().maxDoc(), leaves.get(a).reader().maxDoc()));
+    final AtomicInteger next = new AtomicInteger();
+
+    List<Future<LeafCollector>> futures = new ArrayList<>(numThreads - 1);
+    ExecutorService executor = fcontext.req.getCore().getCoreContainer().getFacetExecutor();
+    try {
+      for (int t = 1; t < numThreads; t++) {
+        final LeafCollector collector = new LeafCollector(nTerms, copyForThread(collectAcc));
+        futures.add(executor.submit(() -> collectLeaves(leaves, order, next, base, collector)));
+      }
+    } catch (RejectedExecutionException e) {
+      // shutting down, the threads that got started and the request thread collect all leaves anyway
+    }
+
+    LeafCollector collected;
+    try {
+      collected = collectLeaves(leaves, order, next, base, new LeafCollector(nTerms, collectAcc));
+      for (Future<LeafCollector> future : futures) {
+        if (future.cancel(false)) {
+          // still queued behind other requests, and there are no leaves left for it
+          continue;
+        }
+        LeafCollector threadCollected = future.get();
+        for (int slot = 0; slot < nTerms; slot++) {
+          collected.counts[slot] += threadCollected.counts[slot];
+        }
+        merge(collectAcc, threadCollected.acc);
+      }
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error collecting facet " + sf.getName(), cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted collecting facet " + sf.getName(), e);
+    } finally {
+      for (Future<LeafCollector> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    for (int slot = 0; slot < nTerms; slot++) {
+      if (collected.counts[slot] > 0) {
+        base.countAcc.incrementCount(slot, collected.counts[slot]);
+      }
+    }
+  }
+
+  /** Collects the leaves that no other thread collects yet into a collector of {@link #collectByLeaf} */
+  private LeafCollector collectLeaves(List<LeafReaderContext> leaves, Integer[] order, AtomicInteger next,
+                                      SweepCountAccStruct base, LeafCollector collector) throws IOException {
+    final Filter filter = base.docSet.getTopFilter();  // not shared, filters may keep state between leaves
+    int i;
+    while ((i = next.getAndIncrement()) < order.length) {
+      final int subIdx = order[i];
+      final LeafReaderContext subCtx = leaves.get(subIdx);
+      final DocIdSetIterator disi = iterator(filter, subCtx);
+      if (disi == null) continue;
+
+      SortedDocValues singleDv;
+      SortedSetDocValues multiDv = null;
+      if (multiValuedField) {
+        multiDv = subCtx.reader().getSortedSetDocValues(sf.getName());
+        if (multiDv == null) continue;
+        singleDv = DocValues.unwrapSingleton(multiDv);
+      } else {
+        singleDv = subCtx.reader().getSortedDocValues(sf.getName());
+        if (singleDv == null) continue;
+      }
+      // value sources may keep per-reader state in the shared query context
+      synchronized (fcontext.qcontext) {
+        collector.acc.setNextReader(subCtx);
+      }
+      final LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+
+      int doc;
+      while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (singleDv != null) {
+          if (singleDv.advanceExact(doc)) {
+            collectOrd(collector, doc, singleDv.ordValue(), toGlobal);
+          }
+        } else if (multiDv.advanceExact(doc)) {
+          for (;;) {
+            final int segOrd = (int) multiDv.nextOrd();
+            if (segOrd < 0) break;
+            collectOrd(collector, doc, segOrd, toGlobal);
+          }
+        }
+      }
+    }
+    return collector;
+  }
+
+  private void collectOrd(LeafCollector collector, int doc, int segOrd, LongValues toGlobal) throws IOException {
+    final int slot = (toGlobal == null ? segOrd : (int) toGlobal.get(segOrd)) - startTermIndex;
+    if (slot >= 0 && slot < nTerms) {
+      collector.counts[slot]++;
+      collector.acc.collect(doc, slot, slotContext);
+    }
+  }
+
+  /**
+   * Adds the counts of the docs of the domain in a leaf to their slots in <code>counts</code>.  If
+   * <code>perSeg</code> is true, counts by segment ord into <code>segCounts</code> first and maps each segment ord
+   * to its global ord once.  With a count cache, the counts by segment ord are looked up, or counted and cached.
+   */
+  private void countLeaf(LeafReaderContext subCtx, int subIdx, Filter filter, int[] counts, int[] segCounts,
+                         boolean perSeg, SegmentFacetCountCache countCache) throws IOException {
+    DocIdSetIterator disi = iterator(filter, subCtx);
+    if (disi == null) {
+      return;
+    }
+
+    SortedDocValues singleDv = null;
+    SortedSetDocValues multiDv = null;
+    if (multiValuedField) {
+      multiDv = subCtx.reader().getSortedSetDocValues(sf.getName());
+      if (multiDv == null || multiDv.getValueCount() < 1) {
+        return;
+      }
+      if (unwrap_singleValued_multiDv) {
+        singleDv = DocValues.unwrapSingleton(multiDv);
+      }
+    } else {
+      singleDv = subCtx.reader().getSortedDocValues(sf.getName());
+      if (singleDv == null || singleDv.getValueCount() < 1) {
+        return;
+      }
+    }
+
+    final LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+    final int segMax = singleDv != null ? singleDv.getValueCount() : (int) multiDv.getValueCount();
+
+    if (countCache != null) {
+      SegmentFacetCountCache.Key key = countCache.key(sf.getName(), subCtx.reader(), disi);
+      // a domain with few docs per value is counted quicker than the cached counts are added up
+      if (key != null && key.size * (multiValuedField ? 4L : 2L) > segMax) {
+        PackedInts.Reader cached = countCache.get(key, iterator(filter, subCtx));
+        if (cached == null) {
+          Arrays.fill(segCounts, 0, segMax, 0);
+          countSegOrds(iterator(filter, subCtx), singleDv, multiDv, segCounts);
+          cached = countCache.put(key, subCtx.reader(), iterator(filter, subCtx), segCounts, segMax);
+        }
+        for (int segOrd = 0; segOrd < segMax; segOrd++) {
+          final int count = (int) cached.get(segOrd);
+          if (count > 0) {
+            addCount(counts, toGlobal, segOrd, count);
+          }
+        }
+        return;
+      }
+      disi = iterator(filter, subCtx);
+    }
+
+    if (perSeg && toGlobal != null) {
+      Arrays.fill(segCounts, 0, segMax, 0);
+      countSegOrds(disi, singleDv, multiDv, segCounts);
+      for (int segOrd = 0; segOrd < segMax; segOrd++) {
+        if (segCounts[segOrd] > 0) {
+          addCount(counts, toGlobal, segOrd, segCounts[segOrd]);
+        }
+      }
+      return;
+    }
+
+    int doc;
+    if (singleDv != null) {
+      while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (singleDv.advanceExact(doc)) {
+          addCount(counts, toGlobal, singleDv.ordValue(), 1);
+        }
+      }
+    } else {
+      while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (multiDv.advanceExact(doc)) {
+          for (;;) {
+            final int segOrd = (int) multiDv.nextOrd();
+            if (segOrd < 0) break;
+            addCount(counts, toGlobal, segOrd, 1);
+          }
+        }
+      }
+    }
+  }
+
+  private static DocIdSetIterator iterator(Filter filter, LeafReaderContext subCtx) throws IOException {
+    final DocIdSet docIdSet = filter.getDocIdSet(subCtx, null);
+    return docIdSet == null ? null : docIdSet.iterator();
+  }
+
+  /** Counts the values of the docs by segment ord */
+  private static void countSegOrds(DocIdSetIterator disi, SortedDocValues singleDv, SortedSetDocValues multiDv,
+                                   int[] segCounts) throws IOException {
+    int doc;
+    if (singleDv != null) {
+      while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (singleDv.advanceExact(doc)) {
+          segCounts[singleDv.ordValue()]++;
+        }
+      }
+    } else {
+      while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (multiDv.advanceExact(doc)) {
+          for (;;) {
+            final int segOrd = (int) multiDv.nextOrd();
+            if (segOrd < 0) break;
+            segCounts[segOrd]++;
+          }
+        }
+      }
+    }
+  }
+
+  /** Adds to the slot of a segment ord, if its global ord is in the range of this facet */
+  private void addCount(int[] counts, LongValues toGlobal, int segOrd, int count) {
+    final int slot = (toGlobal == null ? segOrd : (int) toGlobal.get(segOrd)) - startTermIndex;
+    if (slot >= 0 && slot < nTerms) {
+      counts[slot] += count;
+    }
+  }
+
   private void collectPerSeg(SortedDocValues singleDv, SweepDISI disi, LongValues toGlobal) throws IOException {
     int segMax = singleDv.getValueCount();
     final SegCountPerSeg segCounter = getSegCountPerSeg(disi, segMax);
@@ -24,8 +24,6 @@ import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
 
-import static org.apache.solr.search.facet.FacetRequest.RefineMethod.SIMPLE;
-
 
 public abstract class FacetMerger {
   public abstract void merge(Object facetResult, Context mcontext);
@@ -100,7 +98,7 @@ public abstract class FacetMerger {
 
       for (Map.Entry<String,FacetRequest> entry : freq.subFacets.entrySet()) {
         Collection<String> childSubs = getSubsWithRefinement(entry.getValue());
-        if (childSubs.size() > 0 || entry.getValue().getRefineMethod() == SIMPLE) {
+        if (childSubs.size() > 0 || entry.getValue().doRefine()) {
           if (subs == null) {
             subs = new ArrayList<>(freq.getSubFacets().size());
           }
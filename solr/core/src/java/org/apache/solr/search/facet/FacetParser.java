@@ -146,6 +146,10 @@ abstract class FacetParser<FacetRequestT extends FacetRequest> {
         return new FacetRangeParser(this, key).parse(args);
       case "heatmap":
         return new FacetHeatmap.Parser(this, key).parse(args);
+      case "date_histogram":
+        return new FacetDateHistogram.Parser(this, key).parse(args);
+      case "composite":
+        return new FacetComposite.Parser(this, key).parse(args);
       case "func":
         return parseStat(key, args);
     }
@@ -551,6 +555,7 @@ abstract class FacetParser<FacetRequestT extends FacetRequest> {
         facet.refine = FacetRequest.RefineMethod.fromObj(m.get("refine"));
 
         facet.perSeg = getBooleanOrNull(m, "perSeg");
+        facet.threads = (int) getLong(m, "threads", facet.threads);
 
         // facet.sort may depend on a facet stat...
         // should we be parsing / validating this here, or in the execution environment?
@@ -19,6 +19,7 @@ package org.apache.solr.search.facet;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -444,6 +445,10 @@ public abstract class FacetProcessor<FacetRequestT extends FacetRequest>  {
 
     boolean emptyDomain = domain == null || domain.size() == 0;
 
+    // sibling field facets computing the same relatedness() can collect their counts together, except when refining
+    Map<String,MultiFieldSweep> sweeps = emptyDomain || facetInfo != null
+        ? Collections.emptyMap() : MultiFieldSweep.forSubFacets(fcontext, freq.getSubFacets());
+
     for (Map.Entry<String,FacetRequest> sub : freq.getSubFacets().entrySet()) {
       FacetRequest subRequest = sub.getValue();
 
@@ -466,6 +471,7 @@ public abstract class FacetProcessor<FacetRequestT extends FacetRequest>  {
       // make a new context for each sub-facet since they can change the domain
       FacetContext subContext = fcontext.sub(filter, domain);
       subContext.facetInfo = facetInfoSub;
+      subContext.multiFieldSweep = sweeps.get(sub.getKey());
       if (!skip) subContext.flags &= ~FacetContext.SKIP_FACET;  // turn off the skip flag if we're not skipping this bucket
 
       if (fcontext.getDebugInfo() != null) {   // if fcontext.debugInfo != null, it means rb.debug() == true
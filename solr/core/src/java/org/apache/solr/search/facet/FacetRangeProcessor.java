@@ -18,11 +18,13 @@
 package org.apache.solr.search.facet;
 
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.FacetParams;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.request.NumericIntervalCounter;
 import org.apache.solr.schema.*;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.ExtendedQuery;
@@ -32,6 +34,7 @@ import org.apache.solr.util.DateMathParser;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.IntFunction;
 
 import static org.apache.solr.search.facet.FacetContext.SKIP_FACET;
 
@@ -486,12 +489,16 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
 
     createAccs(fcontext.base.size(), slotCount);
 
-    for (int idx = 0; idx<rangeList.size(); idx++) {
-      rangeStats(rangeList.get(idx), idx, hasSubFacets);
-    }
+    if (!hasSubFacets && !freq.processEmpty && NumericIntervalCounter.supports(sf)) {
+      rangeStatsByDocValues();
+    } else {
+      for (int idx = 0; idx<rangeList.size(); idx++) {
+        rangeStats(rangeList.get(idx), idx, hasSubFacets);
+      }
 
-    for (int idx = 0; idx<otherList.size(); idx++) {
-      rangeStats(otherList.get(idx), rangeList.size() + idx, hasSubFacets);
+      for (int idx = 0; idx<otherList.size(); idx++) {
+        rangeStats(otherList.get(idx), rangeList.size() + idx, hasSubFacets);
+      }
     }
 
 
@@ -525,23 +532,89 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
     return res;
   }
 
+  /**
+   * Collects all the ranges, including the "other" ones, with a single pass over the docValues of the field, instead
+   * of intersecting the base with a range query per range.  Each value is mapped to its range arithmetically when the
+   * ranges have a fixed gap, which makes it much cheaper to have many small ranges.
+   */
+  private void rangeStatsByDocValues() throws IOException {
+    final List<Range> ranges = new ArrayList<>(rangeList.size() + otherList.size());
+    ranges.addAll(rangeList);
+    ranges.addAll(otherList);
+
+    final NumberType numberType = sf.getType().getNumberType();
+    final long[] starts = new long[ranges.size()];
+    final long[] ends = new long[ranges.size()];
+    for (int slot = 0; slot < ranges.size(); slot++) {
+      Range range = ranges.get(slot);
+      long low = range.low == null ? Long.MIN_VALUE : NumericIntervalCounter.toSortableLong(numberType, range.low);
+      long high = range.high == null ? Long.MAX_VALUE : NumericIntervalCounter.toSortableLong(numberType, range.high);
+      if (range.low != null && !range.includeLower) {
+        if (low == Long.MAX_VALUE) {
+          high = Long.MIN_VALUE; // empty
+        } else {
+          low++;
+        }
+      }
+      if (range.high != null && !range.includeUpper) {
+        if (high == Long.MIN_VALUE) {
+          low = Long.MAX_VALUE; // empty
+        } else {
+          high--;
+        }
+      }
+      starts[slot] = low;
+      ends[slot] = high;
+    }
+
+    final NumericIntervalCounter counter = new NumericIntervalCounter(sf, starts, ends);
+    if (accs.length == 0) {
+      long[] counts = counter.count(fcontext.searcher, fcontext.base);
+      for (int slot = 0; slot < counts.length; slot++) {
+        countAcc.incrementCount(slot, counts[slot]);
+      }
+      return;
+    }
+
+    final Query[] rangeQueries = new Query[ranges.size()];
+    final IntFunction<SlotAcc.SlotContext> slotContext = slotNum -> {
+      if (rangeQueries[slotNum] == null) {
+        rangeQueries[slotNum] = getRangeQuery(ranges.get(slotNum));
+      }
+      return new SlotAcc.SlotContext(rangeQueries[slotNum]);
+    };
+    counter.collect(fcontext.searcher, fcontext.base, new NumericIntervalCounter.IntervalCollector() {
+      @Override
+      public void setNextReader(LeafReaderContext ctx) throws IOException {
+        FacetRangeProcessor.this.setNextReader(ctx);
+      }
+
+      @Override
+      public void collect(int segDoc, int slot) throws IOException {
+        countAcc.incrementCount(slot, 1);
+        FacetRangeProcessor.this.collect(segDoc, slot, slotContext);
+      }
+    });
+  }
+
+  private Query getRangeQuery(Range range) {
+    final Query rangeQuery = sf.getType().getRangeQuery(null, sf, range.low == null ? null : calc.formatValue(range.low), range.high==null ? null : calc.formatValue(range.high), range.includeLower, range.includeUpper);
+    if (fcontext.cache) {
+      return rangeQuery;
+    } else if (rangeQuery instanceof ExtendedQuery) {
+      ((ExtendedQuery) rangeQuery).setCache(false);
+      return rangeQuery;
+    } else {
+      final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
+      wrappedQuery.setCache(false);
+      return wrappedQuery;
+    }
+  }
+
   private Query[] filters;
   private DocSet[] intersections;
   private void rangeStats(Range range, int slot, boolean hasSubFacets) throws IOException {
-    final Query rangeQ;
-    {
-      final Query rangeQuery = sf.getType().getRangeQuery(null, sf, range.low == null ? null : calc.formatValue(range.low), range.high==null ? null : calc.formatValue(range.high), range.includeLower, range.includeUpper);
-      if (fcontext.cache) {
-        rangeQ = rangeQuery;
-      } else if (rangeQuery instanceof ExtendedQuery) {
-        ((ExtendedQuery) rangeQuery).setCache(false);
-        rangeQ = rangeQuery;
-      } else {
-        final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
-        wrappedQuery.setCache(false);
-        rangeQ = wrappedQuery;
-      }
-    }
+    final Query rangeQ = getRangeQuery(range);
     // TODO: specialize count only
     DocSet intersection = fcontext.searcher.getDocSet(rangeQ, fcontext.base);
     if (hasSubFacets) {
@@ -111,7 +111,12 @@ public abstract class FacetRequest {
 
   public static enum RefineMethod {
     NONE,
-    SIMPLE;
+    SIMPLE,
+    /**
+     * Like {@link #SIMPLE}, but for facets sorted by count desc, the buckets to refine are those whose count could
+     * still reach the top buckets, given the count of the last bucket of each shard.
+     */
+    BOUNDED;
     // NONE is distinct from null since we may want to know if refinement was explicitly turned off.
     public static FacetRequest.RefineMethod fromObj(Object method) {
       if (method == null) return null;
@@ -120,6 +125,8 @@ public abstract class FacetRequest {
       }
       if ("simple".equals(method)) {
         return SIMPLE;
+      } else if ("bounded".equals(method)) {
+        return BOUNDED;
       } else if ("none".equals(method)) {
         return NONE;
       } else {
@@ -44,13 +44,20 @@ abstract class FacetRequestSorted extends FacetRequest {
    * (after refinement)
    */
   FacetSort prelim_sort;
-  RefineMethod refine; // null, NONE, or SIMPLE
+  RefineMethod refine; // null, NONE, SIMPLE, or BOUNDED
 
   @Override
   public RefineMethod getRefineMethod() {
     return refine;
   }
 
+  /** Returns true if the buckets to refine are chosen by the bounds of their counts, which needs a sort by count desc */
+  boolean isBoundedRefinement() {
+    FacetSort initialSort = prelim_sort == null ? sort : prelim_sort;
+    return refine == RefineMethod.BOUNDED && limit >= 0 && initialSort != null
+        && "count".equals(initialSort.sortVariable) && initialSort.sortDirection == SortDirection.desc;
+  }
+
   @Override
   public boolean returnsPartial() {
     return super.returnsPartial() || (limit > 0);
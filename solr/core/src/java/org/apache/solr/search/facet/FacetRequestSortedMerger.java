@@ -35,6 +35,10 @@ abstract class FacetRequestSortedMerger<FacetRequestT extends FacetRequestSorted
   LinkedHashMap<Object,FacetBucket> buckets = new LinkedHashMap<>();
   List<FacetBucket> sortedBuckets;
   BitSet shardHasMoreBuckets;  // null, or "true" if we saw a result from this shard and it indicated that there are more results
+  long[] shardMinCounts;  // null, or the count of the last bucket of each shard that has more buckets, for bounded refinement
+  BitSet shardResults;  // the shards we saw a result from, for bounded refinement
+  List<FacetBucket> boundedCandidates;  // null, or the buckets to refine, once chosen for bounded refinement
+  boolean boundedCandidatesChosen;
   Context mcontext;  // HACK: this should be passed in getMergedResult as well!
 
   public FacetRequestSortedMerger(FacetRequestT freq) {
@@ -54,6 +58,20 @@ abstract class FacetRequestSortedMerger<FacetRequestT extends FacetRequestSorted
       }
       shardHasMoreBuckets.set(mcontext.shardNum);
     }
+
+    if (freq.isBoundedRefinement()) {
+      if (shardMinCounts == null) {
+        shardMinCounts = new long[mcontext.numShards];
+        shardResults = new BitSet(mcontext.numShards);
+      }
+      shardResults.set(mcontext.shardNum);
+      @SuppressWarnings({"unchecked"})
+      List<SimpleOrderedMap<Object>> bucketList = (List<SimpleOrderedMap<Object>>) res.get("buckets");
+      if (more != null && more && bucketList != null && !bucketList.isEmpty()) {
+        // the shard returned its buckets by count desc, so the buckets it didn't return can't have a higher count
+        shardMinCounts[mcontext.shardNum] = ((Number) bucketList.get(bucketList.size() - 1).get("count")).longValue();
+      }
+    }
   }
 
   private static class SortVal implements Comparable<SortVal> {
@@ -245,7 +263,12 @@ abstract class FacetRequestSortedMerger<FacetRequestT extends FacetRequestSorted
     numBucketsToCheck = Math.min(buckets.size(), numBucketsToCheck);
 
     Collection<FacetBucket> bucketList;
-    if (buckets.size() < numBucketsToCheck) {
+    List<FacetBucket> candidates = getBoundedCandidates(mcontext, freq.offset + freq.limit,
+        freq.offset + freq.limit + (freq.overrefine >= 0 ? freq.overrefine : freq.offset + freq.limit));
+    if (candidates != null) {
+      bucketList = candidates;
+      numBucketsToCheck = candidates.size();
+    } else if (buckets.size() < numBucketsToCheck) {
       // no need to sort (yet)
       // todo: but we may need to filter.... simplify by always sorting?
       bucketList = buckets.values();
@@ -314,6 +337,69 @@ abstract class FacetRequestSortedMerger<FacetRequestT extends FacetRequestSorted
     return refinement;
   }
 
+  /**
+   * For bounded refinement, returns the buckets whose count could still be among the top <code>numTop</code>.
+   * A bucket's count is at least the sum of the counts that shards returned for it, and at most that plus the count
+   * of the last bucket of each shard that has more buckets but didn't return it.  A bucket whose highest possible
+   * count is lower than the lowest count of the top buckets, or than the mincount, doesn't need refining.
+   * <p>
+   * Returns null, so that the buckets to refine are chosen like with simple refinement, if the bounds aren't known for
+   * every shard, or if a bucket that no shard returned could reach the top buckets: refinement can only ask shards
+   * for buckets that some shard returned.  At most <code>maxCandidates</code> buckets are returned, those with the
+   * highest possible counts first; the top buckets are then exact only if there were no more candidates than that.
+   */
+  private List<FacetBucket> getBoundedCandidates(Context mcontext, long numTop, long maxCandidates) {
+    if (boundedCandidatesChosen || shardMinCounts == null) {
+      return boundedCandidates;
+    }
+    if (shardResults.cardinality() < mcontext.numShards || !freq.isBoundedRefinement()) {
+      return null;
+    }
+    boundedCandidatesChosen = true;
+
+    // the lowest count that is certain to be reached by numTop buckets
+    long[] counts = new long[buckets.size()];
+    int i = 0;
+    for (FacetBucket bucket : buckets.values()) {
+      counts[i++] = bucket.count;
+    }
+    Arrays.sort(counts);
+    long threshold = numTop <= 0 || numTop > counts.length ? 0 : counts[counts.length - (int) numTop];
+    threshold = Math.max(threshold, freq.mincount);
+
+    // the highest possible count of a bucket that no shard returned
+    long unseenMaxCount = 0;
+    for (int shard = 0; shard < mcontext.numShards; shard++) {
+      if (shardHasMoreBuckets != null && shardHasMoreBuckets.get(shard)) {
+        unseenMaxCount += shardMinCounts[shard];
+      }
+    }
+    if (unseenMaxCount > 0 && unseenMaxCount >= threshold) {
+      return null;
+    }
+
+    List<FacetBucket> candidates = new ArrayList<>();
+    Map<FacetBucket,Long> maxCounts = new HashMap<>();
+    for (FacetBucket bucket : buckets.values()) {
+      long maxCount = bucket.count;
+      for (int shard = 0; shard < mcontext.numShards; shard++) {
+        if (shardHasMoreBuckets != null && shardHasMoreBuckets.get(shard) && !mcontext.getShardFlag(bucket.bucketNumber, shard)) {
+          maxCount += shardMinCounts[shard];
+        }
+      }
+      if (maxCount >= threshold) {
+        candidates.add(bucket);
+        maxCounts.put(bucket, maxCount);
+      }
+    }
+    if (candidates.size() > maxCandidates) {
+      candidates.sort(Comparator.comparingLong((FacetBucket bucket) -> maxCounts.get(bucket)).reversed());
+      candidates = new ArrayList<>(candidates.subList(0, (int) maxCandidates));
+    }
+    boundedCandidates = candidates;
+    return candidates;
+  }
+
   // utility method for subclasses to override to finish calculating faceting (special buckets in field facets)... this feels hacky and we
   // should find a better way.
   Map<String,Object> getRefinementSpecial(Context mcontext, Map<String,Object> refinement, Collection<String> tagsWithPartial) {
@@ -39,13 +39,15 @@ public class HLLAgg extends StrAggValueSource {
   }
 
   // factory for the hyper-log-log algorithm.
+  // The sparse representation keeps the registers of small cardinalities in a map rather than in all 2^log2m of them,
+  // which matters with one HLL per bucket, and is also what is sent from the shards.
   // TODO: make stats component HllOptions inherit from this?
   public static class HLLFactory {
     int log2m = 13;
     int regwidth = 6;
     public HLL getHLL() {
       return new HLL(log2m, regwidth, -1 /* auto explict threshold */,
-          false /* no sparse representation */, HLLType.EMPTY);
+          true /* sparse representation */, HLLType.EMPTY);
     }
   }
 
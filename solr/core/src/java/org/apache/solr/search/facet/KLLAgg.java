@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.function.FieldNameValueSource;
+import org.apache.solr.util.KLLSketch;
+
+/**
+ * Percentiles estimated with a {@link KLLSketch} per bucket.  Unlike {@link PercentileAgg}, a sketch is a couple of
+ * primitive arrays that start small and never hold more than about <code>3k</code> values, and shards send their
+ * sketches as a single compact byte array, which makes it cheaper for percentiles of many buckets.
+ * <p>
+ * The accuracy is set by the <code>k</code> local param, 200 by default: the rank of each returned value is within
+ * about <code>1.33% * 200 / k</code> of the requested percentile, 99% of the time.
+ */
+public class KLLAgg extends SimpleAggValueSource {
+  public static final String NAME = "kll";
+
+  final List<Double> percentiles;
+  final int k;
+
+  public KLLAgg(ValueSource vs, List<Double> percentiles, int k) {
+    super(NAME, vs);
+    this.percentiles = percentiles;
+    this.k = k;
+  }
+
+  @Override
+  public SlotAcc createSlotAcc(FacetContext fcontext, long numDocs, int numSlots) throws IOException {
+    ValueSource vs = getArg();
+
+    if (vs instanceof FieldNameValueSource) {
+      String field = ((FieldNameValueSource) vs).getFieldName();
+      SchemaField sf = fcontext.qcontext.searcher().getSchema().getField(field);
+      if (sf.getType().getNumberType() == null) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            name() + " aggregation not supported for " + sf.getType().getTypeName());
+      }
+      if (sf.multiValued() || sf.getType().multiValuedFieldCache()) {
+        if (!sf.hasDocValues()) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+              name() + " aggregation not supported for multi-valued fields w/o docValues");
+        }
+        if (sf.getType().isPointField()) {
+          return new SortedNumericAcc(fcontext, sf, numSlots);
+        }
+        return new SortedSetAcc(fcontext, sf, numSlots);
+      }
+      vs = sf.getType().getValueSource(sf, null);
+    }
+    return new Acc(vs, fcontext, numSlots);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger(Object prototype) {
+    return new Merger();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof KLLAgg)) return false;
+    KLLAgg other = (KLLAgg) o;
+    return this.arg.equals(other.arg) && this.percentiles.equals(other.percentiles) && this.k == other.k;
+  }
+
+  @Override
+  public int hashCode() {
+    return (super.hashCode() * 31 + percentiles.hashCode()) * 31 + k;
+  }
+
+  protected Object getValueFromSketch(KLLSketch sketch) {
+    if (sketch == null) {
+      return null;
+    }
+
+    double[] fractions = new double[percentiles.size()];
+    for (int i = 0; i < fractions.length; i++) {
+      fractions[i] = percentiles.get(i) * 0.01;
+    }
+    double[] values = sketch.quantiles(fractions);
+    if (values.length == 1) {
+      return values[0];
+    }
+
+    List<Double> lst = new ArrayList<>(values.length);
+    for (double val : values) {
+      lst.add(val);
+    }
+    return lst;
+  }
+
+  /** The sketches of the slots, shared by the accumulators of the different kinds of fields */
+  class Sketches {
+    KLLSketch[] sketches;
+    double[] sortvals;
+
+    Sketches(int numSlots) {
+      sketches = new KLLSketch[numSlots];
+    }
+
+    KLLSketch get(int slot) {
+      KLLSketch sketch = sketches[slot];
+      if (sketch == null) {
+        sketches[slot] = sketch = new KLLSketch(k);
+      }
+      return sketch;
+    }
+
+    int compare(int slotA, int slotB) {
+      if (sortvals == null) {
+        sortvals = new double[sketches.length];
+        double sortp = percentiles.get(0) * 0.01;
+        for (int i = 0; i < sketches.length; i++) {
+          sortvals[i] = sketches[i] == null ? Double.NEGATIVE_INFINITY : sketches[i].quantile(sortp);
+        }
+      }
+      return Double.compare(sortvals[slotA], sortvals[slotB]);
+    }
+
+    Object getValue(FacetContext fcontext, int slot) {
+      KLLSketch sketch = sketches[slot];
+      if (fcontext.isShard()) {
+        return sketch == null ? null : sketch.toBytes();
+      }
+      if (sortvals != null && percentiles.size() == 1) {
+        // we've already calculated everything we need
+        return sketch != null ? sortvals[slot] : null;
+      }
+      return getValueFromSketch(sketch);
+    }
+
+    void reset() {
+      sketches = new KLLSketch[sketches.length];
+      sortvals = null;
+    }
+
+    void resize(SlotAcc.Resizer resizer) {
+      sketches = resizer.resize(sketches, null);
+    }
+  }
+
+  class Acc extends SlotAcc.FuncSlotAcc {
+    final Sketches sketches;
+
+    public Acc(ValueSource values, FacetContext fcontext, int numSlots) {
+      super(values, fcontext, numSlots);
+      sketches = new Sketches(numSlots);
+    }
+
+    @Override
+    public void collect(int doc, int slotNum, IntFunction<SlotContext> slotContext) throws IOException {
+      if (!values.exists(doc)) return;
+      sketches.get(slotNum).update(values.doubleVal(doc));
+    }
+
+    @Override
+    public int compare(int slotA, int slotB) {
+      return sketches.compare(slotA, slotB);
+    }
+
+    @Override
+    public Object getValue(int slotNum) throws IOException {
+      return sketches.getValue(fcontext, slotNum);
+    }
+
+    @Override
+    public void reset() {
+      sketches.reset();
+    }
+
+    @Override
+    public void resize(Resizer resizer) {
+      sketches.resize(resizer);
+    }
+  }
+
+  abstract class BaseDVAcc extends DocValuesAcc {
+    final Sketches sketches;
+
+    public BaseDVAcc(FacetContext fcontext, SchemaField sf, int numSlots) throws IOException {
+      super(fcontext, sf);
+      sketches = new Sketches(numSlots);
+    }
+
+    @Override
+    public int compare(int slotA, int slotB) {
+      return sketches.compare(slotA, slotB);
+    }
+
+    @Override
+    public Object getValue(int slotNum) throws IOException {
+      return sketches.getValue(fcontext, slotNum);
+    }
+
+    @Override
+    public void reset() {
+      sketches.reset();
+    }
+
+    @Override
+    public void resize(Resizer resizer) {
+      sketches.resize(resizer);
+    }
+  }
+
+  class SortedNumericAcc extends BaseDVAcc {
+    SortedNumericDocValues values;
+
+    public SortedNumericAcc(FacetContext fcontext, SchemaField sf, int numSlots) throws IOException {
+      super(fcontext, sf, numSlots);
+    }
+
+    @Override
+    protected void collectValues(int doc, int slot) throws IOException {
+      KLLSketch sketch = sketches.get(slot);
+      for (int i = 0, count = values.docValueCount(); i < count; i++) {
+        sketch.update(getDouble(values.nextValue()));
+      }
+    }
+
+    @Override
+    public void setNextReader(LeafReaderContext readerContext) throws IOException {
+      super.setNextReader(readerContext);
+      values = DocValues.getSortedNumeric(readerContext.reader(), sf.getName());
+    }
+
+    @Override
+    protected boolean advanceExact(int doc) throws IOException {
+      return values.advanceExact(doc);
+    }
+
+    /**
+     * converts given long value to double based on field type
+     */
+    protected double getDouble(long val) {
+      switch (sf.getType().getNumberType()) {
+        case INTEGER:
+        case LONG:
+        case DATE:
+          return val;
+        case FLOAT:
+          return NumericUtils.sortableIntToFloat((int) val);
+        case DOUBLE:
+          return NumericUtils.sortableLongToDouble(val);
+        default:
+          // this would never happen
+          return 0.0d;
+      }
+    }
+  }
+
+  class SortedSetAcc extends BaseDVAcc {
+    SortedSetDocValues values;
+
+    public SortedSetAcc(FacetContext fcontext, SchemaField sf, int numSlots) throws IOException {
+      super(fcontext, sf, numSlots);
+    }
+
+    @Override
+    protected void collectValues(int doc, int slot) throws IOException {
+      KLLSketch sketch = sketches.get(slot);
+      long ord;
+      while ((ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+        BytesRef term = values.lookupOrd(ord);
+        Object obj = sf.getType().toObject(sf, term);
+        sketch.update(obj instanceof Date ? ((Date) obj).getTime() : ((Number) obj).doubleValue());
+      }
+    }
+
+    @Override
+    public void setNextReader(LeafReaderContext readerContext) throws IOException {
+      super.setNextReader(readerContext);
+      values = DocValues.getSortedSet(readerContext.reader(), sf.getName());
+    }
+
+    @Override
+    protected boolean advanceExact(int doc) throws IOException {
+      return values.advanceExact(doc);
+    }
+  }
+
+  class Merger extends FacetModule.FacetSortableMerger {
+    protected KLLSketch sketch;
+    protected Double sortVal;
+
+    @Override
+    public void merge(Object facetResult, Context mcontext) {
+      byte[] arr = (byte[]) facetResult;
+      if (arr == null) return; // an explicit null can mean no values in the field
+      KLLSketch subSketch = KLLSketch.fromBytes(arr);
+      if (sketch == null) {
+        sketch = subSketch;
+      } else {
+        sketch.merge(subSketch);
+      }
+    }
+
+    @Override
+    public Object getMergedResult() {
+      if (percentiles.size() == 1 && sketch != null) return getSortVal();
+      return getValueFromSketch(sketch);
+    }
+
+    @Override
+    public int compareTo(FacetModule.FacetSortableMerger other, FacetRequest.SortDirection direction) {
+      return Double.compare(getSortVal(), ((Merger) other).getSortVal());
+    }
+
+    private Double getSortVal() {
+      if (sortVal == null) {
+        sortVal = sketch == null ? Double.NEGATIVE_INFINITY : sketch.quantile(percentiles.get(0) * 0.01);
+      }
+      return sortVal;
+    }
+  }
+}
@@ -236,7 +236,7 @@ public class MinMaxAgg extends SimpleAggValueSource {
     }
   }
 
-  class DFuncAcc extends SlotAcc.DoubleFuncSlotAcc {
+  class DFuncAcc extends SlotAcc.DoubleFuncSlotAcc implements SlotAcc.MergeableSlotAcc {
     public DFuncAcc(ValueSource values, FacetContext fcontext, int numSlots) {
       super(values, fcontext, numSlots, Double.NaN);
     }
@@ -261,9 +261,25 @@ public class MinMaxAgg extends SimpleAggValueSource {
         return val;
       }
     }
+
+    @Override
+    public SlotAcc copy() {
+      return new DFuncAcc(valueSource, fcontext, result.length);
+    }
+
+    @Override
+    public void merge(SlotAcc copy) {
+      double[] other = ((DFuncAcc) copy).result;
+      for (int slot = 0; slot < result.length; slot++) {
+        double val = other[slot];
+        if (!Double.isNaN(val) && (Double.isNaN(result[slot]) || Double.compare(val, result[slot]) * minmax < 0)) {
+          result[slot] = val;
+        }
+      }
+    }
   }
 
-  class LFuncAcc extends SlotAcc.LongFuncSlotAcc {
+  class LFuncAcc extends SlotAcc.LongFuncSlotAcc implements SlotAcc.MergeableSlotAcc {
     FixedBitSet exists;
     public LFuncAcc(ValueSource values, FacetContext fcontext, int numSlots) {
       super(values, fcontext, numSlots, 0);
@@ -321,9 +337,28 @@ public class MinMaxAgg extends SimpleAggValueSource {
       exists.clear(0, exists.length());
     }
 
+    @Override
+    public SlotAcc copy() {
+      return new LFuncAcc(valueSource, fcontext, result.length);
+    }
+
+    @Override
+    public void merge(SlotAcc copy) {
+      LFuncAcc other = (LFuncAcc) copy;
+      for (int slot = 0; slot < result.length; slot++) {
+        long val = other.result[slot];
+        if (val == 0 && !other.exists.get(slot)) continue;
+        if (result[slot] == 0 && !exists.get(slot)) {
+          exists.set(slot);
+          result[slot] = val;
+        } else if (Long.compare(val, result[slot]) * minmax < 0) {
+          result[slot] = val;
+        }
+      }
+    }
   }
 
-  class DateFuncAcc extends SlotAcc.LongFuncSlotAcc {
+  class DateFuncAcc extends SlotAcc.LongFuncSlotAcc implements SlotAcc.MergeableSlotAcc {
     private static final long MISSING = Long.MIN_VALUE;
     public DateFuncAcc(ValueSource values, FacetContext fcontext, int numSlots) {
       super(values, fcontext, numSlots, MISSING);
@@ -346,6 +381,22 @@ public class MinMaxAgg extends SimpleAggValueSource {
     public Object getValue(int slot) {
       return result[slot] == MISSING ? null : new Date(result[slot]);
     }
+
+    @Override
+    public SlotAcc copy() {
+      return new DateFuncAcc(valueSource, fcontext, result.length);
+    }
+
+    @Override
+    public void merge(SlotAcc copy) {
+      long[] other = ((DateFuncAcc) copy).result;
+      for (int slot = 0; slot < result.length; slot++) {
+        long val = other[slot];
+        if (val != MISSING && (result[slot] == MISSING || Long.compare(val, result[slot]) * minmax < 0)) {
+          result[slot] = val;
+        }
+      }
+    }
   }
 
 
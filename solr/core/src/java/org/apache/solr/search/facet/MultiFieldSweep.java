@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.LongValues;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.facet.SlotAcc.CountSlotAcc;
+import org.apache.solr.search.facet.SlotAcc.SweepCountAccStruct;
+
+/**
+ * Sweep-collects the counts of several sibling field facets in a single traversal of the union of their domains.
+ * <p>
+ * Sibling terms facets computing the same <code>relatedness()</code> functions sweep over the same domains: their
+ * base domain and the foreground and background sets.  Instead of one traversal per field, the first of these facets
+ * to collect its counts traverses the domains once for all of them, reading the ordinals of every field for each doc,
+ * and the others take their counts from here.  The counts of the facets that haven't taken them yet are held in memory,
+ * one <code>int</code> per term of the fields and domain.
+ *
+ * @see FacetFieldProcessorByArrayDV
+ * @see SweepDISI
+ */
+final class MultiFieldSweep {
+  /** The facet debug key listing the fields whose counts were collected together */
+  static final String MULTI_FIELD_SWEEP_DEBUG_KEY = "multi_field_sweep";
+
+  private final FacetContext fcontext;
+  private final List<SchemaField> fields;
+  /** the domains the counts were collected over, null until they are */
+  private DocSet[] domains;
+  /** the first ord of each field in {@link #counts}, and the number of ords after the last field */
+  private int[] offsets;
+  /** the counts by domain, then by the ords of all the fields, null once all of them are taken */
+  private int[][] counts;
+  /** the index of the fields whose counts haven't been taken yet, by name */
+  private Map<String, Integer> pending;
+
+  private MultiFieldSweep(FacetContext fcontext, List<SchemaField> fields) {
+    this.fcontext = fcontext;
+    this.fields = fields;
+  }
+
+  /**
+   * Groups the sub-facets that can share a sweep, by the relatedness functions they compute, and returns the sweep of
+   * each of them, or an empty map if no two sub-facets can share one.
+   */
+  static Map<String, MultiFieldSweep> forSubFacets(FacetContext fcontext, Map<String, FacetRequest> subFacets) {
+    if (subFacets.size() < 2) {
+      return Collections.emptyMap();
+    }
+    final Map<List<AggValueSource>, Map<String, SchemaField>> groups = new HashMap<>();
+    for (Map.Entry<String, FacetRequest> sub : subFacets.entrySet()) {
+      // siblings with other stats collect them per doc anyway, so they gain nothing from sharing the sweep
+      List<AggValueSource> relatedness = new ArrayList<>();
+      boolean onlyRelatedness = true;
+      for (AggValueSource agg : sub.getValue().getFacetStats().values()) {
+        if (agg instanceof RelatednessAgg) {
+          relatedness.add(agg);
+        } else {
+          onlyRelatedness = false;
+        }
+      }
+      if (relatedness.isEmpty() || !onlyRelatedness) continue;
+      SchemaField sf = getSweepableField(fcontext, sub.getValue());
+      if (sf != null) {
+        groups.computeIfAbsent(relatedness, k -> new LinkedHashMap<>()).put(sub.getKey(), sf);
+      }
+    }
+
+    Map<String, MultiFieldSweep> sweeps = new HashMap<>();
+    for (Map<String, SchemaField> group : groups.values()) {
+      if (group.size() < 2) continue;
+      MultiFieldSweep sweep = new MultiFieldSweep(fcontext, new ArrayList<>(group.values()));
+      for (String key : group.keySet()) {
+        sweeps.put(key, sweep);
+      }
+    }
+    return sweeps;
+  }
+
+  /**
+   * Returns the field of the facet if it will be processed by {@link FacetFieldProcessorByArrayDV} over the whole
+   * range of its terms, and in the domain of its parent, or null otherwise
+   */
+  private static SchemaField getSweepableField(FacetContext fcontext, FacetRequest request) {
+    if (!(request instanceof FacetField) || request.domain != null) {
+      return null;
+    }
+    FacetField freq = (FacetField) request;
+    if (freq.prefix != null || freq.allBuckets || freq.method == FacetField.FacetMethod.ENUM
+        || freq.method == FacetField.FacetMethod.STREAM || freq.method == FacetField.FacetMethod.DVHASH) {
+      return null;
+    }
+    SchemaField sf = fcontext.searcher.getSchema().getFieldOrNull(freq.field);
+    if (sf == null) {
+      return null;
+    }
+    FieldType ft = sf.getType();
+    if (ft.getNumberType() != null || ft.isPointField()) {
+      return null;
+    }
+    boolean multiToken = sf.multiValued() || ft.multiValuedFieldCache();
+    if (multiToken && !(sf.hasDocValues() || freq.method == FacetField.FacetMethod.DV || !sf.isUninvertible())) {
+      return null; // UIF
+    }
+    return sf;
+  }
+
+  /**
+   * Adds the counts of the field of the processor in the base domain and in the other domains to their count accs, and
+   * returns true, or returns false if they have to be collected by the processor.  The counts of all the fields of this
+   * sweep are collected the first time this is called.
+   */
+  boolean addCounts(FacetFieldProcessorByArrayDV processor, SweepCountAccStruct base, List<SweepCountAccStruct> others)
+      throws IOException {
+    final SweepCountAccStruct[] structs = new SweepCountAccStruct[others.size() + 1];
+    structs[0] = base;
+    for (int i = 0; i < others.size(); i++) {
+      structs[i + 1] = others.get(i);
+    }
+
+    if (domains == null) {
+      collect(structs);
+    } else if (!sameDomains(structs)) {
+      return false;
+    }
+
+    final Integer f = pending == null ? null : pending.remove(processor.sf.getName());
+    if (f == null) {
+      return false;
+    }
+    final int from = offsets[f];
+    final int to = offsets[f + 1];
+    for (int d = 0; d < structs.length; d++) {
+      final CountSlotAcc countAcc = structs[d].countAcc;
+      final int[] domainCounts = counts[d];
+      for (int ord = from; ord < to; ord++) {
+        if (domainCounts[ord] > 0) {
+          countAcc.incrementCount(ord - from, domainCounts[ord]);
+        }
+      }
+    }
+    if (pending.isEmpty()) {
+      counts = null;  // all taken
+    }
+
+    final FacetDebugInfo fdebug = processor.fcontext.getDebugInfo();
+    if (fdebug != null) {
+      List<String> fieldNames = new ArrayList<>(fields.size());
+      for (SchemaField sf : fields) {
+        fieldNames.add(sf.getName());
+      }
+      fdebug.putInfoItem(MULTI_FIELD_SWEEP_DEBUG_KEY, fieldNames);
+    }
+    return true;
+  }
+
+  /** Returns true if the docs of each domain are the ones the counts were collected over */
+  private boolean sameDomains(SweepCountAccStruct[] structs) {
+    if (structs.length != domains.length) {
+      return false;
+    }
+    for (int d = 0; d < structs.length; d++) {
+      DocSet docs = structs[d].docSet;
+      if (docs != domains[d]
+          && (docs.size() != domains[d].size() || docs.intersectionSize(domains[d]) != docs.size())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void collect(SweepCountAccStruct[] structs) throws IOException {
+    final int numFields = fields.size();
+    final int numDomains = structs.length;
+    domains = new DocSet[numDomains];
+    for (int d = 0; d < numDomains; d++) {
+      domains[d] = structs[d].docSet;
+    }
+
+    // the global ords of the fields are numbered one field after the other
+    final boolean[] multiValued = new boolean[numFields];
+    final OrdinalMap[] ordinalMaps = new OrdinalMap[numFields];
+    offsets = new int[numFields + 1];
+    long numOrds = 0;
+    for (int f = 0; f < numFields; f++) {
+      SchemaField sf = fields.get(f);
+      multiValued[f] = sf.multiValued() || sf.getType().multiValuedFieldCache();
+      long valueCount;
+      if (multiValued[f]) {
+        SortedSetDocValues si = FieldUtil.getSortedSetDocValues(fcontext.qcontext, sf, null);
+        if (si instanceof MultiDocValues.MultiSortedSetDocValues) {
+          ordinalMaps[f] = ((MultiDocValues.MultiSortedSetDocValues) si).mapping;
+        }
+        valueCount = si.getValueCount();
+      } else {
+        SortedDocValues single = FieldUtil.getSortedDocValues(fcontext.qcontext, sf, null);
+        if (single instanceof MultiDocValues.MultiSortedDocValues) {
+          ordinalMaps[f] = ((MultiDocValues.MultiSortedDocValues) single).mapping;
+        }
+        valueCount = single.getValueCount();
+      }
+      numOrds += valueCount;
+      if (numOrds > ArrayUtil.MAX_ARRAY_LENGTH) {
+        return;  // too many terms to count together, each facet counts its own
+      }
+      offsets[f + 1] = (int) numOrds;
+    }
+    counts = new int[numDomains][(int) numOrds];
+
+    final SweepCountAccStruct base = structs[0];
+    final List<SweepCountAccStruct> others = new ArrayList<>(numDomains - 1);
+    for (int d = 1; d < numDomains; d++) {
+      others.add(structs[d]);
+    }
+    final DocIdSetIterator[] subIterators = new DocIdSetIterator[numDomains];
+    final CountSlotAcc[] activeCountAccs = new CountSlotAcc[numDomains];
+    final SortedSetDocValues[] values = new SortedSetDocValues[numFields];
+    final LongValues[] toGlobal = new LongValues[numFields];
+
+    final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+    for (LeafReaderContext ctx : leaves) {
+      final SweepDISI disi = SweepDISI.newInstance(base, others, subIterators, activeCountAccs, ctx);
+      if (disi == null) {
+        continue;
+      }
+      // the domains with docs in this segment, in the order of the sweep
+      final int[] leafDomains = new int[disi.size];
+      for (int i = 0; i < disi.size; i++) {
+        for (int d = 0; d < numDomains; d++) {
+          if (activeCountAccs[i] == structs[d].countAcc) {
+            leafDomains[i] = d;
+            break;
+          }
+        }
+      }
+      final SegCountAllFields counter = new SegCountAllFields(counts, leafDomains);
+
+      final LeafReader reader = ctx.reader();
+      for (int f = 0; f < numFields; f++) {
+        String field = fields.get(f).getName();
+        if (multiValued[f]) {
+          values[f] = DocValues.getSortedSet(reader, field);
+        } else {
+          values[f] = DocValues.singleton(DocValues.getSorted(reader, field));
+        }
+        toGlobal[f] = ordinalMaps[f] == null ? null : ordinalMaps[f].getGlobalOrds(ctx.ord);
+      }
+
+      int doc;
+      while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        final int maxIdx = disi.registerCounts(counter);
+        for (int f = 0; f < numFields; f++) {
+          final SortedSetDocValues dv = values[f];
+          if (!dv.advanceExact(doc)) continue;
+          final LongValues fieldToGlobal = toGlobal[f];
+          final int offset = offsets[f];
+          for (long segOrd = dv.nextOrd(); segOrd != SortedSetDocValues.NO_MORE_ORDS; segOrd = dv.nextOrd()) {
+            final int globalOrd = (int) (fieldToGlobal == null ? segOrd : fieldToGlobal.get(segOrd));
+            counter.incrementCount(offset + globalOrd, 1, maxIdx);
+          }
+        }
+      }
+    }
+
+    pending = new HashMap<>();
+    for (int f = 0; f < numFields; f++) {
+      pending.put(fields.get(f).getName(), f);
+    }
+  }
+
+  /**
+   * Counts the ords of all the fields, numbered one field after the other, in the domains of the current doc, like
+   * {@link SweepCountAware.SegCountGlobal} does for the global ords of a single field
+   */
+  private static final class SegCountAllFields implements SweepCountAware.SegCounter {
+    private final int[][] leafCounts;
+    private final int[][] activeCounts;
+
+    SegCountAllFields(int[][] allCounts, int[] leafDomains) {
+      leafCounts = new int[leafDomains.length][];
+      for (int i = 0; i < leafDomains.length; i++) {
+        leafCounts[i] = allCounts[leafDomains[i]];
+      }
+      activeCounts = leafCounts.clone();
+    }
+
+    @Override
+    public void map(int allIdx, int activeIdx) {
+      activeCounts[activeIdx] = leafCounts[allIdx];
+    }
+
+    @Override
+    public void incrementCount(int ord, int inc, int maxIdx) {
+      int i = maxIdx;
+      do {
+        activeCounts[i][ord] += inc;
+      } while (i-- > 0);
+    }
+  }
+}
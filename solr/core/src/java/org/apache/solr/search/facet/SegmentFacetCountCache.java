@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.DocSetBuilder;
+
+/**
+ * Caches the term counts of a field over the docs of a facet domain, one index segment at a time.  Counts are kept
+ * by segment ord in packed arrays, and keyed by the field, the segment's core cache key and the docs of the domain
+ * within the segment.  Requests for the same domain that differ in limit, offset, sort or prefix reuse them, and
+ * after a commit only the segments that are new, or whose part of the domain changed, are counted again.  The
+ * counts of a segment are dropped when the segment is closed.
+ * <p>
+ * A hit is only taken after comparing the docs of the domain with the docs the counts were computed for, so two
+ * domains with the same hash never share counts.
+ *
+ * @see org.apache.solr.core.SolrCore#getFacetCountCache()
+ * @lucene.experimental
+ */
+public class SegmentFacetCountCache implements Accountable {
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SegmentFacetCountCache.class);
+
+  private final long maxRamBytes;
+  private final Cache<Key,Counts> cache;
+  // segment cores that have a listener to drop their counts on close
+  private final Set<IndexReader.CacheKey> segments = ConcurrentHashMap.newKeySet();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public SegmentFacetCountCache(long maxRamBytes) {
+    this.maxRamBytes = maxRamBytes;
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(maxRamBytes)
+        .weigher((Key key, Counts counts) -> (int) Math.min(Integer.MAX_VALUE, counts.ramBytesUsed()))
+        .executor(Runnable::run)
+        .build();
+  }
+
+  /**
+   * Returns the key of the counts of a field over the docs of a domain within a segment, or null if the segment
+   * can't be cached.
+   *
+   * @param docs the docs of the domain in the segment, numbered from 0 within the segment; consumed by this call
+   */
+  Key key(String field, LeafReader reader, DocIdSetIterator docs) throws IOException {
+    IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+    if (cacheHelper == null) {
+      return null;
+    }
+    long hash = 0;
+    int size = 0;
+    for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+      hash = (hash + doc) * 0x9E3779B97F4A7C15L;
+      size++;
+    }
+    return new Key(field, cacheHelper.getKey(), hash, size);
+  }
+
+  /**
+   * Returns the cached counts by segment ord, or null if they need counting.
+   *
+   * @param docs the same docs that the key was made from
+   */
+  PackedInts.Reader get(Key key, DocIdSetIterator docs) throws IOException {
+    Counts counts = cache.getIfPresent(key);
+    if (counts == null || !sameDocs(counts.docs, docs)) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return counts.counts;
+  }
+
+  /**
+   * Caches the counts by segment ord of the docs of a domain.
+   *
+   * @param docs the same docs that the key was made from
+   * @param counts the count of each segment ord
+   * @param segMax the number of ords of the segment
+   */
+  PackedInts.Reader put(Key key, LeafReader reader, DocIdSetIterator docs, int[] counts, int segMax) throws IOException {
+    int maxCount = 0;
+    for (int i = 0; i < segMax; i++) {
+      maxCount = Math.max(maxCount, counts[i]);
+    }
+    PackedInts.Mutable packed = PackedInts.getMutable(segMax, PackedInts.bitsRequired(maxCount), PackedInts.COMPACT);
+    for (int i = 0; i < segMax; i++) {
+      packed.set(i, counts[i]);
+    }
+
+    DocSetBuilder builder = new DocSetBuilder(reader.maxDoc(), key.size);
+    for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+      builder.add(doc);
+    }
+
+    if (segments.add(key.segment)) {
+      reader.getCoreCacheHelper().addClosedListener(this::onSegmentClosed);
+    }
+    cache.put(key, new Counts(builder.buildUniqueInOrder(null), packed));
+    return packed;
+  }
+
+  private static boolean sameDocs(DocSet cached, DocIdSetIterator docs) throws IOException {
+    DocIterator iter = cached.iterator();
+    for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+      if (!iter.hasNext() || iter.nextDoc() != doc) {
+        return false;
+      }
+    }
+    return !iter.hasNext();
+  }
+
+  private void onSegmentClosed(IndexReader.CacheKey segment) {
+    segments.remove(segment);
+    cache.asMap().keySet().removeIf(key -> key.segment == segment);
+  }
+
+  /** The number of segments whose counts were found in the cache */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /** The number of segments that had to be counted */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /** The number of cached segment counts */
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  public long getMaxRamBytes() {
+    return maxRamBytes;
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long ram = BASE_RAM_BYTES_USED;
+    for (Counts counts : cache.asMap().values()) {
+      ram += counts.ramBytesUsed();
+    }
+    return ram;
+  }
+
+  @Override
+  public String toString() {
+    return "SegmentFacetCountCache{size=" + size() + ",hits=" + getHits() + ",misses=" + getMisses() +
+        ",ramUsed=" + RamUsageEstimator.humanReadableUnits(ramBytesUsed()) + '}';
+  }
+
+  static final class Key {
+    final String field;
+    final IndexReader.CacheKey segment;
+    final long hash;  // of the docs of the domain in the segment
+    final int size;   // the number of docs of the domain in the segment
+
+    Key(String field, IndexReader.CacheKey segment, long hash, int size) {
+      this.field = field;
+      this.segment = segment;
+      this.hash = hash;
+      this.size = size;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) return false;
+      Key key = (Key) other;
+      return segment == key.segment && hash == key.hash && size == key.size && field.equals(key.field);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * field.hashCode() + System.identityHashCode(segment)) + Long.hashCode(hash);
+    }
+  }
+
+  /** The counts by segment ord and the docs of the domain they were counted over */
+  private static final class Counts implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Counts.class)
+        + RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    final DocSet docs;
+    final PackedInts.Reader counts;
+
+    Counts(DocSet docs, PackedInts.Reader counts) {
+      this.docs = docs;
+      this.counts = counts;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + docs.ramBytesUsed() + counts.ramBytesUsed();
+    }
+  }
+}
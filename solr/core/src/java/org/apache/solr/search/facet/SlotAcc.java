@@ -407,7 +407,7 @@ public abstract class SlotAcc implements Closeable {
     }
   }
 
-  static class SumSlotAcc extends DoubleFuncSlotAcc {
+  static class SumSlotAcc extends DoubleFuncSlotAcc implements MergeableSlotAcc {
     public SumSlotAcc(ValueSource values, FacetContext fcontext, int numSlots) {
       super(values, fcontext, numSlots);
     }
@@ -416,6 +416,19 @@ public abstract class SlotAcc implements Closeable {
       double val = values.doubleVal(doc); // todo: worth trying to share this value across multiple stats that need it?
       result[slotNum] += val;
     }
+
+    @Override
+    public SlotAcc copy() {
+      return new SumSlotAcc(valueSource, fcontext, result.length);
+    }
+
+    @Override
+    public void merge(SlotAcc copy) {
+      double[] other = ((SumSlotAcc) copy).result;
+      for (int slot = 0; slot < result.length; slot++) {
+        result[slot] += other[slot];
+      }
+    }
   }
 
   static class SumsqSlotAcc extends DoubleFuncSlotAcc {
@@ -600,6 +613,20 @@ public abstract class SlotAcc implements Closeable {
     }
   }
 
+  /**
+   * Implemented by SlotAccs whose slots can be collected by several copies, each over some of the segments of the
+   * domain, and then merged, so that a facet can collect its stats on several threads.  The copies must not use the
+   * slot context while collecting.
+   * @see FacetFieldProcessorByArrayDV
+   */
+  static interface MergeableSlotAcc {
+    /** Returns an empty acc of the same kind and number of slots, to collect other segments into */
+    SlotAcc copy();
+
+    /** Merges the values of a {@link #copy} of this acc into the slots of this acc */
+    void merge(SlotAcc copy);
+  }
+
   /**
    * Implemented by some SlotAccs if they are capable of being used for
    * sweep collecting in compatible facet processors
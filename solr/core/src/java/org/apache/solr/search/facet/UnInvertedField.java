@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -42,6 +43,7 @@ import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.TrieField;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocSet;
+import org.apache.solr.search.RoaringDocSet;
 import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.facet.SweepCountAware.SegCountGlobal;
@@ -90,6 +92,9 @@ public class UnInvertedField extends DocTermOrds {
 
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  /** Uninverting fewer docs than this per thread isn't worth starting another thread */
+  private static final int MIN_DOCS_PER_THREAD = 1 << 16;
+
   static class TopTerm {
     Query termQuery;
     BytesRef term;
@@ -202,7 +207,15 @@ public class UnInvertedField extends DocTermOrds {
       // TODO: it's wasteful to create one of these each time
       // but DocTermOrds will throw an exception if it thinks the field has doc values (which is faked by UnInvertingReader)
       LeafReader r = SlowCompositeReaderWrapper.wrap(searcher.getRawReader());
-      uninvert(r, r.getLiveDocs(), prefix == null ? null : new BytesRef(prefix));
+      // the whole field is rebuilt, on up to query/uninvertedFieldThreads threads
+      int numThreads = 1;
+      if (searcher.getCore() != null) {
+        numThreads = Math.min(searcher.getCore().getSolrConfig().uninvertedFieldThreads,
+            searcher.getCore().getCoreContainer().getFacetMaxThreads());
+      }
+      numThreads = Math.min(numThreads, r.maxDoc() / MIN_DOCS_PER_THREAD + 1);
+      ExecutorService executor = numThreads > 1 ? searcher.getCore().getCoreContainer().getFacetExecutor() : null;
+      uninvert(r, r.getLiveDocs(), prefix == null ? null : new BytesRef(prefix), executor, numThreads);
     } catch (IllegalStateException ise) {
       throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, ise);
     }
@@ -334,10 +347,11 @@ public class UnInvertedField extends DocTermOrds {
 
     final int[] index = this.index;
 
-    boolean doNegative = baseSize > maxDoc >> 1 && termInstances > 0 && docs instanceof BitDocSet && baseCountAccStruct != null;
+    boolean doNegative = baseSize > maxDoc >> 1 && termInstances > 0 && (docs instanceof BitDocSet || docs instanceof RoaringDocSet) && baseCountAccStruct != null;
 
     if (doNegative) {
-      FixedBitSet bs = ((BitDocSet) docs).getBits().clone();
+      FixedBitSet bs = new FixedBitSet(maxDoc);
+      docs.addAllTo(bs);
       bs.flip(0, maxDoc);
       // TODO: when iterator across negative elements is available, use that
       // instead of creating a new bitset and inverting.
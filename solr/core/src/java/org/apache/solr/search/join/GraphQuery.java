@@ -279,7 +279,8 @@ public class GraphQuery extends Query {
 
     @Override
     public boolean isCacheable(LeafReaderContext ctx) {
-      return true;
+      // the docs matched in a segment depend on the edges in all the other segments
+      return false;
     }
     
   }
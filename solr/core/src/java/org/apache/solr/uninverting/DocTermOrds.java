@@ -19,8 +19,15 @@ package org.apache.solr.uninverting;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.codecs.PostingsFormat;
 import org.apache.lucene.index.BaseTermsEnum;
@@ -35,10 +42,12 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.PagedBytes;
 import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * This class enables fast access to multiple term ords for
@@ -284,6 +293,19 @@ public class DocTermOrds implements Accountable {
 
   /** Call this only once (if you subclass!) */
   protected void uninvert(final LeafReader reader, Bits liveDocs, final BytesRef termPrefix) throws IOException {
+    uninvert(reader, liveDocs, termPrefix, null, 1);
+  }
+
+  /**
+   * Like {@link #uninvert(LeafReader,Bits,BytesRef)}, but on up to <code>numThreads</code> threads, the calling
+   * thread included.  Each thread adds the terms of its own range of docs, and the final form is then built for
+   * several groups of docs at once.  {@link #visitTerm} and {@link #setActualDocFreq} are only called from the
+   * calling thread.  Call this only once (if you subclass!)
+   *
+   * @param executor runs the other threads; may be null, which uninverts on the calling thread only
+   */
+  protected void uninvert(final LeafReader reader, Bits liveDocs, final BytesRef termPrefix,
+                          ExecutorService executor, int numThreads) throws IOException {
     final FieldInfo info = reader.getFieldInfos().fieldInfo(field);
     if (checkForDocValues && info != null && info.getDocValuesType() != DocValuesType.NONE) {
       throw new IllegalStateException("Type mismatch: " + field + " was indexed as " + info.getDocValuesType());
@@ -311,14 +333,6 @@ public class DocTermOrds implements Accountable {
       return;
     }
 
-    // For our "term index wrapper"
-    final List<BytesRef> indexedTerms = new ArrayList<>();
-    final PagedBytes indexedTermsBytes = new PagedBytes(15);
-
-    // we need a minimum of 9 bytes, but round up to 12 since the space would
-    // be wasted with most allocators anyway.
-    byte[] tempArr = new byte[12];
-
     //
     // enumerate all terms, and build an intermediate form of the un-inverted field.
     //
@@ -327,135 +341,45 @@ public class DocTermOrds implements Accountable {
     // or the *end* offset of the termNumber list in its byte array (for faster
     // appending and faster creation of the final form).
     //
+    // Each thread enumerates all terms, but only adds the docs of its own range,
+    // so the threads never touch the same document.
+    //
     // idea... if things are too large while building, we could do a range of docs
     // at a time (but it would be a fair amount slower to build)
-    // could also do ranges in parallel to take advantage of multiple CPUs
 
     // OPTIONAL: remap the largest df terms to the lowest 128 (single byte)
     // values.  This requires going over the field first to find the most
     // frequent terms ahead of time.
 
-    int termNum = 0;
+    if (executor == null) {
+      numThreads = 1;
+    }
+    numThreads = Math.max(1, Math.min(numThreads, maxDoc));
+    final List<DocRangeInverter> inverters = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      inverters.add(new DocRangeInverter(terms, i == 0 ? te : null, termPrefix, seekStart,
+          (int) ((long) maxDoc * i / numThreads), (int) ((long) maxDoc * (i + 1) / numThreads), index, lastTerm, bytes));
+    }
     postingsEnum = null;
+    invokeAll(executor, inverters);
 
-    // Loop begins with te positioned to first term (we call
-    // seek above):
-    for (;;) {
-      final BytesRef t = te.term();
-      if (t == null || (termPrefix != null && !StringHelper.startsWith(t, termPrefix))) {
-        break;
-      }
-      //System.out.println("visit term=" + t.utf8ToString() + " " + t + " termNum=" + termNum);
-
-      visitTerm(te, termNum);
-
-      if ((termNum & indexIntervalMask) == 0) {
-        // Index this term
-        sizeOfIndexedStrings += t.length;
-        BytesRef indexedTerm = new BytesRef();
-        indexedTermsBytes.copy(t, indexedTerm);
-        // TODO: really should 1) strip off useless suffix,
-        // and 2) use FST not array/PagedBytes
-        indexedTerms.add(indexedTerm);
-      }
-
-      final int df = te.docFreq();
-      if (df <= maxTermDocFreq) {
-
-        postingsEnum = te.postings(postingsEnum, PostingsEnum.NONE);
-
-        // dF, but takes deletions into account
-        int actualDF = 0;
-
-        for (;;) {
-          int doc = postingsEnum.nextDoc();
-          if (doc == DocIdSetIterator.NO_MORE_DOCS) {
-            break;
-          }
-          //System.out.println("  chunk=" + chunk + " docs");
-
-          actualDF ++;
-          termInstances++;
-          
-          //System.out.println("    docID=" + doc);
-          // add TNUM_OFFSET to the term number to make room for special reserved values:
-          // 0 (end term) and 1 (index into byte array follows)
-          int delta = termNum - lastTerm[doc] + TNUM_OFFSET;
-          lastTerm[doc] = termNum;
-          int val = index[doc];
-
-          if ((val & 0x80000000) != 0) {
-            // index into byte array (actually the end of the doc-specific byte[] when building)
-            int pos = val & 0x7fffffff;
-            int ilen = vIntSize(delta);
-            byte[] arr = bytes[doc];
-            int newend = pos+ilen;
-            if (newend > arr.length) {
-              // We avoid a doubling strategy to lower memory usage.
-              // this faceting method isn't for docs with many terms.
-              // In hotspot, objects have 2 words of overhead, then fields, rounded up to a 64-bit boundary.
-              // TODO: figure out what array lengths we can round up to w/o actually using more memory
-              // (how much space does a byte[] take up?  Is data preceded by a 32 bit length only?
-              // It should be safe to round up to the nearest 32 bits in any case.
-              int newLen = (newend + 3) & 0xfffffffc;  // 4 byte alignment
-              byte[] newarr = new byte[newLen];
-              System.arraycopy(arr, 0, newarr, 0, pos);
-              arr = newarr;
-              bytes[doc] = newarr;
-            }
-            pos = writeInt(delta, arr, pos);
-            index[doc] = pos | 0x80000000;  // update pointer to end index in byte[]
-          } else {
-            // OK, this int has data in it... find the end (a zero starting byte - not
-            // part of another number, hence not following a byte with the high bit set).
-            int ipos;
-            if (val==0) {
-              ipos=0;
-            } else if ((val & 0x0000ff80)==0) {
-              ipos=1;
-            } else if ((val & 0x00ff8000)==0) {
-              ipos=2;
-            } else if ((val & 0xff800000)==0) {
-              ipos=3;
-            } else {
-              ipos=4;
-            }
-
-            //System.out.println("      ipos=" + ipos);
-
-            int endPos = writeInt(delta, tempArr, ipos);
-            //System.out.println("      endpos=" + endPos);
-            if (endPos <= 4) {
-              //System.out.println("      fits!");
-              // value will fit in the integer... move bytes back
-              for (int j=ipos; j<endPos; j++) {
-                val |= (tempArr[j] & 0xff) << (j<<3);
-              }
-              index[doc] = val;
-            } else {
-              // value won't fit... move integer into byte[]
-              for (int j=0; j<ipos; j++) {
-                tempArr[j] = (byte)val;
-                val >>>=8;
-              }
-              // point at the end index in the byte[]
-              index[doc] = endPos | 0x80000000;
-              bytes[doc] = tempArr;
-              tempArr = new byte[12];
-            }
-          }
-        }
-        setActualDocFreq(termNum, actualDF);
+    // the first inverter visited and indexed the terms
+    final DocRangeInverter first = inverters.get(0);
+    numTermsInField = first.numTerms;
+    for (DocRangeInverter inverter : inverters) {
+      termInstances += inverter.termInstances;
+    }
+    for (int termNum = 0; termNum < numTermsInField; termNum++) {
+      if (first.docFreqs[termNum] < 0) {
+        continue;  // not uninverted
       }
-
-      termNum++;
-      if (te.next() == null) {
-        break;
+      int actualDF = 0;
+      for (DocRangeInverter inverter : inverters) {
+        actualDF += inverter.docFreqs[termNum];
       }
+      setActualDocFreq(termNum, actualDF);
     }
 
-    numTermsInField = termNum;
-
     long midPoint = System.nanoTime();
 
     if (termInstances == 0) {
@@ -469,79 +393,308 @@ public class DocTermOrds implements Accountable {
       //
       // transform intermediate form into the final form, building a single byte[]
       // at a time, and releasing the intermediate byte[]s as we go to avoid
-      // increasing the memory footprint.
+      // increasing the memory footprint.  Each thread takes the next byte[] to build.
       //
 
-      for (int pass = 0; pass<256; pass++) {
-        byte[] target = tnums[pass];
-        int pos=0;  // end in target;
-        if (target != null) {
-          pos = target.length;
-        } else {
-          target = new byte[4096];
+      final int numPasses = Math.min(256, (maxDoc >> 16) + 2);
+      final AtomicInteger nextPass = new AtomicInteger();
+      final Callable<Void> buildPasses = () -> {
+        int pass;
+        while ((pass = nextPass.getAndIncrement()) < numPasses) {
+          tnums[pass] = buildPass(pass, maxDoc, index, bytes);
         }
+        return null;
+      };
+      invokeAll(executor, Collections.nCopies(Math.min(numThreads, numPasses), buildPasses));
+    }
+    indexedTermsArray = first.indexedTerms.toArray(new BytesRef[first.indexedTerms.size()]);
 
-        // loop over documents, 0x00ppxxxx, 0x01ppxxxx, 0x02ppxxxx
-        // where pp is the pass (which array we are building), and xx is all values.
-        // each pass shares the same byte[] for termNumber lists.
-        for (int docbase = pass<<16; docbase<maxDoc; docbase+=(1<<24)) {
-          int lim = Math.min(docbase + (1<<16), maxDoc);
-          for (int doc=docbase; doc<lim; doc++) {
-            //System.out.println("  pass=" + pass + " process docID=" + doc);
-            int val = index[doc];
-            if ((val & 0x80000000) != 0) {
-              int len = val & 0x7fffffff;
-              //System.out.println("    ptr pos=" + pos);
-              //index[doc] = (pos<<8)|1; // change index to point to start of array
-              index[doc] = pos | 0x80000000; // change index to point to start of array
-              byte[] arr = bytes[doc];
-              /*
-              for(byte b : arr) {
-                //System.out.println("      b=" + Integer.toHexString((int) b));
-              }
-              */
-              bytes[doc] = null;        // IMPORTANT: allow GC to avoid OOM
-              if (target.length <= pos + len) {
-                int newlen = target.length;
-                while (newlen <= pos + len) {
-                  if ((newlen<<=1) < 0) { // Double until overflow
-                    newlen = Integer.MAX_VALUE - 16; // ArrayList.MAX_ARRAY_SIZE says 8. We double that to be sure
-                    if (newlen <= pos + len) {
-                      throw new IllegalStateException(
-                          "Too many terms (> Integer.MAX_VALUE-16) to uninvert field '" + field + "'");
-                    }
-                  }
+    long endTime = System.nanoTime();
+
+    total_time = (int) TimeUnit.MILLISECONDS.convert(endTime-startTime, TimeUnit.NANOSECONDS);
+    phase1_time = (int) TimeUnit.MILLISECONDS.convert(midPoint-startTime, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Builds the final form of the term number lists of the docs 0x00ppxxxx, 0x01ppxxxx, 0x02ppxxxx, where pp is the
+   * pass, and points their index entries at it.
+   */
+  private byte[] buildPass(int pass, int maxDoc, int[] index, byte[][] bytes) {
+    byte[] target = tnums[pass];
+    int pos=0;  // end in target;
+    if (target != null) {
+      pos = target.length;
+    } else {
+      target = new byte[4096];
+    }
+
+    // loop over documents, 0x00ppxxxx, 0x01ppxxxx, 0x02ppxxxx
+    // where pp is the pass (which array we are building), and xx is all values.
+    // each pass shares the same byte[] for termNumber lists.
+    for (int docbase = pass<<16; docbase<maxDoc; docbase+=(1<<24)) {
+      int lim = Math.min(docbase + (1<<16), maxDoc);
+      for (int doc=docbase; doc<lim; doc++) {
+        //System.out.println("  pass=" + pass + " process docID=" + doc);
+        int val = index[doc];
+        if ((val & 0x80000000) != 0) {
+          int len = val & 0x7fffffff;
+          //System.out.println("    ptr pos=" + pos);
+          //index[doc] = (pos<<8)|1; // change index to point to start of array
+          index[doc] = pos | 0x80000000; // change index to point to start of array
+          byte[] arr = bytes[doc];
+          bytes[doc] = null;        // IMPORTANT: allow GC to avoid OOM
+          if (target.length <= pos + len) {
+            int newlen = target.length;
+            while (newlen <= pos + len) {
+              if ((newlen<<=1) < 0) { // Double until overflow
+                newlen = Integer.MAX_VALUE - 16; // ArrayList.MAX_ARRAY_SIZE says 8. We double that to be sure
+                if (newlen <= pos + len) {
+                  throw new IllegalStateException(
+                      "Too many terms (> Integer.MAX_VALUE-16) to uninvert field '" + field + "'");
                 }
-                byte[] newtarget = new byte[newlen];
-                System.arraycopy(target, 0, newtarget, 0, pos);
-                target = newtarget;
               }
-              System.arraycopy(arr, 0, target, pos, len);
-              pos += len + 1;  // skip single byte at end and leave it 0 for terminator
             }
+            byte[] newtarget = new byte[newlen];
+            System.arraycopy(target, 0, newtarget, 0, pos);
+            target = newtarget;
           }
+          System.arraycopy(arr, 0, target, pos, len);
+          pos += len + 1;  // skip single byte at end and leave it 0 for terminator
         }
+      }
+    }
 
-        // shrink array
-        if (pos < target.length) {
-          byte[] newtarget = new byte[pos];
-          System.arraycopy(target, 0, newtarget, 0, pos);
-          target = newtarget;
+    // shrink array
+    if (pos < target.length) {
+      byte[] newtarget = new byte[pos];
+      System.arraycopy(target, 0, newtarget, 0, pos);
+      target = newtarget;
+    }
+    return target;
+  }
+
+  /** Runs the first task on the calling thread and the others on the executor, and waits for all of them. */
+  private static void invokeAll(ExecutorService executor, List<? extends Callable<Void>> tasks) throws IOException {
+    final List<Future<Void>> futures = new ArrayList<>(tasks.size() - 1);
+    final List<Callable<Void>> rejected = new ArrayList<>();
+    try {
+      for (int i = 1; i < tasks.size(); i++) {
+        try {
+          futures.add(executor.submit(tasks.get(i)));
+        } catch (RejectedExecutionException e) {
+          rejected.add(tasks.get(i));  // shutting down, run it here
         }
-        
-        tnums[pass] = target;
+      }
+      tasks.get(0).call();
+      for (Callable<Void> task : rejected) {
+        task.call();
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ThreadInterruptedException(e);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
 
-        if ((pass << 16) > maxDoc)
+  /**
+   * Adds the term numbers of the docs of a range to the intermediate form of the un-inverted field.  The inverter
+   * of the first range also visits and indexes the terms.
+   */
+  private final class DocRangeInverter implements Callable<Void> {
+    private final Terms terms;
+    private final TermsEnum te;
+    private final BytesRef termPrefix;
+    private final BytesRef seekStart;
+    private final int minDoc;
+    private final int maxDoc;  // exclusive
+    private final int[] index;
+    private final int[] lastTerm;
+    private final byte[][] bytes;
+
+    // we need a minimum of 9 bytes, but round up to 12 since the space would
+    // be wasted with most allocators anyway.
+    private byte[] tempArr = new byte[12];
+
+    // For our "term index wrapper"
+    final List<BytesRef> indexedTerms = new ArrayList<>();
+    private final PagedBytes indexedTermsBytes;
+
+    int numTerms;
+    long termInstances;
+    /** The docFreq of each term within the range, taking deletions into account, or -1 if it isn't uninverted */
+    int[] docFreqs = new int[64];
+
+    /** @param te positioned on the first term for the first range, null for the others */
+    DocRangeInverter(Terms terms, TermsEnum te, BytesRef termPrefix, BytesRef seekStart, int minDoc, int maxDoc,
+                     int[] index, int[] lastTerm, byte[][] bytes) {
+      this.terms = terms;
+      this.te = te;
+      this.termPrefix = termPrefix;
+      this.seekStart = seekStart;
+      this.minDoc = minDoc;
+      this.maxDoc = maxDoc;
+      this.index = index;
+      this.lastTerm = lastTerm;
+      this.bytes = bytes;
+      this.indexedTermsBytes = te == null ? null : new PagedBytes(15);
+    }
+
+    @Override
+    public Void call() throws IOException {
+      final boolean first = this.te != null;
+      TermsEnum te = this.te;
+      if (te == null) {
+        te = terms.iterator();
+        if (te.seekCeil(seekStart) == TermsEnum.SeekStatus.END) {
+          return null;
+        }
+      }
+
+      int termNum = 0;
+      PostingsEnum postings = null;
+
+      // Loop begins with te positioned to first term (we call
+      // seek above):
+      for (;;) {
+        final BytesRef t = te.term();
+        if (t == null || (termPrefix != null && !StringHelper.startsWith(t, termPrefix))) {
           break;
+        }
+        //System.out.println("visit term=" + t.utf8ToString() + " " + t + " termNum=" + termNum);
+
+        if (first) {
+          visitTerm(te, termNum);
+
+          if ((termNum & indexIntervalMask) == 0) {
+            // Index this term
+            sizeOfIndexedStrings += t.length;
+            BytesRef indexedTerm = new BytesRef();
+            indexedTermsBytes.copy(t, indexedTerm);
+            // TODO: really should 1) strip off useless suffix,
+            // and 2) use FST not array/PagedBytes
+            indexedTerms.add(indexedTerm);
+          }
+        }
+
+        docFreqs = ArrayUtil.grow(docFreqs, termNum + 1);
+        final int df = te.docFreq();
+        if (df <= maxTermDocFreq) {
+
+          if (first) {
+            // shared with visitTerm
+            postings = postingsEnum = te.postings(postingsEnum, PostingsEnum.NONE);
+          } else {
+            postings = te.postings(postings, PostingsEnum.NONE);
+          }
+
+          // dF, but takes deletions into account
+          int actualDF = 0;
+
+          for (int doc = postings.advance(minDoc); doc < maxDoc; doc = postings.nextDoc()) {
+            actualDF ++;
+            addTerm(doc, termNum);
+          }
+          termInstances += actualDF;
+          docFreqs[termNum] = actualDF;
+        } else {
+          docFreqs[termNum] = -1;
+        }
+
+        termNum++;
+        if (te.next() == null) {
+          break;
+        }
       }
 
+      numTerms = termNum;
+      return null;
     }
-    indexedTermsArray = indexedTerms.toArray(new BytesRef[indexedTerms.size()]);
 
-    long endTime = System.nanoTime();
+    private void addTerm(int doc, int termNum) {
+      //System.out.println("    docID=" + doc);
+      // add TNUM_OFFSET to the term number to make room for special reserved values:
+      // 0 (end term) and 1 (index into byte array follows)
+      int delta = termNum - lastTerm[doc] + TNUM_OFFSET;
+      lastTerm[doc] = termNum;
+      int val = index[doc];
+
+      if ((val & 0x80000000) != 0) {
+        // index into byte array (actually the end of the doc-specific byte[] when building)
+        int pos = val & 0x7fffffff;
+        int ilen = vIntSize(delta);
+        byte[] arr = bytes[doc];
+        int newend = pos+ilen;
+        if (newend > arr.length) {
+          // We avoid a doubling strategy to lower memory usage.
+          // this faceting method isn't for docs with many terms.
+          // In hotspot, objects have 2 words of overhead, then fields, rounded up to a 64-bit boundary.
+          // TODO: figure out what array lengths we can round up to w/o actually using more memory
+          // (how much space does a byte[] take up?  Is data preceded by a 32 bit length only?
+          // It should be safe to round up to the nearest 32 bits in any case.
+          int newLen = (newend + 3) & 0xfffffffc;  // 4 byte alignment
+          byte[] newarr = new byte[newLen];
+          System.arraycopy(arr, 0, newarr, 0, pos);
+          arr = newarr;
+          bytes[doc] = newarr;
+        }
+        pos = writeInt(delta, arr, pos);
+        index[doc] = pos | 0x80000000;  // update pointer to end index in byte[]
+      } else {
+        // OK, this int has data in it... find the end (a zero starting byte - not
+        // part of another number, hence not following a byte with the high bit set).
+        int ipos;
+        if (val==0) {
+          ipos=0;
+        } else if ((val & 0x0000ff80)==0) {
+          ipos=1;
+        } else if ((val & 0x00ff8000)==0) {
+          ipos=2;
+        } else if ((val & 0xff800000)==0) {
+          ipos=3;
+        } else {
+          ipos=4;
+        }
 
-    total_time = (int) TimeUnit.MILLISECONDS.convert(endTime-startTime, TimeUnit.NANOSECONDS);
-    phase1_time = (int) TimeUnit.MILLISECONDS.convert(midPoint-startTime, TimeUnit.NANOSECONDS);
+        //System.out.println("      ipos=" + ipos);
+
+        int endPos = writeInt(delta, tempArr, ipos);
+        //System.out.println("      endpos=" + endPos);
+        if (endPos <= 4) {
+          //System.out.println("      fits!");
+          // value will fit in the integer... move bytes back
+          for (int j=ipos; j<endPos; j++) {
+            val |= (tempArr[j] & 0xff) << (j<<3);
+          }
+          index[doc] = val;
+        } else {
+          // value won't fit... move integer into byte[]
+          for (int j=0; j<ipos; j++) {
+            tempArr[j] = (byte)val;
+            val >>>=8;
+          }
+          // point at the end index in the byte[]
+          index[doc] = endPos | 0x80000000;
+          bytes[doc] = tempArr;
+          tempArr = new byte[12];
+        }
+      }
+    }
   }
 
   /** Number of bytes to represent an unsigned int as a vint. */
@@ -206,7 +206,8 @@ public class AddUpdateCommand extends UpdateCommand {
         } else {
           this.childDocIdStr = field.getFirstValue().toString();
           // the root might be in _root_ field or _route_ param.  If neither, then uniqueKeyField.
-          this.indexedIdStr = (String) solrDoc.getFieldValue(IndexSchema.ROOT_FIELD_NAME); // or here
+          Object rootValue = solrDoc.getFieldValue(IndexSchema.ROOT_FIELD_NAME); // or here
+          this.indexedIdStr = rootValue == null ? null : rootValue.toString();
           if (this.indexedIdStr == null) {
             this.indexedIdStr = useRouteAsRoot;
             if (this.indexedIdStr == null) {
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.solr.common.SolrException;
+
+/**
+ * Version buckets that serialize the updates of each id hash rather than of a whole bucket of ids.  Updates to
+ * different ids don't wait for each other even if their ids fall in the same bucket; a lock is only created while
+ * updates of an id hash are in progress.  The highest version of each bucket is kept in a primitive array and
+ * raised with compare-and-set, so reading and updating it takes no lock.
+ * <p>
+ * The highest version of a bucket is an upper bound of the versions of all its ids, not the version of an id: it only
+ * lets an update that is newer than every update of the bucket skip looking up the version of its id.  Any other
+ * update still checks for reordering and version conflicts against the version of its own id, from the update log or
+ * the index, as with the default buckets.  The more ids share a bucket, the more updates take that slower path.
+ * <p>
+ * Counts how often an update had to wait for another update of the same id hash, and for how long.
+ *
+ * @lucene.internal
+ */
+public class IdVersionBuckets {
+
+  private final AtomicLongArray highestVersions;
+  private final ConcurrentHashMap<Integer,IdLock> locks = new ConcurrentHashMap<>();
+
+  private final LongAdder acquired = new LongAdder();
+  private final LongAdder contended = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+
+  /**
+   * @param numBuckets the number of slots keeping the highest versions, a power of two
+   */
+  public IdVersionBuckets(int numBuckets) {
+    assert Integer.bitCount(numBuckets) == 1;
+    this.highestVersions = new AtomicLongArray(numBuckets);
+  }
+
+  /** Returns the bucket for the updates of an id hash; it should be used by a single update. */
+  public VersionBucket bucket(int hash) {
+    return new IdVersionBucket(hash);
+  }
+
+  public int getNumBuckets() {
+    return highestVersions.length();
+  }
+
+  /** Raises the highest version of every bucket to at least the given version */
+  public void seedHighest(long highestVersion) {
+    for (int i = 0; i < highestVersions.length(); i++) {
+      highestVersions.accumulateAndGet(i, highestVersion, Math::max);
+    }
+  }
+
+  /** The number of times a lock of an id hash was taken */
+  public long getAcquired() {
+    return acquired.sum();
+  }
+
+  /** The number of times a lock of an id hash was held by another update */
+  public long getContended() {
+    return contended.sum();
+  }
+
+  /** The total time spent waiting for the locks of id hashes held by other updates */
+  public long getWaitTimeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+  }
+
+  private IdLock acquire(int hash) {
+    return locks.compute(hash, (k, lock) -> {
+      if (lock == null) {
+        lock = new IdLock();
+      }
+      lock.refs++;
+      return lock;
+    });
+  }
+
+  private void release(int hash) {
+    locks.computeIfPresent(hash, (k, lock) -> --lock.refs == 0 ? null : lock);
+  }
+
+  /** The lock of an id hash, referenced by the updates that hold or wait for it */
+  private static final class IdLock {
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition condition = lock.newCondition();
+    int refs; // guarded by the map entry
+  }
+
+  private final class IdVersionBucket extends VersionBucket {
+    private final int hash;
+    private final int slot;
+    private IdLock lock;
+
+    IdVersionBucket(int hash) {
+      this.hash = hash;
+      this.slot = hash & (highestVersions.length() - 1);
+    }
+
+    @Override
+    public long getHighest() {
+      return highestVersions.get(slot);
+    }
+
+    @Override
+    public void updateHighest(long val) {
+      long version = Math.abs(val);
+      for (;;) {
+        long current = highestVersions.get(slot);
+        if (current == 0 || current >= version || highestVersions.compareAndSet(slot, current, version)) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * This will run the function holding the lock of the id hash.  If <code>lockTimeoutMs</code> is positive, it will
+     * throw exception if it can't obtain the lock in time.
+     */
+    @Override
+    public <T,R> R runWithLock(int lockTimeoutMs, CheckedFunction<T,R> function) throws IOException {
+      IdLock idLock = acquire(hash);
+      acquired.increment();
+      if (!idLock.lock.tryLock()) {
+        contended.increment();
+        long start = System.nanoTime();
+        boolean locked;
+        try {
+          if (lockTimeoutMs > 0) {
+            locked = idLock.lock.tryLock(lockTimeoutMs, TimeUnit.MILLISECONDS);
+          } else {
+            idLock.lock.lock();
+            locked = true;
+          }
+        } catch (InterruptedException e) {
+          release(hash);
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        } finally {
+          waitNanos.add(System.nanoTime() - start);
+        }
+        if (!locked) {
+          release(hash);
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+              "Unable to get version bucket lock in " + lockTimeoutMs + " ms");
+        }
+      }
+      lock = idLock;
+      return function.apply();
+    }
+
+    @Override
+    public void unlock() {
+      IdLock idLock = lock;
+      lock = null;
+      idLock.lock.unlock();
+      release(hash);
+    }
+
+    @Override
+    public void signalAll() {
+      lock.condition.signalAll();
+    }
+
+    @Override
+    public void awaitNanos(long nanosTimeout) {
+      try {
+        if (nanosTimeout > 0) {
+          lock.condition.awaitNanos(nanosTimeout);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
@@ -19,9 +19,13 @@ package org.apache.solr.update;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
@@ -44,6 +48,7 @@ import org.apache.solr.common.util.FastInputStream;
 import org.apache.solr.common.util.FastOutputStream;
 import org.apache.solr.common.util.JavaBinCodec;
 import org.apache.solr.common.util.ObjectReleaseTracker;
+import org.apache.solr.common.util.SuppressForbidden;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,6 +76,10 @@ public class TransactionLog implements Closeable {
 
   public final static String END_MESSAGE = "SOLR_TLOG_END";
 
+  /** Set to false to read finished logs through their file channel instead of mapping them into memory */
+  public final static String MMAP_READS_PROP = "solr.tlog.mmap";
+  static final boolean mmapReads = Boolean.parseBoolean(System.getProperty(MMAP_READS_PROP, "true"));
+
   long id;
   File tlogFile;
   RandomAccessFile raf;
@@ -80,6 +89,20 @@ public class TransactionLog implements Closeable {
   int numRecords;
   boolean isBuffer;
 
+  // fsyncs are shared by concurrent callers of finish, see sync(long)
+  private final Object syncLock = new Object();
+  private long syncedPosition;  // guarded by syncLock
+  private boolean syncing;      // guarded by syncLock
+  int numSyncs;                 // guarded by syncLock
+
+  // the log file mapped into memory once no more records are expected, see mapForReading()
+  private volatile ByteBuffer mapped;
+  // true if the log was closed while it may still be read, so its mapping can't be released right away
+  private volatile boolean forceClosed;
+
+  // releases a mapping without waiting for the buffer to be garbage collected, or null if the JVM doesn't allow it
+  private static final MethodHandle UNMAPPER = lookupUnmapper();
+
   protected volatile boolean deleteOnClose = true;  // we can delete old tlogs since they are currently only used for real-time-get (and in the future, recovery)
 
   AtomicInteger refcount = new AtomicInteger(1);
@@ -189,6 +212,7 @@ public class TransactionLog implements Closeable {
           assert channel.position() == start;
           fos.setWritten(start);    // reflect that we aren't starting at the beginning
           assert fos.size() == channel.size();
+          mapForReading();
         } else {
           addGlobalStrings(globalStrings);
         }
@@ -497,6 +521,7 @@ public class TransactionLog implements Closeable {
 
         fos.flush();  // flush since this will be the last record in a log fill
         assert fos.size() == channel.size();
+        mapForReading();
 
         return pos;
       } catch (IOException e) {
@@ -514,6 +539,14 @@ public class TransactionLog implements Closeable {
     if (pos < 0) return null;
 
     try {
+      ByteBuffer mapped = this.mapped;
+      if (mapped != null && pos < mapped.limit()) {
+        // the record is in the mapped part of the log, which has been flushed already
+        try (LogCodec codec = new LogCodec(resolver)) {
+          return codec.readVal(new ChannelFastInputStream(channel, mapped, pos));
+        }
+      }
+
       // make sure any unflushed buffer has been flushed
       synchronized (this) {
         // TODO: optimize this by keeping track of what we have flushed up to
@@ -561,21 +594,76 @@ public class TransactionLog implements Closeable {
 
   /** Move to a read-only state, closing and releasing resources while keeping the log available for reads */
   public void closeOutput() {
+    try {
+      synchronized (this) {
+        mapForReading();
+      }
+    } catch (IOException e) {
+      log.warn("Could not map tlog {} for reading", tlogFile, e);
+      // reads go through the file channel
+    }
+  }
+
+  /**
+   * Maps the records written so far into memory, so that lookups and readers of a log that isn't written to anymore
+   * read them without a system call per buffer and without synchronizing with writers.  Records that are still
+   * appended after this are read through the file channel.  Must be called synchronized on this log.
+   */
+  private void mapForReading() throws IOException {
+    if (!mmapReads || mapped != null) return;
+    fos.flushBuffer();
+    long size = fos.size();
+    if (size == 0 || size > Integer.MAX_VALUE) return;
+    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+  }
+
+  /**
+   * Looks up the cleaner of direct buffers the way {@link org.apache.lucene.store.MMapDirectory} does, so that the
+   * mapping of a log, and the disk space of a deleted log, are released when the log is closed.
+   */
+  @SuppressForbidden(reason = "Needs access to sun.misc.Unsafe to release mappings, like MMapDirectory")
+  private static MethodHandle lookupUnmapper() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      MethodHandle invokeCleaner = MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner",
+          MethodType.methodType(void.class, ByteBuffer.class));
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      return invokeCleaner.bindTo(theUnsafe.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.info("Mapped tlogs are released when they are garbage collected: {}", e.toString());
+      return null;
+    }
+  }
+
+  private void unmap(ByteBuffer mapping) {
+    if (UNMAPPER == null) return;
+    try {
+      UNMAPPER.invokeExact(mapping);
+    } catch (Throwable e) {
+      log.warn("Could not unmap tlog {}", tlogFile, e);
+    }
+  }
 
+  /** Returns true if the records of this log are read from memory, see {@link #closeOutput()} */
+  boolean isMapped() {
+    return mapped != null;
   }
 
   public void finish(UpdateLog.SyncLevel syncLevel) {
     if (syncLevel == UpdateLog.SyncLevel.NONE) return;
     try {
+      long position;
       synchronized (this) {
         fos.flushBuffer();
+        position = fos.size();
       }
 
       if (syncLevel == UpdateLog.SyncLevel.FSYNC) {
         // Since fsync is outside of synchronized block, we can end up with a partial
         // last record on power failure (which is OK, and does not represent an error...
         // we just need to be aware of it when reading).
-        raf.getFD().sync();
+        sync(position);
       }
 
     } catch (IOException e) {
@@ -583,15 +671,63 @@ public class TransactionLog implements Closeable {
     }
   }
 
+  /**
+   * Makes sure the log is synced to disk up to the given position.  Callers that arrive while an fsync is running
+   * wait for it, and then one of them syncs what all of them have flushed.  This way concurrent updates share
+   * fsyncs, and the number of fsyncs depends on the latency of the disk rather than on the number of updates.
+   */
+  private void sync(long position) throws IOException {
+    synchronized (syncLock) {
+      while (syncedPosition < position && syncing) {
+        try {
+          syncLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for " + this + " to be synced");
+        }
+      }
+      if (syncedPosition >= position) return;
+      syncing = true;
+    }
+
+    long target = position;
+    boolean success = false;
+    try {
+      // include the records that the waiting callers have flushed
+      synchronized (this) {
+        fos.flushBuffer();
+        target = fos.size();
+      }
+      raf.getFD().sync();
+      success = true;
+    } finally {
+      synchronized (syncLock) {
+        if (success) {
+          syncedPosition = Math.max(syncedPosition, target);
+        }
+        syncing = false;
+        numSyncs++;
+        syncLock.notifyAll();
+      }
+    }
+  }
+
   public void close() {
     try {
       if (debug) {
         log.debug("Closing tlog {}", this);
       }
 
+      ByteBuffer mapping;
       synchronized (this) {
         fos.flush();
         fos.close();
+        mapping = mapped;
+        mapped = null;
+      }
+      if (mapping != null && !forceClosed) {
+        // no reader holds a reference to the log anymore, so none reads from the mapping
+        unmap(mapping);
       }
 
       if (deleteOnClose) {
@@ -612,6 +748,8 @@ public class TransactionLog implements Closeable {
   public void forceClose() {
     if (refcount.get() > 0) {
       log.error("Error: Forcing close of {}", this);
+      // a reader may still use the mapping, which is then only released once the buffer is garbage collected
+      forceClosed = true;
       refcount.set(0);
       close();
     }
@@ -659,7 +797,7 @@ public class TransactionLog implements Closeable {
 
     public LogReader(long startingPos) {
       incref();
-      fis = new ChannelFastInputStream(channel, startingPos);
+      fis = new ChannelFastInputStream(channel, mapped, startingPos);
     }
 
     // for classes that extend
@@ -819,7 +957,7 @@ public class TransactionLog implements Closeable {
         assert sz == channel.size();
       }
 
-      fis = new ChannelFastInputStream(channel, 0);
+      fis = new ChannelFastInputStream(channel, mapped, 0);
       if (sz >= 4) {
         // readHeader(fis);  // should not be needed
         prevPos = sz - 4;
@@ -890,16 +1028,28 @@ public class TransactionLog implements Closeable {
 
   static class ChannelFastInputStream extends FastInputStream {
     private FileChannel ch;
+    private final ByteBuffer mapped;  // the start of the file mapped into memory, or null
 
     public ChannelFastInputStream(FileChannel ch, long chPosition) {
+      this(ch, null, chPosition);
+    }
+
+    public ChannelFastInputStream(FileChannel ch, ByteBuffer mapped, long chPosition) {
       // super(null, new byte[10],0,0);    // a small buffer size for testing purposes
       super(null);
       this.ch = ch;
+      this.mapped = mapped == null ? null : mapped.duplicate();
       super.readFromStream = chPosition;
     }
 
     @Override
     public int readWrappedStream(byte[] target, int offset, int len) throws IOException {
+      if (mapped != null && readFromStream < mapped.limit()) {
+        int n = (int) Math.min(len, mapped.limit() - readFromStream);
+        mapped.position((int) readFromStream);
+        mapped.get(target, offset, n);
+        return n;
+      }
       ByteBuffer bb = ByteBuffer.wrap(target, offset, len);
       int ret = ch.read(bb, readFromStream);
       return ret;
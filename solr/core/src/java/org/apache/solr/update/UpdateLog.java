@@ -43,8 +43,6 @@ import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.codahale.metrics.Gauge;
@@ -59,7 +57,6 @@ import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.IOUtils;
-import org.apache.solr.common.util.TimeSource;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoBean;
@@ -75,11 +72,10 @@ import org.apache.solr.update.processor.DistributedUpdateProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorChain;
 import org.apache.solr.common.util.SolrNamedThreadFactory;
-import org.apache.solr.util.OrderedExecutor;
+import org.apache.solr.util.OrderedLanes;
 import org.apache.solr.util.RTimer;
 import org.apache.solr.util.RefCounted;
 import org.apache.solr.util.TestInjection;
-import org.apache.solr.util.TimeOut;
 import org.apache.solr.util.plugin.PluginInfoInitialized;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,6 +92,8 @@ import static org.apache.solr.update.processor.DistributingUpdateProcessorFactor
  */
 public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   private static final long STATUS_TIME = TimeUnit.NANOSECONDS.convert(60, TimeUnit.SECONDS);
+  // the number of decoded updates per replay lane that may wait to be applied
+  private static final int REPLAY_UPDATES_PER_LANE = 100;
   public static String LOG_FILENAME_PATTERN = "%s.%019d";
   public static String TLOG_NAME="tlog";
   public static String BUFFER_TLOG_NAME="buffer.tlog";
@@ -461,6 +459,14 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     replayOpsMeter = solrMetricsContext.meter("ops", scope, "replay");
     copyOverOldUpdatesMeter = solrMetricsContext.meter("ops", scope, "copyOverOldUpdates");
     solrMetricsContext.gauge(() -> state.getValue(), true, "state", scope);
+    solrMetricsContext.gauge(() -> {
+      IdVersionBuckets idBuckets = versionInfo == null ? null : versionInfo.getIdVersionBuckets();
+      return idBuckets == null ? 0L : idBuckets.getContended();
+    }, true, "contended", scope, "versionLocks");
+    solrMetricsContext.gauge(() -> {
+      IdVersionBuckets idBuckets = versionInfo == null ? null : versionInfo.getIdVersionBuckets();
+      return idBuckets == null ? 0L : idBuckets.getWaitTimeMs();
+    }, true, "waitTimeMs", scope, "versionLocks");
   }
 
   @Override
@@ -1824,8 +1830,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
         UpdateRequestProcessorChain processorChain = req.getCore().getUpdateProcessingChain(null);
         UpdateRequestProcessor proc = processorChain.createProcessor(req, rsp);
-        OrderedExecutor executor = inSortedOrder ? null : req.getCore().getCoreContainer().getReplayUpdatesExecutor();
-        AtomicInteger pendingTasks = new AtomicInteger(0);
+        // updates are applied on lanes chosen by the id hash, so updates of the same id keep their order
+        OrderedLanes lanes = inSortedOrder ? null : req.getCore().getCoreContainer().getReplayUpdatesExecutor().newLanes(REPLAY_UPDATES_PER_LANE);
         AtomicReference<SolrException> exceptionOnExecuteUpdate = new AtomicReference<>();
 
         long commitVersion = 0;
@@ -1859,9 +1865,9 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
               if (!finishing) {
                 // about to block all the updates including the tasks in the executor
                 // therefore we must wait for them to be finished
-                waitForAllUpdatesGetExecuted(pendingTasks);
+                waitForAllUpdatesGetExecuted(lanes);
                 // from this point, remain updates will be executed in a single thread
-                executor = null;
+                lanes = null;
                 // block to prevent new adds, but don't immediately unlock since
                 // we could be starved from ever completing recovery.  Only unlock
                 // after we've finished this recovery.
@@ -1905,7 +1911,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                 AddUpdateCommand cmd = convertTlogEntryToAddUpdateCommand(req, entry, oper, version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("{} {}", oper == ADD ? "add" : "update", cmd);
-                execute(cmd, executor, pendingTasks, proc, exceptionOnExecuteUpdate);
+                execute(cmd, lanes, proc, exceptionOnExecuteUpdate);
                 break;
               }
               case UpdateLog.DELETE: {
@@ -1916,7 +1922,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                 cmd.setVersion(version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("delete {}", cmd);
-                execute(cmd, executor, pendingTasks, proc, exceptionOnExecuteUpdate);
+                execute(cmd, lanes, proc, exceptionOnExecuteUpdate);
                 break;
               }
 
@@ -1928,9 +1934,9 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                 cmd.setVersion(version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("deleteByQuery {}", cmd);
-                waitForAllUpdatesGetExecuted(pendingTasks);
+                waitForAllUpdatesGetExecuted(lanes);
                 // DBQ will be executed in the same thread
-                execute(cmd, null, pendingTasks, proc, exceptionOnExecuteUpdate);
+                execute(cmd, null, proc, exceptionOnExecuteUpdate);
                 break;
               }
               case UpdateLog.COMMIT: {
@@ -1965,7 +1971,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
           assert TestInjection.injectUpdateLogReplayRandomPause();
         }
 
-        waitForAllUpdatesGetExecuted(pendingTasks);
+        waitForAllUpdatesGetExecuted(lanes);
         if (exceptionOnExecuteUpdate.get() != null) throw exceptionOnExecuteUpdate.get();
 
         CommitUpdateCommand cmd = new CommitUpdateCommand(req, false);
@@ -2002,20 +2008,15 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
       }
     }
 
-    private void waitForAllUpdatesGetExecuted(AtomicInteger pendingTasks) {
-      TimeOut timeOut = new TimeOut(Integer.MAX_VALUE, TimeUnit.MILLISECONDS, TimeSource.CURRENT_TIME);
+    private void waitForAllUpdatesGetExecuted(OrderedLanes lanes) {
+      if (lanes == null) return;
       try {
-        timeOut.waitFor("Timeout waiting for replay updates finish", () -> {
-          //TODO handle the case when there are no progress after a long time
-          return pendingTasks.get() == 0;
-        });
-      } catch (TimeoutException e) {
-        throw new SolrException(ErrorCode.SERVER_ERROR, e);
+        //TODO handle the case when there are no progress after a long time
+        lanes.awaitIdle();
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         throw new SolrException(ErrorCode.SERVER_ERROR, e);
       }
-
     }
 
     private Integer getBucketHash(UpdateCommand cmd) {
@@ -2034,14 +2035,13 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
       return null;
     }
 
-    private void execute(UpdateCommand cmd, OrderedExecutor executor,
-                         AtomicInteger pendingTasks, UpdateRequestProcessor proc,
+    private void execute(UpdateCommand cmd, OrderedLanes lanes, UpdateRequestProcessor proc,
                          AtomicReference<SolrException> exceptionHolder) {
       assert cmd instanceof AddUpdateCommand || cmd instanceof DeleteUpdateCommand;
 
-      if (executor != null) {
+      if (lanes != null) {
         // by using the same hash as DUP, independent updates can avoid waiting for same bucket
-        executor.execute(getBucketHash(cmd), () -> {
+        Runnable task = () -> {
           try {
             // fail fast
             if (exceptionHolder.get() != null) return;
@@ -2061,11 +2061,14 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
             }
             recoveryInfo.errors++;
             loglog.warn("REPLAY_ERR: IOException reading log", e);
-          } finally {
-            pendingTasks.decrementAndGet();
           }
-        });
-        pendingTasks.incrementAndGet();
+        };
+        try {
+          lanes.execute(getBucketHash(cmd), task);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SolrException(ErrorCode.SERVER_ERROR, e);
+        }
       } else {
         try {
           if (cmd instanceof AddUpdateCommand) {
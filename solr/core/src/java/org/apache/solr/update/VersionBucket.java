@@ -31,6 +31,11 @@ import java.util.concurrent.TimeUnit;
 public class VersionBucket {
   public long highest;
 
+  /** Returns the highest version of the updates in this bucket, or 0 if it isn't known yet */
+  public long getHighest() {
+    return highest;
+  }
+
   public void updateHighest(long val) {
     if (highest != 0) {
       highest = Math.max(highest, Math.abs(val));
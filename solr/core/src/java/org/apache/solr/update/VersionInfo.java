@@ -19,6 +19,7 @@ package org.apache.solr.update;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -47,9 +48,11 @@ import static org.apache.solr.common.params.CommonParams.VERSION_FIELD;
 public class VersionInfo {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private static final String SYS_PROP_BUCKET_VERSION_LOCK_TIMEOUT_MS = "bucketVersionLockTimeoutMs";
+  private static final String SYS_PROP_VERSION_LOCKS_BY_ID = "versionLocksById";
 
   private final UpdateLog ulog;
-  private final VersionBucket[] buckets;
+  private final VersionBucket[] buckets; // null if versions are locked by id
+  private final IdVersionBuckets idBuckets;
   private SchemaField versionField;
   final ReadWriteLock lock = new ReentrantReadWriteLock(true);
 
@@ -96,12 +99,20 @@ public class VersionInfo {
     versionField = getAndCheckVersionField(schema);
     versionBucketLockTimeoutMs = ulog.uhandler.core.getSolrConfig().getInt("updateHandler/versionBucketLockTimeoutMs",
         Integer.parseInt(System.getProperty(SYS_PROP_BUCKET_VERSION_LOCK_TIMEOUT_MS, "0")));
-    buckets = new VersionBucket[ BitUtil.nextHighestPowerOfTwo(nBuckets) ];
-    for (int i=0; i<buckets.length; i++) {
-      if (versionBucketLockTimeoutMs > 0) {
-        buckets[i] = new TimedVersionBucket();
-      } else {
-        buckets[i] = new VersionBucket();
+    boolean versionLocksById = ulog.uhandler.core.getSolrConfig().getBool("updateHandler/versionLocksById",
+        Boolean.parseBoolean(System.getProperty(SYS_PROP_VERSION_LOCKS_BY_ID, "false")));
+    if (versionLocksById) {
+      buckets = null;
+      idBuckets = new IdVersionBuckets(BitUtil.nextHighestPowerOfTwo(nBuckets));
+    } else {
+      idBuckets = null;
+      buckets = new VersionBucket[ BitUtil.nextHighestPowerOfTwo(nBuckets) ];
+      for (int i=0; i<buckets.length; i++) {
+        if (versionBucketLockTimeoutMs > 0) {
+          buckets[i] = new TimedVersionBucket();
+        } else {
+          buckets[i] = new VersionBucket();
+        }
       }
     }
   }
@@ -110,6 +121,17 @@ public class VersionInfo {
     return versionBucketLockTimeoutMs;
   }
 
+  /**
+   * Returns the buckets that lock updates by id, or null if updates are locked by bucket
+   */
+  public IdVersionBuckets getIdVersionBuckets() {
+    return idBuckets;
+  }
+
+  private int getNumBuckets() {
+    return idBuckets != null ? idBuckets.getNumBuckets() : buckets.length;
+  }
+
   public void reload() {
   }
 
@@ -161,32 +183,29 @@ public class VersionInfo {
   // that times are somewhat synchronized in the cluster).
   // Good if we want to relax some constraints to scale down to where only one node may be
   // up at a time.  Possibly harder to detect missing messages (because versions are not contiguous).
-  private long vclock;
-  private final Object clockSync = new Object();
+  private final AtomicLong vclock = new AtomicLong();
 
   @SuppressForbidden(reason = "need currentTimeMillis just for getting realistic version stamps, does not assume monotonicity")
   public long getNewClock() {
-    synchronized (clockSync) {
+    for (;;) {
+      long last = vclock.get();
       long time = System.currentTimeMillis();
       long result = time << 20;
-      if (result <= vclock) {
-        result = vclock + 1;
+      if (result <= last) {
+        result = last + 1;
+      }
+      if (vclock.compareAndSet(last, result)) {
+        return result;
       }
-      vclock = result;
-      return vclock;
     }
   }
 
   public long getOldClock() {
-    synchronized (clockSync) {
-      return vclock;
-    }
+    return vclock.get();
   }
 
   public void updateClock(long clock) {
-    synchronized (clockSync) {
-      vclock = Math.max(vclock, clock);
-    }
+    vclock.accumulateAndGet(clock, Math::max);
   }
 
 
@@ -196,6 +215,9 @@ public class VersionInfo {
     // int h = hash + (hash >>> 8) + (hash >>> 16) + (hash >>> 24);
     // Assume good hash codes for now.
 
+    if (idBuckets != null) {
+      return idBuckets.bucket(hash);
+    }
     int slot = hash & (buckets.length-1);
     return buckets[slot];
   }
@@ -244,7 +266,7 @@ public class VersionInfo {
 
     final String versionFieldName = versionField.getName();
 
-    log.debug("Refreshing highest value of {} for {} version buckets from index", versionFieldName, buckets.length);
+    log.debug("Refreshing highest value of {} for {} version buckets from index", versionFieldName, getNumBuckets());
     // if indexed, then we have terms to get the max from
     if (versionField.indexed()) {
       if (versionField.getType().isPointField()) {
@@ -273,6 +295,10 @@ public class VersionInfo {
   }
 
   public void seedBucketsWithHighestVersion(long highestVersion) {
+    if (idBuckets != null) {
+      idBuckets.seedHighest(highestVersion);
+      return;
+    }
     for (int i=0; i<buckets.length; i++) {
       // should not happen, but in case other threads are calling updateHighest on the version bucket
       synchronized (buckets[i]) {
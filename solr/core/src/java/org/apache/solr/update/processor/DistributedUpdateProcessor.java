@@ -363,7 +363,7 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
 
       if (versionsStored) {
 
-        long bucketVersion = bucket.highest;
+        long bucketVersion = bucket.getHighest();
 
         if (leaderLogic) {
 
@@ -991,7 +991,7 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     try {
       BytesRef idBytes = cmd.getIndexedId();
       if (versionsStored) {
-        long bucketVersion = bucket.highest;
+        long bucketVersion = bucket.getHighest();
 
         if (leaderLogic) {
 
@@ -0,0 +1,395 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A mergeable quantile sketch after Karnin, Lang and Liberty ("Optimal Quantile Approximation in Streams", 2016).
+ * <p>
+ * Values are kept in levels, where each value of level <code>h</code> stands for <code>2^h</code> values of the
+ * input.  When a level is full, it is sorted and every other value is moved up to the next level.  Levels get
+ * smaller by a factor of 2/3 going down from the top level, which holds up to <code>k</code> values, so a sketch
+ * never holds more than about <code>3k</code> values no matter how many it has seen.  All levels are kept in a
+ * single array that starts small and grows as values are added, with the free space in front of the lowest level.
+ * <p>
+ * The rank of a value returned by {@link #quantile(double)} is within roughly <code>1.33% * 200 / k</code> of the
+ * requested rank, 99% of the time; the default <code>k</code> of 200 gives about 1.3%.  Sketches of the same
+ * <code>k</code> can be merged without losing more accuracy than a single sketch fed all values would.
+ *
+ * @lucene.internal
+ */
+public final class KLLSketch {
+
+  public static final int DEFAULT_K = 200;
+  public static final int MIN_K = 8;
+  public static final int MAX_K = 65535;
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(KLLSketch.class);
+  private static final int MIN_LEVEL_CAPACITY = 8;
+  private static final int INITIAL_CAPACITY = 8;
+
+  private final int k;
+  private double[] items;
+  // levels[h] is the start of level h in items; levels[numLevels] is items.length
+  private int[] levels;
+  private int numLevels;
+  private long n;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+  // alternates which half of a level is kept, so compactions don't lean to one side
+  private int compactions;
+
+  public KLLSketch() {
+    this(DEFAULT_K);
+  }
+
+  public KLLSketch(int k) {
+    if (k < MIN_K || k > MAX_K) {
+      throw new IllegalArgumentException("k must be between " + MIN_K + " and " + MAX_K + ", got " + k);
+    }
+    this.k = k;
+    this.items = new double[INITIAL_CAPACITY];
+    this.levels = new int[] {items.length, items.length};
+    this.numLevels = 1;
+  }
+
+  public int getK() {
+    return k;
+  }
+
+  /** The number of values this sketch has seen */
+  public long getN() {
+    return n;
+  }
+
+  public boolean isEmpty() {
+    return n == 0;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  /** Adds a value; NaN is ignored */
+  public void update(double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    if (levels[0] == 0) {
+      makeRoom();
+    }
+    items[--levels[0]] = value;
+    if (n++ == 0) {
+      min = max = value;
+    } else if (value < min) {
+      min = value;
+    } else if (value > max) {
+      max = value;
+    }
+  }
+
+  /** Adds the values seen by another sketch of the same <code>k</code> */
+  public void merge(KLLSketch other) {
+    if (other.k != k) {
+      throw new IllegalArgumentException("can't merge sketches of k=" + other.k + " into k=" + k);
+    }
+    if (other.n == 0) {
+      return;
+    }
+
+    int mergedLevels = Math.max(numLevels, other.numLevels);
+    int count = getNumRetained() + other.getNumRetained();
+    double[] mergedItems = new double[Math.max(count, capacity(k, mergedLevels))];
+    int[] mergedStarts = new int[mergedLevels + 2];
+    int end = mergedItems.length;
+    mergedStarts[mergedLevels] = end;
+    for (int h = mergedLevels - 1; h >= 0; h--) {
+      int size = levelSize(h) + other.levelSize(h);
+      int start = end - size;
+      if (h == 0) {
+        // the lowest level isn't sorted
+        System.arraycopy(items, levels[0], mergedItems, start, levelSize(0));
+        System.arraycopy(other.items, other.levels[0], mergedItems, start + levelSize(0), other.levelSize(0));
+      } else {
+        mergeSorted(items, h < numLevels ? levels[h] : 0, levelSize(h),
+            other.items, h < other.numLevels ? other.levels[h] : 0, other.levelSize(h), mergedItems, start);
+      }
+      mergedStarts[h] = start;
+      end = start;
+    }
+
+    items = mergedItems;
+    levels = mergedStarts;
+    numLevels = mergedLevels;
+    if (n == 0) {
+      min = other.min;
+      max = other.max;
+    } else {
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+    }
+    n += other.n;
+
+    for (int h = 0; h < numLevels; h++) {
+      if (levelSize(h) >= levelCapacity(h)) {
+        compact(h);
+      }
+    }
+    int length = Math.max(getNumRetained(), capacity(k, numLevels));
+    if (items.length > length) {
+      resize(length);
+    }
+  }
+
+  /**
+   * Returns the value at a fraction of the ranks of all values seen, or NaN if this sketch is empty.
+   *
+   * @param fraction between 0 and 1; 0 returns the minimum and 1 the maximum
+   */
+  public double quantile(double fraction) {
+    return quantiles(new double[] {fraction})[0];
+  }
+
+  /** Returns the values at several fractions of the ranks of all values seen, sorting the sketch only once */
+  public double[] quantiles(double[] fractions) {
+    double[] result = new double[fractions.length];
+    if (n == 0) {
+      Arrays.fill(result, Double.NaN);
+      return result;
+    }
+
+    // merge the levels into one sorted run of values, with the weight of the level of each value
+    int count = getNumRetained();
+    double[] values = new double[count];
+    long[] weights = new long[count];
+    double[] buffer = new double[count];
+    long[] bufferWeights = new long[count];
+    int size = levelSize(0);
+    System.arraycopy(items, levels[0], values, 0, size);
+    Arrays.sort(values, 0, size);
+    Arrays.fill(weights, 0, size, 1L);
+    for (int h = 1; h < numLevels; h++) {
+      int i = 0, j = levels[h], out = 0;
+      final int end = levels[h + 1];
+      final long weight = 1L << h;
+      while (i < size || j < end) {
+        if (j >= end || (i < size && values[i] <= items[j])) {
+          buffer[out] = values[i];
+          bufferWeights[out++] = weights[i++];
+        } else {
+          buffer[out] = items[j++];
+          bufferWeights[out++] = weight;
+        }
+      }
+      double[] swap = values; values = buffer; buffer = swap;
+      long[] swapWeights = weights; weights = bufferWeights; bufferWeights = swapWeights;
+      size = out;
+    }
+
+    long total = 0;
+    for (int i = 0; i < size; i++) {
+      total += weights[i];
+    }
+    for (int f = 0; f < fractions.length; f++) {
+      double fraction = fractions[f];
+      if (fraction <= 0) {
+        result[f] = min;
+      } else if (fraction >= 1) {
+        result[f] = max;
+      } else {
+        double rank = fraction * total;
+        long cumulative = 0;
+        int i = 0;
+        while (i < size - 1 && (cumulative += weights[i]) < rank) {
+          i++;
+        }
+        result[f] = values[i];
+      }
+    }
+    return result;
+  }
+
+  /** The number of values the sketch holds */
+  public int getNumRetained() {
+    return levels[numLevels] - levels[0];
+  }
+
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(items) + RamUsageEstimator.sizeOf(levels);
+  }
+
+  /**
+   * Returns the sketch in a compact binary form: k, n, min, max, the sizes of the levels and then the values of
+   * each level from the lowest up.
+   */
+  public byte[] toBytes() {
+    int count = getNumRetained();
+    ByteBuffer buf = ByteBuffer.allocate(4 + 8 + 8 + 8 + 4 + 4 * numLevels + 8 * count);
+    buf.putInt(k);
+    buf.putLong(n);
+    buf.putDouble(min);
+    buf.putDouble(max);
+    buf.putInt(numLevels);
+    for (int h = 0; h < numLevels; h++) {
+      buf.putInt(levelSize(h));
+    }
+    for (int i = levels[0]; i < levels[numLevels]; i++) {
+      buf.putDouble(items[i]);
+    }
+    return buf.array();
+  }
+
+  /** Reads a sketch written by {@link #toBytes()} */
+  public static KLLSketch fromBytes(byte[] bytes) {
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    KLLSketch sketch = new KLLSketch(buf.getInt());
+    sketch.n = buf.getLong();
+    sketch.min = buf.getDouble();
+    sketch.max = buf.getDouble();
+    int numLevels = buf.getInt();
+    int[] sizes = new int[numLevels];
+    int count = 0;
+    for (int h = 0; h < numLevels; h++) {
+      sizes[h] = buf.getInt();
+      count += sizes[h];
+    }
+
+    int length = Math.max(count, INITIAL_CAPACITY);
+    sketch.items = new double[length];
+    sketch.levels = new int[numLevels + 2];
+    sketch.numLevels = numLevels;
+    int start = length - count;
+    for (int h = 0; h < numLevels; h++) {
+      sketch.levels[h] = start;
+      start += sizes[h];
+    }
+    sketch.levels[numLevels] = length;
+    for (int i = length - count; i < length; i++) {
+      sketch.items[i] = buf.getDouble();
+    }
+    return sketch;
+  }
+
+  private int levelSize(int h) {
+    return h < numLevels ? levels[h + 1] - levels[h] : 0;
+  }
+
+  private int levelCapacity(int h) {
+    return levelCapacity(k, numLevels - 1 - h);
+  }
+
+  private static int levelCapacity(int k, int depth) {
+    return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+  }
+
+  /** The number of values a sketch of <code>numLevels</code> levels holds before it compacts a level */
+  private static int capacity(int k, int numLevels) {
+    int capacity = 0;
+    for (int depth = 0; depth < numLevels; depth++) {
+      capacity += levelCapacity(k, depth);
+    }
+    return capacity;
+  }
+
+  private void makeRoom() {
+    int capacity = capacity(k, numLevels);
+    if (items.length < capacity) {
+      resize(Math.min(capacity, items.length * 2));
+      return;
+    }
+    // the sketch is full, so at least one level is at its capacity
+    int h = 0;
+    while (h < numLevels - 1 && levelSize(h) < levelCapacity(h)) {
+      h++;
+    }
+    compact(h);
+  }
+
+  /** Moves the values to an array of the given length, keeping the free space in front */
+  private void resize(int length) {
+    int delta = length - items.length;
+    double[] resized = new double[length];
+    System.arraycopy(items, levels[0], resized, levels[0] + delta, getNumRetained());
+    for (int h = 0; h <= numLevels; h++) {
+      levels[h] += delta;
+    }
+    items = resized;
+  }
+
+  /** Sorts level h and moves every other value of it up to level h + 1, keeping one value if the level is odd */
+  private void compact(int h) {
+    if (h == numLevels - 1) {
+      if (levels.length < numLevels + 2) {
+        levels = Arrays.copyOf(levels, numLevels + 2);
+      }
+      levels[numLevels + 1] = levels[numLevels];
+      numLevels++;
+    }
+    final int rawBeg = levels[h];
+    final int rawEnd = levels[h + 1];
+    final int rawLim = levels[h + 2];
+    final int pop = rawEnd - rawBeg;
+    final int adjBeg = rawBeg + (pop & 1);
+    final int half = (pop - (pop & 1)) / 2;
+    if (h == 0) {
+      Arrays.sort(items, adjBeg, rawEnd);
+    }
+
+    final int offset = compactions++ & 1;
+    final double[] halved = new double[half];
+    for (int i = 0; i < half; i++) {
+      halved[i] = items[adjBeg + 2 * i + offset];
+    }
+    // writes never pass the next value to read from level h + 1
+    int i = 0, j = rawEnd, out = adjBeg + half;
+    while (i < half || j < rawLim) {
+      if (j >= rawLim || (i < half && halved[i] <= items[j])) {
+        items[out++] = halved[i++];
+      } else {
+        items[out++] = items[j++];
+      }
+    }
+
+    // shift the levels below, and the value kept in level h, up over the freed space
+    System.arraycopy(items, levels[0], items, levels[0] + half, adjBeg - levels[0]);
+    for (int l = 0; l <= h; l++) {
+      levels[l] += half;
+    }
+    levels[h + 1] = adjBeg + half;
+  }
+
+  private static void mergeSorted(double[] a, int aStart, int aSize, double[] b, int bStart, int bSize,
+                                  double[] out, int outStart) {
+    int i = aStart, j = bStart;
+    final int aEnd = aStart + aSize, bEnd = bStart + bSize;
+    while (i < aEnd || j < bEnd) {
+      if (j >= bEnd || (i < aEnd && a[i] <= b[j])) {
+        out[outStart++] = a[i++];
+      } else {
+        out[outStart++] = b[j++];
+      }
+    }
+  }
+}
@@ -29,9 +29,11 @@ import org.apache.solr.common.util.ExecutorUtil;
 public class OrderedExecutor implements Executor {
   private final ExecutorService delegate;
   private final SparseStripedLock<Integer> sparseStripedLock;
+  private final int numThreads;
 
   public OrderedExecutor(int numThreads, ExecutorService delegate) {
     this.delegate = delegate;
+    this.numThreads = numThreads;
     this.sparseStripedLock = new SparseStripedLock<>(numThreads);
   }
 
@@ -77,6 +79,16 @@ public class OrderedExecutor implements Executor {
     }
   }
 
+  /**
+   * Returns lanes running their tasks on the threads of this executor, one lane per thread.  Callers submitting
+   * many tasks with the same {@code lockId} should prefer lanes, which queue such tasks instead of blocking.
+   *
+   * @param maxPendingPerLane the number of tasks per lane that may be pending before submitting blocks
+   */
+  public OrderedLanes newLanes(int maxPendingPerLane) {
+    return new OrderedLanes(numThreads, numThreads * maxPendingPerLane, delegate);
+  }
+
   public void shutdownAndAwaitTermination() {
     ExecutorUtil.shutdownAndAwaitTermination(delegate);
   }
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks on a fixed number of lanes, chosen by the hash of each task.  The tasks of a lane run one after
+ * another in the order they were submitted, while different lanes run concurrently on the threads of the
+ * underlying executor.  Unlike {@link OrderedExecutor}, submitting a task never waits for an earlier task with the
+ * same hash to finish; it only waits when too many tasks are pending, which bounds the memory held by queued tasks.
+ * <p>
+ * Use {@link #awaitIdle()} as a barrier for tasks that must not overlap with any other task.
+ */
+public class OrderedLanes {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final Executor executor;
+  private final Lane[] lanes;
+  private final Semaphore permits;
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicInteger nextLane = new AtomicInteger();
+
+  /**
+   * @param numLanes the number of tasks that may run concurrently
+   * @param maxPending the number of submitted tasks that may wait or run before {@link #execute} blocks
+   * @param executor runs the lanes that have tasks
+   */
+  public OrderedLanes(int numLanes, int maxPending, Executor executor) {
+    this.executor = executor;
+    this.lanes = new Lane[numLanes];
+    for (int i = 0; i < numLanes; i++) {
+      lanes[i] = new Lane();
+    }
+    this.permits = new Semaphore(maxPending);
+  }
+
+  /**
+   * Runs the task after the earlier tasks of its lane.
+   *
+   * @param hash the hash choosing the lane of the task; tasks without a hash are spread over all lanes
+   * @param task the task to run
+   * @throws InterruptedException if interrupted while waiting for pending tasks to finish
+   */
+  public void execute(Integer hash, Runnable task) throws InterruptedException {
+    permits.acquire();
+    pending.incrementAndGet();
+    int lane = Math.floorMod(hash != null ? hash : nextLane.getAndIncrement(), lanes.length);
+    lanes[lane].add(task);
+  }
+
+  /** Waits until every submitted task has finished */
+  public void awaitIdle() throws InterruptedException {
+    synchronized (this) {
+      while (pending.get() > 0) {
+        wait();
+      }
+    }
+  }
+
+  /** The number of tasks submitted that haven't finished yet */
+  public int getPending() {
+    return pending.get();
+  }
+
+  private void done() {
+    permits.release();
+    if (pending.decrementAndGet() == 0) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  /** The tasks of one hash bucket; a lane is run by at most one thread at a time */
+  private final class Lane implements Runnable {
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    void add(Runnable task) {
+      tasks.add(task);
+      if (size.getAndIncrement() == 0) {
+        try {
+          executor.execute(this);
+        } catch (RejectedExecutionException e) {
+          // the executor is shutting down, drain the lane on the caller's thread
+          run();
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      do {
+        Runnable task = tasks.poll();
+        try {
+          task.run();
+        } catch (Throwable t) {
+          log.error("Exception running ordered task", t);
+        } finally {
+          done();
+        }
+      } while (size.decrementAndGet() > 0);
+    }
+  }
+}
@@ -221,6 +221,93 @@ class BitVector implements Cloneable {
         return (value >= registerValue);
     }
 
+    /**
+     * Sets each register of this vector to the larger of its value and the
+     * value of the same register in the specified vector.  This is equivalent
+     * to but much more performant than:<p/>
+     *
+     * <pre>for(long i=0; i&lt;count; i++) vector.setMaxRegister(i, other.getRegister(i));</pre>
+     *
+     * The registers are compared a window of <code>63/registerWidth</code>
+     * registers at a time, within a word, rather than one at a time.
+     *
+     * @param  other the vector to merge into this one.  This cannot be
+     *         <code>null</code> and must have the same register width and count
+     *         as this vector.
+     * @see #setMaxRegister(long, long)
+     */
+    public void setMaxRegisters(final BitVector other) {
+        if((other.registerWidth != registerWidth) || (other.count != count)) {
+            throw new IllegalArgumentException("Cannot merge vectors of different widths or counts");
+        }
+        final long words[] = this.words/*for convenience/performance*/;
+        final long otherWords[] = other.words;
+
+        // a window holds as many whole registers as fit in a word, leaving
+        // room above the topmost one for the guard bit of the comparison
+        final int windowRegisters = (BITS_PER_WORD - 1) / registerWidth;
+        final int windowWidth = windowRegisters * registerWidth;
+        // the even and the odd registers of a window are merged separately, so
+        // that the (cleared) register above each one can hold its guard bit
+        long evenMask = 0, oddMask = 0, evenGuards = 0, oddGuards = 0;
+        for(int i=0; i<windowRegisters; i+=2) {
+            evenMask |= registerMask << (i * registerWidth);
+            evenGuards |= 1L << ((i + 1) * registerWidth);
+            if(i + 1 < windowRegisters) {
+                oddMask |= registerMask << (i * registerWidth);
+                oddGuards |= 1L << ((i + 1) * registerWidth);
+            }
+        }
+
+        for(long registerIndex=0; registerIndex<count; registerIndex+=windowRegisters) {
+            final long bitIndex = registerIndex * registerWidth;
+            final int width = (int)Math.min(windowWidth, (count - registerIndex) * registerWidth);
+            final int wordIndex = (int)(bitIndex >>> LOG2_BITS_PER_WORD);
+            final int bitRemainder = (int)(bitIndex & BITS_PER_WORD_MASK);
+            final long windowMask = (1L << width) - 1;
+            final boolean spans = (bitRemainder + width > BITS_PER_WORD);
+
+            final long otherWindow = window(otherWords, wordIndex, bitRemainder, spans, windowMask);
+            if(otherWindow == 0) continue/*nothing can be larger*/;
+            final long window = window(words, wordIndex, bitRemainder, spans, windowMask);
+
+            final long merged = maxLanes(window & evenMask, otherWindow & evenMask, evenGuards)
+                              | (maxLanes((window >>> registerWidth) & oddMask, (otherWindow >>> registerWidth) & oddMask, oddGuards) << registerWidth);
+            if(merged == window) continue;
+
+            words[wordIndex] &= ~(windowMask << bitRemainder);
+            words[wordIndex] |= (merged << bitRemainder);
+            if(spans) {
+                words[wordIndex + 1] &= ~(windowMask >>> (BITS_PER_WORD - bitRemainder));
+                words[wordIndex + 1] |= (merged >>> (BITS_PER_WORD - bitRemainder));
+            }
+        }
+    }
+
+    /**
+     * @return the bits of the window starting at the specified bit of the
+     *         specified word, at the bottom of a word
+     */
+    private static long window(final long[] words, final int wordIndex, final int bitRemainder, final boolean spans, final long windowMask) {
+        long window = words[wordIndex] >>> bitRemainder;
+        if(spans) window |= words[wordIndex + 1] << (BITS_PER_WORD - bitRemainder);
+        return window & windowMask;
+    }
+
+    /**
+     * @param  a registers, every other one of which is zero
+     * @param  b registers, every other one of which is zero
+     * @param  guards the bit just above each of the non-zero registers
+     * @return the larger of each register of <code>a</code> and <code>b</code>
+     */
+    private long maxLanes(final long a, final long b, final long guards) {
+        // a guard bit survives the subtraction iff the register of a is not less than the one of b,
+        // and it stops the borrow from reaching the next register
+        final long notLess = ((a | guards) - b) & guards;
+        final long select = notLess - (notLess >>> registerWidth)/*all ones in those registers*/;
+        return (a & select) | (b & ~select);
+    }
+
     // ========================================================================
     /**
      * Fills this bit vector with the specified bit value.  This can be used to
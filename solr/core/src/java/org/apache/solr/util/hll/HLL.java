@@ -836,10 +836,7 @@ public class HLL implements Cloneable {
             }
             return;
         case FULL:
-            for(int i=0; i<m; i++) {
-                final long registerValue = other.probabilisticStorage.getRegister(i);
-                probabilisticStorage.setMaxRegister(i, registerValue);
-            }
+            probabilisticStorage.setMaxRegisters(other.probabilisticStorage);
             return;
         default:
                 throw new RuntimeException("Unsupported HLL type " + type);
@@ -16,6 +16,7 @@
  */
 package org.apache.solr.handler;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -165,6 +166,66 @@ public class JsonLoaderTest extends SolrTestCaseJ4 {
     req.close();
   }
 
+  public void testParseThreads() throws Exception {
+    StringBuilder sb = new StringBuilder("\n [ /* docs */\n");
+    int numDocs = atLeast(3000);
+    for (int i = 0; i < numDocs; i++) {
+      sb.append("{'id':'").append(i).append("', ");
+      switch (i % 5) {
+        case 0:
+          sb.append("'f':'a {[ string ]} with \\' quotes \" and // no comment'");
+          break;
+        case 1:
+          sb.append("\"f\":\"\\\"}\\\\\", # comment }\n 'g' : [1, 2, {'set':3}]");
+          break;
+        case 2:
+          sb.append("'f': /* { */ 'x', // ]\n '_childDocuments_': [{'id':'c").append(i).append("', 'f':'}'}]");
+          break;
+        case 3:
+          sb.append("'f': unquoted, 'g': 1.5, 'h': null");
+          break;
+        default:
+          sb.append("'f': '").append("x".repeat(random().nextInt(1000))).append("'");
+      }
+      sb.append(i % 7 == 0 ? "},,\n" : "},");
+    }
+    sb.append("] ");
+    String str = sb.toString();
+
+    SolrQueryRequest req = req();
+    BufferingRequestProcessor expected = new BufferingRequestProcessor(null);
+    new JsonLoader().load(req, new SolrQueryResponse(), new ContentStreamBase.StringStream(str), expected);
+    req.close();
+    assertEquals(numDocs, expected.addCommands.size());
+
+    req = req(JsonLoader.PARSE_THREADS, "4");
+    // only the parsing is parallel, the chain gets the docs on the request thread
+    Thread requestThread = Thread.currentThread();
+    BufferingRequestProcessor p = new BufferingRequestProcessor(null) {
+      @Override
+      public void processAdd(AddUpdateCommand cmd) throws IOException {
+        assertSame(requestThread, Thread.currentThread());
+        super.processAdd(cmd);
+      }
+    };
+    new JsonLoader().load(req, new SolrQueryResponse(), new ContentStreamBase.StringStream(str), p);
+    req.close();
+    assertEquals(numDocs, p.addCommands.size());
+    for (int i = 0; i < numDocs; i++) {
+      assertEquals(expected.addCommands.get(i).solrDoc.toString(), p.addCommands.get(i).solrDoc.toString());
+    }
+
+    for (String invalid : new String[] {"[{'id':'1'}, 5]", "[{'id':'1'}, {'id':'2'", "[{'id':'1'}, {'id' '2'}]"}) {
+      SolrQueryRequest badReq = req(JsonLoader.PARSE_THREADS, "4");
+      SolrException ex = expectThrows(SolrException.class, () -> {
+        new JsonLoader().load(badReq, new SolrQueryResponse(), new ContentStreamBase.StringStream(invalid),
+            new BufferingRequestProcessor(null));
+      });
+      assertEquals(invalid, SolrException.ErrorCode.BAD_REQUEST.code, ex.code());
+      badReq.close();
+    }
+  }
+
   @Test
   public void testInvalidJsonProducesBadRequestSolrException() throws Exception {
     SolrQueryResponse rsp = new SolrQueryResponse();
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.stream.ColumnarTupleStreamParser;
+import org.apache.solr.common.IteratorWriter;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.Utils;
+
+public class TestColumnarBatchWriter extends SolrTestCase {
+
+  public void testRoundTrip() throws Exception {
+    List<List<Map<String, Object>>> batches = new ArrayList<>();
+    List<Map<String, Object>> expected = new ArrayList<>();
+    for (int b = 0; b < 3; b++) {
+      List<Map<String, Object>> docs = new ArrayList<>();
+      for (int i = 0; i < atLeast(20); i++) {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        Map<String, Object> tuple = new LinkedHashMap<>();
+        doc.put("id", "doc" + b + "_" + i);
+        tuple.put("id", "doc" + b + "_" + i);
+        if (random().nextInt(4) != 0) {
+          String s = "val" + random().nextInt(5);
+          doc.put("str_s", s);
+          tuple.put("str_s", s);
+        }
+        if (random().nextInt(4) != 0) {
+          int n = random().nextInt();
+          doc.put("int_i", n);
+          tuple.put("int_i", (long) n);
+        }
+        long l = random().nextLong();
+        doc.put("long_l", l);
+        tuple.put("long_l", l);
+        if (random().nextBoolean()) {
+          float f = random().nextFloat() - 0.5f;
+          doc.put("float_f", f);
+          tuple.put("float_f", (double) f);
+        }
+        long millis = random().nextInt() * 1000L;
+        doc.put("date_dt", new Date(millis));
+        tuple.put("date_dt", Instant.ofEpochMilli(millis).toString());
+        if (random().nextBoolean()) {
+          boolean bool = random().nextBoolean();
+          doc.put("bool_b", bool);
+          tuple.put("bool_b", bool);
+        }
+        if (random().nextBoolean()) {
+          List<Object> values = Arrays.asList("a", "b" + i);
+          doc.put("multi_ss", (IteratorWriter) w -> {
+            for (Object v : values) w.add(v);
+          });
+          tuple.put("multi_ss", values);
+        }
+        docs.add(doc);
+        expected.add(tuple);
+      }
+      batches.add(docs);
+    }
+
+    ColumnarBatchWriter batch = new ColumnarBatchWriter();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JavaBinCodec codec = new JavaBinCodec(out, null)) {
+      codec.writeMap(m -> {
+        m.put("responseHeader", Utils.makeMap("status", 0));
+        m.put("response", (MapWriter) mw -> {
+          mw.put("numFound", expected.size());
+          mw.put("docs", (IteratorWriter) iw -> {
+            for (List<Map<String, Object>> docs : batches) {
+              batch.reset();
+              for (Map<String, Object> doc : docs) {
+                batch.nextRow();
+                for (Map.Entry<String, Object> e : doc.entrySet()) {
+                  batch.put(e.getKey(), e.getValue());
+                }
+              }
+              iw.add((MapWriter) batch);
+            }
+          });
+        });
+      });
+    }
+
+    try (ColumnarTupleStreamParser parser = new ColumnarTupleStreamParser(new ByteArrayInputStream(out.toByteArray()))) {
+      for (Map<String, Object> tuple : expected) {
+        assertEquals(tuple, parser.next());
+      }
+      assertNull(parser.next());
+    }
+  }
+}
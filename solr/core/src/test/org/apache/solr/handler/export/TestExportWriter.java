@@ -709,6 +709,37 @@ public class TestExportWriter extends SolrTestCaseJ4 {
     validateSort(numDocs);
   }
 
+  @SuppressWarnings("rawtypes")
+  @Test
+  public void testThreads() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+
+    int numDocs = 0;
+    for (int segment = 0; segment < 5; segment++) {
+      for (int i = 0; i < 100 + random().nextInt(100); i++, numDocs++) {
+        assertU(adoc("id", String.valueOf(numDocs),
+            "intdv", String.valueOf(random().nextInt(10)),
+            "longdv", String.valueOf(random().nextInt(100)),
+            "stringdv", TestUtil.randomSimpleString(random(), 1, 2)));
+      }
+      assertU(commit());
+    }
+
+    // small queues so that each segment is sorted in several runs, which are filled ahead with more threads
+    for (String sort : new String[] {"intdv asc,longdv desc", "stringdv desc,intdv asc", "intdv desc"}) {
+      String expected = h.query(req("q", "*:*", "qt", "/export", "fl", "id,intdv,stringdv", "sort", sort,
+          "queueSize", "100"));
+      for (String threads : new String[] {"2", "4"}) {
+        String resp = h.query(req("q", "*:*", "qt", "/export", "fl", "id,intdv,stringdv", "sort", sort,
+            "queueSize", "100", "threads", threads));
+        assertEquals("sort=" + sort + ", threads=" + threads, expected, resp);
+      }
+      HashMap respMap = mapper.readValue(expected, HashMap.class);
+      assertEquals(numDocs, ((List) ((HashMap) respMap.get("response")).get("docs")).size());
+    }
+  }
+
   private void createLargeIndex() throws Exception {
     int BATCH_SIZE = 5000;
     int NUM_BATCHES = 20;
@@ -25,6 +25,8 @@ import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.client.solrj.request.JavaBinUpdateRequestCodec;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ByteArrayUtf8CharSequence;
 import org.apache.solr.common.util.ContentStreamBase;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
@@ -88,4 +90,46 @@ public class JavabinLoaderTest extends SolrTestCaseJ4 {
     // last doc should have the flag set
     assertTrue(mockUpdateProcessor.addCommands.get(batch.size()-1).isLastDocInBatch);
   }
+
+  /**
+   * Verifies that with {@link JavabinLoader#READ_STRING_AS_CHAR_SEQ} the string values of the docs are read as
+   * {@link ByteArrayUtf8CharSequence}s that stay valid after the following docs are read
+   */
+  public void testReadStringAsCharSeq() throws Exception {
+    int numDocs = atLeast(100);
+    UpdateRequest updateRequest = new UpdateRequest();
+    for (int d = 0; d < numDocs; d++) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.setField("id", String.valueOf(d));
+      doc.setField("val_s", "value of doc " + d + " \u00e9\u0e44" + "x".repeat(random().nextInt(2000)));
+      updateRequest.add(doc);
+    }
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    (new JavaBinUpdateRequestCodec()).marshal(updateRequest, os);
+
+    BufferingRequestProcessor mockUpdateProcessor = new BufferingRequestProcessor(null) {
+      @Override
+      public void processAdd(AddUpdateCommand cmd) throws IOException {
+        addCommands.add((AddUpdateCommand)cmd.clone());
+      }
+    };
+
+    ModifiableSolrParams args = new ModifiableSolrParams();
+    args.set(JavabinLoader.READ_STRING_AS_CHAR_SEQ, true);
+    SolrQueryRequest req = req();
+    (new JavabinLoader()).init(args).load(req,
+        new SolrQueryResponse(),
+        new ContentStreamBase.ByteArrayStream(os.toByteArray(), "test"),
+        mockUpdateProcessor);
+
+    assertEquals(numDocs, mockUpdateProcessor.addCommands.size());
+    for (int d = 0; d < numDocs; d++) {
+      AddUpdateCommand cmd = mockUpdateProcessor.addCommands.get(d);
+      Object value = cmd.solrDoc.getFieldValue("val_s");
+      assertTrue(value.getClass().getName(), value instanceof ByteArrayUtf8CharSequence);
+      assertEquals(updateRequest.getDocuments().get(d).getFieldValue("val_s"), value.toString());
+      assertEquals(String.valueOf(d), cmd.getPrintableId());
+    }
+    req.close();
+  }
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.request;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.Query;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.junit.BeforeClass;
+
+public class TestNumericIntervalCounter extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    initCore("solrconfig-basic.xml", "schema-docValuesFaceting.xml");
+  }
+
+  public void testCountsMatchRangeQueries() throws Exception {
+    final int numDocs = atLeast(200);
+    for (int i = 0; i < numDocs; i++) {
+      if (random().nextInt(10) == 0) {
+        assertU(adoc("id", Integer.toString(i)));
+      } else {
+        assertU(adoc("id", Integer.toString(i),
+            "test_l_p", Integer.toString(random().nextInt(200) - 100),
+            "test_d_p", Double.toString((random().nextInt(200) - 100) / 4.0)));
+      }
+      if (random().nextInt(50) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    h.getCore().withSearcher(searcher -> {
+      for (int iter = 0; iter < 50; iter++) {
+        checkCounts(searcher, searcher.getSchema().getField("test_l_p"), 1);
+        checkCounts(searcher, searcher.getSchema().getField("test_d_p"), 0.25);
+      }
+      return null;
+    });
+  }
+
+  private void checkCounts(SolrIndexSearcher searcher, SchemaField sf, double unit) throws IOException {
+    assertTrue(NumericIntervalCounter.supports(sf));
+    final NumberType numberType = sf.getType().getNumberType();
+    final int numIntervals = 1 + random().nextInt(20);
+    final boolean grid = random().nextBoolean();
+    final int gap = 1 + random().nextInt(20);
+    final int first = random().nextInt(200) - 120;
+
+    final String[] lows = new String[numIntervals];
+    final String[] highs = new String[numIntervals];
+    final long[] starts = new long[numIntervals];
+    final long[] ends = new long[numIntervals];
+    for (int i = 0; i < numIntervals; i++) {
+      // inclusive limits, either the buckets of a fixed gap or random (possibly overlapping) intervals
+      int low = grid ? first + i * gap : random().nextInt(220) - 110;
+      int high = grid ? low + gap - 1 : low + random().nextInt(60);
+      lows[i] = toString(numberType, low * unit);
+      highs[i] = toString(numberType, high * unit);
+      starts[i] = NumericIntervalCounter.toSortableLong(numberType, low * unit);
+      ends[i] = NumericIntervalCounter.toSortableLong(numberType, high * unit);
+    }
+
+    final DocSet docs = searcher.getLiveDocSet();
+    final long[] counts = new NumericIntervalCounter(sf, starts, ends).count(searcher, docs);
+    for (int i = 0; i < numIntervals; i++) {
+      Query q = sf.getType().getRangeQuery(null, sf, lows[i], highs[i], true, true);
+      assertEquals("[" + lows[i] + "," + highs[i] + "] of " + sf.getName(), searcher.numDocs(q, docs), counts[i]);
+    }
+  }
+
+  private static String toString(NumberType numberType, double value) {
+    return numberType == NumberType.LONG ? Long.toString((long) value) : Double.toString(value);
+  }
+}
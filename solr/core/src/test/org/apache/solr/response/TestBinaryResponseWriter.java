@@ -20,12 +20,18 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrDocument;
@@ -120,6 +126,73 @@ public class TestBinaryResponseWriter extends SolrTestCaseJ4 {
     req.close();
   }
 
+  /**
+   * Tests that string docValues, which are written as UTF-8 bytes, round trip with and without stored fields
+   */
+  public void testDocValuesStrings() throws Exception {
+    String s = "Thailand (ประเทศไทย)";
+    assertU(adoc("id", "102", "foo_sdv", s, "foo_bdv", "true"));
+    assertU(commit());
+    for (String fl : new String[] {"id,foo_sdv,foo_bdv", "foo_sdv,foo_bdv", "foo_sdv,foo_bdv,[docid]"}) {
+      SolrQueryRequest req = req("q", "id:102", "fl", fl);
+      SolrQueryResponse rsp = h.queryAndResponse(null, req);
+      BinaryQueryResponseWriter writer = (BinaryQueryResponseWriter) h.getCore().getQueryResponseWriter("javabin");
+      // twice, to write with the reused buffer too
+      for (int i = 0; i < 2; i++) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.write(baos, req, rsp);
+        @SuppressWarnings({"rawtypes"})
+        NamedList res;
+        try (JavaBinCodec jbc = new JavaBinCodec()) {
+          res = (NamedList) jbc.unmarshal(new ByteArrayInputStream(baos.toByteArray()));
+        }
+        SolrDocumentList docs = (SolrDocumentList) res.get("response");
+        assertEquals(1, docs.size());
+        assertEquals(fl, s, docs.get(0).getFieldValue("foo_sdv"));
+        assertEquals(fl, Boolean.TRUE, docs.get(0).getFieldValue("foo_bdv"));
+      }
+      req.close();
+    }
+  }
+
+  /**
+   * Tests that string docValues read as UTF-8 bytes are not copied per value: a single value wraps the docValues
+   * bytes, and the values of a multi-valued field share one array
+   */
+  public void testDocValuesStringsAreNotCopiedPerValue() throws Exception {
+    assertU(adoc("id", "103", "foo_sdv", "one", "bar_ss_dv", "x", "bar_ss_dv", "yy", "bar_ss_dv", "zzz"));
+    assertU(commit());
+    ResultContext.READASBYTES.set(fieldName -> true);
+    try {
+      h.getCore().withSearcher(searcher -> {
+        int docid = searcher.getFirstMatch(new Term("id", "103"));
+        assertTrue(docid >= 0);
+        BinaryResponseWriter.MaskCharSeqSolrDocument doc = new BinaryResponseWriter.MaskCharSeqSolrDocument();
+        searcher.getDocFetcher().decorateDocValueFields(doc, docid,
+            new HashSet<>(Arrays.asList("foo_sdv", "bar_ss_dv")));
+
+        Object single = doc.get("foo_sdv");
+        assertTrue(single.getClass().toString(), single instanceof ByteArrayUtf8CharSequence);
+        assertEquals("one", single.toString());
+
+        Collection<Object> multi = doc.getRawFieldValues("bar_ss_dv");
+        assertEquals(3, multi.size());
+        byte[] buf = null;
+        for (Object value : multi) {
+          assertTrue(value.getClass().toString(), value instanceof ByteArrayUtf8CharSequence);
+          if (buf == null) buf = ((ByteArrayUtf8CharSequence) value).getBuf();
+          assertSame(buf, ((ByteArrayUtf8CharSequence) value).getBuf());
+        }
+        assertEquals(Arrays.asList("x", "yy", "zzz"), multi.stream().map(Object::toString).collect(Collectors.toList()));
+        // as Strings to the other readers of the doc
+        assertEquals(Arrays.asList("x", "yy", "zzz"), new ArrayList<>(doc.getFieldValues("bar_ss_dv")));
+        return null;
+      });
+    } finally {
+      ResultContext.READASBYTES.remove();
+    }
+  }
+
   public void testOmitHeader() throws Exception {
     SolrQueryRequest req = req("q", "*:*", "omitHeader", "true");
     SolrQueryResponse rsp = h.queryAndResponse(null, req);
@@ -1250,6 +1250,7 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
     assertFuncEquals("agg_hll(foo_i)", "agg_hll(foo_i)");
     assertFuncEquals("agg_sumsq(foo_i)", "agg_sumsq(foo_i)");
     assertFuncEquals("agg_percentile(foo_i,50)", "agg_percentile(foo_i,50)");
+    assertFuncEquals("agg_kll(foo_i,50)", "agg_kll(foo_i,50)");
     assertFuncEquals("agg_variance(foo_i)", "agg_variance(foo_i)");
     assertFuncEquals("agg_stddev(foo_i)", "agg_stddev(foo_i)");
     assertFuncEquals("agg_missing(foo_i)", "agg_missing(foo_i)");
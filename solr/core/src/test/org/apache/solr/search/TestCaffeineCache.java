@@ -18,6 +18,7 @@ package org.apache.solr.search;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -25,6 +26,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.github.benmanes.caffeine.cache.RemovalCause;
@@ -285,4 +287,142 @@ public class TestCaffeineCache extends SolrTestCase {
     assertTrue("total ram bytes exceeded limit", total < 1024 * 1024);
     cache.close();
   }
+
+  /** Copies entries to the new cache, taking a while for each one */
+  private static class SlowRegenerator implements CacheRegenerator {
+    final List<Object> keys = Collections.synchronizedList(new ArrayList<>());
+    final long delayMs;
+
+    SlowRegenerator(long delayMs) {
+      this.delayMs = delayMs;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache, Object oldKey, Object oldVal) {
+      try {
+        Thread.sleep(delayMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      newCache.put(oldKey, oldVal);
+      keys.add(oldKey);
+      return true;
+    }
+  }
+
+  private CaffeineCache<Integer, String> newFullCache(Map<String, String> params, CacheRegenerator regenerator) {
+    CaffeineCache<Integer, String> cache = new CaffeineCache<>();
+    cache.init(params, null, regenerator);
+    cache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, Integer.toString(i));
+    }
+    return cache;
+  }
+
+  @Test
+  public void testParallelAutowarm() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    params.put("autowarmCount", "100%");
+    params.put(SolrCache.AUTOWARM_THREADS_PARAM, "4");
+    SlowRegenerator regenerator = new SlowRegenerator(1);
+    CaffeineCache<Integer, String> oldCache = newFullCache(params, regenerator);
+
+    CaffeineCache<Integer, String> newCache = new CaffeineCache<>();
+    newCache.init(params, null, regenerator);
+    newCache.warm(null, oldCache);
+    assertEquals(100, regenerator.keys.size());
+    assertEquals(100, newCache.size());
+    assertTrue(newCache.getDescription().contains("autowarmThreads=4"));
+    oldCache.close();
+    newCache.close();
+  }
+
+  /** Regenerates the first entries right away and blocks the rest until it is released */
+  private static class GatedRegenerator implements CacheRegenerator {
+    final List<Object> keys = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger calls = new AtomicInteger();
+    final int free;
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch regenerated;
+
+    GatedRegenerator(int free, int expected) {
+      this.free = free;
+      this.regenerated = new CountDownLatch(expected);
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache, Object oldKey, Object oldVal) {
+      if (calls.incrementAndGet() > free) {
+        try {
+          if (!release.await(30, TimeUnit.SECONDS)) {
+            throw new AssertionError("never released");
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      newCache.put(oldKey, oldVal);
+      keys.add(oldKey);
+      regenerated.countDown();
+      return true;
+    }
+  }
+
+  @Test
+  public void testAutowarmTimeAllowed() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    params.put("autowarmCount", "100%");
+    params.put(SolrCache.AUTOWARM_TIME_ALLOWED_PARAM, "1000");
+    // the hottest entry is regenerated, the next one is still being regenerated when time runs out
+    GatedRegenerator regenerator = new GatedRegenerator(1, 2);
+    CaffeineCache<Integer, String> oldCache = newFullCache(params, regenerator);
+    // make one entry the hottest
+    for (int i = 0; i < 50; i++) {
+      oldCache.get(42);
+    }
+
+    CaffeineCache<Integer, String> newCache = new CaffeineCache<>();
+    newCache.init(params, null, regenerator);
+    newCache.warm(null, oldCache);
+    // warm() gave up on the blocked entry instead of waiting for it
+    assertEquals(1, regenerator.release.getCount());
+    assertEquals(List.of(42), new ArrayList<>(regenerator.keys));
+
+    // the entry that was being regenerated is still put, but no other one is started
+    regenerator.release.countDown();
+    assertTrue(regenerator.regenerated.await(30, TimeUnit.SECONDS));
+    assertEquals(2, regenerator.calls.get());
+    assertEquals(2, newCache.size());
+    oldCache.close();
+    newCache.close();
+  }
+
+  @Test
+  public void testAutowarmInBackground() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "100");
+    params.put("autowarmCount", "100%");
+    params.put(SolrCache.AUTOWARM_IN_BACKGROUND_PARAM, "true");
+    params.put(SolrCache.AUTOWARM_TIME_ALLOWED_PARAM, "0");
+    GatedRegenerator regenerator = new GatedRegenerator(0, 100);
+    CaffeineCache<Integer, String> oldCache = newFullCache(params, regenerator);
+
+    CaffeineCache<Integer, String> newCache = new CaffeineCache<>();
+    newCache.init(params, null, regenerator);
+    // warm() returns while the first entry is blocked, and the entries keep coming in once it is released
+    newCache.warm(null, oldCache);
+    assertTrue(regenerator.keys.isEmpty());
+    regenerator.release.countDown();
+    assertTrue(regenerator.regenerated.await(30, TimeUnit.SECONDS));
+    assertEquals(100, regenerator.keys.size());
+    assertEquals(100, newCache.size());
+    oldCache.close();
+    newCache.close();
+  }
 }
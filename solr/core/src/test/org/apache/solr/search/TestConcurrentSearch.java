@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+
+/** Checks that searches split across index slices by the core's search executor give the same answers. */
+public class TestConcurrentSearch extends SolrTestCaseJ4 {
+
+  private final static int NUM_SEGMENTS = 20;
+  private final static int DOCS_PER_SEGMENT = 10;
+  private final static int NUM_DOCS = NUM_SEGMENTS * DOCS_PER_SEGMENT;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-concurrent-search.xml", "schema.xml");
+    int id = 0;
+    for (int seg = 0; seg < NUM_SEGMENTS; seg++) {
+      for (int i = 0; i < DOCS_PER_SEGMENT; i++, id++) {
+        assertU(adoc("id", String.valueOf(id),
+            "field1_s", "foo",
+            "field2_s", String.valueOf(id % 3),
+            "field3_i_dvo", String.valueOf(id),
+            "field4_t", (id % 7 == 0) ? "lucky seven" : "seven"));
+      }
+      assertU(commit());
+    }
+  }
+
+  public void testConcurrentSearchEnabled() throws Exception {
+    h.getCore().withSearcher(searcher -> {
+      assertNotNull(searcher.getExecutor());
+      assertTrue("expected several slices, got " + searcher.getSlices().length, searcher.isConcurrentSearchEnabled());
+      return null;
+    });
+  }
+
+  public void testSortedTopDocs() {
+    assertQ(req("q", "field1_s:foo", "sort", "field3_i_dvo desc", "rows", "3", "fl", "id")
+        , "//*[@numFound='" + NUM_DOCS + "']"
+        , "//result/doc[1]/str[@name='id'][.='" + (NUM_DOCS - 1) + "']"
+        , "//result/doc[2]/str[@name='id'][.='" + (NUM_DOCS - 2) + "']"
+        , "//result/doc[3]/str[@name='id'][.='" + (NUM_DOCS - 3) + "']"
+    );
+    assertQ(req("q", "field1_s:foo", "fq", "field2_s:1", "sort", "field3_i_dvo asc", "rows", "2", "fl", "id,score")
+        , "//*[@numFound='" + (NUM_DOCS / 3) + "']"
+        , "//result/doc[1]/str[@name='id'][.='1']"
+        , "//result/doc[2]/str[@name='id'][.='4']"
+        , "//result/doc[1]/float[@name='score']"
+    );
+  }
+
+  public void testScoredTopDocs() {
+    assertQ(req("q", "field4_t:lucky", "rows", "100", "fl", "id,score")
+        , "//*[@numFound='" + ((NUM_DOCS + 6) / 7) + "']"
+        , "//*[@maxScore]"
+        , "count(//result/doc)=" + ((NUM_DOCS + 6) / 7)
+    );
+  }
+
+  public void testDocListAndSet() {
+    // faceting needs the DocSet of the main query as well as the top docs
+    assertQ(req("q", "field1_s:foo", "rows", "1", "facet", "true", "facet.field", "field2_s")
+        , "//*[@numFound='" + NUM_DOCS + "']"
+        , "//lst[@name='field2_s']/int[@name='0'][.='" + ((NUM_DOCS + 2) / 3) + "']"
+        , "//lst[@name='field2_s']/int[@name='1'][.='" + ((NUM_DOCS + 1) / 3) + "']"
+        , "//lst[@name='field2_s']/int[@name='2'][.='" + (NUM_DOCS / 3) + "']"
+    );
+  }
+
+  public void testDocSet() throws Exception {
+    h.getCore().withSearcher(searcher -> {
+      DocSet sequential = DocSetUtil.createDocSet(searcher, new Term("field2_s", "0"));
+      DocSet concurrent = DocSetUtil.createDocSetGeneric(searcher, new TermQuery(new Term("field2_s", "0")));
+      assertEquals((NUM_DOCS + 2) / 3, concurrent.size());
+      assertTrue(DocSetUtil.equals(sequential, concurrent));
+
+      DocSet all = DocSetUtil.createDocSetGeneric(searcher, new TermQuery(new Term("field1_s", "foo")));
+      assertEquals(NUM_DOCS, all.size());
+      return null;
+    });
+  }
+}
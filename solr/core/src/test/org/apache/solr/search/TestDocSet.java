@@ -103,6 +103,12 @@ public class TestDocSet extends SolrTestCase {
     return new BitDocSet(bs);
   }
 
+  public DocSet getRoaringDocSet(FixedBitSet bs) {
+    // encode either from the bitset words or from the sorted docs
+    DocSet source = rand.nextBoolean() ? getBitDocSet(bs) : getIntDocSet(bs);
+    return RoaringDocSet.build(source, rand.nextBoolean());
+  }
+
   public DocSlice getDocSlice(FixedBitSet bs) {
     int len = bs.cardinality();
     int[] arr = new int[len+5];
@@ -121,7 +127,7 @@ public class TestDocSet extends SolrTestCase {
 
 
   public DocSet getDocSet(FixedBitSet bs) {
-    switch(rand.nextInt(9)) {
+    switch(rand.nextInt(11)) {
       case 0: case 1: case 2: case 3: return getBitDocSet(bs);
 
       case 4: return getIntDocSet(bs);
@@ -129,6 +135,8 @@ public class TestDocSet extends SolrTestCase {
       case 6: return getIntDocSet(bs);
       case 7: return getIntDocSet(bs);
       case 8: return getIntDocSet(bs);
+
+      case 9: case 10: return getRoaringDocSet(bs);
     }
     return null;
   }
@@ -205,6 +213,169 @@ public class TestDocSet extends SolrTestCase {
     // doMany(130, 1000000);
   }
 
+  /** A random set over several 64K blocks that mixes sparse, dense and clustered blocks */
+  public FixedBitSet getRandomBlockSet(int maxDoc) {
+    FixedBitSet bs = new FixedBitSet(maxDoc);
+    for (int start = 0; start < maxDoc; start += RoaringDocSet.BLOCK_SIZE) {
+      int end = Math.min(maxDoc, start + RoaringDocSet.BLOCK_SIZE);
+      switch (rand.nextInt(5)) {
+        case 0: // empty
+          break;
+        case 1: // sparse
+          for (int i = rand.nextInt(RoaringDocSet.MAX_ARRAY_SIZE); i > 0; i--) {
+            bs.set(start + rand.nextInt(end - start));
+          }
+          break;
+        case 2: // dense
+          for (int doc = start; doc < end; doc++) {
+            if (rand.nextInt(4) != 0) bs.set(doc);
+          }
+          break;
+        case 3: // clustered
+          for (int i = rand.nextInt(50); i > 0; i--) {
+            int from = start + rand.nextInt(end - start);
+            bs.set(from, Math.min(end, from + rand.nextInt(3000) + 1));
+          }
+          break;
+        default: // full
+          bs.set(start, end);
+      }
+    }
+    return bs;
+  }
+
+  public void testRoaringDocSets() throws IOException {
+    for (int iter = 0; iter < 20; iter++) {
+      int maxDoc = rand.nextInt(RoaringDocSet.BLOCK_SIZE * 4) + 1;
+      FixedBitSet bs1 = getRandomBlockSet(maxDoc);
+      FixedBitSet bs2 = rand.nextBoolean() ? getRandomBlockSet(maxDoc) : getRandomSet(maxDoc, rand.nextInt(100));
+
+      DocSet r1 = getRoaringDocSet(bs1);
+      DocSet b2 = getDocSet(bs2);
+
+      assertEquals(bs1.cardinality(), r1.size());
+      iter(new BitDocSet(bs1), r1);
+      for (int i = 0; i < 1000; i++) {
+        int doc = rand.nextInt(maxDoc);
+        assertEquals(bs1.get(doc), r1.exists(doc));
+        assertEquals(bs1.get(doc), r1.getBits().get(doc));
+      }
+      // one Bits probed mostly forward, with some jumps back, uses its lookup cache
+      Bits bits = r1.getBits();
+      for (int doc = 0; doc < maxDoc; doc += rand.nextInt(50) + 1) {
+        assertEquals(bs1.get(doc), bits.get(doc));
+        if (rand.nextInt(20) == 0) {
+          int back = rand.nextInt(doc + 1);
+          assertEquals(bs1.get(back), bits.get(back));
+        }
+      }
+
+      FixedBitSet a_and = bs1.clone(); a_and.and(bs2);
+      FixedBitSet a_or = bs1.clone(); a_or.or(bs2);
+      FixedBitSet a_andn = bs1.clone(); a_andn.andNot(bs2);
+
+      iter(new BitDocSet(a_and), r1.intersection(b2));
+      iter(new BitDocSet(a_and), b2.intersection(r1));
+      iter(new BitDocSet(a_or), r1.union(b2));
+      iter(new BitDocSet(a_andn), r1.andNot(b2));
+      iter(new BitDocSet(a_or), b2.union(r1));
+      FixedBitSet a_nand = bs2.clone(); a_nand.andNot(bs1);
+      iter(new BitDocSet(a_nand), b2.andNot(r1));
+      assertEquals(a_and.cardinality(), r1.intersectionSize(b2));
+      assertEquals(a_and.cardinality(), b2.intersectionSize(r1));
+      assertEquals(a_and.cardinality() > 0, r1.intersects(b2));
+      assertEquals(a_or.cardinality(), r1.unionSize(b2));
+      assertEquals(a_andn.cardinality(), r1.andNotSize(b2));
+
+      FixedBitSet target = new FixedBitSet(maxDoc);
+      r1.addAllTo(target);
+      assertEquals(bs1, target);
+
+      // segments must not extend beyond the bitset
+      IndexReader reader = dummyMultiReader(4, maxDoc / 4 + 1);
+      Filter fa = new BitDocSet(bs1).getTopFilter();
+      Filter fb = r1.getTopFilter();
+      for (LeafReaderContext readerContext : reader.leaves()) {
+        doTestIteratorEqual(fa.getDocIdSet(readerContext, null), fb.getDocIdSet(readerContext, null));
+      }
+    }
+  }
+
+  public void testRoaringSetOperations() {
+    for (int iter = 0; iter < 20; iter++) {
+      int maxDoc = rand.nextInt(RoaringDocSet.BLOCK_SIZE * 4) + 1;
+      FixedBitSet bs1 = getRandomBlockSet(maxDoc);
+      FixedBitSet bs2 = getRandomBlockSet(maxDoc);
+      DocSet r1 = getRoaringDocSet(bs1);
+      DocSet r2 = getRoaringDocSet(bs2);
+
+      FixedBitSet a_and = bs1.clone(); a_and.and(bs2);
+      FixedBitSet a_or = bs1.clone(); a_or.or(bs2);
+      FixedBitSet a_andn = bs1.clone(); a_andn.andNot(bs2);
+
+      DocSet and = r1.intersection(r2);
+      DocSet or = r1.union(r2);
+      DocSet andNot = r1.andNot(r2);
+      iter(new BitDocSet(a_and), and);
+      iter(new BitDocSet(a_or), or);
+      iter(new BitDocSet(a_andn), andNot);
+      assertEquals(a_and.cardinality(), and.size());
+      assertEquals(a_or.cardinality(), or.size());
+      assertEquals(a_andn.cardinality(), andNot.size());
+
+      // results of operations between big sets stay compressed
+      if (bs1.cardinality() > DocSetUtil.smallSetSize(maxDoc) && bs2.cardinality() > DocSetUtil.smallSetSize(maxDoc)) {
+        assertTrue(and instanceof RoaringDocSet);
+        assertTrue(andNot instanceof RoaringDocSet);
+      }
+      assertTrue(or instanceof RoaringDocSet);
+
+      // and can be used as inputs again
+      iter(new BitDocSet(a_andn), or.andNot(r2));
+      iter(new BitDocSet(a_and), or.intersection(and));
+    }
+  }
+
+  public void testBigSetForm() {
+    int maxDoc = RoaringDocSet.BLOCK_SIZE * 8;
+
+    // a time ordered index filtered by a date range
+    FixedBitSet clustered = new FixedBitSet(maxDoc);
+    clustered.set(maxDoc / 3, maxDoc / 2);
+    DocSet set = DocSetUtil.toBigSet(clustered, -1);
+    assertTrue(set instanceof RoaringDocSet);
+    iter(new BitDocSet(clustered), set);
+
+    // docs only in a few blocks
+    FixedBitSet blocks = new FixedBitSet(maxDoc);
+    for (int doc = RoaringDocSet.BLOCK_SIZE; doc < RoaringDocSet.BLOCK_SIZE * 2; doc += 3) {
+      blocks.set(doc);
+    }
+    set = DocSetUtil.toBigSet(blocks, -1);
+    assertTrue(set instanceof RoaringDocSet);
+    assertEquals(blocks.cardinality(), set.size());
+
+    // dense random docs are best stored in a bitset
+    FixedBitSet dense = new FixedBitSet(maxDoc);
+    for (int doc = 0; doc < maxDoc; doc++) {
+      if (rand.nextBoolean()) dense.set(doc);
+    }
+    set = DocSetUtil.toBigSet(dense, dense.cardinality());
+    assertTrue(set instanceof BitDocSet);
+    assertSame(dense, ((BitDocSet) set).getBits());
+
+    // the builder keeps a bitset, which is cheaper to probe doc by doc
+    DocSetBuilder builder = new DocSetBuilder(maxDoc, maxDoc);
+    for (int doc = maxDoc / 3; doc < maxDoc / 2; doc++) {
+      builder.add(doc);
+    }
+    set = builder.build(null);
+    assertTrue(set instanceof BitDocSet);
+    set = DocSetUtil.toStoredSet(set);
+    assertTrue(set instanceof RoaringDocSet);
+    iter(new BitDocSet(clustered), set);
+  }
+
   public DocSet getRandomDocSet(int n, int maxDoc) {
     FixedBitSet obs = new FixedBitSet(maxDoc);
     int[] a = new int[n];
@@ -431,7 +602,7 @@ public class TestDocSet extends SolrTestCase {
     IndexReaderContext topLevelContext = reader.getContext();
     FixedBitSet bs = getRandomSet(reader.maxDoc(), rand.nextInt(reader.maxDoc()+1));
     DocSet a = new BitDocSet(bs);
-    DocSet b = getIntDocSet(bs);
+    DocSet b = rand.nextBoolean() ? getIntDocSet(bs) : getRoaringDocSet(bs);
 
     Filter fa = a.getTopFilter();
     Filter fb = b.getTopFilter();
@@ -546,4 +546,33 @@ public class TestFiltering extends SolrTestCaseJ4 {
     assertJQ(req(match_0), "/response/numFound==0");
     assertJQ(req(match_1), "/response/numFound==1");
   }
+
+  public void testClusteredFilterIsStoredCompressed() throws Exception {
+    clearIndex();
+    final int numDocs = 2000;
+    for (int i = 0; i < numDocs; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_i", Integer.toString(i)));
+    }
+    assertU(commit());
+
+    // the docs are added in order, so a range of values is a range of docs
+    String fq = "val_i:[500 TO 1499]";
+    assertJQ(req("q", "*:*", "fq", fq), "/response/numFound==1000");
+    assertJQ(req("q", "*:*", "fq", "-" + fq), "/response/numFound==1000");
+    assertJQ(req("q", "*:*", "fq", fq, "fq", "val_i:[1000 TO *]"), "/response/numFound==500");
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      Query q = QParser.getParser(fq, null, req).getQuery();
+      DocSet cached = searcher.getFilterCache().get(q);
+      assertTrue("expected a compressed set but got " + cached, cached instanceof RoaringDocSet);
+      assertEquals(1000, cached.size());
+
+      // sets that match every doc stay the shared live docs
+      assertSame(searcher.getLiveDocSet(), searcher.getDocSet(QParser.getParser("val_i:[0 TO *]", null, req).getQuery()));
+    } finally {
+      req.close();
+    }
+  }
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.SolrTestCase;
+
+/**
+ * Test for {@link OffHeapFilterCache}.
+ */
+public class TestOffHeapFilterCache extends SolrTestCase {
+
+  private OffHeapFilterCache newCache(Map<String, String> params) {
+    OffHeapFilterCache cache = new OffHeapFilterCache();
+    cache.init(params, null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+    return cache;
+  }
+
+  public void testEntriesAreStoredOffHeap() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("size", "10");
+    OffHeapFilterCache cache = newCache(params);
+
+    int maxDoc = 200000;
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    bits.set(1000, 90000);
+    for (int i = 0; i < 1000; i++) {
+      bits.set(random().nextInt(maxDoc));
+    }
+    BitDocSet bitDocSet = new BitDocSet(bits);
+    Query q1 = new TermQuery(new Term("f", "1"));
+    cache.put(q1, bitDocSet);
+
+    DocSet cached = cache.get(q1);
+    assertTrue(cached instanceof RoaringDocSet);
+    assertTrue(((RoaringDocSet) cached).isDirect());
+    assertTrue(DocSetUtil.equals(bitDocSet, cached));
+    // a long run compresses far below the size of the bitset
+    assertTrue(cached.ramBytesUsed() < bitDocSet.ramBytesUsed());
+
+    Query q2 = new TermQuery(new Term("f", "2"));
+    DocSet small = new SortedIntDocSet(new int[] {3, 70000, 199999});
+    DocSet computed = cache.computeIfAbsent(q2, k -> small);
+    assertTrue(computed instanceof RoaringDocSet);
+    assertTrue(DocSetUtil.equals(small, computed));
+    assertSame(computed, cache.get(q2));
+    assertEquals(2, cache.size());
+    cache.close();
+  }
+
+  public void testMaxRamMB() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("maxRamMB", "1");
+    OffHeapFilterCache cache = newCache(params);
+
+    // each bitmap block encodes to 8KB, so 1MB holds far fewer than 200 of these sets
+    int maxDoc = RoaringDocSet.BLOCK_SIZE * 2;
+    for (int i = 0; i < 200; i++) {
+      FixedBitSet bits = new FixedBitSet(maxDoc);
+      for (int doc = 0; doc < maxDoc; doc += 2) {
+        bits.set(doc);
+      }
+      cache.put(new TermQuery(new Term("f", Integer.toString(i))), new BitDocSet(bits));
+    }
+    assertTrue("size=" + cache.size(), cache.size() < 200);
+    assertTrue(cache.ramBytesUsed() <= 2L * 1024 * 1024);
+    cache.close();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+
+/** Checks that sorted query results are patched with the new segments after a commit. */
+public class TestPatchingQueryResultRegenerator extends SolrTestCaseJ4 {
+
+  private static int numDocs = 0;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-query-result-patching.xml", "schema.xml");
+  }
+
+  private static void addSegment(int size) {
+    for (int i = 0; i < size; i++) {
+      int id = numDocs++;
+      assertU(adoc("id", String.valueOf(id), "ts_l_dv", String.valueOf(id), "cat_s", (id % 3 == 0) ? "a" : "b"));
+    }
+    assertU(commit());
+  }
+
+  private static String id(int pos, int id) {
+    return "//result/doc[" + pos + "]/str[@name='id'][.='" + id + "']";
+  }
+
+  public void testPatchAcrossCommits() throws Exception {
+    PatchingQueryResultRegenerator regenerator =
+        (PatchingQueryResultRegenerator) h.getCore().getSolrConfig().queryResultCacheConfig.getRegenerator();
+
+    addSegment(30);
+    addSegment(30);
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "sort", "ts_l_dv desc", "rows", "5"),
+        "//*[@numFound='40']", id(1, 59), id(2, 58), id(5, 53));
+    assertQ(req("q", "cat_s:b"), "//*[@numFound='40']");
+    long patched = regenerator.getPatched();
+    long regenerated = regenerator.getRegenerated();
+
+    // the new segment is merged into the sorted results, results sorted by score are computed again
+    addSegment(10);
+    assertEquals(patched + 1, regenerator.getPatched());
+    assertEquals(regenerated + 1, regenerator.getRegenerated());
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "sort", "ts_l_dv desc", "rows", "5"),
+        "//*[@numFound='46']", id(1, 68), id(2, 67), id(5, 62));
+
+    // segments with new deletions are searched again, so the results are only known up to the last kept hit
+    assertU(delI("68"));
+    assertU(delI("5"));
+    assertU(commit());
+    assertEquals(patched + 2, regenerator.getPatched());
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "sort", "ts_l_dv desc", "rows", "5"),
+        "//*[@numFound='44']", id(1, 67), id(2, 65), id(5, 61));
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "sort", "ts_l_dv desc", "rows", "10"),
+        "//*[@numFound='44']", id(6, 59), id(10, 53));
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "sort", "ts_l_dv desc", "start", "20", "rows", "2"),
+        "//*[@numFound='44']", id(1, 37), id(2, 35));
+
+    // results with several filters are patched too, and the hits of the new segment must match all of them
+    String range = "ts_l_dv:[0 TO 69]";
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "fq", range, "sort", "ts_l_dv asc", "rows", "3"),
+        "//*[@numFound='44']", id(1, 1), id(2, 2), id(3, 4));
+    patched = regenerator.getPatched();
+    addSegment(10);
+    assertEquals(patched + 2, regenerator.getPatched());
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "fq", range, "sort", "ts_l_dv asc", "rows", "3"),
+        "//*[@numFound='44']", id(1, 1), id(2, 2), id(3, 4));
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "sort", "ts_l_dv desc", "rows", "5"),
+        "//*[@numFound='51']", id(1, 79), id(2, 77), id(5, 73));
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+
+/** Checks that filters are cached by segment and only evaluated over new segments after a commit. */
+public class TestSegmentFilterCache extends SolrTestCaseJ4 {
+
+  private final static int DOCS_PER_SEGMENT = 10;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-segment-filtercache.xml", "schema.xml");
+  }
+
+  private static void addSegment(int segment) {
+    for (int i = 0; i < DOCS_PER_SEGMENT; i++) {
+      int id = segment * DOCS_PER_SEGMENT + i;
+      assertU(adoc("id", String.valueOf(id), "cat_s", (id % 2 == 0) ? "even" : "odd"));
+    }
+    assertU(commit());
+  }
+
+  public void testReuseAcrossCommits() throws Exception {
+    SegmentFilterCache cache = h.getCore().getSegmentFilterCache();
+    assertNotNull(cache);
+
+    addSegment(0);
+    addSegment(1);
+    addSegment(2);
+    assertQ(req("q", "*:*", "fq", "cat_s:even"), "//*[@numFound='15']");
+    long misses = cache.getMisses();
+    long hits = cache.getHits();
+    assertTrue(misses >= 3);
+
+    // autowarming the filter only evaluates it over the new segment
+    addSegment(3);
+    assertEquals(misses + 1, cache.getMisses());
+    assertEquals(hits + 3, cache.getHits());
+    assertQ(req("q", "*:*", "fq", "cat_s:even"), "//*[@numFound='20']");
+    assertEquals(misses + 1, cache.getMisses());
+
+    // deletions are applied to the cached parts of their segments
+    assertU(delI("0"));
+    assertU(delI("12"));
+    assertU(commit());
+    assertEquals(misses + 1, cache.getMisses());
+    assertQ(req("q", "*:*", "fq", "cat_s:even", "sort", "id asc"),
+        "//*[@numFound='18']",
+        "//result/doc[1]/str[@name='id'][.='10']");
+    assertQ(req("q", "*:*", "fq", "-cat_s:even"), "//*[@numFound='20']");
+
+    // a filter that isn't cached yet is evaluated over every segment once
+    misses = cache.getMisses();
+    assertQ(req("q", "*:*", "fq", "cat_s:odd"), "//*[@numFound='20']");
+    assertEquals(misses + 4, cache.getMisses());
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import org.apache.solr.JSONTestUtil;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestJsonCompositeFacets extends SolrTestCaseHS {
+
+  private static SolrInstances servers;  // for distributed testing
+
+  @SuppressWarnings("deprecation")
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableShardsWhitelist("true");
+    JSONTestUtil.failRepeatedKeys = true;
+
+    // we need DVs on point fields to compute stats & facets
+    if (Boolean.getBoolean(NUMERIC_POINTS_SYSPROP)) System.setProperty(NUMERIC_DOCVALUES_SYSPROP,"true");
+
+    initCore("solrconfig-tlog.xml","schema_latest.xml");
+  }
+
+  /**
+   * Start all servers for cluster if they don't already exist
+   */
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-tlog.xml", "schema_latest.xml");
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  @AfterClass
+  public static void afterTests() throws Exception {
+    systemClearPropertySolrDisableShardsWhitelist();
+    JSONTestUtil.failRepeatedKeys = false;
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+  }
+
+  private void indexDocs(Client client) throws Exception {
+    client.deleteByQuery("*:*", null);
+    client.add(sdoc("id", "1", "country_s", "US", "cat_s", "A", "brand_s", "x", "num_d", "1",
+        "tags_ss", "t1", "tags_ss", "t2"), null);
+    client.add(sdoc("id", "2", "country_s", "US", "cat_s", "B", "brand_s", "y", "num_d", "2"), null);
+    client.add(sdoc("id", "3", "country_s", "DE", "cat_s", "A", "brand_s", "x", "num_d", "3"), null);
+    client.commit();
+    client.add(sdoc("id", "4", "country_s", "US", "cat_s", "A", "brand_s", "y", "num_d", "4",
+        "tags_ss", "t2"), null);
+    client.add(sdoc("id", "5", "country_s", "DE", "cat_s", "B", "brand_s", "x", "num_d", "5"), null);
+    client.commit();
+    client.add(sdoc("id", "6", "country_s", "US"), null);
+    client.add(sdoc("id", "7", "country_s", "FR", "cat_s", "A", "brand_s", "x", "num_d", "7"), null);
+    client.commit();
+  }
+
+  @Test
+  public void testCompositeDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    client.queryDefaults().set( "shards", servers.getShards()).set("debugQuery", Boolean.toString(random().nextBoolean()) );
+    doComposite(client);
+  }
+
+  @Test
+  public void testComposite() throws Exception {
+    doComposite(Client.localClient());
+
+    ignoreException("composite");
+    SolrException e = expectThrows(SolrException.class, () ->
+        h.query(req("q", "*:*", "json.facet", "{c:{type:composite, sources:[country_s, num_d]}}")));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    e = expectThrows(SolrException.class, () ->
+        h.query(req("q", "*:*", "json.facet", "{c:{type:composite, sources:[country_s, cat_s], after:{country_s:US}}}")));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    resetExceptionIgnores();
+  }
+
+  private void doComposite(Client client) throws Exception {
+    indexDocs(client);
+    SolrParams p = params("q", "*:*", "rows", "0");
+
+    // page through the combinations, docs without a value in every source are skipped
+    client.testJQ(params(p, "json.facet"
+        , "{c:{type:composite, sources:[country_s, cat_s], limit:2}}"),
+        "facets=={count:7, c:{buckets:[" +
+            "{val:{country_s:DE, cat_s:A}, count:1}," +
+            "{val:{country_s:DE, cat_s:B}, count:1}" +
+            "], after:{country_s:DE, cat_s:B}}}");
+    client.testJQ(params(p, "json.facet"
+        , "{c:{type:composite, sources:'country_s,cat_s', limit:2, after:{country_s:DE, cat_s:B}, facet:{x:'sum(num_d)'}}}"),
+        "facets=={count:7, c:{buckets:[" +
+            "{val:{country_s:FR, cat_s:A}, count:1, x:7.0}," +
+            "{val:{country_s:US, cat_s:A}, count:2, x:5.0}" +
+            "], after:{country_s:US, cat_s:A}}}");
+    client.testJQ(params(p, "json.facet"
+        , "{c:{type:composite, sources:[country_s, cat_s], limit:2, after:{country_s:US, cat_s:A}}}"),
+        "facets=={count:7, c:{buckets:[" +
+            "{val:{country_s:US, cat_s:B}, count:1}" +
+            "]}}");
+
+    // an after key that isn't in the index
+    client.testJQ(params(p, "json.facet"
+        , "{c:{type:composite, sources:[country_s, cat_s], limit:1, after:{country_s:E, cat_s:Z}," +
+            " facet:{brand:{type:terms, field:brand_s}}}}"),
+        "facets=={count:7, c:{buckets:[" +
+            "{val:{country_s:FR, cat_s:A}, count:1, brand:{buckets:[{val:x, count:1}]}}" +
+            "], after:{country_s:FR, cat_s:A}}}");
+
+    client.testJQ(params(p, "json.facet"
+        , "{c:{type:composite, sources:[country_s, cat_s, brand_s]}}"),
+        "facets=={count:7, c:{buckets:[" +
+            "{val:{country_s:DE, cat_s:A, brand_s:x}, count:1}," +
+            "{val:{country_s:DE, cat_s:B, brand_s:x}, count:1}," +
+            "{val:{country_s:FR, cat_s:A, brand_s:x}, count:1}," +
+            "{val:{country_s:US, cat_s:A, brand_s:x}, count:1}," +
+            "{val:{country_s:US, cat_s:A, brand_s:y}, count:1}," +
+            "{val:{country_s:US, cat_s:B, brand_s:y}, count:1}" +
+            "]}}");
+
+    // every value of a multi-valued source makes a combination
+    client.testJQ(params(p, "json.facet"
+        , "{c:{type:composite, sources:[tags_ss, country_s], facet:{x:'sum(num_d)'}}}"),
+        "facets=={count:7, c:{buckets:[" +
+            "{val:{tags_ss:t1, country_s:US}, count:1, x:1.0}," +
+            "{val:{tags_ss:t2, country_s:US}, count:2, x:5.0}" +
+            "]}}");
+  }
+}
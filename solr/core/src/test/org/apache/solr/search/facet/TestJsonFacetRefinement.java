@@ -465,6 +465,69 @@ public class TestJsonFacetRefinement extends SolrTestCaseHS {
     
   }
 
+  @Test
+  public void testMergeWithBoundedRefinement() throws Exception {
+    // x3 can't reach x2 even if shard0 has it as often as its last bucket (1+6 < 11), so only x1 is refined
+    doTestRefine("{x : {type:terms, field:X, limit:1, refine:bounded} }",
+                 "{x: {buckets:[{val:x1, count:10}, {val:x2, count:6}], more:true } }",
+                 "{x: {buckets:[{val:x2, count:5}, {val:x3, count:1}], more:true } }",
+                 null,
+                 "=={x:{_l:[x1]}}");
+
+    // x3 isn't among the top buckets seen, but could still reach the top (8+3 >= 10), while x2 and x4 can't
+    doTestRefine("{x : {type:terms, field:X, limit:1, refine:bounded} }",
+                 "{x: {buckets:[{val:x1, count:10}, {val:x2, count:3}], more:true } }",
+                 "{x: {buckets:[{val:x3, count:8}, {val:x4, count:2}], more:true } }",
+                 "=={x:{_l:[x3]}}",
+                 "=={x:{_l:[x1]}}");
+
+    // a shard without more buckets doesn't widen any bounds, and x3 can't reach x1 (8+1 < 10)
+    doTestRefine("{x : {type:terms, field:X, limit:1, refine:bounded} }",
+                 "{x: {buckets:[{val:x1, count:10}, {val:x2, count:1}], more:true } }",
+                 "{x: {buckets:[{val:x3, count:8}, {val:x4, count:2}] } }",
+                 null,
+                 null);
+
+    // many shards, skewed towards shard0: x2 is seen everywhere, so only x1 can still change (60+5*1 >= 60),
+    // and no bucket that no shard returned can reach it (2+5*1 < 60)
+    String[] skewed = new String[12];
+    skewed[0] = "{x: {buckets:[{val:x1, count:60}, {val:x2, count:2}], more:true } }";
+    skewed[6] = null;
+    for (int i = 1; i < 6; i++) {
+      skewed[i] = "{x: {buckets:[{val:x2, count:10}, {val:z" + i + ", count:1}], more:true } }";
+      skewed[6 + i] = "=={x:{_l:[x1]}}";
+    }
+    doTestRefine("{x : {type:terms, field:X, limit:1, refine:bounded} }", skewed);
+
+    // many shards with different top buckets: a bucket that no shard returned could have 6*5 >= 10, so the
+    // bounds can't tell which buckets to refine, and the top buckets are refined like with refine:true
+    String[] flat = new String[12];
+    flat[6] = null;
+    for (int i = 0; i < 6; i++) {
+      flat[i] = "{x: {buckets:[{val:x" + i + ", count:10}, {val:y" + i + ", count:5}], more:true } }";
+      if (i > 0) flat[6 + i] = "=={x:{_l:[x0]}}";
+    }
+    doTestRefine("{x : {type:terms, field:X, limit:1, refine:bounded} }", flat);
+
+    // f, a and b could all reach 20, but only offset+limit+overrefine buckets are refined, those with the highest
+    // possible counts first: f (20+2) and a (20+1)
+    doTestRefine("{x : {type:terms, field:X, limit:1, refine:bounded} }",
+                 "{x: {buckets:[{val:a, count:20}, {val:b, count:19}, {val:c, count:18}, {val:e, count:2}], more:true } }",
+                 "{x: {buckets:[{val:f, count:20}, {val:g, count:1}], more:true } }",
+                 "=={x:{_l:[f]}}",
+                 "=={x:{_l:[a]}}");
+    doTestRefine("{x : {type:terms, field:X, limit:1, overrefine:1, refine:bounded} }",
+                 "{x: {buckets:[{val:a, count:20}, {val:b, count:19}, {val:c, count:18}, {val:e, count:2}], more:true } }",
+                 "{x: {buckets:[{val:f, count:20}, {val:g, count:1}], more:true } }",
+                 "=={x:{_l:[f]}}",
+                 "=={x:{_l:[a]}}");
+    doTestRefine("{x : {type:terms, field:X, limit:1, overrefine:2, refine:bounded} }",
+                 "{x: {buckets:[{val:a, count:20}, {val:b, count:19}, {val:c, count:18}, {val:e, count:2}], more:true } }",
+                 "{x: {buckets:[{val:f, count:20}, {val:g, count:1}], more:true } }",
+                 "=={x:{_l:[f]}}",
+                 "=={x:{_l:[a,b]}}");
+  }
+
   /** 
    * When <code>prelim_sort</code> is used, all 'top bucket' choices for refinement should still be based on
    * it, not the <code>sort</code> param, so this test is just some sanity checks that the presence of the 
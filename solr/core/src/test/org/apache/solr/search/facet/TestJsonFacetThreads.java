@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.Map;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.Utils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Checks that terms facets counted or collected on several threads match those of a single thread. */
+public class TestJsonFacetThreads extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+
+    int id = 0;
+    int numSegments = random().nextInt(5) + 3;
+    for (int seg = 0; seg < numSegments; seg++) {
+      int numDocs = random().nextInt(50) + 1;
+      for (int i = 0; i < numDocs; i++) {
+        int val = random().nextInt(30);
+        // whole numbers, so that sums don't depend on the order they are added in
+        assertU(adoc("id", String.valueOf(id++), "cat_s", "c" + val,
+            "tags_ss", "t" + val, "tags_ss", "t" + random().nextInt(10),
+            "num_i", String.valueOf(random().nextInt(1000) - 500),
+            "num_d", String.valueOf(random().nextInt(1000)),
+            "num_dt", "2021-01-" + (10 + random().nextInt(20)) + "T00:00:00Z"));
+      }
+      assertU(commit());
+    }
+    // deleted docs must not be counted
+    assertU(delI("0"));
+    assertU(commit());
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private static Object facets(String field, String options, int threads) throws Exception {
+    String json = JQ(req("q", "*:*", "fq", "-id:3", "rows", "0", "json.facet",
+        "{f:{type:terms, field:" + field + ", limit:-1, method:dv, threads:" + threads + options + "}}"));
+    return ((Map<String,Object>) Utils.fromJSONString(json)).get("facets");
+  }
+
+  @Test
+  public void testThreadsMatchSingleThread() throws Exception {
+    for (String field : new String[] {"cat_s", "tags_ss"}) {
+      for (String options : new String[] {"", ", perSeg:true", ", perSeg:false", ", mincount:3", ", sort:'index asc'"}) {
+        Object expected = facets(field, options, 1);
+        assertEquals(field + options, expected, facets(field, options, 4));
+        assertEquals(field + options, expected, facets(field, options, 100));
+      }
+    }
+  }
+
+  @Test
+  public void testStatsMatchSingleThread() throws Exception {
+    String stats = ", facet:{s:'sum(num_d)', lo:'min(num_i)', hi:'max(num_i)', dlo:'min(num_d)', first:'min(num_dt)', last:'max(num_dt)'}";
+    for (String field : new String[] {"cat_s", "tags_ss"}) {
+      for (String options : new String[] {stats, stats + ", sort:'s desc'", stats + ", sort:'lo asc', limit:5"}) {
+        Object expected = facets(field, options, 1);
+        assertEquals(field + options, expected, facets(field, options, 4));
+        assertEquals(field + options, expected, facets(field, options, 100));
+      }
+    }
+  }
+
+  @Test
+  public void testUnmergeableStatsUseOneThread() throws Exception {
+    String options = ", facet:{u:'unique(tags_ss)', s:'sum(num_d)'}";
+    assertEquals(facets("cat_s", options, 1), facets("cat_s", options, 4));
+
+    // a single segment is collected on one thread anyway
+    int numLeaves = h.getCore().withSearcher(searcher -> searcher.getIndexReader().leaves().size());
+    String response = h.query(req("q", "*:*", "rows", "0", "debugQuery", "true", "json.facet",
+        "{f:{type:terms, field:cat_s, method:dv, threads:4" + options + "}}"));
+    assertEquals(response, numLeaves > 1, response.contains(FacetFieldProcessorByArrayDV.THREADS_IGNORED_DEBUG_KEY));
+
+    // stats that can be merged use the threads
+    response = h.query(req("q", "*:*", "rows", "0", "debugQuery", "true", "json.facet",
+        "{f:{type:terms, field:cat_s, method:dv, threads:4, facet:{s:'sum(num_d)', lo:'min(num_i)'}}}"));
+    assertFalse(response, response.contains(FacetFieldProcessorByArrayDV.THREADS_IGNORED_DEBUG_KEY));
+  }
+}
@@ -806,7 +806,65 @@ public class TestJsonFacets extends SolrTestCaseHS {
     }
   }
 
-  
+  @Test
+  public void testSKGSweepSiblingFields() throws Exception {
+    Client client = Client.localClient();
+    indexSimple(client);
+
+    // sibling facets with the same relatedness() share a single sweep over their domains, unless one of them
+    // has its own domain, the results must be the same either way
+    for (String whereDomain : Arrays.asList("", "domain: { filter:'*:*' }, ")) {
+      assertJQ(req("q", "cat_s:[* TO *]", "rows", "0",
+                   "fore", "where_s:NY", "back", "*:*",
+                   "json.facet", ""
+                   + "{x: { type: terms, field: 'cat_s', sort:'index asc', "
+                   + "      facet: { skg: 'relatedness($fore,$back)' } }, "
+                   + " w: { type: terms, field: 'where_s', sort:'index asc', " + whereDomain
+                   + "      facet: { skg: 'relatedness($fore,$back)' } } }")
+               , "facets/x=={ buckets:["
+               + "   { val:'A', count:2, "
+               + "     skg : { relatedness: 0.00554, "
+               + "             foreground_popularity: 0.16667,"
+               + "             background_popularity: 0.33333, },"
+               + "   }, "
+               + "   { val:'B', count:3, "
+               + "     skg : { relatedness: 0.0, " // perfectly average and uncorrolated
+               + "             foreground_popularity: 0.16667,"
+               + "             background_popularity: 0.5 },"
+               + "   } ] } "
+               , "facets/w/buckets/[0]/val=='NJ'"
+               , "facets/w/buckets/[0]/count==3"
+               , "facets/w/buckets/[0]/skg/foreground_popularity==0.0"
+               , "facets/w/buckets/[0]/skg/background_popularity==0.5"
+               , "facets/w/buckets/[1]/val=='NY'"
+               , "facets/w/buckets/[1]/count==2"
+               , "facets/w/buckets/[1]/skg/foreground_popularity==0.33333"
+               , "facets/w/buckets/[1]/skg/background_popularity==0.33333"
+               );
+
+      // the facet debug output lists the fields that were swept together, whatever the default facet method is
+      String response = h.query(req("q", "cat_s:[* TO *]", "rows", "0", "debugQuery", "true",
+                                    "fore", "where_s:NY", "back", "*:*",
+                                    "json.facet", ""
+                                    + "{x: { type: terms, field: 'cat_s', method: dv, "
+                                    + "      facet: { skg: 'relatedness($fore,$back)' } }, "
+                                    + " w: { type: terms, field: 'where_s', method: dv, " + whereDomain
+                                    + "      facet: { skg: 'relatedness($fore,$back)' } } }"));
+      assertEquals(response, whereDomain.isEmpty(), response.contains(MultiFieldSweep.MULTI_FIELD_SWEEP_DEBUG_KEY));
+    }
+
+    // a sibling that also computes another stat is left out of the sweep
+    String response = h.query(req("q", "cat_s:[* TO *]", "rows", "0", "debugQuery", "true",
+                                  "fore", "where_s:NY", "back", "*:*",
+                                  "json.facet", ""
+                                  + "{x: { type: terms, field: 'cat_s', method: dv, "
+                                  + "      facet: { skg: 'relatedness($fore,$back)' } }, "
+                                  + " w: { type: terms, field: 'where_s', method: dv, "
+                                  + "      facet: { skg: 'relatedness($fore,$back)', n: 'sum(num_d)' } } }"));
+    assertFalse(response, response.contains(MultiFieldSweep.MULTI_FIELD_SWEEP_DEBUG_KEY));
+  }
+
+
   @Test
   public void testRepeatedNumerics() throws Exception {
     Client client = Client.localClient();
@@ -1574,6 +1632,16 @@ public class TestJsonFacets extends SolrTestCaseHS {
             ", f2:{  'buckets':[{ val:'B', count:3, n1:[-5.0,-9.0,11.0]}, { val:'A', count:2, n1:[3.0,2.0,4.0] }]} }"
     );
 
+    // kll returns values that were seen instead of interpolating between them
+    client.testJQ(params(p, "q", "*:*"
+            , "json.facet", "{f1:{terms:{${terms} field:${cat_s}, sort:'n1 desc', facet:{n1:'kll(${num_d},50,0,100)'}  }}" +
+                " , f2:{terms:{${terms} field:${cat_s}, sort:'n1 asc', facet:{n1:{type:func, func:'kll(${num_d},50)', k:400}}  }} }"
+        )
+        , "facets=={ 'count':6, " +
+            "  f1:{  'buckets':[{ val:'A', count:2, n1:[2.0,2.0,4.0] }, { val:'B', count:3, n1:[-5.0,-9.0,11.0] }]}" +
+            ", f2:{  'buckets':[{ val:'B', count:3, n1:-5.0}, { val:'A', count:2, n1:2.0 }]} }"
+    );
+
     // test sorting by count/index order
     client.testJQ(params(p, "q", "*:*"
             , "json.facet", "{f1:{terms:{${terms} field:'${cat_s}', sort:'count desc' }  }" +
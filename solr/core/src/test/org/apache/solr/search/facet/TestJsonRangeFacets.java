@@ -21,6 +21,7 @@ import java.util.Arrays;
 
 import org.apache.solr.JSONTestUtil;
 import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.SolrParams;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -234,6 +235,95 @@ public class TestJsonRangeFacets extends SolrTestCaseHS {
             "}}");
   }
 
+  @Test
+  public void testDateHistogramDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    client.queryDefaults().set( "shards", servers.getShards()).set("debugQuery", Boolean.toString(random().nextBoolean()) );
+    doDateHistogram(client);
+  }
+
+  @Test
+  public void testDateHistogram() throws Exception {
+    doDateHistogram(Client.localClient());
+
+    ignoreException("date_histogram");
+    // a multi-valued field
+    SolrException e = expectThrows(SolrException.class, () ->
+        h.query(req("q", "*:*", "json.facet", "{date:{type:date_histogram, field:b_dts}}")));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    e = expectThrows(SolrException.class, () ->
+        h.query(req("q", "*:*", "json.facet", "{date:{type:date_histogram, field:b_dtd, interval:'+1FORTNIGHT'}}")));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    for (String bad : new String[] {"buckets:0", "buckets:65537", "sort:'count desc'", "limit:5", "offset:1"}) {
+      e = expectThrows(SolrException.class, () ->
+          h.query(req("q", "*:*", "json.facet", "{date:{type:date_histogram, field:b_dtd, " + bad + "}}")));
+      assertEquals(bad, SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    }
+    resetExceptionIgnores();
+  }
+
+  private void doDateHistogram(Client client) throws Exception {
+    client.queryDefaults().set("cache", cache);
+    client.deleteByQuery("*:*", null);
+    client.add(sdoc("id", "1", "cat_s", "A", "num_d", "4", "b_dtd", "2014-03-15T12:00:00Z"), null);
+    client.add(sdoc("id", "2", "cat_s", "B", "num_d", "-9", "b_dtd", "2015-01-03T00:00:00Z"), null);
+    client.add(sdoc("id", "3"), null);
+    client.commit();
+    client.add(sdoc("id", "4", "cat_s", "A", "num_d", "2", "b_dtd", "2014-03-15T13:30:00Z"), null);
+    client.add(sdoc("id", "5", "cat_s", "B", "num_d", "11", "b_dtd", "2015-01-03T23:00:00Z"), null);
+    client.commit();
+    client.add(sdoc("id", "6", "cat_s", "B", "num_d", "-5", "b_dtd", "2014-03-16T01:00:00Z"), null);
+    client.commit();
+
+    SolrParams p = params("q", "*:*", "rows", "0");
+
+    client.testJQ(params(p, "json.facet"
+        , "{date:{type:date_histogram, field:b_dtd, interval:'+1MONTH'," +
+            " facet:{x:'sum(num_d)', cat:{type:terms, field:cat_s}}}}"),
+        "facets=={count:6, date:{interval:'+1MONTHS', buckets:[" +
+            "{val:'2014-03-01T00:00:00Z', count:3, x:1.0, cat:{buckets:[{val:A,count:2},{val:B,count:1}]}}," +
+            "{val:'2015-01-01T00:00:00Z', count:2, x:2.0, cat:{buckets:[{val:B,count:2}]}}" +
+            "]}}");
+
+    // days start at midnight in the time zone
+    client.testJQ(params(p, "json.facet"
+        , "{date:{type:date_histogram, field:b_dtd, interval:'+1DAY', tz:'America/New_York'}}"),
+        "facets=={count:6, date:{interval:'+1DAYS', buckets:[" +
+            "{val:'2014-03-15T04:00:00Z', count:3}," +
+            "{val:'2015-01-02T05:00:00Z', count:1}," +
+            "{val:'2015-01-03T05:00:00Z', count:1}" +
+            "]}}");
+
+    // the bounds clip the first and the last buckets
+    client.testJQ(params(p, "json.facet"
+        , "{date:{type:date_histogram, field:b_dtd, interval:'YEAR', mincount:2," +
+            " start:'2014-03-15T13:00:00Z', end:'2015-01-03T12:00:00Z'}}"),
+        "facets=={count:6, date:{interval:'+1YEARS', buckets:[" +
+            "{val:'2014-01-01T00:00:00Z', count:2}" +
+            "]}}");
+
+    // auto interval: months would need 11 buckets to cover the values, quarters only 4
+    client.testJQ(params(p, "json.facet"
+        , "{date:{type:date_histogram, field:b_dtd, facet:{x:'sum(num_d)'}}}"),
+        "facets=={count:6, date:{interval:'+3MONTHS', buckets:[" +
+            "{val:'2014-01-01T00:00:00Z', count:3, x:1.0}," +
+            "{val:'2015-01-01T00:00:00Z', count:2, x:2.0}" +
+            "]}}");
+    client.testJQ(params(p, "json.facet"
+        , "{date:{type:date_histogram, field:b_dtd, buckets:400}}"),
+        "facets=={count:6, date:{interval:'+1DAYS', buckets:[" +
+            "{val:'2014-03-15T00:00:00Z', count:2}," +
+            "{val:'2014-03-16T00:00:00Z', count:1}," +
+            "{val:'2015-01-03T00:00:00Z', count:2}" +
+            "]}}");
+
+    // no values
+    client.testJQ(params(p, "fq", "-b_dtd:*", "json.facet"
+        , "{date:{type:date_histogram, field:b_dtd}}"),
+        "facets=={count:1, date:{buckets:[]}}");
+  }
+
   @Test
   public void testRangeFacetWithRangesDistrib() throws Exception {
     initServers();
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+
+/** Checks that terms facet counts are cached by segment and only counted over changed segments after a commit. */
+public class TestSegmentFacetCountCache extends SolrTestCaseJ4 {
+
+  private final static int DOCS_PER_SEGMENT = 20;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-facet-countcache.xml", "schema.xml");
+  }
+
+  private static void addSegment(int segment) {
+    for (int i = 0; i < DOCS_PER_SEGMENT; i++) {
+      int id = segment * DOCS_PER_SEGMENT + i;
+      assertU(adoc("id", String.valueOf(id), "cat_s", "c" + (id % 5)));
+    }
+    assertU(commit());
+  }
+
+  private static String facet(String options) {
+    return "{f:{type:terms, field:cat_s, method:dv" + options + "}}";
+  }
+
+  public void testReuseAcrossRequestsAndCommits() throws Exception {
+    SegmentFacetCountCache cache = h.getCore().getFacetCountCache();
+    assertNotNull(cache);
+
+    addSegment(0);
+    addSegment(1);
+    addSegment(2);
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", facet(", sort:'index asc', limit:2")),
+        "facets=={count:60, f:{buckets:[{val:c0, count:12}, {val:c1, count:12}]}}");
+    assertEquals(3, cache.getMisses());
+    assertEquals(0, cache.getHits());
+
+    // other pages, sorts and prefixes of the same domain reuse the counts
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", facet(", sort:'index asc', limit:2, offset:2")),
+        "facets=={count:60, f:{buckets:[{val:c2, count:12}, {val:c3, count:12}]}}");
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", facet(", prefix:c4")),
+        "facets=={count:60, f:{buckets:[{val:c4, count:12}]}}");
+    assertEquals(3, cache.getMisses());
+    assertEquals(6, cache.getHits());
+
+    // only the new segment is counted after a commit
+    addSegment(3);
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", facet(", sort:'index asc', limit:1")),
+        "facets=={count:80, f:{buckets:[{val:c0, count:16}]}}");
+    assertEquals(4, cache.getMisses());
+    assertEquals(9, cache.getHits());
+
+    // a segment with a deleted doc in the domain is counted again
+    assertU(delI("0"));
+    assertU(commit());
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", facet(", sort:'index asc', limit:1")),
+        "facets=={count:79, f:{buckets:[{val:c0, count:15}]}}");
+    assertEquals(5, cache.getMisses());
+    assertEquals(12, cache.getHits());
+
+    // another domain has its own counts
+    assertJQ(req("q", "cat_s:c1", "rows", "0", "json.facet", facet("")),
+        "facets=={count:16, f:{buckets:[{val:c1, count:16}]}}");
+    assertEquals(12, cache.getHits());
+  }
+}
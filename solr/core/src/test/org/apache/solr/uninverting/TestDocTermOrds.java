@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.MockAnalyzer;
@@ -47,6 +48,8 @@ import org.apache.lucene.index.TermsEnum.SeekStatus;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.TestUtil;
 import org.apache.solr.index.SlowCompositeReaderWrapper;
@@ -344,6 +347,72 @@ public class TestDocTermOrds extends SolrTestCase {
     dir.close();
   }
 
+  public void testParallelUninvert() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    final int numDocs = atLeast(500);
+    final int numTerms = TestUtil.nextInt(random(), 10, 200);
+    for (int id = 0; id < numDocs; id++) {
+      Document doc = new Document();
+      for (int i = random().nextInt(6); i > 0; i--) {
+        doc.add(newStringField("field", "t" + random().nextInt(numTerms), Field.Store.NO));
+      }
+      w.addDocument(doc);
+    }
+    w.deleteDocuments(new Term("field", "t1"));
+    final DirectoryReader r = w.getReader();
+    w.close();
+    LeafReader slowR = SlowCompositeReaderWrapper.wrap(r);
+
+    // some terms are over the doc freq limit, and aren't uninverted
+    final int maxTermDocFreq = random().nextBoolean() ? Integer.MAX_VALUE : numDocs / numTerms * 3;
+    final int numThreads = TestUtil.nextInt(random(), 2, 8);
+    final List<Integer> serialDocFreqs = new ArrayList<>();
+    final List<Integer> parallelDocFreqs = new ArrayList<>();
+    DocTermOrds serial = new DocTermOrds("field", maxTermDocFreq, DocTermOrds.DEFAULT_INDEX_INTERVAL_BITS) {
+      @Override
+      protected void setActualDocFreq(int termNum, int df) {
+        serialDocFreqs.add(termNum);
+        serialDocFreqs.add(df);
+      }
+    };
+    serial.uninvert(slowR, slowR.getLiveDocs(), null);
+    DocTermOrds parallel = new DocTermOrds("field", maxTermDocFreq, DocTermOrds.DEFAULT_INDEX_INTERVAL_BITS) {
+      @Override
+      protected void setActualDocFreq(int termNum, int df) {
+        parallelDocFreqs.add(termNum);
+        parallelDocFreqs.add(df);
+      }
+    };
+    ExecutorService executor = ExecutorUtil.newMDCAwareCachedThreadPool(new SolrNamedThreadFactory("testParallelUninvert"));
+    try {
+      parallel.uninvert(slowR, slowR.getLiveDocs(), null, executor, numThreads);
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+
+    assertEquals(serial.numTerms(), parallel.numTerms());
+    assertEquals(serial.termInstances, parallel.termInstances);
+    assertEquals(serialDocFreqs, parallelDocFreqs);
+    SortedSetDocValues expected = serial.iterator(slowR);
+    SortedSetDocValues actual = parallel.iterator(slowR);
+    for (int docID = 0; docID < slowR.maxDoc(); docID++) {
+      boolean exists = expected.advanceExact(docID);
+      assertEquals(exists, actual.advanceExact(docID));
+      if (exists) {
+        long ord;
+        do {
+          ord = expected.nextOrd();
+          assertEquals("docID=" + docID, ord, actual.nextOrd());
+        } while (ord != SortedSetDocValues.NO_MORE_ORDS);
+      }
+    }
+
+    FieldCache.DEFAULT.purgeByCacheKey(slowR.getCoreCacheHelper().getKey());
+    r.close();
+    dir.close();
+  }
+
   private void verify(LeafReader r, int[][] idToOrds, BytesRef[] termsArray, BytesRef prefixRef) throws Exception {
 
     final DocTermOrds dto = new DocTermOrds(r, r.getLiveDocs(),
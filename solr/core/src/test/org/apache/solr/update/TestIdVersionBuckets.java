@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+
+/**
+ * Test for {@link IdVersionBuckets}.
+ */
+public class TestIdVersionBuckets extends SolrTestCase {
+
+  public void testHighest() {
+    IdVersionBuckets buckets = new IdVersionBuckets(16);
+    VersionBucket bucket = buckets.bucket(3);
+    // unknown until seeded
+    bucket.updateHighest(100);
+    assertEquals(0, bucket.getHighest());
+
+    buckets.seedHighest(50);
+    assertEquals(50, bucket.getHighest());
+    bucket.updateHighest(-100);
+    assertEquals(100, bucket.getHighest());
+    bucket.updateHighest(70);
+    assertEquals(100, bucket.getHighest());
+    // ids in the same bucket share the highest version, other buckets keep theirs
+    assertEquals(100, buckets.bucket(3 + 16).getHighest());
+    assertEquals(50, buckets.bucket(4).getHighest());
+  }
+
+  public void testLocksById() throws Exception {
+    IdVersionBuckets buckets = new IdVersionBuckets(16);
+    ExecutorService executor = ExecutorUtil.newMDCAwareCachedThreadPool(new SolrNamedThreadFactory("testIdVersionBuckets"));
+    try {
+      CountDownLatch locked = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      Future<?> holder = executor.submit(() -> {
+        VersionBucket bucket = buckets.bucket(1);
+        return bucket.runWithLock(0, () -> {
+          try {
+            locked.countDown();
+            release.await();
+            return null;
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          } finally {
+            bucket.unlock();
+          }
+        });
+      });
+      assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+      // another id in the same bucket doesn't wait
+      VersionBucket other = buckets.bucket(1 + 16);
+      assertEquals("done", other.runWithLock(100, () -> {
+        other.unlock();
+        return "done";
+      }));
+      assertEquals(0, buckets.getContended());
+
+      // the same id times out
+      VersionBucket same = buckets.bucket(1);
+      expectThrows(SolrException.class, () -> same.runWithLock(100, () -> {
+        same.unlock();
+        return "done";
+      }));
+      assertEquals(1, buckets.getContended());
+      assertTrue(buckets.getWaitTimeMs() > 0);
+
+      // and gets the lock once it is released
+      Future<String> waiter = executor.submit(() -> {
+        VersionBucket bucket = buckets.bucket(1);
+        return bucket.runWithLock(0, () -> {
+          bucket.unlock();
+          return "done";
+        });
+      });
+      release.countDown();
+      holder.get(10, TimeUnit.SECONDS);
+      assertEquals("done", waiter.get(10, TimeUnit.SECONDS));
+      assertEquals(4, buckets.getAcquired());
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
+
+  public void testSignal() throws Exception {
+    IdVersionBuckets buckets = new IdVersionBuckets(16);
+    ExecutorService executor = ExecutorUtil.newMDCAwareCachedThreadPool(new SolrNamedThreadFactory("testIdVersionBuckets"));
+    try {
+      CountDownLatch waiting = new CountDownLatch(1);
+      Future<Long> waiter = executor.submit(() -> {
+        VersionBucket bucket = buckets.bucket(7);
+        return bucket.runWithLock(0, () -> {
+          try {
+            long start = System.nanoTime();
+            waiting.countDown();
+            bucket.awaitNanos(TimeUnit.SECONDS.toNanos(30));
+            return System.nanoTime() - start;
+          } finally {
+            bucket.unlock();
+          }
+        });
+      });
+      assertTrue(waiting.await(10, TimeUnit.SECONDS));
+
+      // waiting releases the lock, so an update of the same id can signal the waiter
+      VersionBucket bucket = buckets.bucket(7);
+      bucket.runWithLock(0, () -> {
+        try {
+          bucket.signalAll();
+          return null;
+        } finally {
+          bucket.unlock();
+        }
+      });
+      assertTrue(waiter.get(10, TimeUnit.SECONDS) < TimeUnit.SECONDS.toNanos(30));
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
+}
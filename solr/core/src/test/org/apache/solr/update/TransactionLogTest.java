@@ -24,9 +24,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.solr.SolrTestCase;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.update.TransactionLog.LogReader;
 import org.junit.Test;
 
@@ -72,4 +77,105 @@ public class TransactionLogTest extends SolrTestCase {
       assertEquals(uuid, (UUID) doc.getFieldValue("uuid"));
     }
   }
+
+  @Test
+  public void testConcurrentFsync() throws Exception {
+    String tlogFileName = String.format(Locale.ROOT, UpdateLog.LOG_FILENAME_PATTERN, UpdateLog.TLOG_NAME,
+        Long.MAX_VALUE);
+    Path path = createTempDir();
+    File logFile = new File(path.toFile(), tlogFileName);
+    int threads = 8;
+    int docsPerThread = 50;
+    ExecutorService executor = ExecutorUtil.newMDCAwareFixedThreadPool(threads, new SolrNamedThreadFactory("testConcurrentFsync"));
+    try (TransactionLog tlog = new TransactionLog(logFile, new ArrayList<>())) {
+      tlog.deleteOnClose = false;
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int i = 0; i < docsPerThread; i++) {
+            AddUpdateCommand updateCommand = new AddUpdateCommand(null);
+            updateCommand.solrDoc = new SolrInputDocument();
+            updateCommand.solrDoc.addField("id", thread + "-" + i);
+            tlog.write(updateCommand);
+            tlog.finish(UpdateLog.SyncLevel.FSYNC);
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      // concurrent updates may share an fsync, but never need more than one each
+      assertTrue(tlog.numSyncs <= threads * docsPerThread);
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+
+    try (TransactionLog tlog = new TransactionLog(logFile, new ArrayList<>(), true)) {
+      LogReader reader = tlog.getReader(0);
+      int numRecords = 0;
+      while (reader.next() != null) {
+        numRecords++;
+      }
+      reader.close();
+      assertEquals(threads * docsPerThread, numRecords);
+    }
+  }
+
+  @Test
+  public void testMappedReads() throws IOException, InterruptedException {
+    String tlogFileName = String.format(Locale.ROOT, UpdateLog.LOG_FILENAME_PATTERN, UpdateLog.TLOG_NAME,
+        Long.MAX_VALUE);
+    Path path = createTempDir();
+    File logFile = new File(path.toFile(), tlogFileName);
+    int numDocs = 100;
+    long[] positions = new long[numDocs + 1];
+    try (TransactionLog tlog = new TransactionLog(logFile, new ArrayList<>())) {
+      for (int i = 0; i < numDocs; i++) {
+        positions[i] = tlog.write(addCommand(i));
+      }
+      assertFalse(tlog.isMapped());
+      tlog.closeOutput();
+      assertEquals(TransactionLog.mmapReads, tlog.isMapped());
+
+      // a record appended after mapping is read through the channel
+      positions[numDocs] = tlog.write(addCommand(numDocs));
+      for (int i = 0; i <= numDocs; i++) {
+        List<?> entry = (List<?>) tlog.lookup(positions[i]);
+        assertEquals((long) i + 1, entry.get(UpdateLog.VERSION_IDX));
+        assertEquals("doc" + i, ((SolrInputDocument) entry.get(2)).getFieldValue("id"));
+      }
+
+      TransactionLog.ReverseReader reverseReader = tlog.getReverseReader();
+      for (int i = numDocs; i >= 0; i--) {
+        List<?> entry = (List<?>) reverseReader.next();
+        assertEquals((long) i + 1, entry.get(UpdateLog.VERSION_IDX));
+        assertEquals(positions[i], reverseReader.position());
+      }
+      assertNull(reverseReader.next());
+      reverseReader.close();
+
+      LogReader reader = tlog.getReader(0);
+      for (int i = 0; i <= numDocs; i++) {
+        List<?> entry = (List<?>) reader.next();
+        assertEquals("doc" + i, ((SolrInputDocument) entry.get(2)).getFieldValue("id"));
+      }
+      assertNull(reader.next());
+      reader.close();
+    }
+    // closing releases the mapping, so the log can be deleted everywhere
+    assertFalse(logFile.exists());
+  }
+
+  private static AddUpdateCommand addCommand(int i) {
+    AddUpdateCommand updateCommand = new AddUpdateCommand(null);
+    updateCommand.solrDoc = new SolrInputDocument();
+    updateCommand.solrDoc.addField("id", "doc" + i);
+    updateCommand.setVersion(i + 1);
+    return updateCommand;
+  }
 }
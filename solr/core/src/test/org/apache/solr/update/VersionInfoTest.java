@@ -18,12 +18,16 @@ package org.apache.solr.update;
 
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.Hash;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.update.processor.DistributedUpdateProcessor.DistribPhase;
 import org.junit.Test;
 
+import static org.apache.solr.update.processor.DistributingUpdateProcessorFactory.DISTRIB_UPDATE_PARAM;
+
 public class VersionInfoTest extends SolrTestCaseJ4 {
 
   @Test
@@ -56,6 +60,66 @@ public class VersionInfoTest extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testMaxVersionWithVersionLocksById() throws Exception {
+    System.setProperty("versionLocksById", "true");
+    initCore("solrconfig-tlog.xml","schema-version-dv.xml");
+    try (SolrQueryRequest r = req()) {
+      assertNotNull(r.getCore().getUpdateHandler().getUpdateLog().getVersionInfo().getIdVersionBuckets());
+
+      testMaxVersionLogic(r);
+    } finally {
+      deleteCore();
+      System.clearProperty("versionLocksById");
+    }
+  }
+
+  /**
+   * The highest version of a bucket is only a shortcut for updates that are newer than it: reordered updates are
+   * still detected per id, by looking up the version of the id, when several ids share the bucket.
+   */
+  @Test
+  public void testReorderedUpdatesDetectedPerIdWithVersionLocksById() throws Exception {
+    System.setProperty("versionLocksById", "true");
+    initCore("solrconfig-tlog.xml","schema-version-dv.xml");
+    try (SolrQueryRequest r = req()) {
+      VersionInfo vInfo = r.getCore().getUpdateHandler().getUpdateLog().getVersionInfo();
+      int mask = vInfo.getIdVersionBuckets().getNumBuckets() - 1;
+      String idA = "a";
+      String idB = null;
+      for (int i = 0; idB == null; i++) {
+        if ((hash("b" + i) & mask) == (hash(idA) & mask)) {
+          idB = "b" + i;
+        }
+      }
+
+      long base = vInfo.getNewClock();
+      ModifiableSolrParams fromLeader = params(DISTRIB_UPDATE_PARAM, DistribPhase.FROMLEADER.toString());
+      updateJ(jsonAdd(sdoc("id", idA, "_version_", base + 100)), fromLeader);
+      assertEquals(base + 100, vInfo.bucket(hash(idB)).getHighest());
+
+      // older than the bucket's highest, but the first update of its id
+      updateJ(jsonAdd(sdoc("id", idB, "_version_", base + 10)), fromLeader);
+      assertEquals(Long.valueOf(base + 10), vInfo.lookupVersion(new BytesRef(idB)));
+
+      // reordered: older than the last update of its id
+      updateJ(jsonAdd(sdoc("id", idA, "_version_", base + 50)), fromLeader);
+      assertEquals(Long.valueOf(base + 100), vInfo.lookupVersion(new BytesRef(idA)));
+
+      // newer than the last update of its id, though still older than the bucket's highest
+      updateJ(jsonAdd(sdoc("id", idB, "_version_", base + 20)), fromLeader);
+      assertEquals(Long.valueOf(base + 20), vInfo.lookupVersion(new BytesRef(idB)));
+    } finally {
+      deleteCore();
+      System.clearProperty("versionLocksById");
+    }
+  }
+
+  private static int hash(String id) {
+    BytesRef idBytes = new BytesRef(id);
+    return Hash.murmurhash3_x86_32(idBytes.bytes, idBytes.offset, idBytes.length, 0);
+  }
+
   protected void testMaxVersionLogic(SolrQueryRequest req) throws Exception {
     UpdateHandler uhandler = req.getCore().getUpdateHandler();
     UpdateLog ulog = uhandler.getUpdateLog();
@@ -91,7 +155,7 @@ public class VersionInfoTest extends SolrTestCaseJ4 {
 
     int bucketHash = Hash.murmurhash3_x86_32(idBytes.bytes, idBytes.offset, idBytes.length, 0);
     VersionBucket bucket = vInfo.bucket(bucketHash);
-    assertEquals(bucket.highest, version.longValue());
+    assertEquals(bucket.getHighest(), version.longValue());
 
     // send 2nd doc ... BUT DO NOT COMMIT
     docId = Integer.toString(2);
@@ -134,7 +198,7 @@ public class VersionInfoTest extends SolrTestCaseJ4 {
     
     bucketHash = Hash.murmurhash3_x86_32(idBytes.bytes, idBytes.offset, idBytes.length, 0);
     bucket = vInfo.bucket(bucketHash);
-    assertEquals(bucket.highest, version.longValue());
+    assertEquals(bucket.getHighest(), version.longValue());
 
     // reload the core, which should reset the max
     CoreContainer coreContainer = req.getCore().getCoreContainer();
@@ -167,6 +231,6 @@ public class VersionInfoTest extends SolrTestCaseJ4 {
 
     bucketHash = Hash.murmurhash3_x86_32(idBytes.bytes, idBytes.offset, idBytes.length, 0);
     bucket = vInfo.bucket(bucketHash);
-    assertEquals(bucket.highest, version.longValue());
+    assertEquals(bucket.getHighest(), version.longValue());
   }
 }
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.junit.Test;
+
+public class OrderedLanesTest extends SolrTestCase {
+
+  @Test
+  public void testExecutionInOrderPerLane() throws Exception {
+    ExecutorService executor = ExecutorUtil.newMDCAwareCachedThreadPool("testExecutionInOrderPerLane");
+    try {
+      int numKeys = random().nextInt(20) + 5;
+      OrderedLanes lanes = new OrderedLanes(4, 50, executor);
+      int[] submitted = new int[numKeys];
+      int[] applied = new int[numKeys];  // only changed by the lane of each key
+      AtomicBoolean outOfOrder = new AtomicBoolean();
+      for (int i = 0; i < 5000; i++) {
+        int key = random().nextInt(numKeys);
+        int sequence = submitted[key]++;
+        lanes.execute(key, () -> {
+          if (applied[key]++ != sequence) outOfOrder.set(true);
+        });
+      }
+      lanes.awaitIdle();
+      assertFalse(outOfOrder.get());
+      assertArrayEquals(submitted, applied);
+      assertEquals(0, lanes.getPending());
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
+
+  @Test
+  public void testSameHashDoesNotBlockOtherLanes() throws Exception {
+    ExecutorService executor = ExecutorUtil.newMDCAwareCachedThreadPool("testSameHashDoesNotBlockOtherLanes");
+    try {
+      OrderedLanes lanes = new OrderedLanes(2, 10, executor);
+      CountDownLatch release = new CountDownLatch(1);
+      CountDownLatch otherLane = new CountDownLatch(1);
+      StringBuilder events = new StringBuilder();
+      lanes.execute(0, () -> {
+        try {
+          release.await(120, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        events.append("A");
+      });
+      // queued behind the first task, without blocking the caller
+      lanes.execute(0, () -> events.append("B"));
+      lanes.execute(1, otherLane::countDown);
+      assertTrue(otherLane.await(120, TimeUnit.SECONDS));
+      assertTrue(lanes.getPending() >= 2);
+
+      release.countDown();
+      lanes.awaitIdle();
+      assertEquals("AB", events.toString());
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
+}
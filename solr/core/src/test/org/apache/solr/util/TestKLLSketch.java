@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.solr.SolrTestCase;
+
+/**
+ * Test for {@link KLLSketch}.
+ */
+public class TestKLLSketch extends SolrTestCase {
+
+  public void testSmallIsExact() {
+    KLLSketch sketch = new KLLSketch();
+    assertTrue(sketch.isEmpty());
+    assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    for (int i = 5; i >= 1; i--) {
+      sketch.update(i);
+    }
+    sketch.update(Double.NaN);
+    assertEquals(5, sketch.getN());
+    assertEquals(1.0, sketch.getMin(), 0.0);
+    assertEquals(5.0, sketch.getMax(), 0.0);
+    assertArrayEquals(new double[] {1, 2, 3, 4, 5}, sketch.quantiles(new double[] {0, 0.25, 0.5, 0.75, 1}), 0.0);
+  }
+
+  public void testRankError() {
+    Random r = random();
+    int k = 100 + r.nextInt(200);
+    int n = 100_000 + r.nextInt(100_000);
+    double[] values = new double[n];
+    KLLSketch sketch = new KLLSketch(k);
+    KLLSketch[] parts = new KLLSketch[1 + r.nextInt(8)];
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = new KLLSketch(k);
+    }
+    for (int i = 0; i < n; i++) {
+      values[i] = r.nextGaussian() * 1000;
+      sketch.update(values[i]);
+      parts[i % parts.length].update(values[i]);
+    }
+    // the sketch of all values and the merge of the serialized parts
+    KLLSketch merged = new KLLSketch(k);
+    for (KLLSketch part : parts) {
+      merged.merge(KLLSketch.fromBytes(part.toBytes()));
+    }
+    assertEquals(n, merged.getN());
+    assertTrue(sketch.getNumRetained() < 4 * k);
+    assertTrue(merged.getNumRetained() < 4 * k);
+
+    Arrays.sort(values);
+    double maxError = 3 * 1.33 * 0.01 * 200 / k;
+    for (double fraction = 0.01; fraction < 1; fraction += 0.01) {
+      assertEquals(fraction, rank(values, sketch.quantile(fraction)), maxError);
+      assertEquals(fraction, rank(values, merged.quantile(fraction)), maxError);
+    }
+    assertEquals(values[0], merged.quantile(0), 0.0);
+    assertEquals(values[n - 1], merged.quantile(1), 0.0);
+  }
+
+  public void testMergeDifferentK() {
+    expectThrows(IllegalArgumentException.class, () -> new KLLSketch(100).merge(new KLLSketch(200)));
+    expectThrows(IllegalArgumentException.class, () -> new KLLSketch(KLLSketch.MIN_K - 1));
+  }
+
+  private static double rank(double[] sorted, double value) {
+    int i = Arrays.binarySearch(sorted, value);
+    return (double) (i < 0 ? -i - 1 : i) / sorted.length;
+  }
+}
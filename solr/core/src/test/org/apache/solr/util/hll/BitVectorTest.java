@@ -141,6 +141,35 @@ public class BitVectorTest extends SolrTestCase {
         assertEquals(vector.getRegister(0), 11);
     }
 
+    /**
+     * Tests {@link BitVector#setMaxRegisters(BitVector)} against {@link BitVector#setMaxRegister(long, long)}
+     */
+    @Test
+    public void setMaxRegistersTest() {
+        for(int width=1; width<=8; width++) {
+            for(final int count : new int[] { 1, 63, 64, 65, 1000 }) {
+                final BitVector vector = new BitVector(width, count);
+                final BitVector other = new BitVector(width, count);
+                final BitVector expected = new BitVector(width, count);
+                final long registerMask = (1L << width) - 1;
+                for(int i=0; i<count; i++) {
+                    final long value = random().nextInt(3) == 0 ? 0 : random().nextLong() & registerMask;
+                    final long otherValue = random().nextInt(3) == 0 ? value : random().nextLong() & registerMask;
+                    vector.setRegister(i, value);
+                    other.setRegister(i, otherValue);
+                    expected.setRegister(i, value);
+                    expected.setMaxRegister(i, otherValue);
+                }
+
+                vector.setMaxRegisters(other);
+
+                for(int i=0; i<count; i++) {
+                    assertEquals("width=" + width + ", register=" + i, expected.getRegister(i), vector.getRegister(i));
+                }
+            }
+        }
+    }
+
     // ========================================================================
     // fill
     /**
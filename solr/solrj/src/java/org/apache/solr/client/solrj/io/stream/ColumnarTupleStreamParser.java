@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.util.JavaBinCodec;
+
+/**
+ * Parses the columnar javabin response of /export (<code>wt=javabin&amp;columnar=true</code>) into tuples.
+ * <p>
+ * Instead of one map per tuple, the docs of the response are batches of tuples, each of which has the number of
+ * tuples in {@link #ROWS} and a column per field in {@link #COLUMNS}.  A column has the {@link #NAME} of its field, the
+ * {@link #TYPE} of its values, and a bitmap of the tuples that have a value in {@link #PRESENT}, unless they all do.
+ * The values of the tuples that have one are then encoded in {@link #DATA} depending on the type:
+ * <ul>
+ *   <li>{@link #TYPE_STRING}: the vInt ordinal of each value in the {@link #DICT} list of the distinct values of the
+ *   column in the batch</li>
+ *   <li>{@link #TYPE_LONG}, {@link #TYPE_DATE} (epoch millis) and {@link #TYPE_BOOLEAN} (0 or 1): zig-zag
+ *   encoded vLongs</li>
+ *   <li>{@link #TYPE_DOUBLE}: 8 bytes per value</li>
+ *   <li>{@link #TYPE_OBJECT}: no data, the {@link #VALUES} list has the value of each tuple, or null</li>
+ * </ul>
+ * The tuples are returned with the same types as {@link JavabinTupleStreamParser} with <code>onlyJsonTypes</code>.
+ */
+public class ColumnarTupleStreamParser extends JavabinTupleStreamParser {
+  public static final String COLUMNAR_PARAM = "columnar";
+
+  public static final String ROWS = "rows";
+  public static final String COLUMNS = "columns";
+  public static final String NAME = "name";
+  public static final String TYPE = "type";
+  public static final String PRESENT = "present";
+  public static final String DICT = "dict";
+  public static final String DATA = "data";
+  public static final String VALUES = "values";
+
+  public static final String TYPE_STRING = "s";
+  public static final String TYPE_LONG = "l";
+  public static final String TYPE_DOUBLE = "d";
+  public static final String TYPE_DATE = "t";
+  public static final String TYPE_BOOLEAN = "b";
+  public static final String TYPE_OBJECT = "o";
+
+  // the tuples of the current batch, and the next one to return
+  private List<Map<String, Object>> tuples = new ArrayList<>();
+  private int next;
+
+  public ColumnarTupleStreamParser(InputStream is) throws IOException {
+    super(is, true);
+  }
+
+  @Override
+  public Map<String, Object> next() throws IOException {
+    while (next >= tuples.size()) {
+      Map<String, Object> batch = super.next();
+      if (batch == null) {
+        return null;
+      }
+      if (!batch.containsKey(COLUMNS)) {
+        // not a batch, e.g. an exception
+        return batch;
+      }
+      tuples = readBatch(batch);
+      next = 0;
+    }
+    Map<String, Object> tuple = tuples.get(next);
+    tuples.set(next++, null);
+    return tuple;
+  }
+
+  @SuppressWarnings({"unchecked"})
+  static List<Map<String, Object>> readBatch(Map<String, Object> batch) throws IOException {
+    int rows = ((Number) batch.get(ROWS)).intValue();
+    List<Map<String, Object>> tuples = new ArrayList<>(rows);
+    for (int row = 0; row < rows; row++) {
+      tuples.add(new LinkedHashMap<>());
+    }
+
+    for (Map<String, Object> column : (List<Map<String, Object>>) batch.get(COLUMNS)) {
+      String name = (String) column.get(NAME);
+      String type = (String) column.get(TYPE);
+      byte[] present = (byte[]) column.get(PRESENT);
+
+      if (TYPE_OBJECT.equals(type)) {
+        List<Object> values = (List<Object>) column.get(VALUES);
+        for (int row = 0; row < rows; row++) {
+          if (values.get(row) != null) {
+            tuples.get(row).put(name, values.get(row));
+          }
+        }
+        continue;
+      }
+
+      byte[] data = (byte[]) column.get(DATA);
+      FastInputStream in = new FastInputStream(null, data, 0, data.length);
+      List<Object> dict = (List<Object>) column.get(DICT);
+      for (int row = 0; row < rows; row++) {
+        if (present != null && (present[row >>> 3] & (1 << (row & 7))) == 0) {
+          continue;
+        }
+        Object value;
+        switch (type) {
+          case TYPE_STRING:
+            value = dict.get(JavaBinCodec.readVInt(in));
+            break;
+          case TYPE_LONG:
+            value = unzigzag(JavaBinCodec.readVLong(in));
+            break;
+          case TYPE_DOUBLE:
+            value = in.readDouble();
+            break;
+          case TYPE_DATE:
+            value = Instant.ofEpochMilli(unzigzag(JavaBinCodec.readVLong(in))).toString();
+            break;
+          case TYPE_BOOLEAN:
+            value = JavaBinCodec.readVLong(in) != 0;
+            break;
+          default:
+            throw new IOException("Unknown type of column " + name + ": " + type);
+        }
+        tuples.get(row).put(name, value);
+      }
+    }
+    return tuples;
+  }
+
+  private static long unzigzag(long l) {
+    return (l >>> 1) ^ -(l & 1);
+  }
+}
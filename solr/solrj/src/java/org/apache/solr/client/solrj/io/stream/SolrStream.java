@@ -305,6 +305,9 @@ public class SolrStream extends TupleStream {
     InputStream stream = (InputStream) genericResponse.get("stream");
     this.closeableHttpResponse = (CloseableHttpResponse)genericResponse.get("closeableResponse");
     if (CommonParams.JAVABIN.equals(wt)) {
+      if (requestParams.getBool(ColumnarTupleStreamParser.COLUMNAR_PARAM, false)) {
+        return new ColumnarTupleStreamParser(stream);
+      }
       return new JavabinTupleStreamParser(stream, true);
     } else {
       InputStreamReader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);